@@ -0,0 +1,55 @@
+package benchmarks;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 22:50
+ **/
+
+import org.openjdk.jmh.annotations.*;
+import utils.CrawlerManager;
+import utils.GraphGenerator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CrawlerManager在内存里的图上爬一遍，没有网络，量的是master/worker本身的开销：
+ * 线程数变多有没有用，只让master写结果集和去重集合是不是瓶颈。
+ * sleepMicros大于0时每次取链接先睡一会儿，模拟IO等待，看线程数和等待时间的关系。
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CrawlerManagerBenchmark {
+    @Param({"100000"})
+    public int nodes;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int threads;
+
+    @Param({"0", "100"})
+    public long sleepMicros;
+
+    private Map<String, List<String>> graph;
+
+    @Setup(Level.Trial)
+    public void buildGraph() {
+        // 有IO等待时节点少一些，不然一轮要跑很久
+        graph = GraphGenerator.connectedUrls(sleepMicros > 0 ? nodes / 10 : nodes, 4, 42);
+    }
+
+    @Benchmark
+    public List<String> crawl() {
+        CrawlerManager manager = new CrawlerManager(url -> {
+            if (sleepMicros > 0) {
+                TimeUnit.MICROSECONDS.sleep(sleepMicros);
+            }
+            return graph.get(url);
+        }, threads, 4 * threads, 0);
+        return manager.crawl(GraphGenerator.name(0));
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 23:00
+ **/
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import utils.HttpPoolUtil;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpPoolUtil.httpGet对本进程里的回环服务器发请求，服务器立刻返回固定大小的响应体，
+ * 量的是连接池、请求和读响应的开销。用 -t 改并发的线程数，默认8个。
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class HttpGetBenchmark {
+    @Param({"1024", "65536"})
+    public int bodyBytes;
+
+    private HttpServer server;
+    private ExecutorService workers;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        final byte[] body = new byte[bodyBytes];
+        Arrays.fill(body, (byte) 'x');
+        // JDK的HttpServer默认不开TCP_NODELAY，响应头和响应体分两次写，
+        // 碰上客户端的延迟ACK每个请求要多等40ms，量出来的就不是httpGet本身了
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        workers = Executors.newFixedThreadPool(16);
+        server.setExecutor(workers);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/page";
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    @Benchmark
+    public String httpGet() {
+        return HttpPoolUtil.httpGet(url, 5000);
+    }
+}
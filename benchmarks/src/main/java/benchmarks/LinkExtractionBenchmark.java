@@ -0,0 +1,81 @@
+package benchmarks;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 23:00
+ **/
+
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.HtmlLinkExtractor;
+import utils.SyntheticCorpus;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 从固定的html页面里取链接：流式的HtmlLinkExtractor，和原来先toString再用正则找的方式。
+ * 页面是SyntheticCorpus生成的正文，每隔几十个词插一个链接，一半相对地址一半绝对地址。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LinkExtractionBenchmark {
+    private static final Pattern LINK = Pattern.compile(
+            "(?i)(?:href|src)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))");
+    private static final String BASE = "http://a.com/dir/index.html";
+
+    @Param({"16384", "262144"})
+    public int pageBytes;
+
+    private byte[] page;
+    private final HtmlLinkExtractor extractor = new HtmlLinkExtractor();
+
+    @Setup(Level.Trial)
+    public void buildPage() {
+        SyntheticCorpus corpus = new SyntheticCorpus(20000, 1.0, 7);
+        Random random = new Random(1);
+        StringBuilder html = new StringBuilder(pageBytes + 1024);
+        html.append("<!DOCTYPE html><html><head><title>t</title><script>var x = '<a href=\"/no\">';</script></head><body>");
+        int link = 0;
+        while (html.length() < pageBytes) {
+            html.append("<p>").append(corpus.document(random, 40, false)).append(' ');
+            if (link % 2 == 0) {
+                html.append("<a href=\"page").append(link).append(".html\">more</a>");
+            } else {
+                html.append("<a class='x' href='http://b").append(link % 50).append(".com/p/").append(link).append("'>out</a>");
+            }
+            html.append("</p>\n");
+            link++;
+        }
+        html.append("</body></html>");
+        page = html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long streaming(final Blackhole blackhole) throws Exception {
+        return extractor.extract(new ByteArrayInputStream(page), BASE, StandardCharsets.UTF_8, 0, blackhole::consume);
+    }
+
+    @Benchmark
+    public void toStringThenRegex(Blackhole blackhole) throws Exception {
+        String html = EntityUtils.toString(new InputStreamEntity(new ByteArrayInputStream(page)), "UTF-8");
+        URI base = new URI(BASE);
+        Matcher matcher = LINK.matcher(html);
+        while (matcher.find()) {
+            String raw = matcher.group(1) != null ? matcher.group(1)
+                    : matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            blackhole.consume(base.resolve(raw.replace("&amp;", "&")).toString());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package benchmarks;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 22:40
+ **/
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 和JMH自带的main一样解析命令行，只是默认把结果写成JSON，
+ * 每次提交跑一遍，把jmh-result.json存下来就能比较有没有变慢。
+ * 命令行里给了 -rf / -rff 时用命令行的。
+ */
+public class Main {
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            options.result(DEFAULT_RESULT_FILE);
+        }
+        new Runner(options.build()).run();
+    }
+}
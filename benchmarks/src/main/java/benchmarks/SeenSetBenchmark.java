@@ -0,0 +1,93 @@
+package benchmarks;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 22:50
+ **/
+
+import org.openjdk.jmh.annotations.*;
+import utils.BloomSeenSet;
+import utils.FingerprintSeenSet;
+import utils.UrlCanonicalizer;
+import utils.UrlSeenSet;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 去重集合的add和contains，用 -t 改线程数看锁竞争，默认4个线程。
+ * 每个线程按自己的步长取url，add大部分是新url，contains一半命中一半不命中。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(4)
+@State(Scope.Benchmark)
+public class SeenSetBenchmark {
+    private static final int URLS = 1 << 20;
+
+    @Param({"fingerprint", "bloom"})
+    public String impl;
+
+    private String[] urls;
+    private UrlSeenSet seen;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        int step;
+
+        @Setup(Level.Iteration)
+        public void start(SeenSetBenchmark benchmark) {
+            int id = benchmark.threadIds.getAndIncrement();
+            next = id * 7919;
+            // 奇数步长，走完整个数组才会重复
+            step = 2 * id + 1;
+        }
+
+        String next(String[] urls) {
+            next = (next + step) & (URLS - 1);
+            return urls[next];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void generateUrls() {
+        urls = new String[URLS];
+        for (int i = 0; i < URLS; i++) {
+            urls[i] = "http://host" + (i % 1000) + ".example.com/path/" + i + "?q=" + (i * 31);
+        }
+    }
+
+    /**
+     * 每轮换一个空的集合，前一半url先放进去给contains用
+     */
+    @Setup(Level.Iteration)
+    public void newSet() {
+        seen = impl.equals("bloom") ? new BloomSeenSet(4L * URLS, 0.01) : new FingerprintSeenSet(4L * URLS);
+        for (int i = 0; i < URLS / 2; i++) {
+            seen.add(urls[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean add(Cursor cursor) {
+        return seen.add(cursor.next(urls));
+    }
+
+    @Benchmark
+    public boolean contains(Cursor cursor) {
+        return seen.contains(cursor.next(urls));
+    }
+
+    /**
+     * submitUrl里实际做的：先规范化，再去重
+     */
+    @Benchmark
+    public boolean canonicalizeAndAdd(Cursor cursor) {
+        return seen.add(UrlCanonicalizer.DEFAULT.canonicalize(cursor.next(urls)));
+    }
+}
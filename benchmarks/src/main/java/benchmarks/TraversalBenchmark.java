@@ -0,0 +1,73 @@
+package benchmarks;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 22:40
+ **/
+
+import org.openjdk.jmh.annotations.*;
+import utils.CrawlerDFS_BFS;
+import utils.GraphGenerator;
+import utils.LinkGraph;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CrawlerDFS_BFS和LinkGraph在GraphGenerator生成的图上遍历一遍的时间。
+ * 一千万个节点的Map需要十几G的堆：-p nodes=10000000 -jvmArgsAppend -Xmx16g；
+ * 只比较LinkGraph时用 -p nodes=12500000 -p map=false，五千万条边，默认的6G就够了
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class TraversalBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int nodes;
+
+    @Param({"4"})
+    public int outDegree;
+
+    /** 为false时不生成Map，bfs和dfs跳过 */
+    @Param({"true"})
+    public boolean map;
+
+    private CrawlerDFS_BFS crawler;
+    private LinkGraph graph;
+
+    @Setup(Level.Trial)
+    public void buildGraph() {
+        if (map) {
+            crawler = new CrawlerDFS_BFS(GraphGenerator.connectedUrls(nodes, outDegree, 42));
+        }
+        graph = GraphGenerator.csr(nodes, outDegree, 42);
+    }
+
+    @Benchmark
+    public List<String> bfs() {
+        return map ? crawler.BFS(GraphGenerator.name(0)) : null;
+    }
+
+    @Benchmark
+    public List<String> dfs() {
+        return map ? crawler.DFS(GraphGenerator.name(0)) : null;
+    }
+
+    @Benchmark
+    public int[] csrBfs() {
+        return graph.bfs(0, LinkGraph.UNLIMITED);
+    }
+
+    @Benchmark
+    public int[] csrParallelBfs() {
+        return graph.parallelBfs(0, LinkGraph.UNLIMITED);
+    }
+
+    @Benchmark
+    public int[] csrDfs() {
+        return graph.dfs(0, LinkGraph.UNLIMITED);
+    }
+}
@@ -0,0 +1,110 @@
+import org.junit.Test;
+import utils.AdaptiveConcurrency;
+import utils.CrawlHarness;
+import utils.CrawlMetrics;
+import utils.CrawlerManager;
+import utils.HttpLinkSource;
+import utils.SyntheticWebServer;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 自适应并发：先在模拟的服务器上看上限怎么收敛，再真的爬一次SyntheticWebServer
+ */
+public class AdaptiveConcurrencyTest {
+    private static final long BASE_RTT = 10_000_000L;
+
+    /**
+     * 服务器同时只能处理capacity个请求，多出来的排队：延迟 = 基础延迟 × max(1, 并发 / capacity)
+     */
+    private static long rtt(int inFlight, int capacity) {
+        return BASE_RTT * Math.max(capacity, inFlight) / capacity;
+    }
+
+    private static void run(AdaptiveConcurrency concurrency, int capacity, int samples, double errorRate) {
+        java.util.Random random = new java.util.Random(1);
+        for (int i = 0; i < samples; i++) {
+            int inFlight = concurrency.limit();
+            concurrency.onSample(rtt(inFlight, capacity), random.nextDouble() < errorRate, inFlight);
+        }
+    }
+
+    @Test
+    public void growsWhileLatencyHolds() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(2, 1, 200, 0.2);
+        run(concurrency, 1000, 5000, 0);
+        assertEquals(200, concurrency.limit());
+        assertTrue(concurrency.adjustments() > 0);
+    }
+
+    @Test
+    public void settlesNearServerCapacity() {
+        for (int capacity : new int[]{8, 32, 64}) {
+            AdaptiveConcurrency concurrency = new AdaptiveConcurrency(2, 1, 500, 0.2);
+            run(concurrency, capacity, 50000, 0);
+            int limit = concurrency.limit();
+            System.out.println("capacity " + capacity + " -> limit " + limit);
+            // 排队让延迟超过基准的1.5倍时就往回收
+            assertTrue("capacity " + capacity + " limit " + limit, limit >= capacity && limit <= 2 * capacity + 4);
+        }
+    }
+
+    @Test
+    public void adaptsWhenEverySiteGetsSlower() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(2, 1, 200, 0.2);
+        run(concurrency, 1000, 5000, 0);
+        assertEquals(200, concurrency.limit());
+        // 延迟整体变成5倍，和并发无关：先往回收，发现降并发没用以后重新涨上去
+        int lowest = concurrency.limit();
+        for (int i = 0; i < 20000; i++) {
+            int inFlight = concurrency.limit();
+            lowest = Math.min(lowest, inFlight);
+            concurrency.onSample(5 * BASE_RTT, false, inFlight);
+        }
+        System.out.println("slower sites: lowest " + lowest + ", now " + concurrency.limit());
+        assertTrue(lowest < 200);
+        assertEquals(200, concurrency.limit());
+    }
+
+    @Test
+    public void backsOffOnErrorsAndHonorsBounds() {
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(100, 10, 100, 0.2);
+        run(concurrency, 1000, 2000, 0.5);
+        assertEquals(10, concurrency.limit());
+
+        // 错误率低于阈值时照常增长
+        run(concurrency, 1000, 5000, 0.05);
+        assertEquals(100, concurrency.limit());
+
+        try {
+            new AdaptiveConcurrency(5, 10, 5, 0.2);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void crawlScalesWorkerPool() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(3000).hosts(300).latency(20, 0.3);
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            AdaptiveConcurrency concurrency = new AdaptiveConcurrency(2, 2, 64, 0.2);
+            CrawlMetrics metrics = new CrawlMetrics();
+            CrawlerManager manager = new CrawlerManager(new HttpLinkSource(server.registry(), 2000, 0), concurrency, 0);
+            manager.setMetrics(metrics);
+            long start = System.nanoTime();
+            List<String> pages = manager.crawl(server.url(0));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            CrawlMetrics.Snapshot snapshot = metrics.snapshot();
+            System.out.printf("adaptive: %d pages in %.1fs, %s", pages.size(), seconds, snapshot);
+
+            assertEquals(3000, pages.size());
+            assertTrue(snapshot.concurrencyChanges() > 0);
+            assertEquals(concurrency.limit(), snapshot.concurrencyLimit());
+            // 从2个线程开始，20ms的延迟下两个线程最多100 pages/s，要30秒
+            assertTrue("seconds " + seconds, seconds < 15);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import org.junit.Test;
+import utils.*;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 同步和异步两种Fetcher：超时、重试一致，异步的在几个IO线程上同时挂着几百个请求。
+ */
+public class AsyncFetcherTest {
+    private static final int NODES = 1000;
+    private static final int HOSTS = 16;
+    private static final long LATENCY = 50;
+
+    @Test
+    public void asyncCrawlKeepsManyRequestsInFlight() throws Exception {
+        Map<String, List<String>> graph = GraphGenerator.connectedUrls(NODES, 20, 3);
+        try (LocalGraphServer server = new LocalGraphServer(graph, HOSTS, LATENCY)) {
+            double blocking;
+            try (Fetcher fetcher = new BlockingFetcher(16, 6000)) {
+                blocking = crawl(server, fetcher, 16);
+            }
+            int blockingConcurrency = server.maxConcurrentRequests();
+
+            double async;
+            try (Fetcher fetcher = new AsyncFetcher(6000, 2048, 128, 2)) {
+                async = crawl(server, fetcher, 2048);
+            }
+            int asyncConcurrency = server.maxConcurrentRequests();
+
+            System.out.printf("blocking fetcher, 16 threads: %.0f pages/s, %d requests in flight%n",
+                    blocking, blockingConcurrency);
+            System.out.printf("async fetcher, 2 io threads:  %.0f pages/s, %d requests in flight%n",
+                    async, asyncConcurrency);
+            // 上限在LocalGraphServer（JDK自带的HttpServer）建连接的速度上，不在客户端
+            assertTrue(asyncConcurrency > 3 * blockingConcurrency);
+        }
+    }
+
+    @Test
+    public void retriesDroppedConnectionLikeBlockingClient() throws Exception {
+        for (Fetcher fetcher : new Fetcher[]{new BlockingFetcher(1, 2000), new AsyncFetcher(2000)}) {
+            try (ScriptedServer server = new ScriptedServer(1, false); Fetcher f = fetcher) {
+                FetchResponse response = f.fetch(server.url()).get();
+                assertEquals(200, response.getStatusCode());
+                assertEquals("ok", response.getBodyAsString());
+                assertEquals(2, server.connections.get());
+            }
+        }
+    }
+
+    @Test
+    public void socketTimeoutIsRetriedThenFails() throws Exception {
+        for (Fetcher fetcher : new Fetcher[]{new BlockingFetcher(1, 300), new AsyncFetcher(300)}) {
+            try (ScriptedServer server = new ScriptedServer(Integer.MAX_VALUE, true); Fetcher f = fetcher) {
+                long start = System.currentTimeMillis();
+                try {
+                    f.fetch(server.url()).get();
+                    fail("expected timeout");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() instanceof IOException ? e.getCause() : e.getCause().getCause();
+                    assertTrue(String.valueOf(cause), cause instanceof SocketTimeoutException);
+                }
+                assertEquals(3, server.connections.get());
+                assertTrue(System.currentTimeMillis() - start >= 3 * 300);
+            }
+        }
+    }
+
+    private static double crawl(LocalGraphServer server, Fetcher fetcher, int maxInFlight) {
+        CrawlerManager manager = new CrawlerManager(fetcher, LocalGraphServer.linkParser(), maxInFlight, 0);
+        manager.setFrontier(new HostFrontier(0, 128));
+        long start = System.nanoTime();
+        List<String> result = manager.crawl(server.url(GraphGenerator.name(0)));
+        long elapsed = System.nanoTime() - start;
+        assertEquals(NODES, result.size());
+        return NODES * 1e9 / elapsed;
+    }
+
+    /**
+     * 前failures个连接读完请求后不响应：hang为true时一直挂着，否则直接断开；之后的连接返回200 "ok"
+     */
+    private static class ScriptedServer implements Closeable {
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private final AtomicInteger connections = new AtomicInteger();
+        private final Thread acceptor;
+
+        ScriptedServer(final int failures, final boolean hang) throws IOException {
+            acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        final int n = connections.incrementAndGet();
+                        Thread handler = new Thread(() -> handle(socket, n <= failures, hang));
+                        handler.setDaemon(true);
+                        handler.start();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private void handle(Socket socket, boolean fail, boolean hang) {
+            try (Socket s = socket) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    // 跳过请求头
+                }
+                if (fail) {
+                    if (hang) {
+                        Thread.sleep(60000);
+                    }
+                    return;
+                }
+                OutputStream out = s.getOutputStream();
+                out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 2\r\n"
+                        + "Connection: close\r\n\r\nok").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            } catch (IOException | InterruptedException e) {
+                // 连接被客户端关闭
+            }
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.*;
+import utils.BM25Searcher.Hit;
+import utils.BM25Searcher.Operator;
+import utils.BM25Searcher.TopDocs;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * BM25前k个结果：剪枝和不剪枝的结果必须完全一样，剪枝要少打很多文档的分
+ */
+public class BM25SearcherTest {
+    @ClassRule
+    public static TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int DOCS = 50000;
+    private static SyntheticCorpus corpus;
+    private static IndexReader reader;
+
+    @BeforeClass
+    public static void buildIndex() throws Exception {
+        corpus = new SyntheticCorpus(20000, 1.0, 5);
+        Random random = new Random(9);
+        Path dir = tmp.getRoot().toPath();
+        try (IndexWriter writer = new IndexWriter(dir, 2 * 1024 * 1024)) {
+            for (int i = 0; i < DOCS; i++) {
+                writer.addDocument("http://a.com/" + i, corpus.document(random, 50 + random.nextInt(400), false));
+            }
+        }
+        reader = IndexReader.open(dir);
+    }
+
+    @Test
+    public void smallIndexByHand() throws Exception {
+        Path dir = tmp.newFolder().toPath();
+        try (IndexWriter writer = new IndexWriter(dir)) {
+            writer.addDocument("http://a.com/0", "rocket search engine");
+            writer.addDocument("http://a.com/1", "rocket rocket rocket launch");
+            writer.addDocument("http://a.com/2", "search the web with a search engine");
+            writer.addDocument("http://a.com/3", "nothing relevant here");
+        }
+        BM25Searcher searcher = new BM25Searcher(IndexReader.open(dir));
+
+        List<Hit> or = searcher.search("rocket search", 10, Operator.OR, true).getHits();
+        assertEquals(3, or.size());
+        assertEquals("http://a.com/0", or.get(0).getUrl());
+        List<Hit> and = searcher.search("rocket search", 10, Operator.AND, true).getHits();
+        assertEquals(1, and.size());
+        assertEquals(0, and.get(0).getDoc());
+        assertTrue(searcher.search("rocket missing", 10, Operator.AND, true).getHits().isEmpty());
+        assertEquals(2, searcher.search("rocket missing", 10, Operator.OR, true).getHits().size());
+    }
+
+    @Test
+    public void pruningReturnsTheSameTopK() {
+        BM25Searcher searcher = new BM25Searcher(reader);
+        Random random = new Random(4);
+        for (int q = 0; q < 200; q++) {
+            String query = query(random);
+            for (Operator operator : Operator.values()) {
+                for (int k : new int[]{1, 10, 100}) {
+                    TopDocs exhaustive = searcher.search(query, k, operator, false);
+                    TopDocs pruned = searcher.search(query, k, operator, true);
+                    assertEquals(operator + " " + k + " " + query, exhaustive.getHits(), pruned.getHits());
+                    assertTrue(pruned.getScoredDocs() <= exhaustive.getScoredDocs());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void latencyWithAndWithoutPruning() {
+        BM25Searcher searcher = new BM25Searcher(reader);
+        Random random = new Random(8);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            queries.add(query(random));
+        }
+        // 预热
+        for (String query : queries) {
+            for (Operator operator : Operator.values()) {
+                searcher.search(query, 10, operator, true);
+                searcher.search(query, 10, operator, false);
+            }
+        }
+        System.out.printf("%d docs, %d queries, top 10%n", reader.docCount(), queries.size());
+        for (Operator operator : Operator.values()) {
+            long[] scored = new long[2];
+            long[][] latencies = new long[2][queries.size()];
+            for (int i = 0; i < queries.size(); i++) {
+                for (int p = 0; p < 2; p++) {
+                    long start = System.nanoTime();
+                    TopDocs top = searcher.search(queries.get(i), 10, operator, p == 1);
+                    latencies[p][i] = System.nanoTime() - start;
+                    scored[p] += top.getScoredDocs();
+                }
+            }
+            for (int p = 0; p < 2; p++) {
+                Arrays.sort(latencies[p]);
+                System.out.printf("%-3s pruning %-3s: p50 %6.0f us, p99 %6.0f us, %8d docs scored%n",
+                        operator, p == 1 ? "on" : "off", percentile(latencies[p], 0.50) / 1e3,
+                        percentile(latencies[p], 0.99) / 1e3, scored[p]);
+            }
+            if (operator == Operator.OR) {
+                assertTrue(scored[1] * 5 < scored[0]);
+            }
+        }
+    }
+
+    /**
+     * 2到4个词：一个很常见的词，其余的从中等频率里取
+     */
+    private static String query(Random random) {
+        StringBuilder query = new StringBuilder(corpus.word(random.nextInt(20)));
+        int terms = 1 + random.nextInt(3);
+        for (int t = 0; t < terms; t++) {
+            query.append(' ').append(corpus.word(20 + random.nextInt(2000)));
+        }
+        return query.toString();
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+}
@@ -0,0 +1,281 @@
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utils.BufferPool;
+import utils.ContentEncoding;
+import utils.CrawlMetrics;
+import utils.FetchResponse;
+import utils.HttpClientRegistry;
+import utils.HttpLinkSource;
+import utils.HttpPoolUtil;
+import utils.HttpUtil;
+import utils.LoopbackDnsResolver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Accept-Encoding协商、gzip/deflate边读边解压、池化的缓冲区和每个host省下的带宽
+ */
+public class ContentEncodingTest {
+    private HttpServer server;
+    private ExecutorService workers;
+    // 路径 -> 请求里的Accept-Encoding
+    private final Map<String, String> acceptEncodings = new ConcurrentHashMap<>();
+
+    /**
+     * 一个很长的html页面，带中文，压缩比大概十几倍
+     */
+    private static String page(int links) {
+        StringBuilder html = new StringBuilder("<html><head><title>\u4e2d\u6587\u9875\u9762</title></head><body>\n");
+        for (int i = 0; i < links; i++) {
+            html.append("<p class=\"item\">\u7b2c").append(i).append("\u6761 <a href=\"/p").append(i)
+                    .append("\">link ").append(i).append("</a></p>\n");
+        }
+        return html.append("</body></html>\n").toString();
+    }
+
+    private static final String PAGE = page(2000);
+
+    @Before
+    public void startServer() throws IOException {
+        // 只监听回环地址
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            acceptEncodings.put(path, accept == null ? "" : accept);
+            byte[] body = PAGE.getBytes(StandardCharsets.UTF_8);
+            String coding = null;
+            if (path.startsWith("/gzip")) {
+                coding = "gzip";
+                body = gzip(body);
+            } else if (path.startsWith("/multi")) {
+                // 两个member连在一起
+                coding = "gzip";
+                byte[] half = PAGE.substring(0, PAGE.length() / 2).getBytes(StandardCharsets.UTF_8);
+                byte[] rest = PAGE.substring(PAGE.length() / 2).getBytes(StandardCharsets.UTF_8);
+                ByteArrayOutputStream both = new ByteArrayOutputStream();
+                both.write(gzip(half));
+                both.write(gzip(rest));
+                body = both.toByteArray();
+            } else if (path.startsWith("/corrupt")) {
+                coding = "gzip";
+                body = gzip(body);
+                // 改坏CRC32
+                body[body.length - 8] ^= 1;
+            } else if (path.startsWith("/zlib")) {
+                coding = "deflate";
+                body = deflate(body, false);
+            } else if (path.startsWith("/raw")) {
+                coding = "deflate";
+                body = deflate(body, true);
+            }
+            if (coding != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", coding);
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            // 压缩的用chunked，和大多数服务器一样
+            exchange.sendResponseHeaders(200, coding == null ? body.length : 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        workers = Executors.newCachedThreadPool();
+        server.setExecutor(workers);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private String url(String host, String path) {
+        return "http://" + host + ":" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    public void negotiatesAndDecodesEveryEncoding() throws Exception {
+        for (String path : new String[]{"/gzip", "/multi", "/zlib", "/raw", "/plain"}) {
+            assertEquals(path, PAGE, HttpPoolUtil.httpGet(url("127.0.0.1", path), 5000));
+            assertEquals(ContentEncoding.ACCEPT_ENCODING, acceptEncodings.get(path));
+        }
+        assertEquals(PAGE, HttpUtil.httpGet(url("127.0.0.1", "/gzip2"), 5000));
+        FetchResponse response = HttpPoolUtil.fetch(url("127.0.0.1", "/gzip3"), 5000);
+        assertEquals(PAGE, response.getBodyAsString());
+
+        // 已经有Accept-Encoding的请求不改
+        HttpGet get = new HttpGet(url("127.0.0.1", "/plain2"));
+        get.setHeader("Accept-Encoding", "identity");
+        try (CloseableHttpResponse plain = HttpPoolUtil.getHttpClient(5000).execute(get)) {
+            assertEquals(PAGE, EntityUtils.toString(plain.getEntity(), StandardCharsets.UTF_8));
+        }
+        assertEquals("identity", acceptEncodings.get("/plain2"));
+
+        // 页面里的链接也能边解压边解析
+        List<String> links = new HttpLinkSource(5000, 0).getUrls(url("127.0.0.1", "/gzip4"));
+        assertEquals(2000, links.size());
+        assertEquals(url("127.0.0.1", "/p1999"), links.get(1999));
+    }
+
+    @Test
+    public void corruptTrailerIsAnError() throws Exception {
+        try {
+            HttpPoolUtil.fetch(url("127.0.0.1", "/corrupt"), 5000);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Corrupt GZIP trailer"));
+        }
+        assertEquals("-1", HttpPoolUtil.httpGet(url("127.0.0.1", "/corrupt"), 5000));
+    }
+
+    @Test
+    public void buffersAndInflatersAreReused() throws Exception {
+        // 先热一下，池里有了以后再数
+        HttpPoolUtil.httpGet(url("127.0.0.1", "/gzip"), 5000);
+        long inflaters = ContentEncoding.inflatersCreated();
+        long buffers = BufferPool.global().allocations();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(PAGE, HttpPoolUtil.httpGet(url("127.0.0.1", i % 2 == 0 ? "/gzip" : "/raw"), 5000));
+        }
+        assertEquals(inflaters, ContentEncoding.inflatersCreated());
+        assertEquals(buffers, BufferPool.global().allocations());
+
+        // 手里拿着流的时候池里的不会被别人用
+        HttpGet get = new HttpGet(url("127.0.0.1", "/gzip"));
+        try (CloseableHttpResponse first = HttpPoolUtil.getHttpClient(5000).execute(get)) {
+            InputStream in = first.getEntity().getContent();
+            byte[] head = new byte[100];
+            assertEquals(100, readFully(in, head));
+            assertEquals(PAGE, HttpPoolUtil.httpGet(url("127.0.0.1", "/gzip"), 5000));
+            ByteArrayOutputStream rest = new ByteArrayOutputStream();
+            rest.write(head);
+            byte[] chunk = new byte[4096];
+            int n;
+            while ((n = in.read(chunk)) >= 0) {
+                rest.write(chunk, 0, n);
+            }
+            assertEquals(PAGE, new String(rest.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * 读到maxBytes就断开连接时，解压的流也要关掉，Inflater还回池里
+     */
+    @Test
+    public void truncatedLinkExtractionReleasesInflaters() throws Exception {
+        HttpLinkSource linkSource = new HttpLinkSource(5000, 4096);
+        linkSource.getUrls(url("127.0.0.1", "/gzip"));
+        long inflaters = ContentEncoding.inflatersCreated();
+        CrawlMetrics.Transfer before = CrawlMetrics.global().snapshot().transfer("127.0.0.1");
+        for (int i = 0; i < 50; i++) {
+            List<String> links = linkSource.getUrls(url("127.0.0.1", "/gzip"));
+            assertTrue(links.size() > 0 && links.size() < 2000);
+        }
+        assertEquals(inflaters, ContentEncoding.inflatersCreated());
+        // 没读完的也记了一次，只算读到的部分
+        long[] transfer = minus(CrawlMetrics.global().snapshot().transfer("127.0.0.1"), before);
+        assertEquals(50, transfer[0]);
+        assertEquals(50 * 4096, transfer[3]);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    /**
+     * gzip.test只拿压缩的，plain.test只拿不压缩的，分开统计；两个名字都由LoopbackDnsResolver解析到本机
+     */
+    @Test
+    public void recordsWireAndDecodedBytesPerHost() throws Exception {
+        long decoded = PAGE.getBytes(StandardCharsets.UTF_8).length;
+        CrawlMetrics.Snapshot before = CrawlMetrics.global().snapshot();
+        try (HttpClientRegistry registry = new HttpClientRegistry(4, 2, HttpClientRegistry.DEFAULT_KEEP_ALIVE_MILLIS,
+                HttpClientRegistry.DEFAULT_MAX_IDLE_MILLIS, LoopbackDnsResolver.INSTANCE)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(PAGE, get(registry, url("gzip.test", "/gzip")));
+                assertEquals(PAGE, get(registry, url("plain.test", "/plain")));
+            }
+        }
+        CrawlMetrics.Snapshot after = CrawlMetrics.global().snapshot();
+        long[] compressed = minus(after.transfer("gzip.test"), before.transfer("gzip.test"));
+        long[] plain = minus(after.transfer("plain.test"), before.transfer("plain.test"));
+        System.out.println("gzip.test: " + after.transfer("gzip.test") + "\nplain.test: " + after.transfer("plain.test"));
+
+        assertEquals(10, compressed[0]);
+        assertEquals(10, compressed[1]);
+        assertEquals(10 * decoded, compressed[3]);
+        assertEquals(10L * gzip(PAGE.getBytes(StandardCharsets.UTF_8)).length, compressed[2]);
+        assertTrue(compressed[2] * 5 < compressed[3]);
+        assertEquals(10, plain[0]);
+        assertEquals(0, plain[1]);
+        assertEquals(10 * decoded, plain[2]);
+        assertEquals(10 * decoded, plain[3]);
+        assertTrue(after.toString().contains("transfer "));
+    }
+
+    private static String get(HttpClientRegistry registry, String url) throws IOException {
+        try (CloseableHttpResponse response = registry.getClient(5000).execute(new HttpGet(url))) {
+            return ContentEncoding.toString(response.getEntity(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return responses, compressed, wireBytes, decodedBytes 的差
+     */
+    private static long[] minus(CrawlMetrics.Transfer after, CrawlMetrics.Transfer before) {
+        long[] result = {after.responses(), after.compressed(), after.wireBytes(), after.decodedBytes()};
+        if (before != null) {
+            result[0] -= before.responses();
+            result[1] -= before.compressed();
+            result[2] -= before.wireBytes();
+            result[3] -= before.decodedBytes();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,150 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 中途停掉的爬取从检查点接着爬，已经抓过的页面不再抓
+ */
+public class CrawlCheckpointTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void resumeDoesNotRefetchCompletedPages() throws Exception {
+        final int nodes = 20000;
+        final Map<String, List<String>> graph = GraphGenerator.connectedUrls(nodes, 6, 3);
+        final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+        final AtomicInteger total = new AtomicInteger();
+        final Thread master = Thread.currentThread();
+        Path file = tmp.getRoot().toPath().resolve("crawl.ckpt");
+
+        LinkSource stopAfter5000 = url -> {
+            count(fetches, url);
+            if (total.incrementAndGet() == 5000) {
+                // 模拟重新部署：master线程被打断，crawl马上返回
+                master.interrupt();
+            }
+            return graph.get(url);
+        };
+        List<String> first;
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            CrawlerManager manager = new CrawlerManager(stopAfter5000, 4, 64, 0);
+            manager.setCheckpoint(checkpoint, 100);
+            first = manager.crawl(GraphGenerator.name(0));
+        }
+        Thread.interrupted();
+        assertTrue(first.size() < nodes);
+
+        LinkSource counting = url -> {
+            count(fetches, url);
+            return graph.get(url);
+        };
+        List<String> second;
+        long start = System.nanoTime();
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            assertFalse(checkpoint.isEmpty());
+            CrawlerManager manager = new CrawlerManager(counting, 4, 64, 0);
+            manager.setCheckpoint(checkpoint, 100);
+            second = manager.crawl(GraphGenerator.name(0));
+        }
+        System.out.printf("first run found %d urls, resumed run %.0f ms, checkpoint %d KB%n",
+                first.size(), (System.nanoTime() - start) / 1e6, Files.size(file) >> 10);
+
+        assertEquals(nodes, second.size());
+        assertEquals(first, second.subList(0, first.size()));
+        // 只有停下时还在抓的页面会被抓两次
+        int refetched = 0;
+        for (String url : second) {
+            int count = fetches.get(url).get();
+            assertTrue(url, count >= 1);
+            refetched += count - 1;
+        }
+        assertTrue("refetched " + refetched, refetched <= 64);
+
+        // 爬完之后再恢复，没有要抓的了
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            CrawlerManager manager = new CrawlerManager(url -> {
+                fail("nothing left to fetch: " + url);
+                return null;
+            }, 4, 64, 0);
+            manager.setCheckpoint(checkpoint, 100);
+            assertEquals(second, manager.crawl(GraphGenerator.name(0)));
+        }
+    }
+
+    @Test
+    public void tornLastRecordIsDropped() throws Exception {
+        Path file = tmp.getRoot().toPath().resolve("torn.ckpt");
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            checkpoint.recordDiscovered("http://a.com/1");
+            checkpoint.recordDiscovered("http://a.com/2");
+            checkpoint.recordCompleted("http://a.com/1");
+            checkpoint.recordDiscovered("http://a.com/3");
+        }
+        // 最后一条记录只写了一半
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            assertEquals(Arrays.asList("http://a.com/1", "http://a.com/2"), checkpoint.discovered());
+            assertTrue(checkpoint.isCompleted("http://a.com/1"));
+            assertFalse(checkpoint.isCompleted("http://a.com/2"));
+            checkpoint.recordDiscovered("http://a.com/4");
+        }
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            assertEquals(Arrays.asList("http://a.com/1", "http://a.com/2", "http://a.com/4"),
+                    checkpoint.discovered());
+        }
+    }
+
+    @Test
+    public void loadsMillionsOfRecordsQuickly() throws Exception {
+        Path file = tmp.getRoot().toPath().resolve("big.ckpt");
+        int count = 1000000;
+        long start = System.nanoTime();
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            for (int i = 0; i < count; i++) {
+                String url = "http://host" + (i % 1000) + ".example.com/page/" + i;
+                checkpoint.recordDiscovered(url);
+                if (i % 2 == 0) {
+                    checkpoint.recordCompleted(url);
+                }
+            }
+            checkpoint.checkpoint();
+        }
+        long writeTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file)) {
+            long loadTime = System.nanoTime() - start;
+            System.out.printf("%d urls: write %.0f ms, load %.0f ms, %.1f bytes/url%n", count,
+                    writeTime / 1e6, loadTime / 1e6, Files.size(file) / (double) count);
+            assertEquals(count, checkpoint.discovered().size());
+            assertTrue(checkpoint.isCompleted("http://host0.example.com/page/0"));
+            assertFalse(checkpoint.isCompleted("http://host1.example.com/page/1"));
+            assertTrue(loadTime < 10000000000L);
+        }
+    }
+
+    private static void count(Map<String, AtomicInteger> fetches, String url) {
+        AtomicInteger count = fetches.get(url);
+        if (count == null) {
+            AtomicInteger created = new AtomicInteger();
+            count = fetches.putIfAbsent(url, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        count.incrementAndGet();
+    }
+}
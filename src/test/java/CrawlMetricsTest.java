@@ -0,0 +1,124 @@
+import org.apache.log4j.Logger;
+import org.apache.log4j.SimpleLayout;
+import org.apache.log4j.WriterAppender;
+import org.junit.Test;
+import utils.CrawlMetrics;
+import utils.CrawlerManager;
+import utils.HttpLinkSource;
+import utils.LatencyHistogram;
+import utils.SyntheticWebServer;
+
+import java.io.Closeable;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 延迟直方图的精度和并发记录，以及一次真实爬取里各个阶段的指标
+ */
+public class CrawlMetricsTest {
+
+    @Test
+    public void histogramPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1微秒到100毫秒均匀分布
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100000, snapshot.count());
+        assertEquals(100_000_000L, snapshot.max());
+        assertEquals(50_000_500.0, snapshot.mean(), 1);
+        for (double p : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            double expected = p * 100_000_000L;
+            assertEquals("p" + p, expected, snapshot.percentile(p), expected / 16);
+        }
+        assertEquals(100_000_000L, snapshot.percentile(1.0), 100_000_000L / 16);
+
+        LatencyHistogram other = new LatencyHistogram();
+        other.record(5_000_000_000L);
+        LatencyHistogram.Snapshot merged = snapshot.merge(other.snapshot());
+        assertEquals(100001, merged.count());
+        assertEquals(5_000_000_000L, merged.max());
+        assertEquals(5_000_000_000L, merged.percentile(1.0));
+    }
+
+    @Test
+    public void concurrentRecordingLosesNothing() throws Exception {
+        final CrawlMetrics metrics = new CrawlMetrics();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int id = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    metrics.record(CrawlMetrics.Stage.FETCH, i);
+                    metrics.recordHost("host" + (i % 10), i);
+                    metrics.recordStatus(200);
+                    metrics.recordBytes(10);
+                }
+                metrics.recordError(id % 2 == 0 ? new java.net.SocketTimeoutException() : new java.io.IOException());
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CrawlMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(400000, snapshot.stage(CrawlMetrics.Stage.FETCH).count());
+        assertEquals(0, snapshot.stage(CrawlMetrics.Stage.LEASE).count());
+        assertEquals(10, snapshot.hosts().size());
+        assertEquals(40000, snapshot.host("host3").count());
+        assertEquals(400000, snapshot.status(200));
+        assertEquals(4000000, snapshot.bytes());
+        assertEquals(Long.valueOf(2), snapshot.errors().get("SocketTimeoutException"));
+        assertEquals(Long.valueOf(2), snapshot.errors().get("IOException"));
+    }
+
+    @Test
+    public void crawlRecordsEveryStage() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(300).hosts(3).latency(50, 0).errors(0.1).timeouts(0.02);
+        StringWriter log = new StringWriter();
+        WriterAppender appender = new WriterAppender(new SimpleLayout(), log);
+        Logger.getLogger(CrawlMetrics.class).addAppender(appender);
+        Closeable reporter = CrawlMetrics.global().startReporter(200);
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            CrawlMetrics.Snapshot before = CrawlMetrics.global().snapshot();
+            CrawlMetrics metrics = new CrawlMetrics();
+            CrawlerManager manager = new CrawlerManager(new HttpLinkSource(server.registry(), 300, 0), 16, 64, 0);
+            manager.setMetrics(metrics);
+            List<String> pages = manager.crawl(server.url(0));
+            Thread.sleep(300);
+
+            CrawlMetrics.Snapshot crawl = metrics.snapshot();
+            System.out.println(crawl);
+            assertEquals(pages.size(), crawl.stage(CrawlMetrics.Stage.FETCH).count());
+            assertEquals(pages.size(), crawl.stage(CrawlMetrics.Stage.QUEUE).count());
+            assertEquals(3, crawl.hosts().size());
+            for (Map.Entry<String, LatencyHistogram.Snapshot> host : crawl.hosts().entrySet()) {
+                // 服务器固定50ms延迟
+                assertTrue(host.getKey() + " " + host.getValue(), host.getValue().percentile(0.5) >= 45_000_000L);
+            }
+            assertTrue(crawl.errors().get("SocketTimeoutException") > 0);
+
+            // 连接池和HTTP这一层记在全局的metrics里
+            CrawlMetrics.Snapshot after = CrawlMetrics.global().snapshot();
+            assertTrue(after.stage(CrawlMetrics.Stage.LEASE).count() - before.stage(CrawlMetrics.Stage.LEASE).count() >= pages.size());
+            assertTrue(after.stage(CrawlMetrics.Stage.FIRST_BYTE).count() > before.stage(CrawlMetrics.Stage.FIRST_BYTE).count());
+            assertTrue(after.stage(CrawlMetrics.Stage.BODY).count() > before.stage(CrawlMetrics.Stage.BODY).count());
+            assertTrue(after.stage(CrawlMetrics.Stage.PARSE).count() > before.stage(CrawlMetrics.Stage.PARSE).count());
+            assertTrue(after.status(500) - before.status(500) >= server.errors());
+            assertTrue(after.retries() > before.retries());
+            assertTrue(after.bytes() > before.bytes());
+
+            assertTrue(log.toString(), log.toString().contains("FIRST_BYTE"));
+        } finally {
+            reporter.close();
+            Logger.getLogger(CrawlMetrics.class).removeAppender(appender);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import org.junit.Test;
+import utils.CrawlerManager;
+import utils.GraphGenerator;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 原来的crawl是 while(checkCrawlerResult()); 按提交顺序阻塞在每个Future.get()上，
+ * 再从CopyOnWriteArrayList里一个个删掉。这里把旧的循环原样留在LegacyCrawler里，
+ * 和新的基于CompletionService的调度在放大的connectedUrls上比较吞吐（pages/s）。
+ */
+public class CrawlerManagerTest {
+    private static final int NODES = 100000;
+    // 旧循环用CopyOnWriteArraySet去重，是O(n^2)的，10万节点要跑十几分钟，
+    // 默认只跑1万节点，需要完整对比时用 -Dcrawl.legacy.nodes=100000
+    private static final int LEGACY_NODES = Integer.getInteger("crawl.legacy.nodes", 10000);
+
+    @Test
+    public void crawlSmallGraph() {
+        Map<String, List<String>> connectedUrls = new HashMap<>();
+        connectedUrls.put("a", Arrays.asList("b", "c", "d", "e"));
+        connectedUrls.put("b", Arrays.asList("k", "m", "d", "z"));
+        connectedUrls.put("k", Arrays.asList("o", "j", "e", "z"));
+
+        List<String> result = new CrawlerManager(connectedUrls::get, 4, 8, 0).crawl("a");
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d", "e", "k", "m", "z", "o", "j")),
+                new HashSet<>(result));
+    }
+
+    @Test
+    public void throughputAgainstLegacyLoop() throws Exception {
+        final Map<String, List<String>> graph = GraphGenerator.connectedUrls(NODES, 4, 42);
+
+        long start = System.nanoTime();
+        List<String> result = new CrawlerManager(graph::get, 4, 256, 0).crawl(GraphGenerator.name(0));
+        long scheduler = System.nanoTime() - start;
+        assertEquals(NODES, result.size());
+
+        final Map<String, List<String>> legacyGraph = LEGACY_NODES == NODES
+                ? graph : GraphGenerator.connectedUrls(LEGACY_NODES, 4, 42);
+        start = System.nanoTime();
+        List<String> legacy = new LegacyCrawler(legacyGraph).crawl(GraphGenerator.name(0));
+        long loop = System.nanoTime() - start;
+        assertEquals(LEGACY_NODES, legacy.size());
+
+        System.out.printf("completion scheduler: %d pages in %d ms (%.0f pages/s)%n",
+                NODES, scheduler / 1000000, NODES * 1e9 / scheduler);
+        System.out.printf("legacy busy loop:     %d pages in %d ms (%.0f pages/s)%n",
+                LEGACY_NODES, loop / 1000000, LEGACY_NODES * 1e9 / loop);
+    }
+
+    /**
+     * 改造前的CrawlerManager.crawl，PAUSE_TIME设为0。
+     */
+    private static class LegacyCrawler {
+        private final Map<String, List<String>> connectedUrls;
+        private Set<String> result = new CopyOnWriteArraySet<>();
+        private List<Future<List<String>>> futures = new CopyOnWriteArrayList<>();
+        private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        LegacyCrawler(Map<String, List<String>> connectedUrls) {
+            this.connectedUrls = connectedUrls;
+        }
+
+        List<String> crawl(String url) {
+            submitUrl(url);
+            while (checkCrawlerResult()) ;
+            executor.shutdown();
+            return new ArrayList<>(result);
+        }
+
+        private boolean checkCrawlerResult() {
+            List<String> newUrls = new ArrayList<>();
+            Iterator<Future<List<String>>> iterator = futures.iterator();
+            while (iterator.hasNext()) {
+                Future<List<String>> future = iterator.next();
+                futures.remove(future);
+                try {
+                    newUrls.addAll(future.get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+            for (String url : newUrls) {
+                submitUrl(url);
+            }
+            return futures.size() > 0 || newUrls.size() > 0;
+        }
+
+        private void submitUrl(final String url) {
+            if (!result.contains(url)) {
+                result.add(url);
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() {
+                        return connectedUrls.getOrDefault(url, new ArrayList<String>());
+                    }
+                }));
+            }
+        }
+    }
+}
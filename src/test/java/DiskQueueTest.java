@@ -0,0 +1,123 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.*;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 大部分url在磁盘上时，队列仍然保持先进先出，吞吐不能掉太多
+ */
+public class DiskQueueTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void fifoAcrossSegments() throws Exception {
+        try (DiskQueue queue = new DiskQueue(tmp.getRoot().toPath(), 4096, 16)) {
+            int next = 0;
+            for (int i = 0; i < 20000; i++) {
+                queue.add("http://a.com/" + i);
+                if (i % 3 == 0) {
+                    assertEquals("http://a.com/" + next++, queue.poll());
+                }
+            }
+            assertTrue(queue.sizeOnDisk() > 0);
+            String url;
+            while ((url = queue.poll()) != null) {
+                assertEquals("http://a.com/" + next++, url);
+            }
+            assertEquals(20000, next);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void readSegmentsAreRecycled() throws Exception {
+        try (DiskQueue queue = new DiskQueue(tmp.getRoot().toPath(), 64 * 1024, 64)) {
+            for (int round = 0; round < 50; round++) {
+                for (int i = 0; i < 5000; i++) {
+                    queue.add("http://a.com/page/" + round + "/" + i);
+                }
+                for (int i = 0; i < 5000; i++) {
+                    assertEquals("http://a.com/page/" + round + "/" + i, queue.poll());
+                }
+            }
+            // 每轮要用到的segment数是固定的，读完的会被复用
+            int perRound = queue.segmentsCreated();
+            for (int i = 0; i < 5000; i++) {
+                queue.add("http://a.com/page/x/" + i);
+            }
+            assertEquals(perRound, queue.segmentsCreated());
+            assertTrue(perRound < 10);
+        }
+    }
+
+    @Test
+    public void throughputWithMostOfTheQueueOnDisk() throws Exception {
+        int count = 2000000;
+        String[] urls = new String[count];
+        for (int i = 0; i < count; i++) {
+            urls[i] = "http://host" + (i % 1000) + ".example.com/path/to/page-" + i + ".html";
+        }
+
+        ArrayDeque<String> heap = new ArrayDeque<>();
+        long start = System.nanoTime();
+        for (String url : urls) {
+            heap.add(url);
+        }
+        while (heap.poll() != null) {
+        }
+        long heapTime = System.nanoTime() - start;
+
+        try (DiskQueue queue = new DiskQueue(tmp.getRoot().toPath(), 16 * 1024 * 1024, 64 * 1024)) {
+            start = System.nanoTime();
+            for (String url : urls) {
+                queue.add(url);
+            }
+            long onDisk = queue.sizeOnDisk();
+            long enqueueTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            int i = 0;
+            String url;
+            while ((url = queue.poll()) != null) {
+                if (!url.equals(urls[i++])) {
+                    fail("out of order at " + i);
+                }
+            }
+            long dequeueTime = System.nanoTime() - start;
+
+            System.out.printf("%d urls, %d on disk (%d segments)%n", count, onDisk, queue.segmentsCreated());
+            System.out.printf("ArrayDeque: %5.2f M ops/s%n", 2 * count / (heapTime / 1e3));
+            System.out.printf("DiskQueue:  enqueue %5.2f M ops/s, dequeue %5.2f M ops/s%n",
+                    count / (enqueueTime / 1e3), count / (dequeueTime / 1e3));
+            assertEquals(count, i);
+            assertTrue(onDisk > count * 9L / 10);
+        }
+    }
+
+    @Test
+    public void crawlWithSpillingFrontier() throws Exception {
+        Map<String, List<String>> graph = GraphGenerator.connectedUrls(20000, 8, 11);
+        try (SpillingFrontier frontier = new SpillingFrontier(new HostFrontier(0, 20), 500,
+                new DiskQueue(tmp.getRoot().toPath(), 64 * 1024, 256))) {
+            final long[] maxOverflow = {0};
+            CrawlerManager manager = new CrawlerManager(url -> {
+                synchronized (maxOverflow) {
+                    maxOverflow[0] = Math.max(maxOverflow[0], frontier.overflowSize());
+                }
+                return graph.get(url);
+            }, 4, 64, 0);
+            manager.setFrontier(frontier);
+            List<String> result = manager.crawl(GraphGenerator.name(0));
+
+            assertEquals(20000, result.size());
+            assertTrue(maxOverflow[0] > 1000);
+            assertTrue(frontier.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,208 @@
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+import utils.CachingDnsResolver;
+import utils.CrawlerManager;
+import utils.GraphGenerator;
+import utils.HttpClientRegistry;
+import utils.LinkSource;
+import utils.LocalGraphServer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * DNS缓存、预解析，以及接到连接池上以后的爬取，真正的查询换成本地的假解析器
+ */
+public class DnsResolverTest {
+    private static final int HOSTS = 50;
+
+    /**
+     * "*.test"都解析到127.0.0.1，每次查询sleep latencyMillis；"bad.test"查不到
+     */
+    private static class StandInResolver implements DnsResolver {
+        private final long latencyMillis;
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final Map<String, AtomicInteger> perHost = new ConcurrentHashMap<>();
+
+        StandInResolver(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            lookups.incrementAndGet();
+            perHost.computeIfAbsent(host, h -> new AtomicInteger()).incrementAndGet();
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!host.endsWith(".test") || host.equals("bad.test")) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{127, 0, 0, 1})};
+        }
+    }
+
+    @Test
+    public void cachesPositiveAndNegativeResultsUntilTtl() throws Exception {
+        StandInResolver standIn = new StandInResolver(20);
+        try (CachingDnsResolver dns = new CachingDnsResolver(standIn, 300, 150, 100, 2)) {
+            assertEquals("127.0.0.1", dns.resolve("a.test")[0].getHostAddress());
+            assertEquals("a.test", dns.resolve("A.Test")[0].getHostName());
+            for (int i = 0; i < 2; i++) {
+                try {
+                    dns.resolve("bad.test");
+                    fail();
+                } catch (UnknownHostException e) {
+                    assertEquals("bad.test", e.getMessage());
+                }
+            }
+            assertEquals(2, standIn.lookups.get());
+            assertEquals(2, dns.misses());
+            assertEquals(2, dns.hits());
+            assertEquals(2, dns.negativeHits());
+            assertNotNull(dns.peek("a.test"));
+            assertNull(dns.peek("bad.test"));
+
+            // 查不到的先过期
+            Thread.sleep(200);
+            dns.resolve("a.test");
+            try {
+                dns.resolve("bad.test");
+                fail();
+            } catch (UnknownHostException e) {
+                // 又查了一次
+            }
+            assertEquals(3, standIn.lookups.get());
+            Thread.sleep(200);
+            dns.resolve("a.test");
+            assertEquals(4, standIn.lookups.get());
+            assertEquals(4, dns.lookupLatency().count());
+            assertTrue(dns.lookupLatency().mean() >= 20e6);
+        }
+    }
+
+    @Test
+    public void concurrentResolvesShareOneLookup() throws Exception {
+        StandInResolver standIn = new StandInResolver(200);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try (CachingDnsResolver dns = new CachingDnsResolver(standIn)) {
+            List<Future<InetAddress[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> dns.resolve("shared.test")));
+            }
+            for (Future<InetAddress[]> future : futures) {
+                assertEquals(1, future.get().length);
+            }
+            assertEquals(1, standIn.lookups.get());
+            assertEquals(1, dns.misses());
+            assertEquals(63, dns.hits());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void prefetchResolvesAheadAndBoundsTheCache() throws Exception {
+        StandInResolver standIn = new StandInResolver(100);
+        try (CachingDnsResolver dns = new CachingDnsResolver(standIn, 60000, 60000, 10, 4)) {
+            for (int i = 0; i < 8; i++) {
+                assertTrue(dns.prefetch("h" + i + ".test"));
+                assertFalse(dns.prefetch("h" + i + ".test"));
+            }
+            assertEquals(8, dns.prefetches());
+            Thread.sleep(400);
+            long start = System.nanoTime();
+            for (int i = 0; i < 8; i++) {
+                dns.resolve("h" + i + ".test");
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.println(dns + " in " + millis + " ms");
+            assertTrue(millis < 50);
+            assertEquals(0, dns.misses());
+            assertEquals(1.0, dns.hitRate(), 0);
+
+            for (int i = 8; i < 20; i++) {
+                dns.resolve("h" + i + ".test");
+            }
+            assertTrue(dns.size() <= 10);
+            assertTrue(dns.evictions() >= 10);
+        }
+    }
+
+    /**
+     * 每个host第一次建连接都要查DNS；CrawlerManager发现url时预解析以后，worker就不用等了
+     */
+    @Test
+    public void crawlWithPrefetchNeverBlocksOnLookups() throws Exception {
+        Map<String, List<String>> graph = GraphGenerator.connectedUrls(300, 3, 7);
+        try (LocalGraphServer server = new LocalGraphServer(graph, 1, 0)) {
+            long[] withoutPrefetch = crawl(server, false);
+            long[] withPrefetch = crawl(server, true);
+            System.out.printf("without prefetch: %d pages, %d sync lookups in %d ms; "
+                            + "with prefetch: %d pages, %d sync lookups in %d ms%n",
+                    withoutPrefetch[0], withoutPrefetch[1], withoutPrefetch[2],
+                    withPrefetch[0], withPrefetch[1], withPrefetch[2]);
+            assertEquals(300, withoutPrefetch[0]);
+            assertEquals(300, withPrefetch[0]);
+            assertEquals(HOSTS, withoutPrefetch[1]);
+            assertEquals(0, withPrefetch[1]);
+        }
+    }
+
+    /**
+     * @return 页面数、worker同步查DNS的次数、耗时
+     */
+    private long[] crawl(LocalGraphServer server, boolean prefetch) throws Exception {
+        final StandInResolver standIn = new StandInResolver(50);
+        final String local = "http://127.0.0.1:" + server.port() + "/";
+        try (CachingDnsResolver dns = new CachingDnsResolver(standIn);
+             final HttpClientRegistry registry = new HttpClientRegistry(200, 4,
+                     HttpClientRegistry.DEFAULT_KEEP_ALIVE_MILLIS, HttpClientRegistry.DEFAULT_MAX_IDLE_MILLIS, dns)) {
+            LinkSource linkSource = url -> {
+                try (CloseableHttpResponse response = registry.getClient(5000).execute(new HttpGet(url))) {
+                    List<String> children = new ArrayList<>();
+                    for (String line : EntityUtils.toString(response.getEntity()).split("\n")) {
+                        children.add(rename(line.replace(local, ""), server.port()));
+                    }
+                    return children;
+                }
+            };
+            CrawlerManager manager = new CrawlerManager(linkSource, 8, 64, 0);
+            if (prefetch) {
+                manager.setDnsResolver(dns);
+            }
+            long start = System.nanoTime();
+            List<String> pages = manager.crawl(rename(GraphGenerator.name(0), server.port()));
+            long millis = (System.nanoTime() - start) / 1000000;
+            assertSame(dns, registry.getDnsResolver());
+            assertEquals(HOSTS, standIn.lookups.get());
+            for (AtomicInteger count : standIn.perHost.values()) {
+                assertEquals(1, count.get());
+            }
+            return new long[]{pages.size(), dns.misses(), millis};
+        }
+    }
+
+    /**
+     * 节点uN放到hN%50.test上
+     */
+    private static String rename(String node, int port) {
+        int i = Integer.parseInt(node.substring(1));
+        return "http://h" + (i % HOSTS) + ".test:" + port + "/" + node;
+    }
+}
@@ -0,0 +1,41 @@
+import org.junit.Test;
+import utils.CrawlerManager;
+import utils.GraphGenerator;
+import utils.LocalGraphServer;
+import utils.VirtualThreads;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 对一个每个请求都要等20ms的本地服务器，比较自适应数量的平台线程和每个抓取一个虚拟线程的pages/s。
+ * 爬虫的时间几乎都花在等待上，线程数才是瓶颈，连接池的200个连接大部分时间是空的。
+ */
+public class FetchModeBenchmarkTest {
+    private static final int NODES = 400;
+    private static final int HOSTS = 4;
+    private static final long LATENCY = 20;
+
+    @Test
+    public void platformVersusVirtual() throws Exception {
+        Map<String, List<String>> graph = GraphGenerator.connectedUrls(NODES, 4, 7);
+        try (LocalGraphServer server = new LocalGraphServer(graph, HOSTS, LATENCY)) {
+            double platform = pagesPerSecond(server, CrawlerManager.Mode.PLATFORM);
+            double virtual = pagesPerSecond(server, CrawlerManager.Mode.VIRTUAL);
+            System.out.printf("platform threads: %.0f pages/s%n", platform);
+            System.out.printf("%s: %.0f pages/s%n", VirtualThreads.isSupported()
+                    ? "virtual threads" : "thread per task (no virtual threads on this JDK)", virtual);
+        }
+    }
+
+    private double pagesPerSecond(LocalGraphServer server, CrawlerManager.Mode mode) {
+        CrawlerManager manager = CrawlerManager.create(LocalGraphServer.linkSource(6000), mode, 0);
+        long start = System.nanoTime();
+        List<String> result = manager.crawl(server.url(GraphGenerator.name(0)));
+        long elapsed = System.nanoTime() - start;
+        assertEquals(NODES, result.size());
+        return NODES * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,111 @@
+import org.junit.Test;
+import utils.CrawlerManager;
+import utils.GraphGenerator;
+import utils.HostFrontier;
+import utils.LinkSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 按host的礼貌策略：同一host按间隔抓，不同host之间互不等待。
+ */
+public class HostFrontierTest {
+
+    @Test
+    public void hostOf() {
+        assertEquals("a.com", HostFrontier.hostOf("http://A.com:80/x#frag"));
+        assertEquals("a.com", HostFrontier.hostOf("https://user:pw@a.com/x?y=1"));
+        assertEquals("a.com", HostFrontier.hostOf("http://a.com?q"));
+        assertEquals("", HostFrontier.hostOf("u1"));
+    }
+
+    @Test
+    public void sameHostWaitsForDelay() {
+        HostFrontier frontier = new HostFrontier(100, 20);
+        frontier.add("http://a.com/1");
+        frontier.add("http://a.com/2");
+
+        assertEquals("http://a.com/1", frontier.poll(1000));
+        assertNull(frontier.poll(1050));
+        assertEquals(1100, frontier.nextReadyAt());
+        assertEquals("http://a.com/2", frontier.poll(1100));
+        assertTrue(frontier.isEmpty());
+    }
+
+    @Test
+    public void otherHostIsReadyWhileOneWaits() {
+        HostFrontier frontier = new HostFrontier(1000, 20);
+        frontier.add("http://a.com/1");
+        frontier.add("http://a.com/2");
+        frontier.add("http://b.com/1");
+
+        List<String> polled = new ArrayList<>();
+        String url;
+        while ((url = frontier.poll(0)) != null) {
+            polled.add(url);
+        }
+        assertEquals(2, polled.size());
+        assertTrue(polled.contains("http://b.com/1"));
+        assertEquals(1, frontier.size());
+    }
+
+    @Test
+    public void perHostConcurrency() {
+        HostFrontier frontier = new HostFrontier(0, 2);
+        for (int i = 0; i < 3; i++) {
+            frontier.add("http://a.com/" + i);
+        }
+        assertNotNull(frontier.poll(0));
+        assertNotNull(frontier.poll(0));
+        assertNull(frontier.poll(0));
+        assertEquals(Long.MAX_VALUE, frontier.nextReadyAt());
+
+        frontier.done("http://a.com/0");
+        assertEquals("http://a.com/2", frontier.poll(0));
+    }
+
+    @Test
+    public void hostDelayOverride() {
+        HostFrontier frontier = new HostFrontier(100, 20);
+        frontier.setHostDelay("a.com", 500);
+        frontier.add("http://a.com/1");
+        frontier.add("http://a.com/2");
+        frontier.poll(0);
+        assertEquals(500, frontier.nextReadyAt());
+    }
+
+    /**
+     * 40个页面平均分在4个host上，每个host间隔50ms。
+     * 同一host的10次抓取至少要 9 * 50ms，4个host之间互不等待，所以远小于串行的 40 * 50ms。
+     */
+    @Test
+    public void crawlIsPoliteButNotSerial() {
+        final int nodes = 40;
+        final long delay = 50;
+        final Map<String, List<String>> graph = GraphGenerator.connectedUrls(nodes, 3, 1);
+        LinkSource source = url -> {
+            List<String> urls = new ArrayList<>();
+            for (String child : graph.get(url.substring(url.lastIndexOf('/') + 1))) {
+                urls.add(url(child));
+            }
+            return urls;
+        };
+
+        long start = System.currentTimeMillis();
+        List<String> result = new CrawlerManager(source, 4, 16, delay).crawl(url("u0"));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(nodes, result.size());
+        assertTrue("took " + elapsed + " ms", elapsed >= (nodes / 4 - 1) * delay);
+        assertTrue("took " + elapsed + " ms", elapsed < nodes * delay);
+    }
+
+    private static String url(String node) {
+        int i = Integer.parseInt(node.substring(1));
+        return "http://h" + (i % 4) + ".test/" + node;
+    }
+}
@@ -0,0 +1,185 @@
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+import utils.*;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * 流式提取链接，和原来 EntityUtils.toString 再解析的方式比较每个页面分配的内存和吞吐
+ */
+public class HtmlLinkExtractorTest {
+    private static final Pattern LINK = Pattern.compile(
+            "(?i)(?:href|src)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))");
+
+    @Test
+    public void extractsAndResolvesLinks() throws Exception {
+        String html = "<!DOCTYPE html><html><head><link rel=stylesheet href=\"/a.css\">"
+                + "<script>if (a<b) { document.write('<a href=\"/in-script\">'); }</script>"
+                + "<style>.x { background: url(/in-style.png) }</style></head><body>"
+                + "<!-- <a href=\"/in-comment\"> -->"
+                + "<A HREF=\"page1.html\">1</A>"
+                + "<a class=x href='/abs/page2?x=1&amp;y=2'>2</a>"
+                + "<a href=page3.html>3</a>"
+                + "<img src=\"//cdn.example.com/i.png\" alt=\"i\">"
+                + "<a href=\"#top\">top</a><a href=\"javascript:void(0)\">js</a>"
+                + "<a href=\"mailto:a@b.com\">mail</a>"
+                + "<a href=\"http://other.com/x\">other</a>"
+                + "</body></html>";
+        List<String> urls = new HtmlLinkExtractor().extract(
+                new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "http://a.com/dir/index.html", 0);
+
+        assertEquals(Arrays.asList(
+                "http://a.com/a.css",
+                "http://a.com/dir/page1.html",
+                "http://a.com/abs/page2?x=1&y=2",
+                "http://a.com/dir/page3.html",
+                "http://cdn.example.com/i.png",
+                "http://other.com/x"), urls);
+    }
+
+    /**
+     * 只有查询参数的链接按RFC 3986保留路径，java.net.URI.resolve会把文件名丢掉
+     */
+    @Test
+    public void resolvesQueryOnlyReferences() throws Exception {
+        String html = "<a href=\"?page=2\">2</a><a href=\"?page=3&amp;sort=new#list\">3</a><a href=\"?\">0</a>";
+        List<String> urls = new HtmlLinkExtractor().extract(
+                new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)),
+                "http://a.com/list/items.php?page=1#top", 0);
+        assertEquals(Arrays.asList(
+                "http://a.com/list/items.php?page=2",
+                "http://a.com/list/items.php?page=3&sort=new#list",
+                "http://a.com/list/items.php?"), urls);
+
+        // 有<base>时按base的路径
+        html = "<base href=\"http://b.com/root/index.jsp?x=1\"><a href=\"?x=2\">2</a>";
+        urls = new HtmlLinkExtractor().extract(
+                new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "http://a.com/", 0);
+        assertEquals(Collections.singletonList("http://b.com/root/index.jsp?x=2"), urls);
+    }
+
+    @Test
+    public void honorsBaseHrefAndMaxBytes() throws Exception {
+        String html = "<base href=\"http://b.com/root/\"><a href=\"x\">x</a>" + pad(10000) + "<a href=\"y\">y</a>";
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+
+        List<String> all = new HtmlLinkExtractor(64).extract(new ByteArrayInputStream(bytes), "http://a.com/", 0);
+        assertEquals(Arrays.asList("http://b.com/root/x", "http://b.com/root/y"), all);
+
+        List<String> cut = new HtmlLinkExtractor(64).extract(new ByteArrayInputStream(bytes), "http://a.com/", 1000);
+        assertEquals(Collections.singletonList("http://b.com/root/x"), cut);
+    }
+
+    @Test
+    public void plugsIntoCrawlerManager() throws Exception {
+        Map<String, List<String>> graph = GraphGenerator.connectedUrls(200, 4, 5);
+        try (LocalGraphServer server = new LocalGraphServer(graph, 4, 0, true)) {
+            List<String> result = new CrawlerManager(new HttpLinkSource(6000, 1 << 20), 8, 64, 0)
+                    .crawl(server.url(GraphGenerator.name(0)));
+            assertEquals(200, result.size());
+        }
+    }
+
+    /**
+     * 2MB的页面，每个页面分配的字节数用HotSpot的线程分配计数器统计
+     */
+    @Test
+    public void allocationAndThroughputAgainstToString() throws Exception {
+        byte[] page = bigPage(2 << 20);
+        String base = "http://a.com/dir/index.html";
+        HtmlLinkExtractor extractor = new HtmlLinkExtractor();
+
+        List<String> streamed = extractor.extract(new ByteArrayInputStream(page), base, 0);
+        List<String> parsed = toStringThenParse(page, base);
+        assertEquals(parsed, streamed);
+
+        int rounds = 20;
+        for (int i = 0; i < 5; i++) {
+            extractor.extract(new ByteArrayInputStream(page), base, 0);
+            toStringThenParse(page, base);
+        }
+        long streamBytes = allocated();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            extractor.extract(new ByteArrayInputStream(page), base, 0);
+        }
+        long streamTime = System.nanoTime() - start;
+        streamBytes = allocated() - streamBytes;
+
+        long stringBytes = allocated();
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            toStringThenParse(page, base);
+        }
+        long stringTime = System.nanoTime() - start;
+        stringBytes = allocated() - stringBytes;
+
+        System.out.printf("page %d KB, %d links%n", page.length >> 10, streamed.size());
+        System.out.printf("streaming extractor: %6.1f MB/s, %6d KB allocated/page%n",
+                mbPerSecond(page.length * rounds, streamTime), streamBytes / rounds >> 10);
+        System.out.printf("toString + regex:    %6.1f MB/s, %6d KB allocated/page%n",
+                mbPerSecond(page.length * rounds, stringTime), stringBytes / rounds >> 10);
+        assertTrue(streamBytes < stringBytes);
+    }
+
+    /**
+     * 原来的方式：整个页面读成String再找链接
+     */
+    private static List<String> toStringThenParse(byte[] page, String base) throws Exception {
+        String html = EntityUtils.toString(new InputStreamEntity(new ByteArrayInputStream(page)), "UTF-8");
+        URI baseUri = new URI(base);
+        List<String> urls = new ArrayList<>();
+        Matcher matcher = LINK.matcher(html);
+        while (matcher.find()) {
+            String raw = matcher.group(1) != null ? matcher.group(1)
+                    : matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            urls.add(baseUri.resolve(raw.replace("&amp;", "&")).toString());
+        }
+        return urls;
+    }
+
+    private static byte[] bigPage(int size) {
+        StringBuilder html = new StringBuilder(size + 1024);
+        html.append("<html><body>\n");
+        Random random = new Random(1);
+        for (int i = 0; html.length() < size; i++) {
+            html.append("<div class=\"item\"><p>").append(pad(200 + random.nextInt(400))).append("</p>");
+            if (i % 3 == 0) {
+                html.append("<a href=\"/item/").append(i).append("?ref=list&amp;p=").append(i % 7).append("\">item</a>");
+            } else if (i % 3 == 1) {
+                html.append("<img src='http://img").append(i % 10).append(".example.com/").append(i).append(".png'>");
+            } else {
+                html.append("<a href=rel/").append(i).append(".html>rel</a>");
+            }
+            html.append("</div>\n");
+        }
+        html.append("</body></html>\n");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String pad(int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length) {
+            text.append("lorem ipsum dolor sit amet ");
+        }
+        return text.substring(0, length);
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static double mbPerSecond(long bytes, long nanos) {
+        return bytes / 1048576.0 / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,91 @@
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+import utils.GraphGenerator;
+import utils.HttpClientRegistry;
+import utils.HttpPoolUtil;
+import utils.LocalGraphServer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * 共享客户端、空闲连接回收和连接池状态
+ */
+public class HttpClientRegistryTest {
+
+    @Test
+    public void oneClientPerTimeoutProfile() {
+        assertSame(HttpPoolUtil.getHttpClient(6000), HttpPoolUtil.getHttpClient(6000));
+        assertNotSame(HttpPoolUtil.getHttpClient(6000), HttpPoolUtil.getHttpClient(3000));
+    }
+
+    @Test
+    public void routeStatsShowPendingRequestsWhenStarved() throws Exception {
+        Map<String, List<String>> graph = GraphGenerator.connectedUrls(10, 2, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (LocalGraphServer server = new LocalGraphServer(graph, 1, 500);
+             HttpClientRegistry registry = new HttpClientRegistry(4, 1)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final String url = server.url(GraphGenerator.name(0));
+                futures.add(executor.submit(() -> {
+                    try (CloseableHttpResponse response = registry.getClient(5000).execute(new HttpGet(url))) {
+                        EntityUtils.consume(response.getEntity());
+                    }
+                    return null;
+                }));
+            }
+            Thread.sleep(250);
+
+            Map<String, PoolStats> stats = registry.routeStats();
+            assertEquals(1, stats.size());
+            PoolStats route = stats.values().iterator().next();
+            System.out.println("starved route: " + stats);
+            assertEquals(1, route.getLeased());
+            assertEquals(3, route.getPending());
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(0, registry.totalStats().getLeased());
+            assertEquals(1, registry.totalStats().getAvailable());
+            // 后面三个请求分别等了500、1000、1500ms
+            assertEquals(4, registry.leases());
+            assertTrue(registry.maxLeaseWaitNanos() >= 1000_000_000L);
+            assertTrue(registry.leaseWaitNanos() >= 2500_000_000L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void idleConnectionsAreEvicted() throws Exception {
+        Map<String, List<String>> graph = GraphGenerator.connectedUrls(10, 2, 1);
+        try (LocalGraphServer server = new LocalGraphServer(graph, 1, 0);
+             HttpClientRegistry registry = new HttpClientRegistry(10, 10, 30000, 200)) {
+            for (int i = 0; i < 3; i++) {
+                HttpGet get = new HttpGet(server.url(GraphGenerator.name(i)));
+                try (CloseableHttpResponse response = registry.getClient(5000).execute(get)) {
+                    EntityUtils.consume(response.getEntity());
+                }
+            }
+            // 三次请求复用同一个keep-alive连接
+            assertEquals(1, registry.totalStats().getAvailable());
+
+            long deadline = System.currentTimeMillis() + 3000;
+            while (registry.totalStats().getAvailable() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, registry.totalStats().getAvailable());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * 建索引、写segment、再读回来；统计建索引的速度和索引大小占原文的比例
+ */
+public class InvertedIndexTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void tokenizer() {
+        Tokenizer tokenizer = new Tokenizer(true);
+        assertEquals(Arrays.asList("hello", "world", "a", "b", "x2", "\u641c", "\u7d22", "ok"),
+                tokenizer.tokens("<p class=\"x\">Hello, WORLD!</p> a &amp; b < x2"
+                        + "<script>var hidden = 1;</script>\u641c\u7d22ok<style>.y{}</style>"));
+    }
+
+    @Test
+    public void postingsSurviveFlushAndReopen() throws Exception {
+        Path dir = tmp.getRoot().toPath();
+        // 每个segment最多放10个posting，逼它写出多个segment
+        try (IndexWriter writer = new IndexWriter(dir, 10)) {
+            assertEquals(0, writer.addDocument("http://a.com/0", "apple banana apple"));
+            assertEquals(1, writer.addDocument("http://a.com/1", "<b>banana</b> cherry"));
+            assertEquals(2, writer.addDocument("http://a.com/2", "apple apple apple date"));
+            for (int i = 3; i < 20; i++) {
+                writer.addDocument("http://a.com/" + i, "filler" + i + " banana");
+            }
+        }
+        // 再打开一次，doc id接在后面
+        try (IndexWriter writer = new IndexWriter(dir, 10)) {
+            assertEquals(20, writer.addDocument("http://a.com/20", "apple"));
+        }
+
+        IndexReader reader = IndexReader.open(dir);
+        assertTrue(reader.segments().size() > 2);
+        assertEquals(21, reader.docCount());
+        assertEquals("http://a.com/2", reader.url(2));
+        assertEquals(4, reader.docLength(2));
+
+        Postings apple = reader.postings("apple");
+        assertEquals(3, apple.docFreq());
+        assertEquals(0, apple.nextDoc());
+        assertEquals(2, apple.freq());
+        assertEquals(2, apple.nextDoc());
+        assertEquals(3, apple.freq());
+        assertEquals(20, apple.nextDoc());
+        assertEquals(Postings.NO_MORE_DOCS, apple.nextDoc());
+
+        Postings banana = reader.postings("banana");
+        assertEquals(19, banana.docFreq());
+        assertEquals(10, banana.advance(10));
+        assertNull(reader.postings("missing"));
+    }
+
+    @Test
+    public void matchesBruteForce() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(5000, 1.0, 7);
+        Random random = new Random(1);
+        Path dir = tmp.getRoot().toPath();
+        List<String> docs = new ArrayList<>();
+        try (IndexWriter writer = new IndexWriter(dir, 20000)) {
+            for (int i = 0; i < 2000; i++) {
+                String doc = corpus.document(random, 50 + random.nextInt(200), false);
+                docs.add(doc);
+                writer.addDocument("http://a.com/" + i, doc);
+            }
+        }
+        IndexReader reader = IndexReader.open(dir);
+        Tokenizer tokenizer = new Tokenizer(false);
+        for (int rank : new int[]{0, 3, 50, 700, 4000}) {
+            String term = corpus.word(rank);
+            List<Integer> expectedDocs = new ArrayList<>();
+            List<Integer> expectedFreqs = new ArrayList<>();
+            for (int i = 0; i < docs.size(); i++) {
+                int freq = Collections.frequency(tokenizer.tokens(docs.get(i)), term);
+                if (freq > 0) {
+                    expectedDocs.add(i);
+                    expectedFreqs.add(freq);
+                }
+            }
+            List<Integer> actualDocs = new ArrayList<>();
+            List<Integer> actualFreqs = new ArrayList<>();
+            Postings postings = reader.postings(term);
+            if (postings != null) {
+                int doc;
+                while ((doc = postings.nextDoc()) != Postings.NO_MORE_DOCS) {
+                    actualDocs.add(doc);
+                    actualFreqs.add(postings.freq());
+                }
+            }
+            assertEquals(term, expectedDocs, actualDocs);
+            assertEquals(term, expectedFreqs, actualFreqs);
+        }
+    }
+
+    @Test
+    public void throughputAndSize() throws Exception {
+        SyntheticCorpus corpus = new SyntheticCorpus(100000, 1.0, 3);
+        Random random = new Random(2);
+        int count = 20000;
+        String[] docs = new String[count];
+        long rawBytes = 0;
+        for (int i = 0; i < count; i++) {
+            docs[i] = corpus.document(random, 200 + random.nextInt(600), true);
+            rawBytes += docs[i].getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        Path dir = tmp.getRoot().toPath();
+        long start = System.nanoTime();
+        try (IndexWriter writer = new IndexWriter(dir, 2 * 1024 * 1024)) {
+            for (int i = 0; i < count; i++) {
+                writer.addDocument("http://host" + (i % 100) + ".example.com/page/" + i, docs[i]);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        IndexReader reader = IndexReader.open(dir);
+        double ratio = reader.sizeBytes() / (double) rawBytes;
+        System.out.printf("%d docs, %d MB raw html: %.0f docs/s, %.1f MB/s, %d segments, index %d KB (%.1f%% of raw)%n",
+                count, rawBytes >> 20, count * 1e9 / elapsed, rawBytes / 1048576.0 / (elapsed / 1e9),
+                reader.segments().size(), reader.sizeBytes() >> 10, ratio * 100);
+        assertEquals(count, reader.docCount());
+        assertTrue(ratio < 0.5);
+    }
+}
@@ -0,0 +1,124 @@
+import org.junit.Test;
+import utils.CrawlerDFS_BFS;
+import utils.GraphGenerator;
+import utils.LinkGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * CSR图上的遍历要和CrawlerDFS_BFS的结果一样
+ */
+public class LinkGraphTest {
+
+    /**
+     * CrawlerDFS_BFS.main里的图
+     */
+    private static Map<String, List<String>> exampleGraph() {
+        Map<String, List<String>> connectedUrls = new HashMap<>();
+        connectedUrls.put("a", Arrays.asList("b", "c", "d", "e"));
+        connectedUrls.put("b", Arrays.asList("k", "m", "d", "z"));
+        connectedUrls.put("k", Arrays.asList("o", "j", "e", "z"));
+        return connectedUrls;
+    }
+
+    @Test
+    public void matchesCrawlerOnExampleGraph() {
+        Map<String, List<String>> connectedUrls = exampleGraph();
+        CrawlerDFS_BFS crawler = new CrawlerDFS_BFS(connectedUrls);
+        LinkGraph graph = LinkGraph.of(connectedUrls);
+
+        assertEquals(10, graph.nodes());
+        assertEquals(12, graph.edges());
+        assertEquals(crawler.BFS("a"), graph.bfs("a"));
+        assertEquals(crawler.DFS("a"), graph.dfs("a"));
+        assertEquals(new HashSet<>(crawler.BFS("a")), new HashSet<>(graph.parallelBfs("a")));
+        assertEquals(Arrays.asList("a", "b", "k", "o", "j", "e", "z", "m", "d", "c"), graph.dfs("a"));
+        // 不在图里的种子只有它自己
+        assertEquals(crawler.BFS("x"), graph.bfs("x"));
+        assertEquals(crawler.DFS("x"), graph.dfs("x"));
+    }
+
+    @Test
+    public void matchesCrawlerOnGeneratedGraph() {
+        Map<String, List<String>> connectedUrls = GraphGenerator.connectedUrls(200000, 4, 7);
+        CrawlerDFS_BFS crawler = new CrawlerDFS_BFS(connectedUrls);
+        LinkGraph fromMap = LinkGraph.of(connectedUrls);
+        LinkGraph generated = GraphGenerator.csr(200000, 4, 7);
+        String seed = GraphGenerator.name(0);
+
+        List<String> bfs = crawler.BFS(seed);
+        assertEquals(200000, bfs.size());
+        assertEquals(bfs, fromMap.bfs(seed));
+        assertEquals(bfs, urls(generated, generated.bfs(0, LinkGraph.UNLIMITED)));
+        assertEquals(new HashSet<>(bfs), new HashSet<>(fromMap.parallelBfs(seed)));
+
+        List<String> dfs = crawler.DFS(seed);
+        assertEquals(dfs, fromMap.dfs(seed));
+        assertEquals(dfs, urls(generated, generated.dfs(0, LinkGraph.UNLIMITED)));
+    }
+
+    @Test
+    public void deepChainsDoNotOverflowTheStack() {
+        int length = 1000000;
+        Map<String, List<String>> chain = new HashMap<>();
+        for (int i = 0; i + 1 < length; i++) {
+            chain.put(GraphGenerator.name(i), Arrays.asList(GraphGenerator.name(i + 1)));
+        }
+        List<String> dfs = new CrawlerDFS_BFS(chain).DFS(GraphGenerator.name(0));
+        assertEquals(length, dfs.size());
+        assertEquals(dfs, LinkGraph.of(chain).dfs(GraphGenerator.name(0)));
+    }
+
+    @Test
+    public void depthLimits() {
+        // 0 -> 1, 2; 1 -> 3, 4; 2 -> 5, 6 ...
+        LinkGraph tree = GraphGenerator.csr(1000, 2, 1);
+        for (int depth = 0; depth <= 5; depth++) {
+            int expected = (1 << (depth + 1)) - 1;
+            assertEquals(expected, tree.bfs(0, depth).length);
+            assertEquals(expected, tree.parallelBfs(0, depth).length);
+            assertEquals(expected, tree.dfs(0, depth).length);
+        }
+        assertArrayEquals(new int[]{0, 1, 3, 4, 2, 5, 6}, tree.dfs(0, 2));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6}, tree.bfs(0, 2));
+    }
+
+    /**
+     * 五千万条边
+     */
+    @Test
+    public void fiftyMillionEdges() {
+        long start = System.nanoTime();
+        LinkGraph graph = GraphGenerator.csr(12500000, 4, 42);
+        long built = System.nanoTime();
+        int[] parallel = graph.parallelBfs(0, LinkGraph.UNLIMITED);
+        long traversed = System.nanoTime();
+        System.out.printf("%d nodes, %d edges: built in %d ms, parallel BFS in %d ms on %d cores%n",
+                graph.nodes(), graph.edges(), (built - start) / 1000000, (traversed - built) / 1000000,
+                Runtime.getRuntime().availableProcessors());
+        assertEquals(50000000L, graph.edges());
+        assertEquals(graph.nodes(), parallel.length);
+
+        boolean[] seen = new boolean[graph.nodes()];
+        for (int id : parallel) {
+            assertFalse(seen[id]);
+            seen[id] = true;
+        }
+        assertEquals(graph.nodes(), graph.dfs(0, LinkGraph.UNLIMITED).length);
+    }
+
+    private static List<String> urls(LinkGraph graph, int[] ids) {
+        List<String> urls = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            urls.add(graph.url(id));
+        }
+        return urls;
+    }
+}
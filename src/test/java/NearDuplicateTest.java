@@ -0,0 +1,240 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * SimHash近似去重：镜像、session id、打印版的页面不再展开链接，也不进索引
+ */
+public class NearDuplicateTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void nearCopiesHaveCloseFingerprints() {
+        SyntheticCorpus corpus = new SyntheticCorpus(20000, 1.0, 3);
+        Random random = new Random(2);
+        SimHash simHash = new SimHash();
+        int[] histogram = new int[65];
+        int far = Integer.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            String text = corpus.document(random, 100 + random.nextInt(300), true);
+            // 链接里换个session id，外加一小段不同的页脚
+            String copy = text.replace("<body>", "<body><a href=\"/x;jsessionid=" + i + "\">home</a>")
+                    .replace("</body>", "<p>printed at " + random.nextInt(24) + " 00 by rocket</p></body>");
+            histogram[SimHash.distance(simHash.fingerprint(text), simHash.fingerprint(copy))]++;
+            String other = corpus.document(random, 300, true);
+            far = Math.min(far, SimHash.distance(simHash.fingerprint(text), simHash.fingerprint(other)));
+        }
+        int within = 0;
+        for (int d = 0; d <= NearDuplicateDetector.DEFAULT_MAX_DISTANCE; d++) {
+            within += histogram[d];
+        }
+        System.out.printf("near copies within distance %d: %d / 1000, min distance of different pages %d%n",
+                NearDuplicateDetector.DEFAULT_MAX_DISTANCE, within, far);
+        assertTrue(within > 850);
+        assertTrue(far > 2 * NearDuplicateDetector.DEFAULT_MAX_DISTANCE);
+    }
+
+    @Test
+    public void bandedIndexMatchesBruteForce() {
+        Random random = new Random(5);
+        int[][] configs = {{0, 1}, {3, 4}, {3, 6}, {6, 8}};
+        for (int[] config : configs) {
+            int maxDistance = config[0];
+            NearDuplicateDetector detector = new NearDuplicateDetector(maxDistance, config[1]);
+            List<Long> added = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+                long fingerprint = random.nextLong();
+                if (detector.addFingerprint(fingerprint)) {
+                    added.add(fingerprint);
+                }
+            }
+            assertEquals(added.size(), detector.size());
+            for (int i = 0; i < 5000; i++) {
+                // 一半是某个已有指纹翻转几位，一半是随机的
+                long query = random.nextLong();
+                if (i % 2 == 0) {
+                    query = added.get(random.nextInt(added.size()));
+                    for (int flips = random.nextInt(maxDistance + 3); flips > 0; flips--) {
+                        query ^= 1L << random.nextInt(64);
+                    }
+                }
+                boolean expected = false;
+                for (long fingerprint : added) {
+                    expected |= SimHash.distance(fingerprint, query) <= maxDistance;
+                }
+                assertEquals(expected, detector.containsNear(query));
+            }
+        }
+    }
+
+    /**
+     * 只有图片链接、frame的页面没有几个词，指纹是0；不能把后面的都当成第一个的重复丢掉链接
+     */
+    @Test
+    public void shortPagesAreNeverDuplicates() throws Exception {
+        SimHash simHash = new SimHash();
+        String gallery = "<html><body><a href=\"/p1\"><img src=\"/1.jpg\"></a><a href=\"/p2\"><img src=\"/2.jpg\"></a></body></html>";
+        String frames = "<html><frameset><frame src=\"/menu\"><frame src=\"/main\"></frameset></html>";
+        assertEquals(0, simHash.fingerprint(gallery));
+        assertEquals(0, simHash.features());
+        assertEquals(0, simHash.fingerprint(frames));
+
+        NearDuplicateDetector detector = new NearDuplicateDetector();
+        LinkParser parser = detector.linkParser(HtmlLinkExtractor.linkParser(1 << 20));
+        assertEquals(Arrays.asList("http://a.com/p1", "http://a.com/1.jpg", "http://a.com/p2", "http://a.com/2.jpg"),
+                parser.parse(page("http://a.com/gallery", gallery)));
+        assertEquals(Arrays.asList("http://b.com/menu", "http://b.com/main"),
+                parser.parse(page("http://b.com/", frames)));
+        // 只有一两句话的跳转页也一样
+        assertFalse(parser.parse(page("http://c.com/", "<p>moved to <a href=\"/new\">here</a></p>")).isEmpty());
+        assertEquals(3, detector.pages());
+        assertEquals(3, detector.shortPages());
+        assertEquals(0, detector.duplicates());
+        assertEquals(0, detector.size());
+
+        // 足够长的页面照常去重
+        String text = new SyntheticCorpus(20000, 1.0, 3).document(new Random(1), 200, true);
+        assertTrue(detector.add(text));
+        assertFalse(detector.add(text));
+        assertEquals(1, detector.size());
+    }
+
+    private static FetchResponse page(String url, String html) {
+        return new FetchResponse(url, 200, html.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void crawlSkipsNearDuplicates() throws Exception {
+        Site site = new Site(2000, 5);
+        Stats plain = crawl(site, null);
+        Stats deduped = crawl(site, new NearDuplicateDetector());
+        System.out.printf("without dedup: %6d fetches, %5d docs indexed, index %8d bytes%n",
+                plain.fetches, plain.docs, plain.indexBytes);
+        System.out.printf("with dedup   : %6d fetches, %5d docs indexed, index %8d bytes, %d duplicates%n",
+                deduped.fetches, deduped.docs, deduped.indexBytes, deduped.duplicates);
+        // 每篇文章都进了索引（没有把不同的文章当成重复），漏掉的重复很少
+        assertEquals(site.articles, deduped.articlesIndexed);
+        assertTrue(deduped.docs < site.articles * 1.2);
+        // 原文都链接到自己的打印版和镜像，这些还是要抓一次，省下的是它们展开出来的那些
+        assertTrue(plain.fetches > 1.5 * deduped.fetches);
+        assertTrue(plain.indexBytes > 2 * deduped.indexBytes);
+    }
+
+    private Stats crawl(Site site, NearDuplicateDetector detector) throws Exception {
+        Path dir = tmp.newFolder().toPath();
+        Stats stats = new Stats();
+        try (IndexWriter writer = new IndexWriter(dir)) {
+            LinkParser parser = writer.linkParser(HtmlLinkExtractor.linkParser(1 << 20));
+            if (detector != null) {
+                parser = detector.linkParser(parser);
+            }
+            CrawlerManager manager = new CrawlerManager(site, parser, 64, 0);
+            manager.crawl(site.articleUrl(0));
+        }
+        IndexReader reader = IndexReader.open(dir);
+        stats.fetches = site.fetches.getAndSet(0);
+        stats.docs = reader.docCount();
+        Set<Integer> articles = new HashSet<>();
+        for (int doc = 0; doc < reader.docCount(); doc++) {
+            articles.add(Site.article(reader.url(doc)));
+        }
+        stats.articlesIndexed = articles.size();
+        stats.indexBytes = reader.sizeBytes();
+        stats.duplicates = detector == null ? 0 : detector.duplicates();
+        return stats;
+    }
+
+    private static class Stats {
+        int fetches;
+        int docs;
+        int articlesIndexed;
+        long indexBytes;
+        long duplicates;
+    }
+
+    /**
+     * 内存里的网站，每篇文章有三种url：
+     *  - http://a.com/a{i} 原文，链接到几篇别的文章，以及自己的打印版和镜像
+     *  - http://a.com/a{i}?print=1 打印版，内容一样，没有导航，链接都换成打印版
+     *  - http://mirror.com/a{i};jsessionid=... 镜像，每个页面给链接加上自己的session id，页脚有生成时间
+     */
+    private static class Site implements Fetcher {
+        final int articles;
+        final AtomicInteger fetches = new AtomicInteger();
+        private final String[] texts;
+        private final int[][] links;
+        private final Random random = new Random(11);
+
+        Site(int articles, int outDegree) {
+            this.articles = articles;
+            SyntheticCorpus corpus = new SyntheticCorpus(20000, 1.0, 4);
+            texts = new String[articles];
+            links = new int[articles][outDegree];
+            for (int i = 0; i < articles; i++) {
+                texts[i] = corpus.document(random, 100 + random.nextInt(300), false);
+                // 第一个链接保证所有文章都能到达
+                links[i][0] = (i + 1) % articles;
+                for (int j = 1; j < outDegree; j++) {
+                    links[i][j] = random.nextInt(articles);
+                }
+            }
+        }
+
+        String articleUrl(int i) {
+            return "http://a.com/a" + i;
+        }
+
+        static int article(String url) {
+            int start = url.indexOf("/a", "http://".length()) + 2;
+            int end = start;
+            while (end < url.length() && Character.isDigit(url.charAt(end))) {
+                end++;
+            }
+            return Integer.parseInt(url.substring(start, end));
+        }
+
+        @Override
+        public CompletableFuture<FetchResponse> fetch(String url) {
+            fetches.incrementAndGet();
+            int i = article(url);
+            StringBuilder page = new StringBuilder("<html><head><title>article ").append(i).append("</title></head><body>");
+            if (url.startsWith("http://mirror.com/")) {
+                String session = Integer.toHexString(i * 0x9E3779B9);
+                for (int child : links[i]) {
+                    page.append("<a href=\"/a").append(child).append(";jsessionid=").append(session).append("\">more</a> ");
+                }
+                page.append("<p>").append(texts[i]).append("</p>");
+                page.append("<p>mirrored in ").append(random.nextInt(1000)).append(" ms</p>");
+            } else if (url.endsWith("?print=1")) {
+                page.append("<p>").append(texts[i]).append("</p>");
+                for (int child : links[i]) {
+                    page.append("<a href=\"/a").append(child).append("?print=1\">more</a> ");
+                }
+            } else {
+                page.append("<p>home news about</p><p>").append(texts[i]).append("</p>");
+                for (int child : links[i]) {
+                    page.append("<a href=\"/a").append(child).append("\">more</a> ");
+                }
+                page.append("<a href=\"/a").append(i).append("?print=1\">print</a> ");
+                page.append("<a href=\"http://mirror.com/a").append(i).append("\">mirror</a>");
+            }
+            page.append("</body></html>");
+            return CompletableFuture.completedFuture(new FetchResponse(url, 200,
+                    page.toString().getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
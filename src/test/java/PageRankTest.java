@@ -0,0 +1,158 @@
+import org.junit.Test;
+import utils.CrawlerManager;
+import utils.GraphGenerator;
+import utils.LinkGraph;
+import utils.PageRank;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * PageRank和最直接的幂迭代比，再看warm start和大图上的速度
+ */
+public class PageRankTest {
+
+    /**
+     * 教科书写法：每轮把每个节点的分数推给它的孩子，dangling节点的分数平均分给所有节点
+     */
+    private static double[] reference(LinkGraph graph, double damping, int iterations) {
+        int n = graph.nodes();
+        double[] rank = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        for (int it = 0; it < iterations; it++) {
+            double[] next = new double[n];
+            double dangling = 0;
+            for (int node = 0; node < n; node++) {
+                int degree = graph.degree(node);
+                if (degree == 0) {
+                    dangling += rank[node];
+                }
+                for (int i = 0; i < degree; i++) {
+                    next[graph.child(node, i)] += damping * rank[node] / degree;
+                }
+            }
+            for (int node = 0; node < n; node++) {
+                next[node] += (1 - damping) / n + damping * dangling / n;
+            }
+            rank = next;
+        }
+        return rank;
+    }
+
+    private static double sum(double[] scores) {
+        double sum = 0;
+        for (double score : scores) {
+            sum += score;
+        }
+        return sum;
+    }
+
+    @Test
+    public void smallGraphs() {
+        Map<String, List<String>> cycle = new HashMap<>();
+        cycle.put("a", Arrays.asList("b"));
+        cycle.put("b", Arrays.asList("c"));
+        cycle.put("c", Arrays.asList("a"));
+        PageRank.Result result = new PageRank(LinkGraph.of(cycle)).compute();
+        assertTrue(result.converged());
+        for (String url : new String[]{"a", "b", "c"}) {
+            assertEquals(1.0 / 3, result.score(url), 1e-9);
+        }
+
+        // 全是dangling的星形：中心最高，分数总和还是1
+        Map<String, List<String>> star = new HashMap<>();
+        star.put("x", Arrays.asList("hub"));
+        star.put("y", Arrays.asList("hub"));
+        star.put("z", Arrays.asList("hub"));
+        LinkGraph graph = LinkGraph.of(star);
+        result = new PageRank(graph).setTolerance(1e-12).compute();
+        assertEquals("hub", graph.url(result.top(1)[0]));
+        assertEquals(1.0, sum(result.scores()), 1e-9);
+        assertEquals(result.score("x"), result.score("y"), 1e-12);
+    }
+
+    @Test
+    public void matchesPowerIteration() {
+        LinkGraph graph = GraphGenerator.csr(20000, 5, 3);
+        // 加一些dangling节点：只出现在子链接里的url
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        for (int node = 0; node < graph.nodes(); node++) {
+            builder.addNode(graph.url(node));
+            for (int i = 0; i < graph.degree(node); i++) {
+                builder.addEdge(graph.url(node), graph.url(graph.child(node, i)));
+            }
+            if (node % 10 == 0) {
+                builder.addEdge(graph.url(node), "dangling" + node);
+            }
+        }
+        graph = builder.build();
+        PageRank.Result result = new PageRank(graph).setTolerance(1e-13).setMaxIterations(500).compute();
+        double[] expected = reference(graph, PageRank.DEFAULT_DAMPING, result.iterations());
+        System.out.println(result);
+
+        assertTrue(result.converged());
+        assertEquals(1.0, sum(result.scores()), 1e-9);
+        for (int node = 0; node < graph.nodes(); node++) {
+            assertEquals(expected[node], result.score(node), 1e-12);
+        }
+    }
+
+    @Test
+    public void warmStartFromSavedScores() throws Exception {
+        Map<String, List<String>> connectedUrls = GraphGenerator.connectedUrls(20000, 4, 9);
+        LinkGraph.Builder links = new LinkGraph.Builder();
+        CrawlerManager crawler = new CrawlerManager(connectedUrls::get, 4, 256, 0);
+        crawler.setLinkGraph(links);
+        List<String> pages = crawler.crawl(GraphGenerator.name(0));
+        LinkGraph graph = links.build();
+        assertEquals(pages.size(), graph.nodes());
+        assertEquals(20000L * 4, graph.edges());
+
+        PageRank.Result cold = new PageRank(graph).compute();
+        Path file = Files.createTempFile("pagerank", ".tsv");
+        try {
+            cold.save(file);
+
+            // 再爬一次时多了几条链接
+            for (int i = 0; i < 20; i++) {
+                connectedUrls.get(GraphGenerator.name(i * 997)).set(3, GraphGenerator.name(i));
+            }
+            links = new LinkGraph.Builder();
+            crawler = new CrawlerManager(connectedUrls::get, 4, 256, 0);
+            crawler.setLinkGraph(links);
+            crawler.crawl(GraphGenerator.name(0));
+            graph = links.build();
+
+            PageRank pageRank = new PageRank(graph);
+            PageRank.Result fresh = pageRank.compute();
+            PageRank.Result warm = pageRank.compute(PageRank.load(file, graph));
+            System.out.println("cold: " + fresh.iterations() + " iterations, warm: " + warm.iterations());
+            assertTrue(warm.converged());
+            assertTrue(warm.iterations() < fresh.iterations());
+            for (int node = 0; node < graph.nodes(); node++) {
+                assertEquals(fresh.score(node), warm.score(node), 1e-6);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void millionsOfNodes() {
+        LinkGraph graph = GraphGenerator.csr(2000000, 8, 5);
+        PageRank.Result result = new PageRank(graph).compute();
+        System.out.printf("%d edges: %s on %d cores%n", graph.edges(), result,
+                Runtime.getRuntime().availableProcessors());
+        assertTrue(result.converged());
+        assertEquals(1.0, sum(result.scores()), 1e-6);
+        assertTrue(result.iterationsPerSecond() > 0);
+        // 入边CSR 4n + 4m，出度4n，三个double数组24n
+        assertEquals(4L * (2000001 + 16000000) + 4L * 2000000 + 24L * 2000000, result.memoryBytes());
+    }
+}
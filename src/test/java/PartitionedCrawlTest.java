@@ -0,0 +1,195 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.CrawlNode;
+import utils.CrawlerManager;
+import utils.HostFrontier;
+import utils.HostPartitioner;
+import utils.HttpLinkSource;
+import utils.SyntheticWebServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多节点爬取：按host分给各个节点，节点之间批量交换url，全局没有活以后一起结束
+ */
+public class PartitionedCrawlTest {
+    private static final int THREADS_PER_NODE = 4;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void partitionerIsBalancedAndStable() {
+        HostPartitioner four = new HostPartitioner(4);
+        HostPartitioner five = new HostPartitioner(5);
+        int[] counts = new int[4];
+        int moved = 0;
+        int hosts = 20000;
+        for (int i = 0; i < hosts; i++) {
+            String host = "host" + i + ".example.com";
+            int owner = four.ownerOfHost(host);
+            counts[owner]++;
+            assertEquals(owner, four.ownerOfHost(host));
+            int newOwner = five.ownerOfHost(host);
+            if (newOwner != owner) {
+                moved++;
+                // 只会搬到新节点上
+                assertEquals(4, newOwner);
+            }
+        }
+        for (int count : counts) {
+            assertTrue("count " + count, count > hosts / 4 * 0.8 && count < hosts / 4 * 1.2);
+        }
+        // 理想情况是1/5
+        assertTrue("moved " + moved, moved > hosts * 0.12 && moved < hosts * 0.28);
+        assertEquals(four.ownerOfHost("a.com"), four.ownerOf("http://a.com/x?y"));
+    }
+
+    @Test
+    public void nodesCrawlDisjointSlicesOfTheWholeWeb() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(1500).hosts(200).latency(5, 0.3);
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            List<List<String>> pages = crawl(server, 3);
+            HostPartitioner partitioner = new HostPartitioner(3);
+            Set<String> all = new HashSet<>();
+            for (int node = 0; node < pages.size(); node++) {
+                assertFalse(pages.get(node).isEmpty());
+                for (String url : pages.get(node)) {
+                    assertTrue("crawled twice: " + url, all.add(url));
+                    assertEquals(node, partitioner.ownerOfHost(HostFrontier.hostOf(url)));
+                }
+            }
+            assertEquals(1500, all.size());
+            for (int i = 0; i < 1500; i++) {
+                assertTrue(all.contains(server.url(i)));
+            }
+        }
+    }
+
+    /**
+     * 每个节点的线程数固定，延迟主导的时候节点越多越快
+     */
+    @Test
+    public void scalingCurve() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(800).hosts(200).latency(40, 0.2);
+        double[] pagesPerSecond = new double[5];
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            for (int n = 1; n <= 4; n++) {
+                long start = System.nanoTime();
+                List<List<String>> pages = crawl(server, n);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                int total = 0;
+                for (List<String> nodePages : pages) {
+                    total += nodePages.size();
+                }
+                assertEquals(800, total);
+                pagesPerSecond[n] = total / seconds;
+                System.out.printf("%d node(s): %d pages in %.2fs, %.0f pages/s, speedup %.2f%n",
+                        n, total, seconds, pagesPerSecond[n], pagesPerSecond[n] / pagesPerSecond[1]);
+            }
+        }
+        assertTrue(pagesPerSecond[2] > pagesPerSecond[1] * 1.3);
+        assertTrue(pagesPerSecond[4] > pagesPerSecond[1] * 2);
+    }
+
+    /**
+     * 1号节点在另一个JVM里
+     */
+    @Test
+    public void nodesInSeparateJvms() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(600).hosts(100).latency(5, 0.3);
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                try (ServerSocket socket = new ServerSocket(0)) {
+                    addresses.add(new InetSocketAddress("127.0.0.1", socket.getLocalPort()));
+                }
+            }
+            String peers = "127.0.0.1:" + addresses.get(0).getPort() + ",127.0.0.1:" + addresses.get(1).getPort();
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            // 子进程用HttpPoolUtil的连接池，网站的host名字靠hosts文件解析
+            Path hosts = tmp.newFile("hosts").toPath();
+            server.writeHostsFile(hosts);
+            Process child = new ProcessBuilder(java, "-Djdk.net.hosts.file=" + hosts,
+                    "-cp", System.getProperty("java.class.path"),
+                    CrawlNode.class.getName(), "1", server.url(0), String.valueOf(THREADS_PER_NODE), peers)
+                    .redirectErrorStream(true).start();
+            try (CrawlNode node = new CrawlNode(0, addresses)) {
+                CrawlerManager manager = new CrawlerManager(new HttpLinkSource(server.registry(), 2000, 0),
+                        THREADS_PER_NODE, 4 * THREADS_PER_NODE, 0);
+                manager.setPartition(node);
+                node.start();
+                List<String> pages = manager.crawl(server.url(0));
+
+                int childPages = -1;
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith("node 1: pages ")) {
+                            childPages = Integer.parseInt(line.substring("node 1: pages ".length()));
+                        }
+                    }
+                }
+                assertTrue(child.waitFor(30, TimeUnit.SECONDS));
+                assertEquals(0, child.exitValue());
+                System.out.println("separate JVMs: " + pages.size() + " + " + childPages + " pages");
+                assertEquals(600, pages.size() + childPages);
+            } finally {
+                child.destroy();
+            }
+        }
+    }
+
+    private static List<List<String>> crawl(SyntheticWebServer server, int n) throws Exception {
+        List<CrawlNode> nodes = CrawlNode.local(n);
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (CrawlNode node : nodes) {
+                CrawlerManager manager = new CrawlerManager(new HttpLinkSource(server.registry(), 2000, 0),
+                        THREADS_PER_NODE, 4 * THREADS_PER_NODE, 0);
+                manager.setPartition(node);
+                node.start();
+                // 每个节点都从同一个种子开始，不归自己的种子会转给它的主人
+                futures.add(executor.submit(() -> manager.crawl(server.url(0))));
+            }
+            List<List<String>> pages = new ArrayList<>();
+            for (Future<List<String>> future : futures) {
+                pages.add(future.get(60, TimeUnit.SECONDS));
+            }
+            long sent = 0;
+            for (CrawlNode node : nodes) {
+                sent += node.urlsSent();
+                if (node.urlsSent() > 0) {
+                    assertTrue(node.compressionRatio() < 0.6);
+                }
+            }
+            assertTrue(n == 1 ? sent == 0 : sent > 0);
+            return pages;
+        } finally {
+            executor.shutdownNow();
+            for (CrawlNode node : nodes) {
+                node.close();
+            }
+        }
+    }
+}
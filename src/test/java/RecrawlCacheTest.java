@@ -0,0 +1,189 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 重新爬取时带验证头，没变的页面服务器返回304，正文从本地缓存取
+ */
+public class RecrawlCacheTest {
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private HttpServer server;
+    // 每个页面的版本号，改版本号就是页面内容变了
+    private final Map<String, Integer> versions = new ConcurrentHashMap<>();
+    private final AtomicLong bodyBytesSent = new AtomicLong();
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int version = versions.getOrDefault(path, 1);
+            String etag = "\"" + path.hashCode() + "-" + version + "\"";
+            // /lm/开头的页面只有Last-Modified，/nocache/开头的没有验证信息
+            boolean lastModifiedOnly = path.startsWith("/lm/");
+            boolean noValidators = path.startsWith("/nocache/");
+            if (!noValidators) {
+                if (lastModifiedOnly) {
+                    exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                } else {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                }
+            }
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            if ((!lastModifiedOnly && etag.equals(ifNoneMatch))
+                    || (lastModifiedOnly && version == 1 && LAST_MODIFIED.equals(ifModifiedSince))) {
+                notModified.incrementAndGet();
+                // JDK的HttpServer发完304会断开连接，告诉客户端不要复用
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = page(path, version);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                // 模拟慢链路：每64KB多花2ms
+                for (int off = 0; off < body.length; off += 65536) {
+                    out.write(body, off, Math.min(65536, body.length - off));
+                    sleep(2);
+                }
+            }
+            bodyBytesSent.addAndGet(body.length);
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        HttpPoolUtil.setRecrawlCache(null);
+    }
+
+    @Test
+    public void notModifiedIsServedFromDisk() throws Exception {
+        RecrawlCache cache = new RecrawlCache(tmp.getRoot().toPath(), 1 << 30);
+        String url = url("/a.html");
+
+        FetchResponse first = cache.fetch(HttpPoolUtil.getHttpClient(6000), url);
+        FetchResponse second = cache.fetch(HttpPoolUtil.getHttpClient(6000), url + "#section");
+        assertArrayEquals(first.getBody(), second.getBody());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(first.getBody().length, cache.bytesSaved());
+        assertEquals(1, notModified.get());
+
+        versions.put("/a.html", 2);
+        FetchResponse third = cache.fetch(HttpPoolUtil.getHttpClient(6000), url);
+        assertFalse(Arrays.equals(first.getBody(), third.getBody()));
+        assertEquals(1, cache.changed());
+        assertArrayEquals(third.getBody(), cache.fetch(HttpPoolUtil.getHttpClient(6000), url).getBody());
+        assertEquals(2, cache.hits());
+    }
+
+    @Test
+    public void lastModifiedAndNoValidators() throws Exception {
+        RecrawlCache cache = new RecrawlCache(tmp.getRoot().toPath(), 1 << 30);
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/lm/x"));
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/lm/x"));
+        assertEquals(1, cache.hits());
+
+        // 没有验证信息的页面不缓存
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/nocache/y"));
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/nocache/y"));
+        assertEquals(1, cache.entries());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAndReloadsFromDisk() throws Exception {
+        Path dir = tmp.getRoot().toPath();
+        // 每个页面大约100KB，最多放得下两个
+        RecrawlCache cache = new RecrawlCache(dir, 250 * 1024);
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/1"));
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/2"));
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/1"));
+        cache.fetch(HttpPoolUtil.getHttpClient(6000), url("/3"));
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.entries());
+        assertTrue(cache.sizeBytes() <= 250 * 1024);
+
+        // 重新打开，/1和/3还在，/2已经被淘汰
+        RecrawlCache reopened = new RecrawlCache(dir, 250 * 1024);
+        assertEquals(2, reopened.entries());
+        reopened.fetch(HttpPoolUtil.getHttpClient(6000), url("/1"));
+        reopened.fetch(HttpPoolUtil.getHttpClient(6000), url("/3"));
+        reopened.fetch(HttpPoolUtil.getHttpClient(6000), url("/2"));
+        assertEquals(2, reopened.hits());
+        assertEquals(1, reopened.misses());
+    }
+
+    @Test
+    public void recrawlThroughHttpPoolUtil() throws Exception {
+        RecrawlCache cache = new RecrawlCache(tmp.getRoot().toPath(), 1 << 30);
+        HttpPoolUtil.setRecrawlCache(cache);
+        int pages = 50;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            long sentBefore = bodyBytesSent.get();
+            for (int i = 0; i < pages; i++) {
+                if (round == 1 && i % 10 == 0) {
+                    versions.put("/p" + i, 2);
+                }
+                String html = HttpPoolUtil.httpGet(url("/p" + i), 6000);
+                assertTrue(html.startsWith("<html>"));
+            }
+            System.out.printf("round %d: %4.0f ms, %6d KB downloaded%n", round,
+                    (System.nanoTime() - start) / 1e6, (bodyBytesSent.get() - sentBefore) >> 10);
+        }
+        System.out.printf("misses %d, hits %d, changed %d, saved %d KB and %.0f ms%n", cache.misses(),
+                cache.hits(), cache.changed(), cache.bytesSaved() >> 10, cache.nanosSaved() / 1e6);
+        assertEquals(pages, cache.misses());
+        assertEquals(pages - 5, cache.hits());
+        assertEquals(5, cache.changed());
+    }
+
+    private byte[] page(String path, int version) {
+        StringBuilder html = new StringBuilder("<html><body><h1>" + path + " v" + version + "</h1>");
+        while (html.length() < 100 * 1024) {
+            html.append("<p>lorem ipsum dolor sit amet ").append(version).append("</p>\n");
+        }
+        return html.append("</body></html>").toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
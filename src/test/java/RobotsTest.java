@@ -0,0 +1,343 @@
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import utils.AdaptiveConcurrency;
+import utils.CrawlerManager;
+import utils.HttpClientRegistry;
+import utils.HttpLinkSource;
+import utils.LoopbackDnsResolver;
+import utils.RobotsCache;
+import utils.RobotsRules;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * robots.txt的解析、匹配、缓存，以及爬取时的过滤和Crawl-delay
+ */
+public class RobotsTest {
+    private static final String ROBOTS = String.join("\n",
+            "# comment",
+            "User-agent: *",
+            "Disallow: /private/",
+            "Disallow: /*.pdf$",
+            "Allow: /private/public/",
+            "Crawl-delay: 0.2",
+            "",
+            "User-agent: BadBot",
+            "Disallow: /");
+
+    private HttpServer server;
+    private ExecutorService workers;
+    private HttpClientRegistry registry;
+    // host -> robots.txt的内容，为null时返回404；"500"时返回500
+    private final Map<String, String> robots = new ConcurrentHashMap<>();
+    private final AtomicInteger robotsRequests = new AtomicInteger();
+    private final List<String> pageRequests = new CopyOnWriteArrayList<>();
+    private final List<Long> pageTimes = new CopyOnWriteArrayList<>();
+    private final Set<String> userAgents = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void startServer() throws IOException {
+        // 只监听回环地址，a.test、b.test、c.test都由registry里的LoopbackDnsResolver解析过来，按Host头区分
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/", exchange -> {
+            String host = exchange.getRequestHeaders().getFirst("Host");
+            host = host.substring(0, host.indexOf(':'));
+            String path = exchange.getRequestURI().toString();
+            userAgents.add(String.valueOf(exchange.getRequestHeaders().getFirst("User-Agent")));
+            byte[] body;
+            int status = 200;
+            if (path.equals("/robots.txt")) {
+                robotsRequests.incrementAndGet();
+                String content = robots.get(host);
+                if (content == null) {
+                    status = 404;
+                    content = "not found";
+                } else if (content.equals("500")) {
+                    status = 500;
+                }
+                body = content.getBytes(StandardCharsets.UTF_8);
+            } else {
+                pageRequests.add(path);
+                pageTimes.add(System.currentTimeMillis());
+                body = page(host, path).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        workers = Executors.newCachedThreadPool();
+        server.setExecutor(workers);
+        server.start();
+        registry = new HttpClientRegistry(20, 4, HttpClientRegistry.DEFAULT_KEEP_ALIVE_MILLIS,
+                HttpClientRegistry.DEFAULT_MAX_IDLE_MILLIS, LoopbackDnsResolver.INSTANCE);
+    }
+
+    @After
+    public void stopServer() {
+        registry.close();
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private String url(String host, String path) {
+        return "http://" + host + ":" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * 首页链接到 /p1../p5、/private/a、/private/public/b、/doc.pdf
+     */
+    private String page(String host, String path) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        if (path.equals("/")) {
+            for (String link : new String[]{"/p1", "/p2", "/p3", "/p4", "/p5", "/private/a",
+                    "/private/public/b", "/doc.pdf"}) {
+                html.append("<a href=\"").append(url(host, link)).append("\">x</a>");
+            }
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    @Test
+    public void parseAndMatch() {
+        RobotsRules rules = RobotsRules.parse(ROBOTS, RobotsCache.DEFAULT_USER_AGENT);
+        assertEquals(3, rules.size());
+        assertEquals(200, rules.crawlDelayMillis());
+        assertTrue(rules.isAllowed("/"));
+        assertTrue(rules.isAllowed("/privately"));
+        assertFalse(rules.isAllowed("/private/"));
+        assertFalse(rules.isAllowed("/private/x?y=1"));
+        // 更长的Allow生效
+        assertTrue(rules.isAllowed("/private/public/x"));
+        assertFalse(rules.isAllowed("/a/b.pdf"));
+        assertTrue(rules.isAllowed("/a/b.pdf?download=1"));
+        assertTrue(rules.isAllowed("/robots.txt"));
+
+        RobotsRules bad = RobotsRules.parse(ROBOTS, "badbot/2.1 (+http://example.com)");
+        assertFalse(bad.isAllowed("/anything"));
+        assertEquals(-1, bad.crawlDelayMillis());
+
+        // 一样长时Allow优先；通配符和字典树里的规则一起比长度
+        RobotsRules tie = RobotsRules.parse(String.join("\n",
+                "User-agent: rocket-search",
+                "User-agent: other",
+                "Disallow: /page",
+                "Allow: /page",
+                "Disallow: /*.php",
+                "Allow: /shop/*.php",
+                "Disallow: /shop/",
+                "Disallow:"), RobotsCache.DEFAULT_USER_AGENT);
+        assertTrue(tie.isAllowed("/page"));
+        assertFalse(tie.isAllowed("/index.php"));
+        assertTrue(tie.isAllowed("/shop/cart.php"));
+        assertFalse(tie.isAllowed("/shop/cart"));
+        assertEquals(-1, tie.crawlDelayMillis());
+
+        assertTrue(RobotsRules.ALLOW_ALL.isAllowed("/x"));
+        assertFalse(RobotsRules.DISALLOW_ALL.isAllowed("/"));
+        assertEquals("/a/b?c=1", RobotsCache.pathOf("HTTP://Example.com:8080/a/b?c=1#frag"));
+        assertEquals("/", RobotsCache.pathOf("http://example.com"));
+        assertEquals("/?q", RobotsCache.pathOf("http://example.com?q"));
+        assertEquals("http://example.com:8080", RobotsCache.originOf("HTTP://Example.com:8080/a/b"));
+    }
+
+    /**
+     * 每个发现的链接都要匹配一次，规则多的时候也要快
+     */
+    @Test
+    public void matchingIsCheap() {
+        StringBuilder content = new StringBuilder("User-agent: *\n");
+        for (int i = 0; i < 1000; i++) {
+            content.append("Disallow: /section").append(i).append("/private/\n");
+            content.append("Allow: /section").append(i).append("/private/public\n");
+            if (i % 10 == 0) {
+                content.append("Disallow: /*/tmp").append(i).append("$\n");
+            }
+        }
+        RobotsRules rules = RobotsRules.parse(content.toString(), RobotsCache.DEFAULT_USER_AGENT);
+        assertEquals(2100, rules.size());
+        String[] paths = new String[1000];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = "/section" + i + (i % 2 == 0 ? "/private/page" : "/public/page") + i;
+        }
+        int allowed = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int n = 0; n < 1000; n++) {
+                for (String path : paths) {
+                    if (rules.isAllowed(path)) {
+                        allowed++;
+                    }
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%.0f ns per match with %d rules%n", nanos / 1e6, rules.size());
+        }
+        assertEquals(1000000, allowed);
+    }
+
+    @Test
+    public void fetchesOncePerHostAndCaches() throws Exception {
+        robots.put("a.test", ROBOTS);
+        robots.put("c.test", "500");
+        RobotsCache cache = new RobotsCache(registry, RobotsCache.DEFAULT_USER_AGENT, 2000, 60000, 300, 100);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final String url = url("a.test", "/private/" + i);
+                futures.add(executor.submit(() -> cache.isAllowed(url)));
+            }
+            for (Future<Boolean> future : futures) {
+                assertFalse(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, robotsRequests.get());
+        assertEquals(1, cache.fetches());
+        assertTrue(cache.isAllowed(url("a.test", "/public")));
+        assertEquals(200, cache.peek(url("a.test", "/")).crawlDelayMillis());
+
+        // 没有robots.txt：全部允许；服务器出错：暂时全部禁止，errorTtl以后再试
+        assertNull(cache.peek(url("b.test", "/")));
+        assertTrue(cache.isAllowed(url("b.test", "/private/x")));
+        assertFalse(cache.isAllowed(url("c.test", "/x")));
+        assertEquals(3, robotsRequests.get());
+        robots.put("c.test", ROBOTS);
+        Thread.sleep(400);
+        assertTrue(cache.isAllowed(url("c.test", "/x")));
+        assertEquals(4, robotsRequests.get());
+        cache.close();
+    }
+
+    @Test
+    public void lruAndTtl() throws Exception {
+        RobotsCache cache = new RobotsCache(registry, RobotsCache.DEFAULT_USER_AGENT, 2000, 300, 300, 2);
+        cache.rules(url("a.test", "/"));
+        cache.rules(url("b.test", "/"));
+        cache.rules(url("a.test", "/"));
+        cache.rules(url("c.test", "/"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        // b.test最久没用，被删掉了
+        assertNotNull(cache.peek(url("a.test", "/")));
+        assertNull(cache.peek(url("b.test", "/")));
+        assertEquals(3, robotsRequests.get());
+
+        Thread.sleep(400);
+        assertNull(cache.peek(url("a.test", "/")));
+        cache.rules(url("a.test", "/"));
+        assertEquals(4, robotsRequests.get());
+        cache.close();
+    }
+
+    @Test
+    public void crawlerSkipsDisallowedAndHonorsCrawlDelay() {
+        robots.put("a.test", ROBOTS);
+        RobotsCache cache = new RobotsCache(registry, 2000);
+        CrawlerManager manager = new CrawlerManager(new HttpLinkSource(registry, 2000, 0), 4, 16, 0);
+        manager.setRobots(cache);
+        List<String> pages = manager.crawl(url("a.test", "/"));
+        System.out.println("crawled " + pageRequests + ", blocked " + manager.getBlocked());
+
+        assertEquals(1, robotsRequests.get());
+        assertEquals(2, manager.getBlocked());
+        assertEquals(7, pages.size());
+        // robots.txt和页面都用选组时的名字去请求
+        assertEquals(Collections.singleton(cache.getUserAgent()), userAgents);
+        assertFalse(pages.contains(url("a.test", "/private/a")));
+        assertTrue(pages.contains(url("a.test", "/private/public/b")));
+        for (String path : pageRequests) {
+            assertFalse(path, path.equals("/private/a") || path.endsWith(".pdf"));
+        }
+        // 首页之后Crawl-delay已经生效
+        for (int i = 2; i < pageTimes.size(); i++) {
+            long gap = pageTimes.get(i) - pageTimes.get(i - 1);
+            assertTrue("gap " + gap, gap >= 180);
+        }
+        cache.close();
+    }
+
+    /**
+     * 调用方传进来的cache在多次crawl之间共用，crawl结束不会关掉它；调用方close以后load直接失败，不会卡住
+     */
+    @Test
+    public void cacheOutlivesCrawls() throws Exception {
+        robots.put("a.test", ROBOTS);
+        robots.put("b.test", ROBOTS);
+        RobotsCache cache = new RobotsCache(registry, 2000);
+        for (String host : new String[]{"a.test", "b.test", "a.test"}) {
+            CrawlerManager manager = new CrawlerManager(new HttpLinkSource(registry, 2000, 0), 4, 16, 0);
+            manager.setRobots(cache);
+            List<String> pages = manager.crawl(url(host, "/"));
+            assertEquals(7, pages.size());
+            assertEquals(2, manager.getBlocked());
+        }
+        // 第二个host第一次crawl时才抓，第三次crawl全部命中缓存
+        assertEquals(2, robotsRequests.get());
+        assertEquals(2, cache.fetches());
+
+        cache.close();
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.load(url("c.test", "/x" + i)).get(1, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+        assertNull(cache.peek(url("c.test", "/")));
+        // 已经缓存的还能用
+        assertFalse(cache.isAllowed(url("a.test", "/private/a")));
+    }
+
+    /**
+     * 被robots.txt挡掉的url没有发请求，不能当作AdaptiveConcurrency的样本
+     */
+    @Test
+    public void blockedUrlsAreNotConcurrencySamples() {
+        robots.put("a.test", ROBOTS);
+        final AtomicInteger samples = new AtomicInteger();
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(1, 4) {
+            @Override
+            public boolean onSample(long rttNanos, boolean error, int inFlight) {
+                samples.incrementAndGet();
+                return super.onSample(rttNanos, error, inFlight);
+            }
+        };
+        CrawlerManager manager = new CrawlerManager(new HttpLinkSource(registry, 2000, 0), concurrency, 0);
+        RobotsCache cache = new RobotsCache(registry, 2000);
+        manager.setRobots(cache);
+        List<String> pages = manager.crawl(url("a.test", "/"));
+        cache.close();
+
+        assertEquals(7, pages.size());
+        assertEquals(2, manager.getBlocked());
+        assertEquals(pageRequests.size(), samples.get());
+    }
+}
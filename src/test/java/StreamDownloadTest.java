@@ -1,95 +1,208 @@
-import org.apache.http.HttpEntity;
-import org.apache.http.NameValuePair;
-import org.apache.http.ParseException;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicNameValuePair;
-import org.apache.http.util.EntityUtils;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
-import java.io.*;
-import java.util.Arrays;
-import java.util.LinkedList;
+import utils.RangeDownloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.List;
-public class StreamDownloadTest {
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-    @Test
-    public void getUriResource() {
-        String imgUrl = "https://ws3.sinaimg.cn/large/9150e4e5ly1fhnc60l3cdj204r04qaa4.jpg";
+import static org.junit.Assert.*;
 
-        // 获取连接客户端工具
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
+public class StreamDownloadTest {
+    private static final int SIZE = 8 * 1024 * 1024;
 
-        try {
+    private HttpServer server;
+    private ExecutorService workers;
+    private volatile byte[] content;
+    private volatile String etag;
+    // 前dropCount个GET只发dropAfter个字节就断开
+    private volatile long dropAfter;
+    private final AtomicInteger dropCount = new AtomicInteger();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private File dir;
 
-            // 创建POST请求对象
-            HttpPost httpPost = new HttpPost(imgUrl);
-
-            /*
-             * 添加请求参数
-             */
-            // 创建请求参数
-            List<NameValuePair> list = new LinkedList<>();
-            BasicNameValuePair param1 = new BasicNameValuePair("name", "root");
-            BasicNameValuePair param2 = new BasicNameValuePair("password", "123456");
-            list.add(param1);
-            list.add(param2);
-            // 使用URL实体转换工具
-            UrlEncodedFormEntity entityParam = new UrlEncodedFormEntity(list);
-            httpPost.setEntity(entityParam);
-
-            /*
-             * 添加请求头信息
-             */
-            // 浏览器表示
-            httpPost.addHeader("User-Agent", "Mozilla/5.0 (Windows; U; Windows NT 5.1; en-US; rv:1.7.6)");
-            // 传输的类型
-            httpPost.addHeader("Content-Type", "application/x-www-form-urlencoded");
-
-            // 执行请求
-            response = httpClient.execute(httpPost);
-            // 获得响应的实体对象
-            HttpEntity entity = response.getEntity();
-            // 获取到响应信息的流
-            InputStream is = entity.getContent();
-            // 包装成高效流
-            BufferedInputStream bis = new BufferedInputStream(is);
-
-            // 写入桌面
-            File file = new File("/Users/Claus/Desktop/牛逼.jpg");
-            BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(file));
-
-            byte[] bytes = new byte[1024 * 8];
-            Integer len = -1;
-            while ((len = bis.read(bytes)) != -1) {
-                bos.write(bytes, 0, len);
+    @Before
+    public void startServer() throws IOException {
+        setContent(1);
+        dir = Files.createTempDirectory("download").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+        server.createContext("/", exchange -> {
+            byte[] body = content;
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            long from = 0;
+            long to = body.length - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            ranges.add(String.valueOf(range));
+            if (range != null && (ifRange == null || ifRange.equals(etag))) {
+                String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                from = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    to = Math.min(to, Long.parseLong(bounds[1]));
+                }
+                status = 206;
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + body.length);
             }
-            bos.close();
-            bis.close();
-        } catch (ClientProtocolException e) {
-            System.err.println("Http协议出现问题");
-            e.printStackTrace();
-        } catch (ParseException e) {
-            System.err.println("解析错误");
-            e.printStackTrace();
-        } catch (IOException e) {
-            System.err.println("IO异常");
-            e.printStackTrace();
-        } finally {
-            // 释放连接
-            if (null != response) {
-                try {
-                    response.close();
-                    httpClient.close();
-                } catch (IOException e) {
-                    System.err.println("释放连接出错");
-                    e.printStackTrace();
+            long length = to - from + 1;
+            long limit = dropCount.getAndDecrement() > 0 ? Math.min(length, dropAfter) : length;
+            exchange.sendResponseHeaders(status, length);
+            // 没写够Content-Length时close抛出IOException，HttpServer随之断开连接
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (long off = 0; off < limit; off += 65536) {
+                    out.write(body, (int) (from + off), (int) Math.min(65536, limit - off));
                 }
             }
+        });
+        workers = Executors.newCachedThreadPool();
+        server.setExecutor(workers);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        workers.shutdownNow();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private void setContent(int version) {
+        byte[] bytes = new byte[SIZE];
+        new Random(version).nextBytes(bytes);
+        content = bytes;
+        etag = "\"v" + version + "\"";
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/big.bin";
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Test
+    public void getUriResource() throws Exception {
+        File file = new File(dir, "big.bin");
+        RangeDownloader.Result result = new RangeDownloader(5000).download(url(), file, sha256(content));
+        System.out.println(result);
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(SIZE, result.getDownloaded());
+        assertEquals(0, result.getResumed());
+        assertTrue(result.bytesPerSecond() > 0);
+        assertFalse(new File(dir, "big.bin.part").exists());
+        assertFalse(new File(dir, "big.bin.part.state").exists());
+    }
+
+    @Test
+    public void parallelSegments() throws Exception {
+        File file = new File(dir, "big.bin");
+        RangeDownloader.Result result = new RangeDownloader(5000)
+                .setSegments(4).setMinSegmentBytes(1024 * 1024)
+                .download(url(), file, sha256(content));
+        System.out.println(result);
+
+        assertEquals(4, result.getSegments());
+        assertEquals(4, ranges.size());
+        assertTrue(ranges.contains("bytes=0-2097151"));
+        assertTrue(ranges.contains("bytes=6291456-8388607"));
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void resumesAfterDroppedConnections() throws Exception {
+        dropAfter = 1536 * 1024;
+        dropCount.set(2);
+        File file = new File(dir, "big.bin");
+        RangeDownloader.Result result = new RangeDownloader(5000).download(url(), file, sha256(content));
+        System.out.println("after 2 drops: " + ranges);
+
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        // 续传，没有重复下载
+        assertEquals(SIZE, result.getDownloaded());
+        assertEquals(3, ranges.size());
+        assertTrue(ranges.get(1).startsWith("bytes=") && !ranges.get(1).startsWith("bytes=0-"));
+    }
+
+    @Test
+    public void resumesPartialFileOnNextCall() throws Exception {
+        dropAfter = 3 * 1024 * 1024;
+        dropCount.set(1);
+        File file = new File(dir, "big.bin");
+        RangeDownloader downloader = new RangeDownloader(5000).setRetries(0);
+        try {
+            downloader.download(url(), file);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertTrue(new File(dir, "big.bin.part").exists());
+        assertTrue(new File(dir, "big.bin.part.state").exists());
+
+        RangeDownloader.Result result = downloader.download(url(), file, sha256(content));
+        System.out.println(result);
+        assertTrue(result.getResumed() > 0);
+        assertEquals(SIZE, result.getResumed() + result.getDownloaded());
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void changedFileStartsOver() throws Exception {
+        dropAfter = 3 * 1024 * 1024;
+        dropCount.set(1);
+        File file = new File(dir, "big.bin");
+        RangeDownloader downloader = new RangeDownloader(5000).setRetries(0);
+        try {
+            downloader.download(url(), file);
+            fail();
+        } catch (IOException expected) {
+        }
+
+        // 服务器上的文件换了，If-Range不匹配，旧的部分不能用
+        setContent(2);
+        RangeDownloader.Result result = downloader.download(url(), file, sha256(content));
+        assertEquals(0, result.getResumed());
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void checksumMismatchFails() throws Exception {
+        File file = new File(dir, "big.bin");
+        try {
+            new RangeDownloader(5000).download(url(), file, sha256(new byte[1]));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("mismatch"));
         }
+        assertFalse(file.exists());
+        assertFalse(new File(dir, "big.bin.part").exists());
     }
 }
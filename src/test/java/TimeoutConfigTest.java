@@ -1,4 +1,14 @@
 import org.junit.Test;
+import utils.CrawlHarness;
+import utils.HostFrontier;
+import utils.HttpLinkSource;
+import utils.SyntheticWebServer;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
 
 /**
  * 工作中有这样一个需求，要对上千台的服务器进行更新测试，这时需要开几百个线程做并发测试。
@@ -8,10 +18,105 @@ import org.junit.Test;
  * 1.httpClient客户端连接对象并没有配置连接池，使用默认的连接池不能支持那么多的并发量
  * 2.没有给每一次的连接设置【连接超时】【请求超时】【响应超时】，如果没有设置超时时间，连接
  *  可能会一直存在阻塞，所以线程一直停在那里，其实线程没有死掉。
+ *
+ * 下面用SyntheticWebServer在本机模拟上千台服务器，不需要外网就能复现：
+ * 不响应的服务器由超时兜住；慢慢滴数据的服务器每次读都不超时，线程照样被卡住，CrawlHarness会报出来。
  */
+public class TimeoutConfigTest {
 
+    @Test
+    public void syntheticWebServesPowerLawGraph() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(100000).hosts(2000).latency(1, 0);
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            HttpLinkSource source = new HttpLinkSource(server.registry(), 2000, 0);
+            for (int node = 0; node < 5; node++) {
+                List<String> expected = new ArrayList<>();
+                for (int child : server.children(node)) {
+                    expected.add(server.url(child));
+                }
+                assertEquals(expected, source.getUrls(server.url(node)));
+            }
+            assertNotEquals(HostFrontier.hostOf(server.url(0)), HostFrontier.hostOf(server.url(1)));
+            assertEquals(HostFrontier.hostOf(server.url(0)), HostFrontier.hostOf(server.url(2000)));
+            // 按Host头分虚拟host，n1不在h0上
+            String wrongHost = server.url(1).replace(server.hostName(1) + ":", server.hostName(0) + ":");
+            assertTrue(source.getUrls(wrongHost).isEmpty());
 
+            // 大多数页面链接很少，少数链接很多
+            int few = 0;
+            int many = 0;
+            for (int node = 0; node < 10000; node++) {
+                int degree = server.children(node).length - 2;
+                if (degree <= 2) {
+                    few++;
+                } else if (degree >= 50) {
+                    many++;
+                }
+            }
+            assertTrue("few: " + few, few > 6500);
+            assertTrue("many: " + many, many > 10 && many < 300);
+        }
+    }
 
-public class TimeoutConfigTest {
+    @Test
+    public void timeoutCatchesSilentServerButNotSlowDrip() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(10000).hosts(10).latency(1, 0)
+                .timeouts(0.05).slowDrip(0.05, 100, 128).pageBytes(1024);
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            int silent = find(server, SyntheticWebServer.Behavior.TIMEOUT);
+            int drip = find(server, SyntheticWebServer.Behavior.SLOW_DRIP);
+            HttpLinkSource source = new HttpLinkSource(server.registry(), 300, 0);
+
+            long start = System.currentTimeMillis();
+            try {
+                source.getUrls(server.url(silent));
+                fail("silent server should time out");
+            } catch (SocketTimeoutException e) {
+                assertTrue(System.currentTimeMillis() - start < 2000);
+            }
+
+            // 每100ms来128字节，每次读都在300ms以内，整个页面却超过了超时时间
+            start = System.currentTimeMillis();
+            assertFalse(source.getUrls(server.url(drip)).isEmpty());
+            long millis = System.currentTimeMillis() - start;
+            assertTrue("drip took " + millis, millis > 600);
+        }
+    }
+
+    @Test
+    public void crawlThousandsOfHostsOffline() throws Exception {
+        SyntheticWebServer.Profile profile = new SyntheticWebServer.Profile()
+                .nodes(5000).hosts(1000).latency(5, 0.5)
+                .errors(0.01).timeouts(0.005).slowDrip(0.005, 100, 256).pageBytes(2048);
+        try (SyntheticWebServer server = new SyntheticWebServer(profile)) {
+            CrawlHarness harness = new CrawlHarness(server.registry(), 500, 32, 500);
+            CrawlHarness.Report report = harness.crawl(server.url(0));
+            System.out.println("synthetic crawl: " + report);
+            System.out.println("server: " + server.requests() + " requests, " + server.connections()
+                    + " connections, " + server.errors() + " errors, " + server.timeouts() + " timeouts, "
+                    + server.slowDrips() + " slow drips");
+
+            assertTrue(report.pages > 0.9 * server.nodes());
+            assertTrue(report.pagesPerSecond() > 0);
+            // 不响应的服务器都超时失败了，CrawlRetryHandler对超时会重试，服务器看到的请求更多
+            assertTrue(report.failures > 0);
+            assertTrue(server.timeouts() >= report.failures);
+            // 慢慢滴数据的页面要800ms左右，都被当成卡住的线程报出来
+            assertTrue(server.slowDrips() > 0);
+            assertTrue(report.stalledFetches >= server.slowDrips());
+            assertTrue(report.maxStalledThreads > 0);
+            assertTrue(report.leases >= report.pages);
+        }
+    }
 
+    private static int find(SyntheticWebServer server, SyntheticWebServer.Behavior behavior) {
+        for (int node = 0; node < server.nodes(); node++) {
+            if (server.behavior(node) == behavior) {
+                return node;
+            }
+        }
+        throw new IllegalStateException("no " + behavior + " node");
+    }
 }
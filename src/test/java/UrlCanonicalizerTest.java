@@ -0,0 +1,107 @@
+import org.junit.Test;
+import utils.CrawlerManager;
+import utils.UrlCanonicalizer;
+import utils.UrlFingerprint;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * url规范化：同一个页面的不同写法得到同一个url和指纹，每个url几乎不分配内存
+ */
+public class UrlCanonicalizerTest {
+    private final UrlCanonicalizer canonicalizer = UrlCanonicalizer.DEFAULT;
+
+    @Test
+    public void variantsOfTheSamePage() {
+        String canonical = "http://a.com/x";
+        for (String url : new String[]{"http://a.com/x", "http://A.com:80/x#frag", "HTTP://a.COM/x?utm_source=news&utm_medium=email",
+                "http://a.com/x?", "http://a.com/x?&gclid=123&", "http://a.com:80/x?fbclid=1#top"}) {
+            assertEquals(url, canonical, canonicalizer.canonicalize(url));
+            assertEquals(url, UrlFingerprint.of(canonical), canonicalizer.fingerprint(url));
+        }
+        // 已经是规范形式的返回同一个对象
+        assertSame(canonical, canonicalizer.canonicalize(canonical));
+    }
+
+    @Test
+    public void rules() {
+        assertEquals("http://a.com/", canonicalizer.canonicalize("http://a.com"));
+        assertEquals("http://a.com/?q=1", canonicalizer.canonicalize("http://a.com?q=1"));
+        assertEquals("https://a.com/", canonicalizer.canonicalize("https://a.com:443"));
+        assertEquals("https://a.com:80/", canonicalizer.canonicalize("https://a.com:80/"));
+        assertEquals("http://a.com:8080/p", canonicalizer.canonicalize("http://a.com:8080/p"));
+        assertEquals("http://a.com/p?a=1&a=2&b=&c=3", canonicalizer.canonicalize("http://a.com/p?c=3&a=2&b=&a=1&utm_x=9"));
+        assertEquals("http://a.com/%C3%A9?x=%2F", canonicalizer.canonicalize("http://a.com/%c3%a9?x=%2f"));
+        assertEquals("http://User:Pw@a.com/", canonicalizer.canonicalize("http://User:Pw@A.com/"));
+        assertEquals("http://[::1]:8080/", canonicalizer.canonicalize("http://[::1]:8080"));
+        assertEquals("http://[::1]/", canonicalizer.canonicalize("http://[::1]:80/"));
+        // 路径的大小写有意义，不改
+        assertEquals("http://a.com/Path/X", canonicalizer.canonicalize("http://a.com/Path/X"));
+        // 不是http(s)的原样返回
+        assertEquals("u1", canonicalizer.canonicalize("u1"));
+        assertEquals("ftp://A.com/x", canonicalizer.canonicalize("ftp://A.com/x"));
+
+        UrlCanonicalizer custom = new UrlCanonicalizer(new HashSet<>(Arrays.asList("sid", "ref*")));
+        assertEquals("http://a.com/?utm_source=x", custom.canonicalize("http://a.com/?sid=1&referrer=2&utm_source=x"));
+    }
+
+    @Test
+    public void crawlFetchesEachPageOnce() {
+        // 每个页面链接到下一个页面的几种写法
+        final int pages = 200;
+        final Map<String, Integer> fetches = new ConcurrentHashMap<>();
+        CrawlerManager manager = new CrawlerManager(url -> {
+            fetches.merge(url, 1, Integer::sum);
+            int i = Integer.parseInt(url.substring(url.lastIndexOf('p') + 1).replaceAll("[^0-9].*", ""));
+            if (i + 1 == pages) {
+                return Collections.emptyList();
+            }
+            String next = "/p" + (i + 1);
+            return Arrays.asList("http://a.com" + next, "http://A.COM:80" + next + "#comments",
+                    "http://a.com" + next + "?utm_source=feed", "http://a.com" + next + "?fbclid=abc&utm_medium=social");
+        }, 4, 16, 0);
+        List<String> result = manager.crawl("http://a.com/p0");
+        assertEquals(pages, result.size());
+        assertEquals(pages, fetches.size());
+        for (int count : fetches.values()) {
+            assertEquals(1, count);
+        }
+    }
+
+    @Test
+    public void fingerprintDoesNotAllocate() {
+        List<String> urls = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 10000; i++) {
+            urls.add("http://Host" + random.nextInt(100) + ".com:80/path/" + i + "?b=" + random.nextInt(10)
+                    + "&utm_source=x&a=" + i + "#frag");
+        }
+        long sum = 0;
+        // 预热
+        for (int round = 0; round < 20; round++) {
+            for (String url : urls) {
+                sum += canonicalizer.fingerprint(url);
+            }
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int rounds = 100;
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String url : urls) {
+                sum += canonicalizer.fingerprint(url);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        double perUrl = allocated / (double) (rounds * urls.size());
+        System.out.printf("fingerprint: %.0f ns/url, %.2f bytes allocated/url (%d)%n",
+                elapsed / (double) (rounds * urls.size()), perUrl, sum & 1);
+        assertTrue(perUrl < 1);
+    }
+}
@@ -0,0 +1,133 @@
+import org.junit.Test;
+import utils.BloomSeenSet;
+import utils.FingerprintSeenSet;
+import utils.UrlSeenSet;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * 两种去重集合的正确性、并发add和每个url的内存占用。
+ */
+public class UrlSeenSetTest {
+    private static final int URLS = 1000000;
+    private static final int THREADS = 8;
+
+    @Test
+    public void exactSetGrowsAndDedups() {
+        FingerprintSeenSet seen = new FingerprintSeenSet(16);
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(seen.add(url(i)));
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertFalse(seen.add(url(i)));
+            assertTrue(seen.contains(url(i)));
+        }
+        assertFalse(seen.contains(url(100000)));
+        assertEquals(100000, seen.size());
+    }
+
+    @Test
+    public void concurrentAddsReturnTrueOncePerUrl() throws Exception {
+        assertEquals(URLS, concurrentAdds(new FingerprintSeenSet(URLS)));
+
+        // 布隆过滤器的误判只会让新url被当成见过，不会让同一个url被接受两次
+        long accepted = concurrentAdds(new BloomSeenSet(URLS, 0.01));
+        assertTrue(accepted <= URLS);
+        assertTrue(accepted > URLS * 0.98);
+    }
+
+    @Test
+    public void bloomFalsePositiveRate() {
+        for (double fpp : new double[]{0.01, 0.001}) {
+            BloomSeenSet seen = new BloomSeenSet(URLS, fpp);
+            for (int i = 0; i < URLS; i++) {
+                seen.add(url(i));
+            }
+            for (int i = 0; i < URLS; i++) {
+                assertTrue(seen.contains(url(i)));
+            }
+            int falsePositives = 0;
+            for (int i = URLS; i < 2 * URLS; i++) {
+                if (seen.contains(url(i))) {
+                    falsePositives++;
+                }
+            }
+            double rate = (double) falsePositives / URLS;
+            System.out.printf("bloom fpp=%s: measured %.4f with %d hashes%n", fpp, rate, seen.hashes());
+            assertTrue(rate < fpp * 2);
+        }
+    }
+
+    @Test
+    public void memoryPerUrl() {
+        report("FingerprintSeenSet", new FingerprintSeenSet(URLS));
+        report("BloomSeenSet 1%", new BloomSeenSet(URLS, 0.01));
+        report("BloomSeenSet 0.1%", new BloomSeenSet(URLS, 0.001));
+
+        // 对比：HashSet<String>按堆的增长粗略估算，包括String本身
+        System.gc();
+        long before = usedHeap();
+        Set<String> strings = new HashSet<>();
+        for (int i = 0; i < URLS; i++) {
+            strings.add(url(i));
+        }
+        System.gc();
+        long after = usedHeap();
+        System.out.printf("HashSet<String>: ~%.1f bytes/url (heap delta, %d urls)%n",
+                (double) (after - before) / strings.size(), strings.size());
+    }
+
+    private static void report(String name, UrlSeenSet seen) {
+        for (int i = 0; i < URLS; i++) {
+            seen.add(url(i));
+        }
+        System.out.printf("%s: %.1f bytes/url (%d urls, %d bytes)%n",
+                name, (double) seen.memoryBytes() / seen.size(), seen.size(), seen.memoryBytes());
+    }
+
+    /**
+     * 每个线程都把全部url add一遍，返回add返回true的总次数
+     */
+    private static long concurrentAdds(final UrlSeenSet seen) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final AtomicLong accepted = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                final int offset = t * (URLS / THREADS);
+                futures[t] = executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < URLS; i++) {
+                        if (seen.add(url((i + offset) % URLS))) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(accepted.get(), seen.size());
+        return accepted.get();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String url(int i) {
+        return "http://www.site" + (i % 997) + ".com/page/" + i + ".html";
+    }
+}
@@ -0,0 +1,194 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 00:50
+ **/
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 运行时调整同时抓取的页面数，代替按 （等待时间+CPU时间）/CPU时间 × 核数 估出来的固定线程数。
+ * 等待时间随网站、网络和连接池变化，估一次不够用。
+ * 基于梯度的算法（和Netflix concurrency-limits的Gradient2相同的思路），每收集一个窗口的抓取结果调整一次：
+ *  - 短期延迟 = 这个窗口里成功抓取的平均耗时
+ *  - 基准延迟 = 见过的最低的短期延迟，不会跟着并发升高带来的排队一起涨，用滑动平均的话会被一点点拖上去。
+ *    连续几个窗口延迟都超过容忍度、并发降了10%以上延迟却没怎么降（降幅不到并发降幅的一半）时，
+ *    说明不是我们自己排队造成的
+ *    （比如爬到了一批更慢的网站），这时把基准重置为当前的延迟
+ *  - 梯度 = 基准延迟 × 容忍度 / 短期延迟，限制在0.5到1之间；延迟没有超过基准的1.5倍时为1
+ *  - 梯度为1时上限每个窗口增加sqrt(上限)，小于1时上限乘以梯度
+ *  - 一个窗口里失败率超过maxErrorRate时直接乘以0.7，对方扛不住了先退让
+ *  - 同时进行的抓取不到上限的一半时不再增长，frontier里没有url时上限不会涨到最大
+ * 上限始终在[minLimit, maxLimit]之间。只在master线程里调用，不是线程安全的。
+ */
+public class AdaptiveConcurrency {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveConcurrency.class);
+
+    public static final double DEFAULT_MAX_ERROR_RATE = 0.2;
+    private static final int MIN_WINDOW = 10;
+    private static final double TOLERANCE = 1.5;
+    private static final int RESET_WINDOWS = 5;
+    private static final double BACKOFF = 0.7;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double maxErrorRate;
+    private double limit;
+    private double baselineRtt;
+    private double shortRtt;
+    // 连续几个窗口延迟超过容忍度，以及第一个窗口的延迟
+    private int slowWindows;
+    private double slowStartRtt;
+    private double slowStartLimit;
+
+    // 当前窗口
+    private int samples;
+    private int errors;
+    private long rttTotal;
+    private int maxInFlight;
+    private long windowStart = System.nanoTime();
+    private double throughput;
+    private long adjustments;
+
+    /**
+     * @param initial      开始时的上限
+     * @param minLimit     上限最小是多少，至少为1
+     * @param maxLimit     上限最大是多少，一般不超过连接池的大小
+     * @param maxErrorRate 一个窗口里失败的比例超过它就退让
+     */
+    public AdaptiveConcurrency(int initial, int minLimit, int maxLimit, double maxErrorRate) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("need 0 < minLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxErrorRate = maxErrorRate;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initial));
+    }
+
+    public AdaptiveConcurrency(int minLimit, int maxLimit) {
+        this(minLimit, minLimit, maxLimit, DEFAULT_MAX_ERROR_RATE);
+    }
+
+    /**
+     * 从CPU核数开始，最多用满HttpPoolUtil的连接池
+     */
+    public static AdaptiveConcurrency forHttpPool() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new AdaptiveConcurrency(2 * cores + 1, Math.min(cores, HttpPoolUtil.MAX_TOTAL),
+                HttpPoolUtil.MAX_TOTAL, DEFAULT_MAX_ERROR_RATE);
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int minLimit() {
+        return minLimit;
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return 上一个窗口每秒完成的抓取数
+     */
+    public double throughput() {
+        return throughput;
+    }
+
+    /**
+     * @return 上限改变过多少次
+     */
+    public long adjustments() {
+        return adjustments;
+    }
+
+    /**
+     * 一次抓取结束
+     *
+     * @param rttNanos 这次抓取的耗时
+     * @param error    是否失败，失败的耗时不算进延迟，超时的耗时只反映超时配置
+     * @param inFlight 包括这一次在内，结束时还有多少抓取在进行
+     * @return 上限是否变了
+     */
+    public boolean onSample(long rttNanos, boolean error, int inFlight) {
+        samples++;
+        maxInFlight = Math.max(maxInFlight, inFlight);
+        if (error) {
+            errors++;
+        } else {
+            rttTotal += rttNanos;
+        }
+        if (samples < Math.max(MIN_WINDOW, limit())) {
+            return false;
+        }
+        long now = System.nanoTime();
+        throughput = samples * 1e9 / Math.max(1, now - windowStart);
+        int before = limit();
+        update();
+        boolean changed = limit() != before;
+        if (changed) {
+            adjustments++;
+            LOG.debug("concurrency limit {} -> {}, rtt baseline {} ms short {} ms, errors {}/{}, {} fetches/s",
+                    before, limit(), String.format("%.1f", baselineRtt / 1e6), String.format("%.1f", shortRtt / 1e6),
+                    errors, samples, String.format("%.0f", throughput));
+        }
+        samples = 0;
+        errors = 0;
+        rttTotal = 0;
+        maxInFlight = 0;
+        windowStart = now;
+        return changed;
+    }
+
+    private void update() {
+        double newLimit;
+        if (errors > maxErrorRate * samples) {
+            newLimit = limit * BACKOFF;
+        } else {
+            int successes = samples - errors;
+            if (successes == 0) {
+                return;
+            }
+            shortRtt = (double) rttTotal / successes;
+            updateBaseline();
+            if (maxInFlight < limit / 2) {
+                // 没用满，不知道更高的并发会怎样
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineRtt / shortRtt));
+            if (gradient >= 1.0) {
+                newLimit = limit + Math.sqrt(limit);
+            } else {
+                newLimit = limit * gradient;
+            }
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private void updateBaseline() {
+        if (baselineRtt == 0 || shortRtt <= baselineRtt) {
+            baselineRtt = shortRtt;
+            slowWindows = 0;
+        } else if (shortRtt > TOLERANCE * baselineRtt) {
+            if (slowWindows == 0) {
+                slowStartRtt = shortRtt;
+                slowStartLimit = limit;
+            }
+            if (++slowWindows >= RESET_WINDOWS && limit < 0.9 * slowStartLimit) {
+                double limitDrop = 1 - limit / slowStartLimit;
+                double rttDrop = 1 - shortRtt / slowStartRtt;
+                if (rttDrop < limitDrop / 2) {
+                    baselineRtt = shortRtt;
+                }
+                slowWindows = 0;
+            }
+        } else {
+            slowWindows = 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 14:00
+ **/
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 基于httpasyncclient（NIO reactor）的异步抓取。
+ *  - 超时和HttpPoolUtil.getHttpClient一样分三种：从连接池拿连接、建立连接、读响应
+ *  - 异步客户端没有HttpRequestRetryHandler，请求失败时按CrawlRetryHandler的规则重新发起
+ *  - 连接池的maxTotal和maxPerRoute默认和HttpPoolUtil一致，可以按需要调大，
+ *    并发只受连接数限制，不再受线程数限制
+ */
+public class AsyncFetcher implements Fetcher {
+    private final CloseableHttpAsyncClient client;
+
+    public AsyncFetcher(int timeOut) throws IOReactorException {
+        this(timeOut, HttpPoolUtil.MAX_TOTAL, HttpPoolUtil.DEFAULT_MAX_PER_ROUTE,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param timeOut     超时时间，毫秒
+     * @param maxTotal    最大连接数
+     * @param maxPerRoute 每个路由的最大连接数
+     * @param ioThreads   reactor的IO线程数
+     */
+    public AsyncFetcher(int timeOut, int maxTotal, int maxPerRoute, int ioThreads) throws IOReactorException {
+        IOReactorConfig ioConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(timeOut)
+                .setSoTimeout(timeOut)
+                .build();
+        PoolingNHttpClientConnectionManager connManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioConfig));
+        connManager.setMaxTotal(maxTotal);
+        connManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                // 从连接池获取连接的最长时间
+                .setConnectionRequestTimeout(timeOut)
+                // 创建连接的最长时间
+                .setConnectTimeout(timeOut)
+                // 响应的最长时间
+                .setSocketTimeout(timeOut)
+                .build();
+
+        client = HttpAsyncClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connManager)
+                .build();
+        client.start();
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(String url) {
+        CompletableFuture<FetchResponse> future = new CompletableFuture<>();
+        execute(url, future, 1);
+        return future;
+    }
+
+    /**
+     * @param executionCount 第几次执行，和HttpRequestRetryHandler的含义一样
+     */
+    private void execute(final String url, final CompletableFuture<FetchResponse> future, final int executionCount) {
+        final HttpClientContext context = HttpClientContext.create();
+        final HttpGet httpGet;
+        try {
+            httpGet = new HttpGet(url);
+        } catch (IllegalArgumentException e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        client.execute(httpGet, context, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    future.complete(FetchResponse.of(url, response));
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                if (e instanceof IOException
+                        && CrawlRetryHandler.INSTANCE.retryRequest((IOException) e, executionCount, context)) {
+                    execute(url, future, executionCount + 1);
+                } else {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
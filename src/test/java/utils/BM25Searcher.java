@@ -0,0 +1,392 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 20:40
+ **/
+
+import java.util.*;
+
+/**
+ * 在IndexReader上按BM25取前k个结果。
+ * pruning为false时把倒排表里每个匹配的文档都打一遍分；为true时用分数上限跳过进不了前k的文档：
+ *  - OR：MaxScore。按上限从小到大排，上限之和不超过当前第k名分数的那些词是"非必要"的，
+ *    只包含非必要词的文档不可能进前k，候选文档只从必要词里取；
+ *    候选文档再用非必要词所在块的上限（块里的最大词频、最短文档）估一次，不够就不去解码它们
+ *  - AND：按df从小到大，用最稀有的词带着走；所有词在当前块的上限之和不够时，
+ *    直接跳到这些块里最早结束的那个之后
+ * 两种方式返回的结果完全一样，包括分数。
+ * 不是线程安全的，每个线程用自己的实例。
+ */
+public class BM25Searcher {
+    public static final double K1 = 1.2;
+    public static final double B = 0.75;
+
+    public enum Operator {
+        AND, OR
+    }
+
+    private final IndexReader reader;
+    private final Tokenizer tokenizer = new Tokenizer(false);
+    // K1 * (1 - B + B * dl / avgdl)，每个文档算一次
+    private final float[] norms;
+    private final double averageLength;
+    private long scoredDocs;
+
+    public BM25Searcher(IndexReader reader) {
+        this.reader = reader;
+        this.averageLength = Math.max(1, reader.averageDocLength());
+        this.norms = new float[reader.maxDoc()];
+        for (int doc = 0; doc < norms.length; doc++) {
+            norms[doc] = (float) norm(reader.docLength(doc));
+        }
+    }
+
+    /**
+     * @param query   查询，和建索引时同样的规则切词，重复的词只算一次
+     * @param k       返回的结果数
+     * @param pruning 是否跳过不可能进前k的文档
+     */
+    public TopDocs search(String query, int k, Operator operator, boolean pruning) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        scoredDocs = 0;
+        List<TermScorer> scorers = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(tokenizer.tokens(query))) {
+            Postings postings = reader.postings(term);
+            if (postings == null) {
+                if (operator == Operator.AND) {
+                    return new TopDocs(Collections.<Hit>emptyList(), 0);
+                }
+                continue;
+            }
+            scorers.add(new TermScorer(scorers.size(), postings, idf(postings.docFreq())));
+        }
+        TopK top = new TopK(k);
+        if (!scorers.isEmpty()) {
+            if (operator == Operator.AND) {
+                searchAnd(scorers, top, pruning);
+            } else if (pruning) {
+                searchOrMaxScore(scorers, top);
+            } else {
+                searchOr(scorers, top);
+            }
+        }
+        return new TopDocs(top.hits(reader), scoredDocs);
+    }
+
+    private void searchOr(List<TermScorer> scorers, TopK top) {
+        double[] contributions = new double[scorers.size()];
+        for (TermScorer scorer : scorers) {
+            scorer.postings.nextDoc();
+        }
+        while (true) {
+            int doc = Postings.NO_MORE_DOCS;
+            for (TermScorer scorer : scorers) {
+                doc = Math.min(doc, scorer.postings.docID());
+            }
+            if (doc == Postings.NO_MORE_DOCS) {
+                return;
+            }
+            Arrays.fill(contributions, 0);
+            for (TermScorer scorer : scorers) {
+                if (scorer.postings.docID() == doc) {
+                    contributions[scorer.index] = scorer.score(scorer.postings.freq(), norms[doc]);
+                    scorer.postings.nextDoc();
+                }
+            }
+            collect(top, doc, contributions);
+        }
+    }
+
+    private void searchOrMaxScore(List<TermScorer> scorers, TopK top) {
+        int n = scorers.size();
+        TermScorer[] sorted = scorers.toArray(new TermScorer[n]);
+        Arrays.sort(sorted, (a, b) -> Double.compare(a.maxScore, b.maxScore));
+        // cumulative[i]：前i+1个词的上限之和
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += sorted[i].maxScore;
+            cumulative[i] = sum;
+        }
+        double[] contributions = new double[n];
+        double[] blockBounds = new double[n];
+        for (TermScorer scorer : sorted) {
+            scorer.postings.nextDoc();
+        }
+        int firstEssential = 0;
+        while (true) {
+            double threshold = top.threshold();
+            while (firstEssential < n && !exceeds(cumulative[firstEssential], threshold)) {
+                firstEssential++;
+            }
+            if (firstEssential == n) {
+                return;
+            }
+            int doc = Postings.NO_MORE_DOCS;
+            for (int i = firstEssential; i < n; i++) {
+                doc = Math.min(doc, sorted[i].postings.docID());
+            }
+            if (doc == Postings.NO_MORE_DOCS) {
+                return;
+            }
+            Arrays.fill(contributions, 0);
+            double score = 0;
+            for (int i = firstEssential; i < n; i++) {
+                TermScorer scorer = sorted[i];
+                if (scorer.postings.docID() == doc) {
+                    double contribution = scorer.score(scorer.postings.freq(), norms[doc]);
+                    contributions[scorer.index] = contribution;
+                    score += contribution;
+                    scorer.postings.nextDoc();
+                }
+            }
+            // 先用非必要词所在块的上限估计，够不上就不用解码它们
+            double upper = score;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                blockBounds[i] = sorted[i].blockMaxScoreAt(doc);
+                upper += blockBounds[i];
+            }
+            if (!exceeds(upper, threshold)) {
+                continue;
+            }
+            for (int i = firstEssential - 1; i >= 0 && exceeds(upper, threshold); i--) {
+                TermScorer scorer = sorted[i];
+                upper -= blockBounds[i];
+                if (scorer.postings.advance(doc) == doc) {
+                    double contribution = scorer.score(scorer.postings.freq(), norms[doc]);
+                    contributions[scorer.index] = contribution;
+                    upper += contribution;
+                }
+            }
+            if (exceeds(upper, threshold)) {
+                collect(top, doc, contributions);
+            }
+        }
+    }
+
+    private void searchAnd(List<TermScorer> scorers, TopK top, boolean pruning) {
+        int n = scorers.size();
+        TermScorer[] sorted = scorers.toArray(new TermScorer[n]);
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.postings.docFreq(), b.postings.docFreq()));
+        double[] contributions = new double[n];
+        Postings lead = sorted[0].postings;
+        // 当前这组块的上限和结束位置，doc走出这组块才重新算
+        double upper = 0;
+        int blockEnd = -1;
+        int doc = lead.nextDoc();
+        while (doc != Postings.NO_MORE_DOCS) {
+            if (pruning && top.isFull()) {
+                if (doc > blockEnd) {
+                    upper = 0;
+                    blockEnd = Integer.MAX_VALUE;
+                    for (TermScorer scorer : sorted) {
+                        int block = scorer.postings.findBlock(doc);
+                        if (block == scorer.postings.blockCount()) {
+                            return;
+                        }
+                        upper += scorer.blockMaxScore(block);
+                        blockEnd = Math.min(blockEnd, scorer.postings.blockLastDoc(block));
+                    }
+                }
+                // 所有词在doc所在块的上限加起来还不够，跳过这些块里最早结束的那个
+                if (!exceeds(upper, top.threshold())) {
+                    doc = lead.advance(blockEnd + 1);
+                    continue;
+                }
+            }
+            int next = doc;
+            for (int i = 1; i < n; i++) {
+                next = sorted[i].postings.advance(doc);
+                if (next != doc) {
+                    break;
+                }
+            }
+            if (next != doc) {
+                doc = next == Postings.NO_MORE_DOCS ? next : lead.advance(next);
+                continue;
+            }
+            for (TermScorer scorer : sorted) {
+                contributions[scorer.index] = scorer.score(scorer.postings.freq(), norms[doc]);
+            }
+            collect(top, doc, contributions);
+            doc = lead.nextDoc();
+        }
+    }
+
+    /**
+     * 分数按查询里词的顺序相加，保证剪枝和不剪枝时同一个文档的分数一模一样
+     */
+    private void collect(TopK top, int doc, double[] contributions) {
+        double score = 0;
+        for (double contribution : contributions) {
+            score += contribution;
+        }
+        scoredDocs++;
+        top.offer(doc, score);
+    }
+
+    /**
+     * 浮点数相加顺序不同会有误差，上限放宽一点，不会因为误差漏掉文档
+     */
+    private static boolean exceeds(double upper, double threshold) {
+        return upper * (1 + 1e-9) > threshold;
+    }
+
+    private double norm(int length) {
+        return K1 * (1 - B + B * length / averageLength);
+    }
+
+    private double idf(int docFreq) {
+        return Math.log(1 + (reader.docCount() - docFreq + 0.5) / (docFreq + 0.5));
+    }
+
+    private final class TermScorer {
+        final int index;
+        final Postings postings;
+        final double idf;
+        // 整个倒排表的分数上限
+        final double maxScore;
+
+        TermScorer(int index, Postings postings, double idf) {
+            this.index = index;
+            this.postings = postings;
+            this.idf = idf;
+            double max = 0;
+            for (int b = 0; b < postings.blockCount(); b++) {
+                max = Math.max(max, blockMaxScore(b));
+            }
+            this.maxScore = max;
+        }
+
+        double score(int freq, double norm) {
+            return idf * freq * (K1 + 1) / (freq + norm);
+        }
+
+        /**
+         * 块里最大的词频配上最短的文档，就是这一块里任何文档能拿到的最高分
+         */
+        double blockMaxScore(int block) {
+            return score(postings.blockMaxFreq(block), (float) norm(postings.blockMinLength(block)));
+        }
+
+        /**
+         * @return doc所在块的分数上限，doc在最后一块之后时为0
+         */
+        double blockMaxScoreAt(int doc) {
+            int block = postings.findBlock(doc);
+            return block == postings.blockCount() ? 0 : blockMaxScore(block);
+        }
+    }
+
+    /**
+     * 小顶堆，分数相同时doc id小的排前面
+     */
+    private static final class TopK {
+        private final int k;
+        private final PriorityQueue<double[]> heap;
+
+        TopK(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<>(k, (a, b) -> a[1] != b[1] ? Double.compare(a[1], b[1])
+                    : Double.compare(b[0], a[0]));
+        }
+
+        boolean isFull() {
+            return heap.size() == k;
+        }
+
+        /**
+         * @return 进前k需要超过的分数
+         */
+        double threshold() {
+            return isFull() ? heap.peek()[1] : 0;
+        }
+
+        void offer(int doc, double score) {
+            if (!isFull()) {
+                heap.add(new double[]{doc, score});
+            } else if (score > heap.peek()[1]) {
+                heap.poll();
+                heap.add(new double[]{doc, score});
+            }
+        }
+
+        List<Hit> hits(IndexReader reader) {
+            List<double[]> entries = new ArrayList<>(heap);
+            entries.sort((a, b) -> a[1] != b[1] ? Double.compare(b[1], a[1]) : Double.compare(a[0], b[0]));
+            List<Hit> hits = new ArrayList<>(entries.size());
+            for (double[] entry : entries) {
+                int doc = (int) entry[0];
+                hits.add(new Hit(doc, entry[1], reader.url(doc)));
+            }
+            return hits;
+        }
+    }
+
+    public static final class Hit {
+        private final int doc;
+        private final double score;
+        private final String url;
+
+        Hit(int doc, double score, String url) {
+            this.doc = doc;
+            this.score = score;
+            this.url = url;
+        }
+
+        public int getDoc() {
+            return doc;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Hit)) {
+                return false;
+            }
+            Hit hit = (Hit) o;
+            return doc == hit.doc && score == hit.score;
+        }
+
+        @Override
+        public int hashCode() {
+            return doc * 31 + Double.hashCode(score);
+        }
+
+        @Override
+        public String toString() {
+            return doc + ":" + score;
+        }
+    }
+
+    public static final class TopDocs {
+        private final List<Hit> hits;
+        private final long scoredDocs;
+
+        TopDocs(List<Hit> hits, long scoredDocs) {
+            this.hits = hits;
+            this.scoredDocs = scoredDocs;
+        }
+
+        public List<Hit> getHits() {
+            return hits;
+        }
+
+        /**
+         * @return 完整打过分的文档数，剪枝的效果看它
+         */
+        public long getScoredDocs() {
+            return scoredDocs;
+        }
+    }
+}
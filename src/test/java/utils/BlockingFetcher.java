@@ -0,0 +1,45 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 14:00
+ **/
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基于HttpPoolUtil的同步抓取，每个请求在线程池里占一个线程直到响应读完
+ */
+public class BlockingFetcher implements Fetcher {
+    private final ExecutorService executor;
+    private final int timeOut;
+
+    /**
+     * @param threads 同时进行的请求数
+     * @param timeOut 超时时间，同HttpPoolUtil.httpGet
+     */
+    public BlockingFetcher(int threads, int timeOut) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.timeOut = timeOut;
+    }
+
+    @Override
+    public CompletableFuture<FetchResponse> fetch(final String url) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return HttpPoolUtil.fetch(url, timeOut);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,154 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 12:30
+ **/
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 上亿url规模用的布隆过滤器，每个url只占 -ln(p) / (ln2)^2 位，1%误判率约9.6位。
+ * 代价是有误判：没见过的url可能被当成见过而漏爬，不会重复爬。
+ *
+ * 位数组按512位（一个cache line）分块，一个url的k个位都落在同一块里，
+ * 查询只访问一次内存。块按下标分到不同的锁上，add的"检查再置位"在锁内完成，
+ * 所以并发add同一个url只会有一个返回true。分块会让误判率比理论值高，
+ * 位数按分块后的误判率来定，1%时大约多用一成的内存。
+ */
+public class BloomSeenSet implements UrlSeenSet {
+    private static final int BLOCK_BITS = 512;
+    private static final int BLOCK_LONGS = BLOCK_BITS / 64;
+    private static final int STRIPES = 1024;
+    // 块内的位置要9位，一个64位哈希切成7段用，不够时再打散一次。
+    // 不用 h1 + i * h2 的双重哈希，它在512位的小空间里各个url的位置相关性太强
+    private static final int BITS_PER_HASH = 7;
+
+    private final long[] bits;
+    private final int blocks;
+    private final int hashes;
+    private final Object[] locks = new Object[STRIPES];
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * @param expectedUrls 预计的url数量
+     * @param fpp          期望的误判率，例如0.01
+     */
+    public BloomSeenSet(long expectedUrls, double fpp) {
+        if (expectedUrls <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedUrls must be positive and 0 < fpp < 1");
+        }
+        double ln2 = Math.log(2);
+        // 先按普通布隆过滤器算位数，再按分块后的误判率往上加，直到满足fpp
+        long totalBits = (long) Math.ceil(-expectedUrls * Math.log(fpp) / (ln2 * ln2));
+        long blockCount = Math.max(1, (totalBits + BLOCK_BITS - 1) / BLOCK_BITS);
+        int k = optimalHashes(blockCount, expectedUrls);
+        while (blockedFpp((double) expectedUrls / blockCount, k) > fpp) {
+            blockCount += Math.max(1, blockCount / 20);
+            k = optimalHashes(blockCount, expectedUrls);
+        }
+        if (blockCount * BLOCK_LONGS > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("bloom filter too large: " + blockCount * BLOCK_BITS + " bits");
+        }
+        this.blocks = (int) blockCount;
+        this.bits = new long[blocks * BLOCK_LONGS];
+        this.hashes = k;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public boolean add(String url) {
+        return addFingerprint(UrlFingerprint.of(url));
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return containsFingerprint(UrlFingerprint.of(url));
+    }
+
+    public boolean addFingerprint(long fingerprint) {
+        int block = block(fingerprint);
+        long h = UrlFingerprint.mix(fingerprint);
+        int base = block * BLOCK_LONGS;
+        boolean added = false;
+        synchronized (locks[block & (STRIPES - 1)]) {
+            for (int i = 0; i < hashes; i++) {
+                if (i > 0 && i % BITS_PER_HASH == 0) {
+                    h = UrlFingerprint.mix(h + i);
+                }
+                int bit = (int) (h >>> (9 * (i % BITS_PER_HASH))) & (BLOCK_BITS - 1);
+                int word = base + (bit >>> 6);
+                long mask = 1L << bit;
+                if ((bits[word] & mask) == 0) {
+                    bits[word] |= mask;
+                    added = true;
+                }
+            }
+        }
+        if (added) {
+            size.increment();
+        }
+        return added;
+    }
+
+    public boolean containsFingerprint(long fingerprint) {
+        int block = block(fingerprint);
+        long h = UrlFingerprint.mix(fingerprint);
+        int base = block * BLOCK_LONGS;
+        synchronized (locks[block & (STRIPES - 1)]) {
+            for (int i = 0; i < hashes; i++) {
+                if (i > 0 && i % BITS_PER_HASH == 0) {
+                    h = UrlFingerprint.mix(h + i);
+                }
+                int bit = (int) (h >>> (9 * (i % BITS_PER_HASH))) & (BLOCK_BITS - 1);
+                if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size.sum();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return (long) bits.length * 8;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    private static int optimalHashes(long blockCount, long expectedUrls) {
+        return Math.max(1, (int) Math.round((double) blockCount * BLOCK_BITS / expectedUrls * Math.log(2)));
+    }
+
+    /**
+     * 每块平均装perBlock个url时的误判率：块里的url数服从泊松分布，
+     * 对每种装载分别算普通布隆过滤器的误判率再加权。
+     */
+    static double blockedFpp(double perBlock, int k) {
+        double fpp = 0;
+        double poisson = Math.exp(-perBlock);
+        int max = (int) (perBlock + 10 * Math.sqrt(perBlock) + 20);
+        for (int i = 0; i <= max; i++) {
+            if (i > 0) {
+                poisson *= perBlock / i;
+            }
+            double zero = Math.pow(1 - 1.0 / BLOCK_BITS, (double) k * i);
+            fpp += poisson * Math.pow(1 - zero, k);
+        }
+        return fpp;
+    }
+
+    private int block(long fingerprint) {
+        return (int) ((fingerprint >>> 1) % blocks);
+    }
+
+}
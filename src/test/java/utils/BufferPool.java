@@ -0,0 +1,87 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 08:20
+ **/
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 读响应正文用的定长byte[]和char[]，用完放回来给下一个请求，不用每个页面都新建。
+ * 和HttpLinkSource复用HtmlLinkExtractor一样用ConcurrentLinkedQueue，虚拟线程也能复用；
+ * 每种最多留maxPooled个，多还回来的直接丢掉。
+ */
+public class BufferPool {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    public static final int DEFAULT_MAX_POOLED = 256;
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED);
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final Queue<byte[]> bytes = new ConcurrentLinkedQueue<>();
+    private final Queue<char[]> chars = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size要遍历，自己计数
+    private final AtomicInteger pooledBytes = new AtomicInteger();
+    private final AtomicInteger pooledChars = new AtomicInteger();
+    private final AtomicLong allocations = new AtomicLong();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    public static BufferPool global() {
+        return DEFAULT;
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public byte[] acquireBytes() {
+        byte[] buffer = bytes.poll();
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            return new byte[bufferSize];
+        }
+        pooledBytes.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize && pooledBytes.incrementAndGet() <= maxPooled) {
+            bytes.offer(buffer);
+        } else if (buffer != null && buffer.length == bufferSize) {
+            pooledBytes.decrementAndGet();
+        }
+    }
+
+    public char[] acquireChars() {
+        char[] buffer = chars.poll();
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            return new char[bufferSize];
+        }
+        pooledChars.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(char[] buffer) {
+        if (buffer != null && buffer.length == bufferSize && pooledChars.incrementAndGet() <= maxPooled) {
+            chars.offer(buffer);
+        } else if (buffer != null && buffer.length == bufferSize) {
+            pooledChars.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 池里没有、新建的缓冲区个数
+     */
+    public long allocations() {
+        return allocations.get();
+    }
+}
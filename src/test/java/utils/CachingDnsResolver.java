@@ -0,0 +1,347 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 07:30
+ **/
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 给PoolingHttpClientConnectionManager用的DNS解析器，结果按host缓存。
+ * 默认的SystemDefaultDnsResolver每建一个新连接都同步查一次，广度爬取时大部分host都是第一次见，
+ * worker就卡在DNS上：
+ *  - 查到的地址缓存ttlMillis，查不到的（UnknownHostException）缓存negativeTtlMillis，
+ *    不会对同一个坏域名反复查
+ *  - 同一个host同时有多个请求时只查一次，其余的等同一个CompletableFuture
+ *  - prefetch在后台线程里提前解析，CrawlerManager发现新url时调用，等worker建连接时已经在缓存里了
+ *  - 真正查询的耗时记到lookupLatency和CrawlMetrics的DNS阶段，命中率见hitRate
+ * 实际的查询交给delegate，测试时可以换成本地的假解析器。
+ * 缓存最多maxHosts个host，满了先删过期的，还不够就随便删掉一些。
+ */
+public class CachingDnsResolver implements DnsResolver, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingDnsResolver.class);
+
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000L;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 30 * 1000L;
+    public static final int DEFAULT_MAX_HOSTS = 100000;
+    public static final int DEFAULT_PREFETCH_THREADS = 8;
+    /** 排队等着预解析的host最多这么多，再多的直接丢掉，等worker用到时再查 */
+    private static final int MAX_PENDING_PREFETCHES = 10000;
+
+    private final DnsResolver delegate;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final int maxHosts;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor prefetcher;
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+    private CrawlMetrics metrics = CrawlMetrics.global();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong droppedPrefetches = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingDnsResolver() {
+        this(SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    public CachingDnsResolver(DnsResolver delegate) {
+        this(delegate, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS, DEFAULT_MAX_HOSTS, DEFAULT_PREFETCH_THREADS);
+    }
+
+    /**
+     * @param delegate          真正去查的解析器
+     * @param ttlMillis         查到的地址缓存多久
+     * @param negativeTtlMillis 查不到的结果缓存多久
+     * @param maxHosts          最多缓存多少个host
+     * @param prefetchThreads   预解析的后台线程数
+     */
+    public CachingDnsResolver(DnsResolver delegate, long ttlMillis, long negativeTtlMillis, int maxHosts,
+                              int prefetchThreads) {
+        if (maxHosts <= 0 || prefetchThreads <= 0) {
+            throw new IllegalArgumentException("maxHosts and prefetchThreads must be positive");
+        }
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.maxHosts = maxHosts;
+        this.prefetcher = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_PENDING_PREFETCHES), r -> {
+            Thread thread = new Thread(r, "dns-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        prefetcher.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 换一个CrawlMetrics，默认记到CrawlMetrics.global()
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        String key = keyOf(host);
+        for (int attempt = 0; ; attempt++) {
+            Entry entry = acquire(key);
+            try {
+                return entry.future.get().clone();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UnknownHostException) {
+                    negativeHits.incrementAndGet();
+                    throw new UnknownHostException(cause.getMessage());
+                }
+                // 预解析被丢掉了，或者解析器自己出错，这种结果不缓存，再查一次
+                if (attempt == 0) {
+                    continue;
+                }
+                UnknownHostException error = new UnknownHostException(host + ": " + cause);
+                error.initCause(cause);
+                throw error;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(host + ": interrupted");
+            }
+        }
+    }
+
+    /**
+     * @return 缓存里的entry，没有或者过期了时在当前线程里查
+     */
+    private Entry acquire(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && (!entry.future.isDone() || entry.expiresAt > System.currentTimeMillis())) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        Entry created = new Entry();
+        entry = replace(key, entry, created);
+        if (entry == created) {
+            // 自己查，不用切换线程
+            misses.incrementAndGet();
+            lookup(key, created);
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * 在后台解析host，已经缓存了或者正在查的什么都不做，不会阻塞
+     *
+     * @return 是否真的发起了一次查询
+     */
+    public boolean prefetch(String host) {
+        if (host == null || host.isEmpty()) {
+            return false;
+        }
+        final String key = keyOf(host);
+        Entry entry = entries.get(key);
+        if (entry != null && (!entry.future.isDone() || entry.expiresAt > System.currentTimeMillis())) {
+            return false;
+        }
+        final Entry created = new Entry();
+        if (replace(key, entry, created) != created) {
+            return false;
+        }
+        try {
+            prefetcher.execute(() -> lookup(key, created));
+            prefetches.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 队列满了，把刚放进去的entry拿掉；已经在等它的worker会自己再查一次
+            droppedPrefetches.incrementAndGet();
+            entries.remove(key, created);
+            created.future.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    /**
+     * 用过期或者不存在的旧entry换成新的，别的线程先换了时返回别人的
+     */
+    private Entry replace(String key, Entry old, Entry created) {
+        Entry winner;
+        if (old == null) {
+            Entry existing = entries.putIfAbsent(key, created);
+            winner = existing == null ? created : existing;
+        } else {
+            winner = entries.replace(key, old, created) ? created : entries.get(key);
+            if (winner == null) {
+                // 刚好被别人删掉了
+                Entry existing = entries.putIfAbsent(key, created);
+                winner = existing == null ? created : existing;
+            }
+        }
+        if (winner == created && entries.size() > maxHosts) {
+            evict();
+        }
+        return winner;
+    }
+
+    private void lookup(String host, Entry entry) {
+        long start = System.nanoTime();
+        try {
+            InetAddress[] addresses = delegate.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+            entry.expiresAt = System.currentTimeMillis() + ttlMillis;
+            entry.future.complete(addresses);
+        } catch (UnknownHostException e) {
+            entry.expiresAt = System.currentTimeMillis() + negativeTtlMillis;
+            entry.future.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            // 解析器自己出错不缓存，下次再查
+            LOG.debug("dns lookup of {} failed: {}", host, e.toString());
+            entries.remove(host, entry);
+            entry.future.completeExceptionally(e);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            lookupLatency.record(nanos);
+            metrics.record(CrawlMetrics.Stage.DNS, nanos);
+        }
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Entry entry = it.next().getValue();
+            if (entry.future.isDone() && entry.expiresAt <= now) {
+                it.remove();
+                removed++;
+            }
+        }
+        // 都没过期，删掉十分之一
+        int excess = entries.size() - maxHosts;
+        if (excess > 0) {
+            excess = Math.max(excess, maxHosts / 10);
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && excess > 0; excess--) {
+                it.next();
+                it.remove();
+                removed++;
+            }
+        }
+        evictions.addAndGet(removed);
+    }
+
+    /**
+     * 和HttpHost一样按小写比较，IPv6地址去掉方括号
+     */
+    private static String keyOf(String host) {
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return 缓存里还没过期的地址，没有时返回null，不会发起查询
+     */
+    public InetAddress[] peek(String host) {
+        Entry entry = entries.get(keyOf(host));
+        if (entry == null || !entry.future.isDone() || entry.future.isCompletedExceptionally()
+                || entry.expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.future.getNow(null).clone();
+    }
+
+    /**
+     * @return resolve直接用上了缓存或者正在进行的查询的次数，包括查不到的
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return resolve时缓存里没有、只能自己同步去查的次数
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    public double hitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    /**
+     * @return resolve抛出UnknownHostException的次数
+     */
+    public long negativeHits() {
+        return negativeHits.get();
+    }
+
+    /**
+     * @return 后台预解析的次数
+     */
+    public long prefetches() {
+        return prefetches.get();
+    }
+
+    /**
+     * @return 队列满了没有做的预解析
+     */
+    public long droppedPrefetches() {
+        return droppedPrefetches.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return 真正查询（包括预解析）的耗时
+     */
+    public LatencyHistogram.Snapshot lookupLatency() {
+        return lookupLatency.snapshot();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() {
+        prefetcher.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("dns: %d hosts, hit rate %.1f%% (%d hits, %d misses, %d negative), %d prefetches, lookups %s",
+                size(), hitRate() * 100, hits(), misses(), negativeHits(), prefetches(), lookupLatency());
+    }
+
+    private static class Entry {
+        final CompletableFuture<InetAddress[]> future = new CompletableFuture<>();
+        volatile long expiresAt;
+    }
+}
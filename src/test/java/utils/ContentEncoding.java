@@ -0,0 +1,642 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 08:40
+ **/
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 压缩传输：请求带 Accept-Encoding: gzip, deflate，响应边读边解压。
+ * HttpClient自带的解压每个响应都新建GZIPInputStream，里面的Inflater和缓冲区用完就扔；
+ * 这里Inflater和放压缩数据的缓冲区都从池里拿，读完或者close时还回去：
+ *  - gzip按RFC 1952自己解析头和尾，校验CRC32和长度，几个member连在一起的也能读
+ *  - deflate按规定是zlib格式，但有的服务器发的是裸deflate，看前两个字节判断
+ *  - 压缩过的页面不会整个放在内存里，同一时刻只有一块缓冲区大小的压缩数据
+ *  - 每个响应正文在连接上的字节数和解压以后的字节数，按host记到CrawlMetrics.recordTransfer
+ *  - toString、toByteArray用池里的缓冲区读正文，代替EntityUtils
+ * 请求已经带了Accept-Encoding的不改，比如RangeDownloader的identity。
+ * 字节数只算正文，不算响应头和chunked的分块头。br等其它编码原样交给调用方，不记录。
+ */
+public class ContentEncoding {
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int MAX_POOLED_INFLATERS = 256;
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    // gzip和裸deflate用nowrap的Inflater，zlib用普通的，两种不能混用
+    private static final Queue<Inflater> rawInflaters = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> zlibInflaters = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooledInflaters = new AtomicInteger();
+    private static final AtomicLong inflatersCreated = new AtomicLong();
+
+    private final CrawlMetrics metrics;
+    private final BufferPool buffers;
+
+    public ContentEncoding(CrawlMetrics metrics) {
+        this(metrics, BufferPool.global());
+    }
+
+    public ContentEncoding(CrawlMetrics metrics, BufferPool buffers) {
+        this.metrics = metrics;
+        this.buffers = buffers;
+    }
+
+    /**
+     * 没有Accept-Encoding的请求加上 "gzip, deflate"
+     */
+    public HttpRequestInterceptor requestInterceptor() {
+        return (request, context) -> {
+            if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+                request.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+            }
+        };
+    }
+
+    /**
+     * gzip和deflate的响应换成边读边解压的实体，去掉Content-Encoding、Content-Length和Content-MD5；
+     * 没压缩的只包一层计数
+     */
+    public HttpResponseInterceptor responseInterceptor() {
+        return (response, context) -> {
+            HttpEntity entity = response.getEntity();
+            if (entity == null || entity.getContentLength() == 0) {
+                return;
+            }
+            HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+            String host = target == null ? "" : target.getHostName().toLowerCase(Locale.ROOT);
+            Header header = entity.getContentEncoding();
+            String coding = header == null ? "" : header.getValue().trim().toLowerCase(Locale.ROOT);
+            if (coding.isEmpty() || coding.equals("identity")) {
+                response.setEntity(new DecodingEntity(entity, host, Format.IDENTITY));
+                return;
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                response.setEntity(new DecodingEntity(entity, host, Format.GZIP));
+            } else if (coding.equals("deflate")) {
+                response.setEntity(new DecodingEntity(entity, host, Format.DEFLATE));
+            } else {
+                return;
+            }
+            response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            response.removeHeaders(HttpHeaders.CONTENT_MD5);
+        };
+    }
+
+    /**
+     * 代替EntityUtils.toString：用池里的缓冲区边读边解码，字符集取Content-Type里的，
+     * 没有或者不认识时用defaultCharset，解码不了的字节换成U+FFFD
+     */
+    public static String toString(HttpEntity entity, Charset defaultCharset) throws IOException {
+        if (entity == null) {
+            return "";
+        }
+        Charset charset = charsetOf(entity, defaultCharset);
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        long length = entity.getContentLength();
+        StringBuilder text = new StringBuilder(length > 0 && length < Integer.MAX_VALUE / 2 ? (int) length : 16384);
+        BufferPool pool = BufferPool.global();
+        byte[] bytes = pool.acquireBytes();
+        char[] chars = pool.acquireChars();
+        try (InputStream in = entity.getContent()) {
+            if (in == null) {
+                return "";
+            }
+            // input是写模式，读进来以后flip给decoder，剩下半个字符时compact留到下一轮
+            ByteBuffer input = ByteBuffer.wrap(bytes);
+            CharBuffer output = CharBuffer.wrap(chars);
+            boolean end = false;
+            while (!end) {
+                int n = in.read(bytes, input.position(), input.remaining());
+                if (n < 0) {
+                    end = true;
+                } else {
+                    input.position(input.position() + n);
+                }
+                input.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(input, output, end);
+                    text.append(chars, 0, output.position());
+                    output.clear();
+                } while (result.isOverflow());
+                input.compact();
+            }
+            while (decoder.flush(output).isOverflow()) {
+                text.append(chars, 0, output.position());
+                output.clear();
+            }
+            text.append(chars, 0, output.position());
+        } finally {
+            pool.release(bytes);
+            pool.release(chars);
+        }
+        return text.toString();
+    }
+
+    /**
+     * 代替EntityUtils.toByteArray：长度已知时直接读进结果数组，不知道时用池里的缓冲区一块一块读
+     */
+    public static byte[] toByteArray(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return new byte[0];
+        }
+        try (InputStream in = entity.getContent()) {
+            if (in == null) {
+                return new byte[0];
+            }
+            long length = entity.getContentLength();
+            if (length >= 0 && length < Integer.MAX_VALUE - 8) {
+                byte[] body = new byte[(int) length];
+                int read = 0;
+                while (read < body.length) {
+                    int n = in.read(body, read, body.length - read);
+                    if (n < 0) {
+                        throw new EOFException("expected " + length + " bytes, got " + read);
+                    }
+                    read += n;
+                }
+                return body;
+            }
+            BufferPool pool = BufferPool.global();
+            byte[] buffer = pool.acquireBytes();
+            try {
+                ByteArrayOutputStream body = new ByteArrayOutputStream(16384);
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    body.write(buffer, 0, n);
+                }
+                return body.toByteArray();
+            } finally {
+                pool.release(buffer);
+            }
+        }
+    }
+
+    private static Charset charsetOf(HttpEntity entity, Charset defaultCharset) {
+        try {
+            ContentType contentType = ContentType.get(entity);
+            if (contentType != null && contentType.getCharset() != null) {
+                return contentType.getCharset();
+            }
+        } catch (RuntimeException e) {
+            // 不认识的字符集
+        }
+        return defaultCharset;
+    }
+
+    /**
+     * @return 一共新建过多少个Inflater，池子够用时不会一直涨
+     */
+    public static long inflatersCreated() {
+        return inflatersCreated.get();
+    }
+
+    private static Inflater acquireInflater(boolean nowrap) {
+        Inflater inflater = (nowrap ? rawInflaters : zlibInflaters).poll();
+        if (inflater == null) {
+            inflatersCreated.incrementAndGet();
+            return new Inflater(nowrap);
+        }
+        pooledInflaters.decrementAndGet();
+        return inflater;
+    }
+
+    private static void releaseInflater(Inflater inflater, boolean nowrap) {
+        if (pooledInflaters.incrementAndGet() <= MAX_POOLED_INFLATERS) {
+            inflater.reset();
+            (nowrap ? rawInflaters : zlibInflaters).offer(inflater);
+        } else {
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    private enum Format {
+        IDENTITY, GZIP, DEFLATE
+    }
+
+    private class DecodingEntity extends HttpEntityWrapper {
+        private final String host;
+        private final Format format;
+        // 流式实体只能读一次，getContent每次返回同一个流
+        private InputStream content;
+
+        DecodingEntity(HttpEntity entity, String host, Format format) {
+            super(entity);
+            this.host = host;
+            this.format = format;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (!wrappedEntity.isStreaming()) {
+                return open();
+            }
+            if (content == null) {
+                content = open();
+            }
+            return content;
+        }
+
+        private InputStream open() throws IOException {
+            InputStream raw = wrappedEntity.getContent();
+            if (format == Format.IDENTITY) {
+                return new CountingInputStream(raw, host, wrappedEntity.getContentLength());
+            }
+            return new InflatingInputStream(raw, host, format == Format.GZIP);
+        }
+
+        @Override
+        public long getContentLength() {
+            return format == Format.IDENTITY ? wrappedEntity.getContentLength() : -1;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return format == Format.IDENTITY ? wrappedEntity.getContentEncoding() : null;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            byte[] buffer = buffers.acquireBytes();
+            try (InputStream in = getContent()) {
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                buffers.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * 没压缩的正文，读到结尾或者close时记一次
+     */
+    private class CountingInputStream extends FilterInputStream {
+        private final String host;
+        private final long length;
+        private long count;
+        private boolean recorded;
+
+        CountingInputStream(InputStream in, String host, long length) {
+            super(in);
+            this.host = host;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            check(b < 0);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            check(n < 0);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            check(false);
+            return skipped;
+        }
+
+        /**
+         * 长度已知时读够了就记，调用方（比如RangeDownloader读到段尾）不一定再读到-1
+         */
+        private void check(boolean eof) {
+            if (!recorded && (eof || (length >= 0 && count >= length))) {
+                recorded = true;
+                metrics.recordTransfer(host, count, count);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            check(true);
+            super.close();
+        }
+    }
+
+    /**
+     * gzip或者deflate的正文，边读边解压
+     */
+    private class InflatingInputStream extends InputStream {
+        private final InputStream raw;
+        private final String host;
+        private final boolean gzip;
+        private byte[] buffer;
+        private int position;
+        private int limit;
+        private Inflater inflater;
+        private boolean nowrap;
+        private final CRC32 crc = new CRC32();
+        // 当前gzip member解压出来的字节数，和尾部的ISIZE比
+        private long memberBytes;
+        private long wireBytes;
+        private long decodedBytes;
+        private boolean eof;
+        private boolean closed;
+        private boolean recorded;
+        private byte[] single;
+
+        InflatingInputStream(InputStream raw, String host, boolean gzip) {
+            this.raw = raw;
+            this.host = host;
+            this.gzip = gzip;
+            this.buffer = buffers.acquireBytes();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (single == null) {
+                single = new byte[1];
+            }
+            int n;
+            do {
+                n = read(single, 0, 1);
+            } while (n == 0);
+            return n < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (eof) {
+                return -1;
+            }
+            if (inflater == null && !start()) {
+                finish();
+                return -1;
+            }
+            while (true) {
+                int n;
+                try {
+                    n = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new ZipException(e.getMessage());
+                }
+                if (n > 0) {
+                    if (gzip) {
+                        crc.update(b, off, n);
+                        memberBytes += n;
+                    }
+                    decodedBytes += n;
+                    return n;
+                }
+                if (inflater.finished()) {
+                    // 没用完的输入是gzip的尾部，或者下一个member
+                    position = limit - inflater.getRemaining();
+                    if (!gzip || !nextMember()) {
+                        finish();
+                        return -1;
+                    }
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("deflate stream needs a preset dictionary");
+                } else if (inflater.needsInput()) {
+                    if (fill() < 0) {
+                        throw new EOFException("Unexpected end of compressed stream");
+                    }
+                    inflater.setInput(buffer, position, limit - position);
+                }
+            }
+        }
+
+        /**
+         * 读gzip头，或者看deflate是不是zlib格式，然后拿一个Inflater
+         *
+         * @return 正文是空的时返回false
+         */
+        private boolean start() throws IOException {
+            if (gzip) {
+                int first = readByte();
+                if (first < 0) {
+                    return false;
+                }
+                readGzipHeader(first | (readByteOrThrow() << 8));
+                nowrap = true;
+            } else {
+                if (!ensure(1)) {
+                    return false;
+                }
+                // zlib头：CM是8，两个字节合起来是31的倍数
+                int cmf = buffer[position] & 0xff;
+                boolean zlib = ensure(2) && (cmf & 0x0f) == 8 && ((cmf << 8) | (buffer[position + 1] & 0xff)) % 31 == 0;
+                nowrap = !zlib;
+            }
+            inflater = acquireInflater(nowrap);
+            inflater.setInput(buffer, position, limit - position);
+            return true;
+        }
+
+        private void readGzipHeader(int magic) throws IOException {
+            if (magic != GZIP_MAGIC) {
+                throw new ZipException("Not in GZIP format");
+            }
+            if (readByteOrThrow() != 8) {
+                throw new ZipException("Unsupported compression method");
+            }
+            int flags = readByteOrThrow();
+            // MTIME、XFL、OS
+            skip(6);
+            if ((flags & FEXTRA) != 0) {
+                skip(readShort());
+            }
+            if ((flags & FNAME) != 0) {
+                while (readByteOrThrow() != 0) {
+                    // 跳过文件名
+                }
+            }
+            if ((flags & FCOMMENT) != 0) {
+                while (readByteOrThrow() != 0) {
+                    // 跳过注释
+                }
+            }
+            if ((flags & FHCRC) != 0) {
+                skip(2);
+            }
+        }
+
+        /**
+         * 校验当前member的尾部，后面还有member时重置Inflater接着读
+         */
+        private boolean nextMember() throws IOException {
+            long expectedCrc = readInt();
+            long expectedSize = readInt();
+            if (expectedCrc != crc.getValue() || expectedSize != (memberBytes & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            int first = readByte();
+            if (first < 0) {
+                return false;
+            }
+            int second = readByte();
+            if (second < 0 || (first | (second << 8)) != GZIP_MAGIC) {
+                // 和GZIPInputStream一样，尾部后面不是新的member就当作结束
+                return false;
+            }
+            readGzipHeader(GZIP_MAGIC);
+            inflater.reset();
+            crc.reset();
+            memberBytes = 0;
+            inflater.setInput(buffer, position, limit - position);
+            return true;
+        }
+
+        /**
+         * 缓冲区读完以后从头再读一块
+         */
+        private int fill() throws IOException {
+            int n = raw.read(buffer, 0, buffer.length);
+            if (n >= 0) {
+                wireBytes += n;
+                position = 0;
+                limit = n;
+            }
+            return n;
+        }
+
+        /**
+         * 保证缓冲区里至少还有n个字节没用，不够时把剩下的挪到开头再读
+         */
+        private boolean ensure(int n) throws IOException {
+            while (limit - position < n) {
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                int read = raw.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    return false;
+                }
+                wireBytes += read;
+                limit += read;
+            }
+            return true;
+        }
+
+        private int readByte() throws IOException {
+            if (position >= limit && fill() <= 0) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        private int readByteOrThrow() throws IOException {
+            int b = readByte();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of GZIP stream");
+            }
+            return b;
+        }
+
+        private int readShort() throws IOException {
+            return readByteOrThrow() | (readByteOrThrow() << 8);
+        }
+
+        private long readInt() throws IOException {
+            return readShort() | ((long) readShort() << 16);
+        }
+
+        private void skip(int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                readByteOrThrow();
+            }
+        }
+
+        /**
+         * 读到结尾，记下字节数，Inflater和缓冲区还回池里；流还能继续调用read，返回-1
+         */
+        private void finish() {
+            eof = true;
+            record();
+            release();
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                metrics.recordTransfer(host, wireBytes, decodedBytes);
+            }
+        }
+
+        private void release() {
+            if (inflater != null) {
+                releaseInflater(inflater, nowrap);
+                inflater = null;
+            }
+            if (buffer != null) {
+                buffers.release(buffer);
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // 没读完就关掉时只记已经收到的
+            record();
+            release();
+            raw.close();
+        }
+    }
+}
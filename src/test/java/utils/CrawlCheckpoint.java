@@ -0,0 +1,187 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 18:00
+ **/
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 爬取进度的检查点，用来在崩溃或重新部署后接着爬。
+ * 不做整份的快照，而是只追加的日志，每条记录很小：
+ *  - DISCOVERED：第一次见到的url，按发现顺序，恢复出seen集合、结果列表和frontier
+ *  - COMPLETED：处理完的url，只记8字节的指纹
+ * 发现了但没有COMPLETED的url（包括崩溃时正在抓的）恢复后重新放进frontier，
+ * 已经完成的不会再抓。
+ * 记录先写进缓冲区，checkpoint()时才flush并fsync，所以master线程平时几乎没有停顿；
+ * 崩溃时最多丢掉最后一个间隔里的记录，这些url恢复后会被重新抓一次。
+ * 不是线程安全的，只给master线程用。
+ */
+public class CrawlCheckpoint implements Closeable {
+    private static final int DISCOVERED = 1;
+    private static final int COMPLETED = 2;
+
+    private final Path file;
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    // 打开时从文件里读出来的状态
+    private final List<String> discovered;
+    private final FingerprintSeenSet completed;
+    private long records;
+
+    private CrawlCheckpoint(Path file, List<String> discovered, FingerprintSeenSet completed,
+                            long records) throws IOException {
+        this.file = file;
+        this.discovered = discovered;
+        this.completed = completed;
+        this.records = records;
+        this.fileOut = new FileOutputStream(file.toFile(), true);
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+    }
+
+    /**
+     * 打开检查点文件，已经存在时先把里面的记录读出来。
+     * 最后一条记录可能只写了一半（崩溃时），会被截掉。
+     */
+    public static CrawlCheckpoint open(Path file) throws IOException {
+        List<String> discovered = new ArrayList<>();
+        FingerprintSeenSet completed = new FingerprintSeenSet();
+        long records = 0;
+        if (Files.exists(file)) {
+            long valid = 0;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+                byte[] buffer = new byte[1024];
+                while (true) {
+                    int tag = in.read();
+                    if (tag == DISCOVERED) {
+                        int length = readVarInt(in);
+                        if (buffer.length < length) {
+                            buffer = new byte[Math.max(length, buffer.length * 2)];
+                        }
+                        in.readFully(buffer, 0, length);
+                        discovered.add(new String(buffer, 0, length, StandardCharsets.UTF_8));
+                        valid += 1 + varIntSize(length) + length;
+                    } else if (tag == COMPLETED) {
+                        completed.addFingerprint(in.readLong());
+                        valid += 9;
+                    } else {
+                        break;
+                    }
+                    records++;
+                }
+            } catch (EOFException e) {
+                // 最后一条记录不完整
+            }
+            if (valid < Files.size(file)) {
+                try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                    raf.setLength(valid);
+                }
+            }
+        }
+        return new CrawlCheckpoint(file, discovered, completed, records);
+    }
+
+    /**
+     * @return 文件里没有任何记录，也就是没有可以恢复的进度
+     */
+    public boolean isEmpty() {
+        return discovered.isEmpty();
+    }
+
+    /**
+     * @return 打开时读到的url，按发现顺序
+     */
+    public List<String> discovered() {
+        return Collections.unmodifiableList(discovered);
+    }
+
+    /**
+     * @return 打开时读到的记录里，这个url已经处理完
+     */
+    public boolean isCompleted(String url) {
+        return completed.containsFingerprint(UrlFingerprint.of(url));
+    }
+
+    public void recordDiscovered(String url) {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        try {
+            out.writeByte(DISCOVERED);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write checkpoint " + file, e);
+        }
+        records++;
+    }
+
+    public void recordCompleted(String url) {
+        try {
+            out.writeByte(COMPLETED);
+            out.writeLong(UrlFingerprint.of(url));
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write checkpoint " + file, e);
+        }
+        records++;
+    }
+
+    /**
+     * 把缓冲区里的记录写到磁盘并fsync，返回后这些记录在崩溃后也能读到
+     */
+    public void checkpoint() {
+        try {
+            out.flush();
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write checkpoint " + file, e);
+        }
+    }
+
+    /**
+     * @return 文件里的记录数，包括还在缓冲区里的
+     */
+    public long records() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed length in checkpoint");
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
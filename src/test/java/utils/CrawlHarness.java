@@ -0,0 +1,151 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 23:40
+ **/
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端到端压测：CrawlerManager带着HttpLinkSource去爬SyntheticWebServer，报告
+ *  - 每秒爬了多少页
+ *  - 卡住的线程：一次抓取超过stallMillis还没返回就算卡住，记录同时卡住的最多线程数和卡住过的抓取次数。
+ *    没配超时时线程会一直卡在那里，配了超时但服务器慢慢滴数据时也会，因为每次读都没有超时
+ *  - 连接池：租连接的平均和最长等待时间，采样到的最多排队数
+ * 抓取失败的页面只计数，不打印异常，几千个超时刷屏没有意义。
+ */
+public class CrawlHarness {
+    private static final long SAMPLE_MILLIS = 50;
+
+    private final LinkSource linkSource;
+    private final HttpClientRegistry registry;
+    private final int threads;
+    private final long stallMillis;
+
+    public CrawlHarness(LinkSource linkSource, HttpClientRegistry registry, int threads, long stallMillis) {
+        this.linkSource = linkSource;
+        this.registry = registry;
+        this.threads = threads;
+        this.stallMillis = stallMillis;
+    }
+
+    /**
+     * 用HttpPoolUtil的连接池
+     *
+     * @param timeOut 同HttpLinkSource
+     */
+    public CrawlHarness(int timeOut, int threads, long stallMillis) {
+        this(HttpPoolUtil.registry(), timeOut, threads, stallMillis);
+    }
+
+    /**
+     * 用registry的连接池，比如SyntheticWebServer.registry
+     */
+    public CrawlHarness(HttpClientRegistry registry, int timeOut, int threads, long stallMillis) {
+        this(new HttpLinkSource(registry, timeOut, 0), registry, threads, stallMillis);
+    }
+
+    public static class Report {
+        public int pages;
+        public long failures;
+        public long millis;
+        public int maxStalledThreads;
+        public long stalledFetches;
+        public long leases;
+        public long leaseWaitNanos;
+        public long maxLeaseWaitNanos;
+        public int maxPending;
+
+        public double pagesPerSecond() {
+            return millis == 0 ? 0 : pages * 1000.0 / millis;
+        }
+
+        public double meanLeaseWaitMillis() {
+            return leases == 0 ? 0 : leaseWaitNanos / 1e6 / leases;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d pages in %d ms (%.0f pages/s), %d failed; "
+                            + "stalled: max %d threads, %d fetches; "
+                            + "pool: %d leases, mean wait %.2f ms, max wait %.1f ms, max pending %d",
+                    pages, millis, pagesPerSecond(), failures,
+                    maxStalledThreads, stalledFetches,
+                    leases, meanLeaseWaitMillis(), maxLeaseWaitNanos / 1e6, maxPending);
+        }
+    }
+
+    /**
+     * 正在进行的一次抓取
+     */
+    private static class Fetch {
+        final long start = System.currentTimeMillis();
+        boolean stalled;
+    }
+
+    public Report crawl(String seed) {
+        final Map<Thread, Fetch> fetching = new ConcurrentHashMap<>();
+        final AtomicLong failures = new AtomicLong();
+        LinkSource timed = url -> {
+            Fetch fetch = new Fetch();
+            fetching.put(Thread.currentThread(), fetch);
+            try {
+                return linkSource.getUrls(url);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                return Collections.<String>emptyList();
+            } finally {
+                fetching.remove(Thread.currentThread());
+            }
+        };
+
+        final Report report = new Report();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            int stalled = 0;
+            for (Fetch fetch : fetching.values()) {
+                if (now - fetch.start >= stallMillis) {
+                    stalled++;
+                    if (!fetch.stalled) {
+                        fetch.stalled = true;
+                        report.stalledFetches++;
+                    }
+                }
+            }
+            report.maxStalledThreads = Math.max(report.maxStalledThreads, stalled);
+            report.maxPending = Math.max(report.maxPending, registry.totalStats().getPending());
+        }, SAMPLE_MILLIS, SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+        long leases = registry.leases();
+        long leaseWait = registry.leaseWaitNanos();
+        long start = System.currentTimeMillis();
+        List<String> pages;
+        try {
+            pages = new CrawlerManager(timed, threads, 4 * threads, 0).crawl(seed);
+        } finally {
+            sampler.shutdown();
+            try {
+                sampler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        report.millis = System.currentTimeMillis() - start;
+        report.pages = pages.size();
+        report.failures = failures.get();
+        report.leases = registry.leases() - leases;
+        report.leaseWaitNanos = registry.leaseWaitNanos() - leaseWait;
+        // 最长等待是整个连接池生命期里的，不是这一次爬取的
+        report.maxLeaseWaitNanos = registry.maxLeaseWaitNanos();
+        return report;
+    }
+}
@@ -0,0 +1,416 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 00:20
+ **/
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 爬取各个阶段的耗时和计数。爬取变慢时，看这里就知道时间花在了哪里：
+ * 排队、从连接池租连接、建连接、等第一个字节、下载正文、解析，还是某几个host特别慢。
+ *  - 每个阶段和每个host一个LatencyHistogram，记录不加锁
+ *  - 字节数、状态码、重试次数、按异常类型分的失败次数
+ *  - 每个host压缩传输的正文字节数和解压以后的字节数，看压缩省了多少带宽
+ *  - AdaptiveConcurrency当前的并发上限和调整次数
+ *  - snapshot()随时取一份快照，startReporter定期把快照写到日志里
+ * HttpClientRegistry、CrawlRetryHandler、HttpPoolUtil、HttpLinkSource和CrawlerManager
+ * 都记到global()里，和HttpPoolUtil的连接池一样全局只有一份。
+ */
+public class CrawlMetrics {
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlMetrics.class);
+    private static final CrawlMetrics GLOBAL = new CrawlMetrics();
+
+    /** 超过这么多host之后，新的host都记在OTHER_HOSTS下面，免得内存无限增长 */
+    public static final int MAX_HOSTS = 10000;
+    public static final String OTHER_HOSTS = "(other)";
+
+    public enum Stage {
+        /** 从交给worker到worker开始执行 */
+        QUEUE,
+        /** 从连接池租连接，连接池不够用时会很长 */
+        LEASE,
+        /** DNS查询，只有CachingDnsResolver缓存里没有时才有，包括后台预解析 */
+        DNS,
+        /** 建立TCP连接，包括同步的DNS查询 */
+        CONNECT,
+        /** 发出请求到收到响应头 */
+        FIRST_BYTE,
+        /** 读正文 */
+        BODY,
+        /** 从正文里取链接 */
+        PARSE,
+        /** worker处理一个url的总时间 */
+        FETCH
+    }
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final ConcurrentMap<String, LatencyHistogram> hosts = new ConcurrentHashMap<>();
+    private final AtomicLongArray statusCounts = new AtomicLongArray(600);
+    private final LongAdder bytes = new LongAdder();
+    private final ConcurrentMap<String, TransferCounter> transfers = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private volatile int concurrencyLimit;
+    private final LongAdder concurrencyChanges = new LongAdder();
+
+    public CrawlMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public static CrawlMetrics global() {
+        return GLOBAL;
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages.get(stage).record(nanos);
+    }
+
+    /**
+     * 记录一个url的总耗时，按host分开
+     */
+    public void recordHost(String host, long nanos) {
+        LatencyHistogram histogram = hosts.get(host);
+        if (histogram == null) {
+            if (hosts.size() >= MAX_HOSTS) {
+                host = OTHER_HOSTS;
+            }
+            histogram = hosts.computeIfAbsent(host, h -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    public void recordStatus(int status) {
+        if (status >= 0 && status < statusCounts.length()) {
+            statusCounts.incrementAndGet(status);
+        }
+    }
+
+    public void recordBytes(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * 记录一个响应正文，按host分开
+     *
+     * @param wireBytes    连接上收到的正文字节数，压缩过的就是压缩以后的大小
+     * @param decodedBytes 解压以后的字节数，没有压缩时和wireBytes一样
+     */
+    public void recordTransfer(String host, long wireBytes, long decodedBytes) {
+        TransferCounter counter = transfers.get(host);
+        if (counter == null) {
+            if (transfers.size() >= MAX_HOSTS) {
+                host = OTHER_HOSTS;
+            }
+            counter = transfers.computeIfAbsent(host, h -> new TransferCounter());
+        }
+        counter.responses.increment();
+        if (wireBytes != decodedBytes) {
+            counter.compressed.increment();
+        }
+        counter.wireBytes.add(wireBytes);
+        counter.decodedBytes.add(decodedBytes);
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    public void recordError(Throwable error) {
+        String type = error.getClass().getSimpleName();
+        LongAdder counter = errors.get(type);
+        if (counter == null) {
+            counter = errors.computeIfAbsent(type, t -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * 并发上限变了
+     */
+    public void recordConcurrencyLimit(int limit) {
+        concurrencyLimit = limit;
+        concurrencyChanges.increment();
+    }
+
+    public Snapshot snapshot() {
+        Map<Stage, LatencyHistogram.Snapshot> stageSnapshots = new EnumMap<>(Stage.class);
+        for (Map.Entry<Stage, LatencyHistogram> entry : stages.entrySet()) {
+            stageSnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        Map<String, LatencyHistogram.Snapshot> hostSnapshots = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : hosts.entrySet()) {
+            hostSnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        Map<Integer, Long> statuses = new TreeMap<>();
+        for (int status = 0; status < statusCounts.length(); status++) {
+            long count = statusCounts.get(status);
+            if (count > 0) {
+                statuses.put(status, count);
+            }
+        }
+        Map<String, Long> errorCounts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : errors.entrySet()) {
+            errorCounts.put(entry.getKey(), entry.getValue().sum());
+        }
+        Map<String, Transfer> transferSnapshots = new TreeMap<>();
+        for (Map.Entry<String, TransferCounter> entry : transfers.entrySet()) {
+            TransferCounter counter = entry.getValue();
+            transferSnapshots.put(entry.getKey(), new Transfer(counter.responses.sum(), counter.compressed.sum(),
+                    counter.wireBytes.sum(), counter.decodedBytes.sum()));
+        }
+        return new Snapshot(stageSnapshots, hostSnapshots, statuses, bytes.sum(), retries.sum(), errorCounts,
+                concurrencyLimit, concurrencyChanges.sum(), transferSnapshots);
+    }
+
+    /**
+     * 每隔periodMillis把快照写一次日志（INFO），close之后停止
+     */
+    public Closeable startReporter(long periodMillis) {
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "crawl-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            if (LOG.isInfoEnabled()) {
+                LOG.info("crawl metrics\n{}", snapshot());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        return reporter::shutdownNow;
+    }
+
+    private static class TransferCounter {
+        final LongAdder responses = new LongAdder();
+        final LongAdder compressed = new LongAdder();
+        final LongAdder wireBytes = new LongAdder();
+        final LongAdder decodedBytes = new LongAdder();
+    }
+
+    /**
+     * 一个host（或者所有host加起来）的正文传输量
+     */
+    public static class Transfer {
+        private final long responses;
+        private final long compressed;
+        private final long wireBytes;
+        private final long decodedBytes;
+
+        Transfer(long responses, long compressed, long wireBytes, long decodedBytes) {
+            this.responses = responses;
+            this.compressed = compressed;
+            this.wireBytes = wireBytes;
+            this.decodedBytes = decodedBytes;
+        }
+
+        public long responses() {
+            return responses;
+        }
+
+        /**
+         * @return 压缩传输的响应数
+         */
+        public long compressed() {
+            return compressed;
+        }
+
+        public long wireBytes() {
+            return wireBytes;
+        }
+
+        public long decodedBytes() {
+            return decodedBytes;
+        }
+
+        /**
+         * @return 压缩省下的字节数
+         */
+        public long savedBytes() {
+            return decodedBytes - wireBytes;
+        }
+
+        /**
+         * @return 连接上的字节数 / 解压以后的字节数，越小省得越多
+         */
+        public double ratio() {
+            return decodedBytes == 0 ? 1 : (double) wireBytes / decodedBytes;
+        }
+
+        Transfer plus(Transfer other) {
+            return new Transfer(responses + other.responses, compressed + other.compressed,
+                    wireBytes + other.wireBytes, decodedBytes + other.decodedBytes);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d responses (%d compressed), %d bytes on wire, %d decoded, saved %.1f%%",
+                    responses, compressed, wireBytes, decodedBytes, (1 - ratio()) * 100);
+        }
+    }
+
+    /**
+     * 某一时刻的所有指标
+     */
+    public static class Snapshot {
+        private static final int SLOWEST_HOSTS = 5;
+
+        private final Map<Stage, LatencyHistogram.Snapshot> stages;
+        private final Map<String, LatencyHistogram.Snapshot> hosts;
+        private final Map<Integer, Long> statuses;
+        private final long bytes;
+        private final long retries;
+        private final Map<String, Long> errors;
+        private final int concurrencyLimit;
+        private final long concurrencyChanges;
+        private final Map<String, Transfer> transfers;
+
+        Snapshot(Map<Stage, LatencyHistogram.Snapshot> stages, Map<String, LatencyHistogram.Snapshot> hosts,
+                 Map<Integer, Long> statuses, long bytes, long retries, Map<String, Long> errors,
+                 int concurrencyLimit, long concurrencyChanges, Map<String, Transfer> transfers) {
+            this.stages = stages;
+            this.hosts = hosts;
+            this.statuses = statuses;
+            this.bytes = bytes;
+            this.retries = retries;
+            this.errors = errors;
+            this.concurrencyLimit = concurrencyLimit;
+            this.concurrencyChanges = concurrencyChanges;
+            this.transfers = transfers;
+        }
+
+        public LatencyHistogram.Snapshot stage(Stage stage) {
+            return stages.get(stage);
+        }
+
+        /**
+         * @return 这个host的总耗时，没有抓过时返回null
+         */
+        public LatencyHistogram.Snapshot host(String host) {
+            return hosts.get(host);
+        }
+
+        public Map<String, LatencyHistogram.Snapshot> hosts() {
+            return Collections.unmodifiableMap(hosts);
+        }
+
+        /**
+         * @return p99最高的n个host，从慢到快
+         */
+        public Map<String, LatencyHistogram.Snapshot> slowestHosts(int n) {
+            List<Map.Entry<String, LatencyHistogram.Snapshot>> entries = new ArrayList<>(hosts.entrySet());
+            entries.sort((a, b) -> Long.compare(b.getValue().percentile(0.99), a.getValue().percentile(0.99)));
+            Map<String, LatencyHistogram.Snapshot> slowest = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(n, entries.size()); i++) {
+                slowest.put(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+            return slowest;
+        }
+
+        /**
+         * @return 状态码到次数，按状态码排序，每次重试都算
+         */
+        public Map<Integer, Long> statuses() {
+            return Collections.unmodifiableMap(statuses);
+        }
+
+        public long status(int status) {
+            Long count = statuses.get(status);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * @return 从连接上收到的字节数，包括响应头
+         */
+        public long bytes() {
+            return bytes;
+        }
+
+        public long retries() {
+            return retries;
+        }
+
+        /**
+         * @return 异常类名到次数
+         */
+        public Map<String, Long> errors() {
+            return Collections.unmodifiableMap(errors);
+        }
+
+        /**
+         * @return 最近一次调整后的并发上限，没有调整过时为0
+         */
+        public int concurrencyLimit() {
+            return concurrencyLimit;
+        }
+
+        public long concurrencyChanges() {
+            return concurrencyChanges;
+        }
+
+        /**
+         * @return 这个host的正文传输量，没有记录时返回null
+         */
+        public Transfer transfer(String host) {
+            return transfers.get(host);
+        }
+
+        public Map<String, Transfer> transfers() {
+            return Collections.unmodifiableMap(transfers);
+        }
+
+        /**
+         * @return 所有host加起来的正文传输量
+         */
+        public Transfer totalTransfer() {
+            Transfer total = new Transfer(0, 0, 0, 0);
+            for (Transfer transfer : transfers.values()) {
+                total = total.plus(transfer);
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Stage, LatencyHistogram.Snapshot> entry : stages.entrySet()) {
+                if (entry.getValue().count() > 0) {
+                    sb.append(String.format("  %-10s %s%n", entry.getKey(), entry.getValue()));
+                }
+            }
+            sb.append("  status ").append(statuses).append(", ").append(bytes).append(" bytes, ")
+                    .append(retries).append(" retries, errors ").append(errors).append(String.format("%n"));
+            if (!transfers.isEmpty()) {
+                sb.append("  transfer ").append(totalTransfer()).append(String.format("%n"));
+            }
+            if (concurrencyChanges > 0) {
+                sb.append("  concurrency limit ").append(concurrencyLimit).append(" after ")
+                        .append(concurrencyChanges).append(" changes").append(String.format("%n"));
+            }
+            for (Map.Entry<String, LatencyHistogram.Snapshot> entry : slowestHosts(SLOWEST_HOSTS).entrySet()) {
+                sb.append("  slow host ").append(entry.getKey()).append(' ').append(entry.getValue())
+                        .append(String.format("%n"));
+            }
+            return sb.toString();
+        }
+    }
+}
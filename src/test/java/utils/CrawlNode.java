@@ -0,0 +1,563 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 01:50
+ **/
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 多节点爬取里的一个节点，每个节点负责HostPartitioner分给它的host，有自己的seen集合和frontier。
+ * 节点之间用普通的TCP连接交换url：
+ *  - 发现的别的节点的url按目的节点攒起来，攒够batchSize个或者等了flushMillis就打成一批，
+ *    排序后用Deflater压缩（同一个host的url前缀相同，压缩率很高）
+ *  - 帧格式：1字节类型 + 4字节长度 + 内容；每个节点到每个别的节点最多一个出去的连接，第一次发送时才建立
+ *  - 终止检测用Mattern的双计数法：0号节点空闲时向所有节点要（是否空闲，发出的批数，处理完的批数），
+ *    连续两轮所有节点都空闲、两轮的数字完全一样、并且发出的总数等于处理完的总数，
+ *    就说明没有节点在干活，也没有还在路上或者还没处理的批，广播DONE
+ * 同一个JVM里可以起好几个节点（测试用），也可以用main在不同的JVM里各起一个。
+ */
+public class CrawlNode implements CrawlPartition, Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlNode.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_FLUSH_MILLIS = 20;
+    private static final long POLL_MILLIS = 10;
+    private static final long CONNECT_TIMEOUT_MILLIS = 10000;
+
+    private static final byte BATCH = 1;
+    private static final byte STATUS_REQUEST = 2;
+    private static final byte STATUS_REPLY = 3;
+    private static final byte DONE = 4;
+
+    private final int id;
+    private final HostPartitioner partitioner;
+    private final List<InetSocketAddress> addresses;
+    private final ServerSocket server;
+    private final int batchSize;
+    private final long flushMillis;
+    private final Peer[] peers;
+    private final List<Socket> inbound = new CopyOnWriteArrayList<>();
+    private Receiver receiver;
+    private volatile boolean closed;
+
+    // 以下只由master线程访问
+    private final List<List<String>> outbox;
+    private final long[] oldestAt;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    // 终止检测
+    private volatile boolean idle;
+    private volatile boolean terminated;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final BlockingQueue<long[]> replies = new LinkedBlockingQueue<>();
+
+    // 统计
+    private final AtomicLong urlsSent = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    public CrawlNode(int id, List<InetSocketAddress> addresses) throws IOException {
+        this(id, addresses, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * @param id          本节点的编号，addresses.get(id)是本节点监听的地址
+     * @param addresses   所有节点的地址，按编号排列，每个节点拿到的必须一样
+     * @param batchSize   攒多少个url发一批
+     * @param flushMillis 最老的url最多等多久就发出去
+     */
+    @SuppressWarnings("unchecked")
+    public CrawlNode(int id, List<InetSocketAddress> addresses, int batchSize, long flushMillis) throws IOException {
+        this.id = id;
+        this.addresses = new ArrayList<>(addresses);
+        this.partitioner = new HostPartitioner(addresses.size());
+        this.batchSize = batchSize;
+        this.flushMillis = flushMillis;
+        this.server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(addresses.get(id), 128);
+        this.peers = new Peer[addresses.size()];
+        this.outbox = new ArrayList<>(addresses.size());
+        this.oldestAt = new long[addresses.size()];
+        for (int i = 0; i < peers.length; i++) {
+            peers[i] = new Peer(addresses.get(i));
+            outbox.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * 在本机起n个节点，端口由系统分配，测试用
+     */
+    public static List<CrawlNode> local(int n) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<ServerSocket> reserved = new ArrayList<>();
+        try {
+            for (int i = 0; i < n; i++) {
+                ServerSocket socket = new ServerSocket(0, 1, java.net.InetAddress.getLoopbackAddress());
+                reserved.add(socket);
+                addresses.add(new InetSocketAddress(socket.getInetAddress(), socket.getLocalPort()));
+            }
+        } finally {
+            for (ServerSocket socket : reserved) {
+                socket.close();
+            }
+        }
+        List<CrawlNode> nodes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            nodes.add(new CrawlNode(i, addresses));
+        }
+        return nodes;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public HostPartitioner partitioner() {
+        return partitioner;
+    }
+
+    /**
+     * 开始接收别的节点的连接，0号节点同时开始终止检测。要在CrawlerManager.setPartition之后调用
+     */
+    public void start() {
+        if (receiver == null) {
+            throw new IllegalStateException("attach a CrawlerManager first");
+        }
+        daemon("crawl-node-" + id + "-accept", this::acceptLoop).start();
+        if (id == 0) {
+            daemon("crawl-node-0-termination", this::coordinate).start();
+        }
+    }
+
+    @Override
+    public void attach(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public boolean owns(String url) {
+        return partitioner.ownerOf(url) == id;
+    }
+
+    @Override
+    public void forward(String url) {
+        int owner = partitioner.ownerOf(url);
+        List<String> urls = outbox.get(owner);
+        if (urls.isEmpty()) {
+            oldestAt[owner] = System.currentTimeMillis();
+        }
+        urls.add(url);
+        if (urls.size() >= batchSize) {
+            send(owner);
+        }
+    }
+
+    @Override
+    public void flush(boolean force) {
+        long now = System.currentTimeMillis();
+        for (int node = 0; node < outbox.size(); node++) {
+            if (!outbox.get(node).isEmpty() && (force || now - oldestAt[node] >= flushMillis)) {
+                send(node);
+            }
+        }
+    }
+
+    @Override
+    public void setIdle(boolean idle) {
+        this.idle = idle;
+    }
+
+    @Override
+    public void batchProcessed() {
+        processed.incrementAndGet();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * @return 发给别的节点的url数
+     */
+    public long urlsSent() {
+        return urlsSent.get();
+    }
+
+    /**
+     * @return 压缩后的字节数 / 压缩前的字节数
+     */
+    public double compressionRatio() {
+        return rawBytes.get() == 0 ? 0 : (double) compressedBytes.get() / rawBytes.get();
+    }
+
+    private void send(int node) {
+        List<String> urls = outbox.get(node);
+        Collections.sort(urls);
+        StringBuilder joined = new StringBuilder();
+        for (String url : urls) {
+            joined.append(url).append('\n');
+        }
+        byte[] raw = joined.toString().getBytes(StandardCharsets.UTF_8);
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] buffer = new byte[raw.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        byte[] payload = new byte[8 + length];
+        writeInt(payload, 0, urls.size());
+        writeInt(payload, 4, raw.length);
+        System.arraycopy(buffer, 0, payload, 8, length);
+
+        // 先计数再发，对方处理完之前总数对不上，终止检测不会误判
+        sent.incrementAndGet();
+        urlsSent.addAndGet(urls.size());
+        rawBytes.addAndGet(raw.length);
+        compressedBytes.addAndGet(length);
+        peers[node].send(BATCH, payload);
+        urls.clear();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                inbound.add(socket);
+                daemon("crawl-node-" + id + "-reader", () -> readLoop(socket)).start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOG.warn("node {} failed to accept a connection: {}", id, e.toString());
+                }
+            }
+        }
+    }
+
+    private void readLoop(Socket socket) {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (!closed) {
+                byte type = in.readByte();
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                switch (type) {
+                    case BATCH:
+                        receiver.receive(decode(inflater, payload));
+                        break;
+                    case STATUS_REQUEST:
+                        peers[0].send(STATUS_REPLY, status(readLong(payload, 0)));
+                        break;
+                    case STATUS_REPLY:
+                        replies.add(new long[]{readLong(payload, 0), readLong(payload, 8), readLong(payload, 16),
+                                readLong(payload, 24), readLong(payload, 32)});
+                        break;
+                    case DONE:
+                        terminate();
+                        break;
+                    default:
+                        throw new IOException("unknown message type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // 对方关闭了连接
+        } catch (IOException | DataFormatException e) {
+            if (!closed) {
+                LOG.warn("node {} lost connection from {}: {}", id, socket.getRemoteSocketAddress(), e.toString());
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static List<String> decode(Inflater inflater, byte[] payload) throws DataFormatException {
+        int count = readInt(payload, 0);
+        byte[] raw = new byte[readInt(payload, 4)];
+        inflater.reset();
+        inflater.setInput(payload, 8, payload.length - 8);
+        int length = 0;
+        while (length < raw.length) {
+            int n = inflater.inflate(raw, length, raw.length - length);
+            if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                throw new DataFormatException("truncated batch");
+            }
+            length += n;
+        }
+        List<String> urls = new ArrayList<>(count);
+        int start = 0;
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i] == '\n') {
+                urls.add(new String(raw, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * 回复终止检测：轮次、节点号、是否空闲、发出的批数、处理完的批数。
+     * 先读计数再读空闲：空闲期间计数不会变，两轮一样就说明中间没有动过
+     */
+    private byte[] status(long round) {
+        long s = sent.get();
+        long p = processed.get();
+        boolean wasIdle = idle;
+        byte[] payload = new byte[40];
+        writeLong(payload, 0, round);
+        writeLong(payload, 8, id);
+        writeLong(payload, 16, wasIdle ? 1 : 0);
+        writeLong(payload, 24, s);
+        writeLong(payload, 32, p);
+        return payload;
+    }
+
+    /**
+     * 0号节点上的终止检测
+     */
+    private void coordinate() {
+        long round = 0;
+        long[][] previous = null;
+        try {
+            while (!closed && !terminated) {
+                Thread.sleep(POLL_MILLIS);
+                if (!idle) {
+                    previous = null;
+                    continue;
+                }
+                round++;
+                replies.clear();
+                long[][] current = new long[peers.length][];
+                byte[] own = status(round);
+                current[0] = new long[]{round, 0, readLong(own, 16), readLong(own, 24), readLong(own, 32)};
+                byte[] request = new byte[8];
+                writeLong(request, 0, round);
+                for (int node = 1; node < peers.length; node++) {
+                    peers[node].send(STATUS_REQUEST, request);
+                }
+                int missing = peers.length - 1;
+                long deadline = System.currentTimeMillis() + 1000;
+                while (missing > 0) {
+                    long[] reply = replies.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (reply == null) {
+                        break;
+                    }
+                    if (reply[0] == round && current[(int) reply[1]] == null) {
+                        current[(int) reply[1]] = reply;
+                        missing--;
+                    }
+                }
+                if (missing > 0) {
+                    previous = null;
+                    continue;
+                }
+                if (quiescent(current) && previous != null && sameCounts(previous, current)) {
+                    for (int node = 1; node < peers.length; node++) {
+                        peers[node].send(DONE, new byte[0]);
+                    }
+                    terminate();
+                    return;
+                }
+                previous = current;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean quiescent(long[][] status) {
+        long totalSent = 0;
+        long totalProcessed = 0;
+        for (long[] s : status) {
+            if (s[2] != 1) {
+                return false;
+            }
+            totalSent += s[3];
+            totalProcessed += s[4];
+        }
+        return totalSent == totalProcessed;
+    }
+
+    private static boolean sameCounts(long[][] a, long[][] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i][3] != b[i][3] || a[i][4] != b[i][4]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void terminate() {
+        terminated = true;
+        if (receiver != null) {
+            receiver.wakeUp();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.warn("node {} failed to close its server socket: {}", id, e.toString());
+        }
+        for (Peer peer : peers) {
+            peer.close();
+        }
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 已经关了
+            }
+        }
+        deflater.end();
+    }
+
+    /**
+     * 到另一个节点的连接，第一次发送时建立，对方还没起来时重试
+     */
+    private class Peer {
+        private final InetSocketAddress address;
+        private Socket socket;
+        private DataOutputStream out;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        synchronized void send(byte type, byte[] payload) {
+            try {
+                if (out == null) {
+                    connect();
+                }
+                out.writeByte(type);
+                out.writeInt(payload.length);
+                out.write(payload);
+                out.flush();
+            } catch (IOException e) {
+                if (!closed) {
+                    throw new IllegalStateException("node " + id + " cannot reach " + address, e);
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+            while (true) {
+                Socket s = new Socket();
+                try {
+                    s.connect(address, 1000);
+                    s.setTcpNoDelay(true);
+                    socket = s;
+                    out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+                    return;
+                } catch (IOException e) {
+                    s.close();
+                    if (System.currentTimeMillis() > deadline) {
+                        throw e;
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        synchronized void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // 已经关了
+                }
+            }
+        }
+    }
+
+    private static Thread daemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void writeInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+    }
+
+    private static void writeLong(byte[] b, int off, long v) {
+        writeInt(b, off, (int) (v >>> 32));
+        writeInt(b, off + 4, (int) v);
+    }
+
+    private static long readLong(byte[] b, int off) {
+        return (long) readInt(b, off) << 32 | (readInt(b, off + 4) & 0xffffffffL);
+    }
+
+    /**
+     * 在一个单独的JVM里跑一个节点：
+     * CrawlNode id seedUrl threads host:port,host:port,...
+     * 结束时打印 "node id: pages N"
+     */
+    public static void main(String[] args) throws Exception {
+        int id = Integer.parseInt(args[0]);
+        String seed = args[1];
+        int threads = Integer.parseInt(args[2]);
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : args[3].split(",")) {
+            int colon = address.lastIndexOf(':');
+            addresses.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        try (CrawlNode node = new CrawlNode(id, addresses)) {
+            CrawlerManager manager = new CrawlerManager(new HttpLinkSource(5000, 0), threads, 4 * threads, 0);
+            manager.setPartition(node);
+            node.start();
+            List<String> pages = manager.crawl(seed);
+            System.out.println("node " + id + ": pages " + pages.size());
+        }
+    }
+}
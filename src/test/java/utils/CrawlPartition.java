@@ -0,0 +1,61 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 01:40
+ **/
+
+import java.util.List;
+
+/**
+ * 多个节点一起爬时，CrawlerManager只负责自己那一份host。
+ * 除了attach，其余方法都只由master线程调用。
+ */
+public interface CrawlPartition {
+
+    /**
+     * 别的节点发来的url从这里交给CrawlerManager，可以在任何线程调用
+     */
+    interface Receiver {
+        void receive(List<String> urls);
+
+        /**
+         * 让等待中的master醒来看一眼isTerminated
+         */
+        void wakeUp();
+    }
+
+    void attach(Receiver receiver);
+
+    /**
+     * @return 这个url归本节点抓
+     */
+    boolean owns(String url);
+
+    /**
+     * 把别的节点的url交给它的主人，可以先攒着
+     */
+    void forward(String url);
+
+    /**
+     * 把攒着的url发出去
+     *
+     * @param force 为false时只发攒够了或者等得够久的
+     */
+    void flush(boolean force);
+
+    /**
+     * 本节点手上没有活了（或者又有了），终止检测用
+     */
+    void setIdle(boolean idle);
+
+    /**
+     * 处理完了receive交来的一批url
+     */
+    void batchProcessed();
+
+    /**
+     * @return 所有节点都没有活，也没有还在路上的url，可以结束了
+     */
+    boolean isTerminated();
+}
@@ -0,0 +1,73 @@
+package utils;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 14:00
+ **/
+
+/**
+ *  测出超时重试机制为了防止超时不生效而设置
+ *  如果直接放回false,不重试
+ *  这里会根据情况进行判断是否重试
+ *
+ *  原来是HttpPoolUtil.getHttpClient里的匿名类，抽出来给同步和异步的抓取共用。
+ *  异步的HttpClient没有重试机制，AsyncFetcher在请求失败时自己调用retryRequest。
+ *  每次决定重试都记到CrawlMetrics里。
+ */
+public class CrawlRetryHandler implements HttpRequestRetryHandler {
+    public static final CrawlRetryHandler INSTANCE = new CrawlRetryHandler();
+
+    @Override
+    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+        boolean retry = shouldRetry(exception, executionCount, context);
+        if (retry) {
+            CrawlMetrics.global().recordRetry();
+        }
+        return retry;
+    }
+
+    private boolean shouldRetry(IOException exception, int executionCount, HttpContext context) {
+        if (executionCount >= 3) {// 如果已经重试了3次，就放弃
+            return false;
+        }
+        if (exception instanceof NoHttpResponseException) {// 如果服务器丢掉了连接，那么就重试
+            return true;
+        }
+        if (exception instanceof SSLHandshakeException) {// 不要重试SSL握手异常
+            return false;
+        }
+        if (exception instanceof InterruptedIOException) {// 超时
+            return true;
+        }
+        if (exception instanceof UnknownHostException) {// 目标服务器不可达
+            return false;
+        }
+        if (exception instanceof ConnectTimeoutException) {// 连接被拒绝
+            return false;
+        }
+        if (exception instanceof SSLException) {// ssl握手异常
+            return false;
+        }
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        HttpRequest request = clientContext.getRequest();
+        // 如果请求是幂等的，就再次尝试
+        if (!(request instanceof HttpEntityEnclosingRequest)) {
+            return true;
+        }
+        return false;
+    }
+}
@@ -25,43 +25,61 @@ import java.util.*;
  */
 
 public class CrawlerDFS_BFS {
-    private static Map<String, List<String>> connectedUrls;
+    private final Map<String, List<String>> connectedUrls;
+
+    public CrawlerDFS_BFS(Map<String, List<String>> connectedUrls) {
+        this.connectedUrls = connectedUrls;
+    }
 
     public List<String> BFS(String url) {
-        Set<String> visited = new HashSet<>();
+        // visited只存指纹，完整的url只在结果里留一份
+        UrlSeenSet visited = new FingerprintSeenSet();
+        List<String> result = new ArrayList<>();
         Queue<String> queue = new LinkedList<>();
         visited.add(url);
+        result.add(url);
         queue.add(url);
 
         while (!queue.isEmpty()) {
             String currUrl = queue.poll();
             List<String> children = getUrls(currUrl);
             for (String nUrl : children) {
-                if (!visited.contains(nUrl)) {
+                if (visited.add(nUrl)) {
                     queue.add(nUrl);
-                    visited.add(nUrl);
+                    result.add(nUrl);
                 }
             }
         }
 
-        return new ArrayList<>(visited);
+        return result;
     }
 
+    /**
+     * 用显式的栈代替递归，访问顺序不变，很深的链接链也不会栈溢出。
+     * 大图请用LinkGraph
+     */
     public List<String> DFS(String url) {
-        Set<String> result = new HashSet<>();
-        DFSHelper(url, result);
-
-        return new ArrayList<>(result);
-    }
-
-    private void DFSHelper(String url, Set<String> result) {
-        if (url == null || result.contains(url)) return;
+        List<String> result = new ArrayList<>();
+        UrlSeenSet visited = new FingerprintSeenSet();
+        if (url == null || !visited.add(url)) return result;
 
         result.add(url);
-        List<String> childrenUrls = getUrls(url);
-        for(String childUrl: childrenUrls) {
-            DFSHelper(childUrl, result);
+        Deque<Iterator<String>> stack = new ArrayDeque<>();
+        stack.push(getUrls(url).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<String> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            String childUrl = children.next();
+            if (childUrl != null && visited.add(childUrl)) {
+                result.add(childUrl);
+                stack.push(getUrls(childUrl).iterator());
+            }
         }
+
+        return result;
     }
 
     private List<String> getUrls(String url) {
@@ -69,7 +87,7 @@ public class CrawlerDFS_BFS {
     }
 
     public static void main(String[] args) {
-        connectedUrls = new HashMap<>();
+        Map<String, List<String>> connectedUrls = new HashMap<>();
         List<String> aChildren = new ArrayList<>();
         aChildren.add("b");
         aChildren.add("c");
@@ -89,10 +107,13 @@ public class CrawlerDFS_BFS {
         connectedUrls.put("b", bChildren);
         connectedUrls.put("k", kChildren);
 
-        CrawlerDFS_BFS crawler = new CrawlerDFS_BFS();
+        CrawlerDFS_BFS crawler = new CrawlerDFS_BFS(connectedUrls);
         System.out.println(crawler.BFS("a"));
         System.out.println(crawler.DFS("a"));
 
+        LinkGraph graph = LinkGraph.of(connectedUrls);
+        System.out.println(graph.bfs("a"));
+        System.out.println(graph.dfs("a"));
     }
 
 }
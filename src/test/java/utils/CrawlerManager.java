@@ -13,22 +13,40 @@ package utils;
 // doesn’t justify synch overhead. So, prefer just the master thread to do it.
 
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /*
     http://scrumbucket.org/tutorials/neo4j-site-crawler/part-2-create-multi-threaded-crawl-manager/
  */
 public class CrawlerManager {
-    private final int THREAD_COUNT = 10;
-    private final int PAUSE_TIME = 1000;
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlerManager.class);
+
+    /**
+     * PLATFORM：平台线程，线程数由AdaptiveConcurrency按抓取的延迟和失败率调整
+     * VIRTUAL：每次抓取一个虚拟线程，并发度由FetchPermits按连接池的大小控制，
+     *          爬虫几乎全是IO等待，用它才能把HttpPoolUtil的连接池用满
+     */
+    public enum Mode {
+        PLATFORM, VIRTUAL
+    }
 
-    // 因为hashset每个元素的组成还是链表，单纯的用hashset可能会造成链表循环
-    private Set<String> result = new CopyOnWriteArraySet<>();
-    private List<Future<List<String>>> futures = new CopyOnWriteArrayList<>();
-//    private ExecutorService executor = Executors.newFixedThreadPool()
+    private static final int PAUSE_TIME = 1000;
+    private static final int MAX_IN_FLIGHT = 64;
+
+    // 去重只存url的指纹，不存完整的String，见UrlSeenSet
+    private UrlSeenSet seen = new FingerprintSeenSet();
+    // 去重之前先规范化，同一个页面的不同写法只抓一次；为null时不做
+    private UrlCanonicalizer canonicalizer = UrlCanonicalizer.DEFAULT;
+    // 按发现顺序记录第一次见到的url，crawl()返回它
+    private List<String> result = new ArrayList<>();
+    // 已去重、还没交给worker的url，按host排队，决定什么时候能抓
+    private Frontier frontier;
+    // 已提交但还没取回结果的任务数，降到0并且frontier为空时爬取结束
+    private int inFlight = 0;
 
     /**
      * 线程池的大小按照经验的估算：
@@ -37,77 +55,581 @@ public class CrawlerManager {
      * 在IO优化中，这样的估算公式可能更适合：
      *  最佳线程数目 = （（线程等待时间+线程CPU时间）/线程CPU时间 ）* CPU数目
      *  因为明显，线程等待时间所占比例越高，需要越多线程。CPU所占时间越高需要越少线程。
+     * 等待时间随网站和网络变化，估不准，用AdaptiveConcurrency的构造函数时线程数在运行时调整。
      */
     /**
      * 阿里开发手册强制使用 ThreadPoolExecutor，用newFixedThreadPool有一定风险
      * 因为其内部的LinkedBlockingQueue默认使用Integer.MAX_VALUE，有oom的风险
-     * also，some link will be rejected when the pool is full
+     * 所以这里用有界的ArrayBlockingQueue，并且master最多只提交maxInFlight个任务，
+     * 队列永远不会满，也就不会有链接被拒绝
+     */
+    private final ExecutorService executor;
+    // VIRTUAL模式下限制同时抓取的数量，PLATFORM模式下线程数本身就是限制，为null
+    private final FetchPermits permits;
+    // 任务谁先完成谁先放进来，不会被一个慢host卡住后面所有的结果
+    private final BlockingQueue<CrawlResult> completed = new LinkedBlockingQueue<>();
+    private final LinkSource linkSource;
+    // 异步抓取时不用线程池，由fetcher的回调把结果放进completed
+    private final Fetcher fetcher;
+    private final LinkParser parser;
+    private final int maxInFlight;
+    // 为null时不记录进度
+    private CrawlCheckpoint checkpoint;
+    private long checkpointInterval;
+    private long lastCheckpointAt;
+    // 排队、抓取的耗时和失败次数，见CrawlMetrics
+    private CrawlMetrics metrics = CrawlMetrics.global();
+    // 为null时同时抓取的数量固定为maxInFlight
+    private final AdaptiveConcurrency concurrency;
+    // 多节点爬取时只抓自己的host，为null时抓所有的
+    private CrawlPartition partition;
+    // 分区模式下别的节点发来的url多久至少发一次，毫秒
+    private static final long FLUSH_INTERVAL = 10;
+    // 为null时不记录链接关系
+    private LinkGraph.Builder links;
+    // 为null时不管robots.txt
+    private RobotsCache robots;
+    // 构造时给的host抓取间隔，Crawl-delay比它小时不用
+    private final long hostDelay;
+    // worker抓robots.txt以后才发现不能抓的url，结束时从结果里去掉
+    private final Set<String> blockedUrls = new HashSet<>();
+    private long blocked;
+    // 为null时不预解析DNS
+    private CachingDnsResolver dns;
+
+    public CrawlerManager(LinkSource linkSource) {
+        this(linkSource, 4, MAX_IN_FLIGHT, PAUSE_TIME);
+    }
+
+    /**
+     * @param linkSource  获取页面链接的方式
+     * @param threadCount worker线程数
+     * @param maxInFlight 同时提交给线程池的最大任务数，超过的url留在frontier里等待
+     * @param hostDelay   同一个host两次抓取的最小间隔，单位毫秒
+     */
+    public CrawlerManager(LinkSource linkSource, int threadCount, int maxInFlight, long hostDelay) {
+        if (threadCount <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("threadCount and maxInFlight must be positive");
+        }
+        this.linkSource = linkSource;
+        this.maxInFlight = maxInFlight;
+        this.frontier = new HostFrontier(hostDelay, HttpPoolUtil.DEFAULT_MAX_PER_ROUTE);
+        this.hostDelay = hostDelay;
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(maxInFlight));
+        this.permits = null;
+        this.fetcher = null;
+        this.parser = null;
+        this.concurrency = null;
+    }
+
+    /**
+     * 平台线程，同时抓取的数量和线程数都跟着concurrency.limit()变，
+     * 不会超过concurrency.maxLimit()
+     */
+    public CrawlerManager(LinkSource linkSource, AdaptiveConcurrency concurrency, long hostDelay) {
+        this.linkSource = linkSource;
+        this.concurrency = concurrency;
+        this.maxInFlight = concurrency.maxLimit();
+        this.frontier = new HostFrontier(hostDelay, HttpPoolUtil.DEFAULT_MAX_PER_ROUTE);
+        this.hostDelay = hostDelay;
+        this.executor = new ThreadPoolExecutor(concurrency.limit(), concurrency.limit(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(maxInFlight));
+        this.permits = null;
+        this.fetcher = null;
+        this.parser = null;
+    }
+
+    /**
+     * VIRTUAL模式，每个url一个虚拟线程
+     *
+     * @param permits     同时抓取数的限制，一般用FetchPermits.forHttpPool()
+     * @param maxInFlight 同时存在的任务数，可以比permits大，多出来的虚拟线程等在信号量上
+     */
+    public CrawlerManager(LinkSource linkSource, FetchPermits permits, int maxInFlight, long hostDelay) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.linkSource = linkSource;
+        this.maxInFlight = maxInFlight;
+        this.frontier = new HostFrontier(hostDelay, HttpPoolUtil.DEFAULT_MAX_PER_ROUTE);
+        this.hostDelay = hostDelay;
+        this.executor = VirtualThreads.newThreadPerTaskExecutor();
+        this.permits = permits;
+        this.fetcher = null;
+        this.parser = null;
+        this.concurrency = null;
+    }
+
+    /**
+     * 异步模式，不占用worker线程，同时进行的请求数只受maxInFlight和fetcher的连接池限制
+     *
+     * @param fetcher 一般是AsyncFetcher，由调用方负责关闭
+     * @param parser  从响应里取链接；用NearDuplicateDetector.linkParser包一层时，内容重复的页面不展开链接
+     */
+    public CrawlerManager(Fetcher fetcher, LinkParser parser, int maxInFlight, long hostDelay) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.linkSource = null;
+        this.fetcher = fetcher;
+        this.parser = parser;
+        this.maxInFlight = maxInFlight;
+        this.frontier = new HostFrontier(hostDelay, HttpPoolUtil.DEFAULT_MAX_PER_ROUTE);
+        this.hostDelay = hostDelay;
+        this.executor = null;
+        this.permits = null;
+        this.concurrency = null;
+    }
+
+    public static CrawlerManager create(LinkSource linkSource, Mode mode, long hostDelay) {
+        if (mode == Mode.VIRTUAL) {
+            return new CrawlerManager(linkSource, FetchPermits.forHttpPool(),
+                    HttpPoolUtil.MAX_TOTAL * 2, hostDelay);
+        }
+        return new CrawlerManager(linkSource, AdaptiveConcurrency.forHttpPool(), hostDelay);
+    }
+
+    /**
+     * 替换去重集合，上亿url的爬取可以换成BloomSeenSet，必须在crawl之前调用
+     */
+    public void setSeenSet(UrlSeenSet seen) {
+        this.seen = seen;
+    }
+
+    /**
+     * 替换url的规范化规则，例如去掉更多的跟踪参数；为null时按原样去重。必须在crawl之前调用
+     */
+    public void setCanonicalizer(UrlCanonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+    }
+
+    /**
+     * 替换frontier，必须在crawl之前调用；待抓的url多到堆放不下时用SpillingFrontier
+     */
+    public void setFrontier(Frontier frontier) {
+        this.frontier = frontier;
+    }
+
+    /**
+     * 记录爬取进度，必须在crawl之前调用。
+     * checkpoint里已经有进度时，crawl会从那里接着爬，不再从种子开始，
+     * 已经处理完的url不会再抓。
+     *
+     * @param intervalMillis 两次把记录刷到磁盘的最小间隔
+     */
+    public void setCheckpoint(CrawlCheckpoint checkpoint, long intervalMillis) {
+        this.checkpoint = checkpoint;
+        this.checkpointInterval = intervalMillis;
+    }
+
+    /**
+     * 换一个CrawlMetrics，默认记到CrawlMetrics.global()
+     */
+    public void setMetrics(CrawlMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 遵守robots.txt，必须在crawl之前调用。
+     * 已经缓存了robots.txt的host，不能抓的url在进frontier之前就被丢掉；
+     * 还没有缓存的，worker抓页面之前先拿到规则再决定。Crawl-delay交给frontier按host调度。
+     * robots可以在多次crawl之间共用，crawl不会关掉它，用完由调用方close
+     */
+    public void setRobots(RobotsCache robots) {
+        this.robots = robots;
+    }
+
+    /**
+     * @return 因为robots.txt没有抓的url数
+     */
+    public long getBlocked() {
+        return blocked;
+    }
+
+    /**
+     * url进frontier时在后台解析它的host，worker真正建连接时DNS已经在缓存里了。
+     * 一般传HttpPoolUtil.dnsResolver()，或者是自己的HttpClientRegistry用的那个
+     */
+    public void setDnsResolver(CachingDnsResolver dns) {
+        this.dns = dns;
+    }
+
+    /**
+     * 把抓到的每个页面和它的子链接（规范化以后）记到links里，爬完以后build出LinkGraph算PageRank。
+     * 抓取失败的页面没有出边
      */
-    private ExecutorService executor = Executors.newFixedThreadPool(4);
-//    private ExecutorService executor =
-    private static Map<String, List<String>> connectedUrls;
+    public void setLinkGraph(LinkGraph.Builder links) {
+        this.links = links;
+    }
+
+    /**
+     * 多节点爬取，必须在crawl之前调用。不归本节点的url去重以后交给partition，
+     * 本地的活干完以后等partition判断所有节点都结束了才返回。
+     * crawl返回的只是本节点负责的url。
+     */
+    public void setPartition(CrawlPartition partition) {
+        this.partition = partition;
+        partition.attach(new CrawlPartition.Receiver() {
+            @Override
+            public void receive(List<String> urls) {
+                completed.add(CrawlResult.remote(urls));
+            }
+
+            @Override
+            public void wakeUp() {
+                completed.add(CrawlResult.remote(Collections.<String>emptyList()));
+            }
+        });
+    }
 
     public List<String> crawl(String url) {
-        submitUrl(url);
-        while(checkCrawlerResult());
-        executor.shutdown();
+        if (checkpoint != null && !checkpoint.isEmpty()) {
+            resume();
+        } else {
+            submitUrl(url);
+        }
+        lastCheckpointAt = System.currentTimeMillis();
+        try {
+            while (true) {
+                dispatch();
+                if (inFlight == 0 && frontier.isEmpty()) {
+                    if (partition == null) {
+                        break;
+                    }
+                    // 先把攒着的url发出去再报告空闲，否则别的节点以为没有活了
+                    partition.flush(true);
+                    partition.setIdle(true);
+                    if (partition.isTerminated()) {
+                        break;
+                    }
+                } else if (partition != null) {
+                    partition.flush(false);
+                }
+                // 阻塞等待下一个完成的任务，不再空转；
+                // 还有空闲名额时最多等到下一个host可以抓的时候
+                int limit = concurrency == null ? maxInFlight : concurrency.limit();
+                long readyAt = inFlight < limit ? frontier.nextReadyAt() : Long.MAX_VALUE;
+                if (partition != null && inFlight > 0) {
+                    // 忙的时候也要定期把攒着的url发出去
+                    readyAt = Math.min(readyAt, System.currentTimeMillis() + FLUSH_INTERVAL);
+                }
+                CrawlResult next;
+                if (readyAt == Long.MAX_VALUE) {
+                    next = completed.take();
+                } else {
+                    long wait = Math.max(1, readyAt - System.currentTimeMillis());
+                    next = completed.poll(wait, TimeUnit.MILLISECONDS);
+                }
+                if (next != null) {
+                    handleResult(next);
+                }
+                maybeCheckpoint();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (checkpoint != null) {
+                checkpoint.checkpoint();
+            }
+        }
+        if (!blockedUrls.isEmpty()) {
+            List<String> allowed = new ArrayList<>(result.size() - blockedUrls.size());
+            for (String page : result) {
+                if (!blockedUrls.contains(page)) {
+                    allowed.add(page);
+                }
+            }
+            return allowed;
+        }
         return new ArrayList<>(result);
+    }
 
+    /**
+     * 在不超过maxInFlight的前提下把frontier里现在能抓的url交给线程池，
+     * 剩下的留在frontier里，这就是对worker的背压。
+     */
+    private void dispatch() {
+        long now = System.currentTimeMillis();
+        int limit = concurrency == null ? maxInFlight : Math.min(maxInFlight, concurrency.limit());
+        String url;
+        while (inFlight < limit && (url = frontier.poll(now)) != null) {
+            if (fetcher != null) {
+                fetchAsync(url);
+            } else {
+                executor.execute(new Crawler(url));
+            }
+            inFlight++;
+        }
     }
 
-    // 这个方法有一个问题就是我们的max_thread_num 和 LinkedBlockingQueue 可能会无法容纳这么多的link
+    private void fetchAsync(final String url) {
+        final long start = System.nanoTime();
+        final CrawlResult crawlResult = new CrawlResult(url);
+        CompletableFuture<FetchResponse> fetched;
+        if (robots == null) {
+            fetched = fetcher.fetch(url);
+        } else {
+            // 规则在RobotsCache自己的线程里抓，不占用fetcher的回调线程
+            fetched = robots.load(url).thenCompose(rules -> checkRobots(crawlResult, rules)
+                    ? fetcher.fetch(url) : CompletableFuture.<FetchResponse>completedFuture(null));
+        }
+        fetched.whenComplete((response, error) -> {
+            if (error != null) {
+                crawlResult.error = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+            } else if (crawlResult.blocked) {
+                // 没有发请求
+            } else {
+                try {
+                    long parseStart = System.nanoTime();
+                    List<String> urls = parser.parse(response);
+                    metrics.record(CrawlMetrics.Stage.PARSE, System.nanoTime() - parseStart);
+                    if (urls != null) {
+                        crawlResult.urls = urls;
+                    }
+                } catch (Exception e) {
+                    crawlResult.error = e;
+                }
+            }
+            crawlResult.nanos = System.nanoTime() - start;
+            recordFetch(url, crawlResult.nanos);
+            completed.add(crawlResult);
+        });
+    }
 
-    private boolean checkCrawlerResult() {
-        List<String> newUrls = new ArrayList<>();
-        Iterator<Future<List<String>>> iterator = futures.iterator();
-        while (iterator.hasNext()) {
-            Future<List<String>> future = iterator.next();
-            futures.remove(future);
-            try {
-                newUrls.addAll(future.get());
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            } catch (ExecutionException e) {
-                e.printStackTrace();
+    /**
+     * 记下Crawl-delay，robots.txt不让抓时标记为blocked
+     *
+     * @return 可以抓
+     */
+    private static boolean checkRobots(CrawlResult crawlResult, RobotsRules rules) {
+        crawlResult.crawlDelay = rules.crawlDelayMillis();
+        if (!rules.isAllowed(RobotsCache.pathOf(crawlResult.url))) {
+            crawlResult.blocked = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void handleResult(CrawlResult crawlResult) {
+        if (crawlResult.remote) {
+            handleRemote(crawlResult);
+            return;
+        }
+        // 被robots.txt挡掉的没有发请求，耗时几乎为0，不能当作样本，否则RTT基线被拉低、并发上限虚高
+        if (concurrency != null && !crawlResult.blocked
+                && concurrency.onSample(crawlResult.nanos, crawlResult.error != null, inFlight)) {
+            resizePool(concurrency.limit());
+        }
+        inFlight--;
+        frontier.done(crawlResult.url);
+        if (crawlResult.crawlDelay > hostDelay) {
+            frontier.setHostDelay(HostFrontier.hostOf(crawlResult.url), crawlResult.crawlDelay);
+        }
+        if (crawlResult.blocked) {
+            blocked++;
+            blockedUrls.add(crawlResult.url);
+            return;
+        }
+        if (crawlResult.error != null) {
+            // 超时之类的失败很常见，不再每个都打印堆栈，次数见CrawlMetrics
+            metrics.recordError(crawlResult.error);
+            LOG.warn("fetch failed: {} {}", crawlResult.url, crawlResult.error.toString());
+            LOG.debug("fetch failed: " + crawlResult.url, crawlResult.error);
+            return;
+        }
+        if (links != null) {
+            links.addNode(crawlResult.url);
+        }
+        for (String url : crawlResult.urls) {
+            String child = submitUrl(url);
+            if (links != null) {
+                links.addEdge(crawlResult.url, child);
             }
         }
+        // 子链接的记录在前，崩溃在两者之间时只会重新抓这一个页面
+        if (checkpoint != null) {
+            checkpoint.recordCompleted(crawlResult.url);
+        }
+    }
 
-        for (String url : newUrls) {
+    /**
+     * 别的节点发来的url，或者叫醒master的空结果
+     */
+    private void handleRemote(CrawlResult crawlResult) {
+        if (crawlResult.urls.isEmpty()) {
+            return;
+        }
+        partition.setIdle(false);
+        for (String url : crawlResult.urls) {
             submitUrl(url);
         }
+        partition.batchProcessed();
+    }
 
-        return futures.size() > 0 || newUrls.size() > 0;
+    /**
+     * 线程数跟着上限走；变小时多出来的线程做完手上的任务就退出
+     */
+    private void resizePool(int limit) {
+        metrics.recordConcurrencyLimit(limit);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        if (limit > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(limit);
+            pool.setCorePoolSize(limit);
+        } else {
+            pool.setCorePoolSize(limit);
+            pool.setMaximumPoolSize(limit);
+        }
+    }
+
+    /**
+     * 从checkpoint恢复seen集合和结果，没处理完的url重新进frontier
+     */
+    private void resume() {
+        for (String url : checkpoint.discovered()) {
+            if (seen.add(url)) {
+                result.add(url);
+                if (!checkpoint.isCompleted(url)) {
+                    frontier.add(url);
+                }
+            }
+        }
     }
 
+    private void maybeCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointAt >= checkpointInterval) {
+            checkpoint.checkpoint();
+            lastCheckpointAt = now;
+        }
+    }
+
+    private void recordFetch(String url, long nanos) {
+        metrics.record(CrawlMetrics.Stage.FETCH, nanos);
+        metrics.recordHost(HostFrontier.hostOf(url), nanos);
+    }
 
-    private List<String> getUrls(String url) {
-        return connectedUrls.getOrDefault(url, new ArrayList<String>());
+    private List<String> getUrls(String url) throws Exception {
+        List<String> urls = linkSource.getUrls(url);
+        return urls == null ? Collections.<String>emptyList() : urls;
     }
 
-    private void submitUrl(String url) {
-        if (!result.contains(url)) {
+    /**
+     * @return 规范化以后的url
+     */
+    private String submitUrl(String url) {
+        if (canonicalizer != null) {
+            url = canonicalizer.canonicalize(url);
+        }
+        if (seen.add(url)) {
+            // 别的节点的url在本地也去重，同一个url只发一次
+            if (partition != null && !partition.owns(url)) {
+                partition.forward(url);
+                return url;
+            }
+            if (robots != null) {
+                // 只看缓存，host的robots.txt还没抓过时交给worker
+                RobotsRules rules = robots.peek(url);
+                if (rules != null && !rules.isAllowed(RobotsCache.pathOf(url))) {
+                    blocked++;
+                    return url;
+                }
+            }
             result.add(url);
-            Crawler crawler = new Crawler(url);
-            Future<List<String>> future = executor.submit(crawler);
-            futures.add(future);
+            frontier.add(url);
+            if (dns != null) {
+                dns.prefetch(HostFrontier.hostOf(url));
+            }
+            if (checkpoint != null) {
+                checkpoint.recordDiscovered(url);
+            }
         }
+        return url;
     }
 
-    private class Crawler implements Callable<List<String>> {
+    /**
+     * worker交回给master的结果，失败时error不为null
+     */
+    private static class CrawlResult {
+        private final String url;
+        private List<String> urls = Collections.emptyList();
+        private Throwable error;
+        // 抓取用了多久
+        private long nanos;
+        // 别的节点发来的url，不是worker的结果
+        private boolean remote;
+        // robots.txt不让抓，没有发请求
+        private boolean blocked;
+        // robots.txt里的Crawl-delay，毫秒，没有时为-1
+        private long crawlDelay = -1;
+
+        CrawlResult(String url) {
+            this.url = url;
+        }
+
+        static CrawlResult remote(List<String> urls) {
+            CrawlResult crawlResult = new CrawlResult(null);
+            crawlResult.urls = urls;
+            crawlResult.remote = true;
+            return crawlResult;
+        }
+    }
+
+    private class Crawler implements Runnable {
         private String url;
+        private final long submittedAt = System.nanoTime();
         public Crawler(String url) {
             this.url = url;
         }
 
         @Override
-        public List<String> call() throws Exception {
-            Thread.sleep(PAUSE_TIME);
-            return getUrls(url);
+        public void run() {
+            long start = System.nanoTime();
+            metrics.record(CrawlMetrics.Stage.QUEUE, start - submittedAt);
+            CrawlResult crawlResult = call();
+            crawlResult.nanos = System.nanoTime() - start;
+            recordFetch(url, crawlResult.nanos);
+            completed.add(crawlResult);
+        }
+
+        /**
+         * 不再sleep，抓取间隔由frontier按host控制
+         */
+        private CrawlResult call() {
+            CrawlResult crawlResult = new CrawlResult(url);
+            try {
+                if (robots != null && !checkRobots(crawlResult, robots.rules(url))) {
+                    return crawlResult;
+                }
+                if (permits == null) {
+                    crawlResult.urls = getUrls(url);
+                } else {
+                    permits.acquire(url);
+                    try {
+                        crawlResult.urls = getUrls(url);
+                    } finally {
+                        permits.release(url);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                crawlResult.error = e;
+            } catch (Exception e) {
+                crawlResult.error = e;
+            }
+            return crawlResult;
         }
     }
 
     public static void main(String[] args) {
-        connectedUrls = new HashMap<>();
+        final Map<String, List<String>> connectedUrls = new HashMap<>();
         List<String> aChildren = new ArrayList<>();
         aChildren.add("b");
         aChildren.add("c");
@@ -127,7 +649,7 @@ public class CrawlerManager {
         connectedUrls.put("b", bChildren);
         connectedUrls.put("k", kChildren);
 
-        CrawlerManager crawlerManager = new CrawlerManager();
+        CrawlerManager crawlerManager = new CrawlerManager(connectedUrls::get);
         System.out.println(crawlerManager.crawl("a"));
     }
 }
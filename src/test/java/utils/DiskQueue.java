@@ -0,0 +1,244 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 17:00
+ **/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+/**
+ * 先进先出的String队列，只有头尾两小段在堆上，中间的部分写到磁盘：
+ *  - head：马上要出队的一批，tail：刚入队的一批，都是有界的ArrayDeque
+ *  - tail满了就整批追加到segment文件里，head空了再从最老的segment整批读回来，
+ *    所以磁盘上永远是顺序写、顺序读
+ *  - segment文件通过FileChannel.map映射，读写都是内存操作，由操作系统决定什么时候落盘
+ *  - 读完的segment不删除，清空后留着给下一次写，省掉建文件和映射的开销
+ * 顺序：head里的元素比磁盘上的老，磁盘上的比tail里的老。
+ * 不是线程安全的，和Frontier一样只给master线程用。
+ */
+public class DiskQueue implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MEMORY_ITEMS = 64 * 1024;
+    // 读完后留着复用的segment数，多出来的直接删掉
+    private static final int MAX_FREE_SEGMENTS = 4;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int batchSize;
+    private final ArrayDeque<String> head = new ArrayDeque<>();
+    private final ArrayDeque<String> tail = new ArrayDeque<>();
+    // 最老的在前面，最后一个是正在写的
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayDeque<Segment> free = new ArrayDeque<>();
+    private byte[] scratch = new byte[1024];
+    private long size;
+    private long onDisk;
+    private int segmentsCreated;
+    private boolean closed;
+
+    /**
+     * @param dir 存放segment文件的目录
+     */
+    public DiskQueue(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_SIZE, DEFAULT_MEMORY_ITEMS);
+    }
+
+    /**
+     * @param dir         存放segment文件的目录，不存在时会创建
+     * @param segmentSize 每个segment文件的大小，单个元素编码后不能超过它
+     * @param memoryItems head和tail合起来最多放在堆上的元素数
+     */
+    public DiskQueue(Path dir, int segmentSize, int memoryItems) throws IOException {
+        if (segmentSize < 1024 || memoryItems < 2) {
+            throw new IllegalArgumentException("segmentSize must be >= 1024 and memoryItems >= 2");
+        }
+        this.dir = Files.createDirectories(dir);
+        this.segmentSize = segmentSize;
+        this.batchSize = memoryItems / 2;
+    }
+
+    public void add(String item) {
+        if (closed) {
+            throw new IllegalStateException("queue is closed");
+        }
+        // 磁盘和tail都空的时候没有比它更新的元素，可以直接放进head
+        if (onDisk == 0 && tail.isEmpty() && head.size() < batchSize) {
+            head.add(item);
+        } else {
+            tail.add(item);
+            if (tail.size() >= batchSize) {
+                spill();
+            }
+        }
+        size++;
+    }
+
+    /**
+     * @return 队首元素，队列为空时返回null
+     */
+    public String poll() {
+        if (head.isEmpty()) {
+            if (onDisk > 0) {
+                load();
+            } else {
+                // 磁盘上没有，tail里的就是最老的
+                while (!tail.isEmpty()) {
+                    head.add(tail.poll());
+                }
+            }
+        }
+        String item = head.poll();
+        if (item != null) {
+            size--;
+        }
+        return item;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return 写在磁盘上、还没读回来的元素数
+     */
+    public long sizeOnDisk() {
+        return onDisk;
+    }
+
+    /**
+     * @return 一共新建过的segment文件数，读完的segment会复用，所以稳定状态下它不再增长
+     */
+    public int segmentsCreated() {
+        return segmentsCreated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        head.clear();
+        tail.clear();
+        size = 0;
+        onDisk = 0;
+        for (Segment segment : segments) {
+            Files.deleteIfExists(segment.file);
+        }
+        for (Segment segment : free) {
+            Files.deleteIfExists(segment.file);
+        }
+        segments.clear();
+        free.clear();
+    }
+
+    /**
+     * 把tail整批追加到磁盘上
+     */
+    private void spill() {
+        String item;
+        while ((item = tail.poll()) != null) {
+            byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length + 4 > segmentSize) {
+                throw new IllegalArgumentException("item of " + bytes.length + " bytes does not fit a segment");
+            }
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.write.remaining() < bytes.length + 4) {
+                segment = nextSegment();
+                segments.add(segment);
+            }
+            segment.write.putInt(bytes.length);
+            segment.write.put(bytes);
+            onDisk++;
+        }
+    }
+
+    /**
+     * 从最老的segment读一批到head，读完的segment回收
+     */
+    private void load() {
+        while (head.size() < batchSize && onDisk > 0) {
+            Segment segment = segments.peek();
+            if (segment.read.position() == segment.write.position()) {
+                segments.poll();
+                recycle(segment);
+                continue;
+            }
+            int length = segment.read.getInt();
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            segment.read.get(scratch, 0, length);
+            head.add(new String(scratch, 0, length, StandardCharsets.UTF_8));
+            onDisk--;
+        }
+        if (onDisk == 0) {
+            // 全部读完了，正在写的segment也可以从头再写
+            Segment segment;
+            while ((segment = segments.poll()) != null) {
+                recycle(segment);
+            }
+        }
+    }
+
+    private Segment nextSegment() {
+        Segment segment = free.poll();
+        if (segment != null) {
+            return segment;
+        }
+        try {
+            Path file = Files.createTempFile(dir, "frontier-", ".seg");
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+                 FileChannel channel = raf.getChannel()) {
+                // 映射建立后就和channel无关了，关掉channel不影响读写
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+                segmentsCreated++;
+                return new Segment(file, mapped);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot create segment in " + dir, e);
+        }
+    }
+
+    private void recycle(Segment segment) {
+        if (free.size() < MAX_FREE_SEGMENTS) {
+            segment.write.clear();
+            segment.read.clear();
+            free.add(segment);
+        } else {
+            // Java 8没有公开的unmap，映射在buffer被回收时释放，文件先删掉
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * write和read是同一块映射的两个视图，各自维护position
+     */
+    private static final class Segment {
+        final Path file;
+        final ByteBuffer write;
+        final ByteBuffer read;
+
+        Segment(Path file, MappedByteBuffer mapped) {
+            this.file = file;
+            this.write = mapped;
+            this.read = mapped.duplicate();
+        }
+    }
+}
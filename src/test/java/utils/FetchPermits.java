@@ -0,0 +1,84 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 11:10
+ **/
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 一个任务一个虚拟线程时，线程数不再限制并发，这里用信号量把同时进行的抓取数
+ * 限制在连接池的 maxTotal 和 defaultMaxPerRoute 之内，
+ * 这样线程不会卡在连接池的 connectionRequestTimeout 上。
+ */
+public class FetchPermits {
+    private final Semaphore total;
+    private final int maxPerRoute;
+    private final ConcurrentMap<String, Semaphore> routes = new ConcurrentHashMap<>();
+
+    public FetchPermits(int maxTotal, int maxPerRoute) {
+        if (maxTotal <= 0 || maxPerRoute <= 0) {
+            throw new IllegalArgumentException("maxTotal and maxPerRoute must be positive");
+        }
+        this.total = new Semaphore(maxTotal, true);
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * 和HttpPoolUtil里connManager的配置保持一致
+     */
+    public static FetchPermits forHttpPool() {
+        return new FetchPermits(HttpPoolUtil.MAX_TOTAL, HttpPoolUtil.DEFAULT_MAX_PER_ROUTE);
+    }
+
+    /**
+     * 先拿route的许可再拿全局的，等某个host的线程不会占着全局许可
+     */
+    public void acquire(String url) throws InterruptedException {
+        Semaphore route = route(url);
+        route.acquire();
+        try {
+            total.acquire();
+        } catch (InterruptedException e) {
+            route.release();
+            throw e;
+        }
+    }
+
+    public void release(String url) {
+        total.release();
+        route(url).release();
+    }
+
+    public int availableTotal() {
+        return total.availablePermits();
+    }
+
+    private Semaphore route(String url) {
+        String key = routeKey(url);
+        Semaphore route = routes.get(key);
+        if (route == null) {
+            route = routes.computeIfAbsent(key, k -> new Semaphore(maxPerRoute, true));
+        }
+        return route;
+    }
+
+    /**
+     * HttpRoute按scheme + host + port区分，解析失败的url都算到同一个route上
+     */
+    static String routeKey(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getHost() == null) {
+                return "";
+            }
+            return uri.getScheme() + "://" + uri.getHost().toLowerCase() + ":" + uri.getPort();
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 14:00
+ **/
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fetcher抓回来的一个页面
+ */
+public class FetchResponse {
+    private final String url;
+    private final int statusCode;
+    private final byte[] body;
+    private final Charset charset;
+
+    public FetchResponse(String url, int statusCode, byte[] body, Charset charset) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.body = body;
+        this.charset = charset;
+    }
+
+    /**
+     * 读完响应实体（已经解压过），字符集取Content-Type里的，没有时按UTF-8
+     */
+    static FetchResponse of(String url, HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        byte[] body = entity == null ? new byte[0] : ContentEncoding.toByteArray(entity);
+        Charset charset = null;
+        if (entity != null) {
+            ContentType contentType = ContentType.get(entity);
+            charset = contentType == null ? null : contentType.getCharset();
+        }
+        return new FetchResponse(url, response.getStatusLine().getStatusCode(), body,
+                charset == null ? StandardCharsets.UTF_8 : charset);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, charset);
+    }
+}
@@ -0,0 +1,21 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 14:00
+ **/
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 抓取后端。BlockingFetcher每个请求占一个线程，AsyncFetcher用NIO reactor，
+ * 几个IO线程就可以同时挂着上千个请求。两者超时和重试的行为一致，可以互相替换。
+ */
+public interface Fetcher extends Closeable {
+
+    /**
+     * @return 请求完成后得到响应；超时、重试耗尽或连接失败时异常完成
+     */
+    CompletableFuture<FetchResponse> fetch(String url);
+}
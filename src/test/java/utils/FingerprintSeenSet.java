@@ -0,0 +1,141 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 12:10
+ **/
+
+/**
+ * 精确去重：按64位指纹存在long[]开放寻址表里（线性探测），每个url只占8字节再除以装载因子。
+ * 表按指纹高位分成多个段，每个段一把锁，不同段上的add互不影响。
+ */
+public class FingerprintSeenSet implements UrlSeenSet {
+    private static final int SEGMENTS = 64;
+    private static final double LOAD_FACTOR = 0.7;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public FingerprintSeenSet() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedUrls 预计的url数量，超出时自动扩容
+     */
+    public FingerprintSeenSet(long expectedUrls) {
+        int perSegment = (int) Math.min(1 << 30, Math.max(16, expectedUrls / SEGMENTS));
+        int capacity = Integer.highestOneBit((int) Math.min(1 << 30, (long) (perSegment / LOAD_FACTOR) + 1)) << 1;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    @Override
+    public boolean add(String url) {
+        return addFingerprint(UrlFingerprint.of(url));
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return containsFingerprint(UrlFingerprint.of(url));
+    }
+
+    /**
+     * @param fingerprint 非0的64位指纹
+     */
+    public boolean addFingerprint(long fingerprint) {
+        return segment(fingerprint).add(fingerprint);
+    }
+
+    public boolean containsFingerprint(long fingerprint) {
+        return segment(fingerprint).contains(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.memoryBytes();
+        }
+        return bytes;
+    }
+
+    private Segment segment(long fingerprint) {
+        return segments[(int) (fingerprint >>> 58)];
+    }
+
+    private static final class Segment {
+        private long[] table;
+        private int size;
+        private int threshold;
+
+        Segment(int capacity) {
+            table = new long[capacity];
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        synchronized boolean add(long fingerprint) {
+            int mask = table.length - 1;
+            int i = (int) fingerprint & mask;
+            long slot;
+            while ((slot = table[i]) != 0) {
+                if (slot == fingerprint) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = fingerprint;
+            if (++size > threshold) {
+                resize();
+            }
+            return true;
+        }
+
+        synchronized boolean contains(long fingerprint) {
+            int mask = table.length - 1;
+            int i = (int) fingerprint & mask;
+            long slot;
+            while ((slot = table[i]) != 0) {
+                if (slot == fingerprint) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long memoryBytes() {
+            return (long) table.length * 8;
+        }
+
+        private void resize() {
+            long[] old = table;
+            long[] grown = new long[old.length << 1];
+            int mask = grown.length - 1;
+            for (long fingerprint : old) {
+                if (fingerprint != 0) {
+                    int i = (int) fingerprint & mask;
+                    while (grown[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    grown[i] = fingerprint;
+                }
+            }
+            table = grown;
+            threshold = (int) (grown.length * LOAD_FACTOR);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 13:00
+ **/
+
+/**
+ * 已去重、等待抓取的url。只由CrawlerManager的master线程访问，实现不需要线程安全。
+ * poll按host的礼貌策略决定现在能抓哪个url，worker因此不用再sleep。
+ */
+public interface Frontier {
+
+    void add(String url);
+
+    /**
+     * @param now 当前时间，毫秒
+     * @return 现在可以抓取的url，没有时返回null
+     */
+    String poll(long now);
+
+    /**
+     * 通知poll出去的url已经抓完，释放它所在host的并发名额
+     */
+    void done(String url);
+
+    /**
+     * @return 下一个url可以被poll到的时间；没有url，或者有url的host并发都已占满时返回Long.MAX_VALUE
+     */
+    long nextReadyAt();
+
+    boolean isEmpty();
+
+    long size();
+
+    /**
+     * 调整单个host的抓取间隔，例如robots.txt里的Crawl-delay；不按host调度的实现可以忽略
+     *
+     * @param delay 毫秒
+     */
+    default void setHostDelay(String host, long delay) {
+    }
+}
@@ -0,0 +1,76 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 10:20
+ **/
+
+import java.util.*;
+
+/**
+ * 生成和CrawlerManager / CrawlerDFS_BFS里connectedUrls同样形状的测试图，
+ * 只是把几个节点放大到任意规模。
+ */
+public class GraphGenerator {
+
+    /**
+     * 节点名为 "u0".."u{n-1}"，每个节点有outDegree条出边。
+     * 第一条边指向 (i - 1) / 2 的孩子，保证从 "u0" 出发所有节点都可达；
+     * 其余的边随机，会有重复链接，和真实网页一样。
+     *
+     * @param nodes     节点数
+     * @param outDegree 每个节点的出边数，至少为2
+     * @param seed      随机种子，相同参数生成相同的图
+     */
+    public static Map<String, List<String>> connectedUrls(int nodes, int outDegree, long seed) {
+        Random random = new Random(seed);
+        Map<String, List<String>> graph = new HashMap<>(nodes * 2);
+        for (int i = 0; i < nodes; i++) {
+            List<String> children = new ArrayList<>(outDegree);
+            for (int c = 1; c <= 2; c++) {
+                int child = 2 * i + c;
+                if (child < nodes) {
+                    children.add(name(child));
+                }
+            }
+            while (children.size() < outDegree) {
+                children.add(name(random.nextInt(nodes)));
+            }
+            graph.put(name(i), children);
+        }
+        return graph;
+    }
+
+    /**
+     * 和connectedUrls同样的图（同样的参数生成同样的边），直接生成LinkGraph，
+     * 节点编号就是名字里的数字，不创建任何String，几千万条边也放得下
+     */
+    public static LinkGraph csr(int nodes, int outDegree, long seed) {
+        long edgeCount = (long) nodes * outDegree;
+        if (edgeCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many edges: " + edgeCount);
+        }
+        Random random = new Random(seed);
+        int[] offsets = new int[nodes + 1];
+        int[] edges = new int[(int) edgeCount];
+        int position = 0;
+        for (int i = 0; i < nodes; i++) {
+            offsets[i] = position;
+            for (int c = 1; c <= 2; c++) {
+                int child = 2 * i + c;
+                if (child < nodes) {
+                    edges[position++] = child;
+                }
+            }
+            while (position < offsets[i] + outDegree) {
+                edges[position++] = random.nextInt(nodes);
+            }
+        }
+        offsets[nodes] = position;
+        return new LinkGraph(nodes, offsets, edges, GraphGenerator::name, null);
+    }
+
+    public static String name(int node) {
+        return "u" + node;
+    }
+}
@@ -0,0 +1,185 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 13:10
+ **/
+
+import java.util.*;
+
+/**
+ * 按host分队列的frontier。
+ *  - 每个host一个队列，记录下一次允许抓取的时间和正在抓取的数量
+ *  - 有url、并发没满的host放在按下一次抓取时间排序的堆里，堆顶到时间就能抓
+ *  - 同一个host两次抓取之间至少间隔hostDelay，同时最多maxPerHost个请求，
+ *    和connManager.setDefaultMaxPerRoute保持一致，避免线程在连接池上排队
+ * 一个host在等待时，别的host照样可以被抓，不会有线程空等。
+ */
+public class HostFrontier implements Frontier {
+    private final long hostDelay;
+    private final int maxPerHost;
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    // 单独配置了抓取间隔的host，例如robots.txt里的Crawl-delay
+    private final Map<String, Long> hostDelays = new HashMap<>();
+    // 已经没有url的host，过了它的下一次抓取时间后再删除，否则马上回来的url会违反间隔
+    private final ArrayDeque<HostQueue> idle = new ArrayDeque<>();
+    private final PriorityQueue<HostQueue> ready = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.nextFetchAt, b.nextFetchAt));
+    private long size;
+
+    /**
+     * @param hostDelay  同一host两次抓取的最小间隔，毫秒
+     * @param maxPerHost 同一host的最大并发数
+     */
+    public HostFrontier(long hostDelay, int maxPerHost) {
+        if (hostDelay < 0 || maxPerHost <= 0) {
+            throw new IllegalArgumentException("hostDelay must be >= 0 and maxPerHost positive");
+        }
+        this.hostDelay = hostDelay;
+        this.maxPerHost = maxPerHost;
+    }
+
+    @Override
+    public void add(String url) {
+        String host = hostOf(url);
+        HostQueue queue = queue(host);
+        queue.urls.add(url);
+        size++;
+        schedule(queue);
+    }
+
+    @Override
+    public String poll(long now) {
+        evictIdle(now);
+        HostQueue queue = ready.peek();
+        if (queue == null || queue.nextFetchAt > now) {
+            return null;
+        }
+        ready.poll();
+        queue.scheduled = false;
+        String url = queue.urls.poll();
+        size--;
+        queue.active++;
+        queue.nextFetchAt = now + queue.delay;
+        schedule(queue);
+        return url;
+    }
+
+    @Override
+    public void done(String url) {
+        String host = hostOf(url);
+        HostQueue queue = hosts.get(host);
+        if (queue == null) {
+            return;
+        }
+        queue.active--;
+        if (queue.urls.isEmpty() && queue.active == 0) {
+            idle.add(queue);
+        } else {
+            schedule(queue);
+        }
+    }
+
+    @Override
+    public long nextReadyAt() {
+        HostQueue queue = ready.peek();
+        return queue == null ? Long.MAX_VALUE : queue.nextFetchAt;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 调整单个host的抓取间隔，例如robots.txt里的Crawl-delay
+     */
+    @Override
+    public void setHostDelay(String host, long delay) {
+        hostDelays.put(host, delay);
+        HostQueue queue = hosts.get(host);
+        if (queue != null) {
+            queue.delay = delay;
+        }
+    }
+
+    private HostQueue queue(String host) {
+        HostQueue queue = hosts.get(host);
+        if (queue == null) {
+            Long delay = hostDelays.get(host);
+            queue = new HostQueue(host, delay == null ? hostDelay : delay);
+            hosts.put(host, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * 空闲的host不再占内存，下次出现时重新建
+     */
+    private void evictIdle(long now) {
+        HostQueue queue;
+        while ((queue = idle.peek()) != null && queue.nextFetchAt <= now) {
+            idle.poll();
+            if (queue.urls.isEmpty() && queue.active == 0 && hosts.get(queue.host) == queue) {
+                hosts.remove(queue.host);
+            }
+        }
+    }
+
+    private void schedule(HostQueue queue) {
+        if (!queue.scheduled && !queue.urls.isEmpty() && queue.active < maxPerHost) {
+            queue.scheduled = true;
+            ready.add(queue);
+        }
+    }
+
+    /**
+     * 只截取 "://" 后面到第一个 '/' ':' '?' '#' 之间的部分并转成小写，
+     * 不是绝对地址的url都算同一个host ""
+     */
+    public static String hostOf(String url) {
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return "";
+        }
+        start += 3;
+        int at = -1;
+        int end = start;
+        for (; end < url.length(); end++) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            if (c == '@') {
+                at = end;
+            }
+        }
+        if (at >= 0) {
+            start = at + 1;
+        }
+        int colon = url.indexOf(':', start);
+        if (colon >= 0 && colon < end && url.charAt(start) != '[') {
+            end = colon;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static final class HostQueue {
+        final String host;
+        final ArrayDeque<String> urls = new ArrayDeque<>();
+        long delay;
+        long nextFetchAt;
+        int active;
+        boolean scheduled;
+
+        HostQueue(String host, long delay) {
+            this.host = host;
+            this.delay = delay;
+        }
+    }
+}
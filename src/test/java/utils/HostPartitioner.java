@@ -0,0 +1,73 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 01:30
+ **/
+
+import java.util.Arrays;
+
+/**
+ * 一致性哈希：按host决定哪个节点负责一个url。同一个host的url都在一个节点上，
+ * 按host的礼貌策略和连接复用都不用跨节点协调。
+ * 每个节点在环上放virtualNodes个点，各节点分到的host数差不多；
+ * 节点数从n变成n+1时只有大约1/(n+1)的host换主人。
+ * 哈希用UrlFingerprint，不依赖String.hashCode以外的东西，不同的JVM算出来一样。
+ */
+public class HostPartitioner {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final int nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public HostPartitioner(int nodes) {
+        this(nodes, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public HostPartitioner(int nodes, int virtualNodes) {
+        if (nodes <= 0 || virtualNodes <= 0) {
+            throw new IllegalArgumentException("nodes and virtualNodes must be positive");
+        }
+        this.nodes = nodes;
+        long[] keys = new long[nodes * virtualNodes];
+        for (int node = 0; node < nodes; node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                keys[node * virtualNodes + v] = UrlFingerprint.of("node-" + node + "#" + v);
+            }
+        }
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        points = sorted;
+        owners = new int[sorted.length];
+        for (int node = 0; node < nodes; node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                owners[Arrays.binarySearch(points, keys[node * virtualNodes + v])] = node;
+            }
+        }
+    }
+
+    public int nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return 负责这个host的节点，0到nodes-1
+     */
+    public int ownerOfHost(String host) {
+        long hash = UrlFingerprint.of(host);
+        int i = Arrays.binarySearch(points, hash);
+        if (i < 0) {
+            // 顺时针第一个点，绕回开头
+            i = -i - 1;
+            if (i == points.length) {
+                i = 0;
+            }
+        }
+        return owners[i];
+    }
+
+    public int ownerOf(String url) {
+        return ownerOfHost(HostFrontier.hostOf(url));
+    }
+}
@@ -0,0 +1,430 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 16:00
+ **/
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 流式的链接提取：直接从响应的InputStream按字节扫描标签里的href和src属性，
+ * 每找到一个就解析成绝对地址交给回调，不会先把整个页面EntityUtils.toString成一个String。
+ *  - 读缓冲和属性值缓冲在实例里复用，一个页面只为找到的链接分配内存
+ *  - 可以设置最多读多少字节，超过后停止读取
+ *  - 跳过注释、script和style里的内容，认识<base href>
+ * 实例不是线程安全的，每个线程用自己的实例。
+ */
+public class HtmlLinkExtractor {
+    private static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    // 超过这个长度的属性值直接丢掉，不当成链接
+    private static final int MAX_VALUE_LENGTH = 8 * 1024;
+
+    private static final int TEXT = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int TAG_NAME = 2;
+    private static final int BEFORE_ATTR = 3;
+    private static final int ATTR_NAME = 4;
+    private static final int AFTER_ATTR_NAME = 5;
+    private static final int BEFORE_VALUE = 6;
+    private static final int VALUE_QUOTED = 7;
+    private static final int VALUE_UNQUOTED = 8;
+    private static final int COMMENT = 9;
+    private static final int RAW_TEXT = 10;
+    private static final int DECLARATION = 11;
+
+    private static final byte[] HREF = {'h', 'r', 'e', 'f'};
+    private static final byte[] SRC = {'s', 'r', 'c'};
+    private static final byte[] BASE = {'b', 'a', 's', 'e'};
+    private static final byte[] SCRIPT = {'s', 'c', 'r', 'i', 'p', 't'};
+    private static final byte[] STYLE = {'s', 't', 'y', 'l', 'e'};
+
+    private final byte[] buffer;
+    private byte[] value = new byte[256];
+    private final byte[] name = new byte[8];
+
+    // 每个页面的状态
+    private int state;
+    private int nameLength;
+    private boolean nameTooLong;
+    private boolean endTag;
+    private boolean baseTag;
+    private byte[] rawTextTag;
+    private int rawTextMatched;
+    private int commentDashes;
+    private byte quote;
+    private boolean wanted;
+    private int valueLength;
+    private URI base;
+    private Charset charset;
+    private Consumer<String> sink;
+
+    public HtmlLinkExtractor() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public HtmlLinkExtractor(int bufferSize) {
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @param in       页面内容，不会被关闭
+     * @param baseUrl  页面地址，相对链接按它解析
+     * @param charset  页面编码，只用于解码链接本身
+     * @param maxBytes 最多读取的字节数，小于等于0表示不限制
+     * @param sink     每找到一个链接调用一次
+     * @return 实际读取的字节数
+     */
+    public long extract(InputStream in, String baseUrl, Charset charset, long maxBytes,
+                        Consumer<String> sink) throws IOException {
+        reset(baseUrl, charset, sink);
+        long total = 0;
+        long limit = maxBytes <= 0 ? Long.MAX_VALUE : maxBytes;
+        int n;
+        while (total < limit
+                && (n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) != -1) {
+            scan(buffer, n);
+            total += n;
+        }
+        this.sink = null;
+        return total;
+    }
+
+    public List<String> extract(InputStream in, String baseUrl, long maxBytes) throws IOException {
+        List<String> urls = new ArrayList<>();
+        extract(in, baseUrl, StandardCharsets.UTF_8, maxBytes, urls::add);
+        return urls;
+    }
+
+    /**
+     * 给Fetcher用的LinkParser，每个线程一个实例
+     */
+    public static LinkParser linkParser(final long maxBytes) {
+        final ThreadLocal<HtmlLinkExtractor> extractors = ThreadLocal.withInitial(HtmlLinkExtractor::new);
+        return response -> {
+            List<String> urls = new ArrayList<>();
+            extractors.get().extract(new ByteArrayInputStream(response.getBody()), response.getUrl(),
+                    response.getCharset(), maxBytes, urls::add);
+            return urls;
+        };
+    }
+
+    private void reset(String baseUrl, Charset charset, Consumer<String> sink) {
+        this.state = TEXT;
+        this.base = toUri(baseUrl);
+        this.charset = charset == null ? StandardCharsets.UTF_8 : charset;
+        this.sink = sink;
+        this.rawTextTag = null;
+    }
+
+    private void scan(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            switch (state) {
+                case TEXT:
+                    if (b == '<') {
+                        state = TAG_OPEN;
+                    }
+                    break;
+                case TAG_OPEN:
+                    nameLength = 0;
+                    nameTooLong = false;
+                    endTag = false;
+                    if (b == '/') {
+                        endTag = true;
+                        state = TAG_NAME;
+                    } else if (b == '!') {
+                        commentDashes = 0;
+                        state = DECLARATION;
+                    } else if (isLetter(b)) {
+                        appendName(b);
+                        state = TAG_NAME;
+                    } else if (b != '<') {
+                        state = TEXT;
+                    }
+                    break;
+                case DECLARATION:
+                    // "<!--" 开始注释，其他的 "<!DOCTYPE ...>" 直接跳到 '>'
+                    if (b == '-' && commentDashes < 2) {
+                        if (++commentDashes == 2) {
+                            commentDashes = 0;
+                            state = COMMENT;
+                        }
+                    } else if (b == '>') {
+                        state = TEXT;
+                    } else {
+                        commentDashes = 2;
+                    }
+                    break;
+                case COMMENT:
+                    if (b == '-') {
+                        commentDashes++;
+                    } else if (b == '>' && commentDashes >= 2) {
+                        state = TEXT;
+                    } else {
+                        commentDashes = 0;
+                    }
+                    break;
+                case TAG_NAME:
+                    if (isSpace(b) || b == '/') {
+                        startTag();
+                        state = BEFORE_ATTR;
+                    } else if (b == '>') {
+                        startTag();
+                        endOfTag();
+                    } else {
+                        appendName(b);
+                    }
+                    break;
+                case BEFORE_ATTR:
+                    if (b == '>') {
+                        endOfTag();
+                    } else if (!isSpace(b) && b != '/') {
+                        nameLength = 0;
+                        nameTooLong = false;
+                        appendName(b);
+                        state = ATTR_NAME;
+                    }
+                    break;
+                case ATTR_NAME:
+                    if (b == '=') {
+                        state = BEFORE_VALUE;
+                    } else if (b == '>') {
+                        endOfTag();
+                    } else if (isSpace(b)) {
+                        state = AFTER_ATTR_NAME;
+                    } else if (b == '/') {
+                        state = BEFORE_ATTR;
+                    } else {
+                        appendName(b);
+                    }
+                    break;
+                case AFTER_ATTR_NAME:
+                    if (b == '=') {
+                        state = BEFORE_VALUE;
+                    } else if (b == '>') {
+                        endOfTag();
+                    } else if (!isSpace(b) && b != '/') {
+                        nameLength = 0;
+                        nameTooLong = false;
+                        appendName(b);
+                        state = ATTR_NAME;
+                    }
+                    break;
+                case BEFORE_VALUE:
+                    if (isSpace(b)) {
+                        break;
+                    }
+                    wanted = !endTag && (nameIs(HREF) || (nameIs(SRC) && !baseTag));
+                    valueLength = 0;
+                    if (b == '"' || b == '\'') {
+                        quote = b;
+                        state = VALUE_QUOTED;
+                    } else if (b == '>') {
+                        endOfTag();
+                    } else {
+                        appendValue(b);
+                        state = VALUE_UNQUOTED;
+                    }
+                    break;
+                case VALUE_QUOTED:
+                    if (b == quote) {
+                        endOfValue();
+                        state = BEFORE_ATTR;
+                    } else {
+                        appendValue(b);
+                    }
+                    break;
+                case VALUE_UNQUOTED:
+                    if (isSpace(b)) {
+                        endOfValue();
+                        state = BEFORE_ATTR;
+                    } else if (b == '>') {
+                        endOfValue();
+                        endOfTag();
+                    } else {
+                        appendValue(b);
+                    }
+                    break;
+                case RAW_TEXT:
+                    // 在script/style里只找对应的结束标签 "</script"
+                    if (rawTextMatched == 0) {
+                        if (b == '<') {
+                            rawTextMatched = 1;
+                        }
+                    } else if (rawTextMatched == 1) {
+                        rawTextMatched = b == '/' ? 2 : (b == '<' ? 1 : 0);
+                    } else if (lower(b) == rawTextTag[rawTextMatched - 2]) {
+                        if (++rawTextMatched - 2 == rawTextTag.length) {
+                            rawTextTag = null;
+                            nameLength = 0;
+                            endTag = true;
+                            state = BEFORE_ATTR;
+                        }
+                    } else {
+                        rawTextMatched = b == '<' ? 1 : 0;
+                    }
+                    break;
+                default:
+                    state = TEXT;
+            }
+        }
+    }
+
+    private void startTag() {
+        baseTag = !endTag && nameIs(BASE);
+        if (!endTag && (nameIs(SCRIPT) || nameIs(STYLE))) {
+            rawTextTag = nameIs(SCRIPT) ? SCRIPT : STYLE;
+        }
+    }
+
+    private void endOfTag() {
+        if (rawTextTag != null) {
+            rawTextMatched = 0;
+            state = RAW_TEXT;
+        } else {
+            state = TEXT;
+        }
+    }
+
+    private void endOfValue() {
+        if (!wanted || valueLength == 0 || valueLength > MAX_VALUE_LENGTH) {
+            return;
+        }
+        String raw = new String(value, 0, valueLength, charset).trim();
+        String url = resolve(raw);
+        if (url == null) {
+            return;
+        }
+        if (baseTag) {
+            URI newBase = toUri(url);
+            if (newBase != null) {
+                base = newBase;
+            }
+            return;
+        }
+        sink.accept(url);
+    }
+
+    private String resolve(String raw) {
+        if (raw.isEmpty() || raw.charAt(0) == '#') {
+            return null;
+        }
+        if (raw.indexOf('&') >= 0) {
+            raw = unescape(raw);
+        }
+        int colon = raw.indexOf(':');
+        if (colon > 0) {
+            String scheme = raw.substring(0, colon).toLowerCase();
+            if (scheme.equals("javascript") || scheme.equals("mailto") || scheme.equals("data")
+                    || scheme.equals("tel")) {
+                return null;
+            }
+        }
+        try {
+            if (base == null) {
+                URI uri = new URI(raw);
+                return uri.isAbsolute() ? uri.toString() : null;
+            }
+            if (raw.charAt(0) == '?') {
+                return resolveQuery(raw);
+            }
+            return base.resolve(raw).toString();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * java.net.URI按RFC 2396解析只有查询参数的链接，"?page=2"在/list/items.php上会变成/list/?page=2；
+     * 这里按RFC 3986 5.2.2保留base的路径，只把查询参数换掉，分页链接大多是这样写的
+     */
+    private String resolveQuery(String raw) throws URISyntaxException {
+        String target = base.toString();
+        int fragment = target.indexOf('#');
+        if (fragment >= 0) {
+            target = target.substring(0, fragment);
+        }
+        int query = target.indexOf('?');
+        if (query >= 0) {
+            target = target.substring(0, query);
+        }
+        return new URI(target + raw).toString();
+    }
+
+    /**
+     * 只处理链接里常见的几个实体
+     */
+    private static String unescape(String raw) {
+        return raw.replace("&amp;", "&").replace("&quot;", "\"").replace("&#39;", "'")
+                .replace("&lt;", "<").replace("&gt;", ">");
+    }
+
+    private static URI toUri(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url);
+            return uri.isAbsolute() ? uri : null;
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private void appendName(byte b) {
+        if (nameLength < name.length) {
+            name[nameLength++] = lower(b);
+        } else {
+            nameTooLong = true;
+        }
+    }
+
+    private boolean nameIs(byte[] expected) {
+        if (nameTooLong || nameLength != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendValue(byte b) {
+        if (!wanted) {
+            return;
+        }
+        if (valueLength == value.length) {
+            if (valueLength > MAX_VALUE_LENGTH) {
+                return;
+            }
+            byte[] grown = new byte[value.length * 2];
+            System.arraycopy(value, 0, grown, 0, valueLength);
+            value = grown;
+        }
+        value[valueLength++] = b;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+}
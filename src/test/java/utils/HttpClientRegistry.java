@@ -0,0 +1,324 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 15:00
+ **/
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.ConnectionShutdownException;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 共享的HttpClient。原来每次httpGet都新建一个CloseableHttpClient、RequestConfig和重试处理器，
+ * HttpUtil更是每次连连接池都新建一个。这里一个连接池只建一次，每种超时配置只建一个客户端：
+ *  - 后台线程定期关闭过期和空闲太久的连接，避免拿到服务器已经关掉的连接
+ *  - 服务器给了Keep-Alive: timeout时按它来，但不超过keepAliveMillis；没给时用keepAliveMillis
+ *  - 可以随时查看每个route上租出去的、空闲的和排队等待的连接数，连接池不够用时一眼就能看出来
+ *  - 记录从连接池拿连接一共等了多久、最长等了多久，排队的连接数只是某一时刻的快照
+ *  - 租连接、建连接、首字节的耗时，状态码和收到的字节数都记到CrawlMetrics.global()
+ *  - 建新连接时用哪个DnsResolver可以指定，HttpPoolUtil用的是CachingDnsResolver
+ *  - 压缩由ContentEncoding处理，代替HttpClient自带的解压，每个host的压缩比记到CrawlMetrics
+ *  - 请求带上userAgent，默认DEFAULT_USER_AGENT，RobotsCache也按它选robots.txt里的组
+ */
+public class HttpClientRegistry implements Closeable {
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+    public static final long DEFAULT_MAX_IDLE_MILLIS = 10000;
+    public static final String DEFAULT_USER_AGENT = "Rocket-search/1.0";
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private final PoolingHttpClientConnectionManager connManager;
+    private final DnsResolver dnsResolver;
+    private final String userAgent;
+    private final ConcurrentMap<Integer, CloseableHttpClient> clients = new ConcurrentHashMap<>();
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+    private final IdleConnectionEvictor evictor;
+    private final CrawlMetrics metrics = CrawlMetrics.global();
+    private final ContentEncoding contentEncoding = new ContentEncoding(metrics);
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong leaseWaitNanos = new AtomicLong();
+    private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+    // 客户端用这个，租连接时计时；不继承连接池，日志还是记在PoolingHttpClientConnectionManager下面
+    private final HttpClientConnectionManager timedConnManager = new TimedConnectionManager();
+
+    public HttpClientRegistry(int maxTotal, int maxPerRoute) {
+        this(maxTotal, maxPerRoute, DEFAULT_KEEP_ALIVE_MILLIS, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * @param maxTotal        最大连接数
+     * @param maxPerRoute     每个路由默认最大连接数
+     * @param keepAliveMillis 连接最长保持多久
+     * @param maxIdleMillis   空闲超过这个时间的连接被后台线程关闭
+     */
+    public HttpClientRegistry(int maxTotal, int maxPerRoute, final long keepAliveMillis, long maxIdleMillis) {
+        this(maxTotal, maxPerRoute, keepAliveMillis, maxIdleMillis, SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    /**
+     * @param dnsResolver 建新连接时解析host用，比如CachingDnsResolver
+     */
+    public HttpClientRegistry(int maxTotal, int maxPerRoute, final long keepAliveMillis, long maxIdleMillis,
+                              DnsResolver dnsResolver) {
+        this(maxTotal, maxPerRoute, keepAliveMillis, maxIdleMillis, dnsResolver, DEFAULT_USER_AGENT);
+    }
+
+    /**
+     * @param userAgent 请求里没有User-Agent时带上的值，要和RobotsCache的userAgent一致
+     */
+    public HttpClientRegistry(int maxTotal, int maxPerRoute, final long keepAliveMillis, long maxIdleMillis,
+                              DnsResolver dnsResolver, String userAgent) {
+        this.dnsResolver = dnsResolver;
+        this.userAgent = userAgent;
+        // 和默认构造一样的http/https socket工厂，只是换掉DNS解析器
+        connManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build(), dnsResolver);
+        connManager.setMaxTotal(maxTotal);
+        connManager.setDefaultMaxPerRoute(maxPerRoute);
+        // 空闲超过2秒的连接在租出去之前先检查一下是否还能用
+        connManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        keepAliveStrategy = new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+            }
+        };
+
+        long sleepMillis = Math.max(100, Math.min(maxIdleMillis, keepAliveMillis) / 2);
+        evictor = new IdleConnectionEvictor(connManager, sleepMillis, TimeUnit.MILLISECONDS,
+                maxIdleMillis, TimeUnit.MILLISECONDS);
+        evictor.start();
+    }
+
+    /**
+     * @param timeOut 连接池获取连接、建立连接、读响应的超时时间
+     * @return 这个超时配置对应的共享客户端，调用方不要关闭它
+     */
+    public CloseableHttpClient getClient(Integer timeOut) {
+        CloseableHttpClient client = clients.get(timeOut);
+        if (client == null) {
+            client = clients.computeIfAbsent(timeOut, this::createClient);
+        }
+        return client;
+    }
+
+    private CloseableHttpClient createClient(Integer timeOut) {
+        // 创建Http请求配置参数
+        RequestConfig requestConfig = RequestConfig.custom()
+                // 从连接池获取连接的最长时间 （连接不够用的超时时间）
+                .setConnectionRequestTimeout(timeOut)
+                // 创建连接的最长时间
+                .setConnectTimeout(timeOut)
+                // 响应的最长时间，即获取数据传输的最长时间
+                .setSocketTimeout(timeOut)
+                .build();
+
+        return HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                // 不设置时是Apache-HttpClient/x.y，网站按User-agent写的robots.txt规则就对不上我们
+                .setUserAgent(userAgent)
+                .setRetryHandler(CrawlRetryHandler.INSTANCE)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setConnectionManager(timedConnManager)
+                .setRequestExecutor(new TimedRequestExecutor())
+                // 自带的解压每个响应新建GZIPInputStream，换成ContentEncoding的
+                .disableContentCompression()
+                .addInterceptorLast(contentEncoding.requestInterceptor())
+                .addInterceptorLast(contentEncoding.responseInterceptor())
+                // 连接池归registry管，单个客户端被close时不能把连接池一起关掉
+                .setConnectionManagerShared(true)
+                .build();
+    }
+
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connManager;
+    }
+
+    public DnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    /**
+     * @return 整个连接池的leased / available / pending / max
+     */
+    public PoolStats totalStats() {
+        return connManager.getTotalStats();
+    }
+
+    /**
+     * @return 每个route（scheme://host:port）的连接池状态，按route排序
+     */
+    public Map<String, PoolStats> routeStats() {
+        Map<String, PoolStats> stats = new TreeMap<>();
+        for (HttpRoute route : connManager.getRoutes()) {
+            stats.put(route.getTargetHost().toURI(), connManager.getStats(route));
+        }
+        return stats;
+    }
+
+    /**
+     * @return 从连接池租连接的次数
+     */
+    public long leases() {
+        return leases.get();
+    }
+
+    /**
+     * @return 租连接一共等了多少纳秒，包括等待超时的
+     */
+    public long leaseWaitNanos() {
+        return leaseWaitNanos.get();
+    }
+
+    /**
+     * @return 等得最久的一次租连接，纳秒
+     */
+    public long maxLeaseWaitNanos() {
+        return maxLeaseWaitNanos.get();
+    }
+
+    private class TimedConnectionManager implements HttpClientConnectionManager {
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            return timed(connManager.requestConnection(route, state));
+        }
+
+        @Override
+        public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+            // 连接复用时计数是累计的，记完清零
+            try {
+                HttpConnectionMetrics connMetrics = conn.getMetrics();
+                metrics.recordBytes(connMetrics.getReceivedBytesCount());
+                connMetrics.reset();
+            } catch (ConnectionShutdownException e) {
+                // 连接已经被关掉了，没法再统计
+            }
+            connManager.releaseConnection(conn, newState, validDuration, timeUnit);
+        }
+
+        @Override
+        public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                connManager.connect(conn, route, connectTimeout, context);
+            } finally {
+                metrics.record(CrawlMetrics.Stage.CONNECT, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+            connManager.upgrade(conn, route, context);
+        }
+
+        @Override
+        public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+            connManager.routeComplete(conn, route, context);
+        }
+
+        @Override
+        public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+            connManager.closeIdleConnections(idletime, timeUnit);
+        }
+
+        @Override
+        public void closeExpiredConnections() {
+            connManager.closeExpiredConnections();
+        }
+
+        @Override
+        public void shutdown() {
+            connManager.shutdown();
+        }
+    }
+
+    private ConnectionRequest timed(final ConnectionRequest request) {
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit unit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return request.get(timeout, unit);
+                } finally {
+                    long waited = System.nanoTime() - start;
+                    metrics.record(CrawlMetrics.Stage.LEASE, waited);
+                    leases.incrementAndGet();
+                    leaseWaitNanos.addAndGet(waited);
+                    long max;
+                    while (waited > (max = maxLeaseWaitNanos.get()) && !maxLeaseWaitNanos.compareAndSet(max, waited)) {
+                        // 重试
+                    }
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return request.cancel();
+            }
+        };
+    }
+
+    /**
+     * 发出请求到读完响应头的时间，也就是首字节时间，顺便记下状态码
+     */
+    private class TimedRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            long start = System.nanoTime();
+            HttpResponse response = super.execute(request, conn, context);
+            metrics.record(CrawlMetrics.Stage.FIRST_BYTE, System.nanoTime() - start);
+            metrics.recordStatus(response.getStatusLine().getStatusCode());
+            return response;
+        }
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdown();
+        connManager.shutdown();
+        clients.clear();
+    }
+}
@@ -0,0 +1,131 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 16:30
+ **/
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 真实爬取时CrawlerManager.getUrls背后的实现：通过HttpPoolUtil（或者指定的HttpClientRegistry）的连接池请求页面，
+ * 把响应流直接交给HtmlLinkExtractor，页面不会整个读成String。
+ * 读到maxBytes还没结束时直接断开连接，不再下载剩下的内容；不管哪种情况都会关掉响应流。
+ * 下载和解析的时间分别记到CrawlMetrics的BODY和PARSE里。
+ * 页面内容不保留，所以不做NearDuplicateDetector的按内容去重，要去重用异步抓取的LinkParser。
+ */
+public class HttpLinkSource implements LinkSource {
+    private final HttpClientRegistry registry;
+    private final int timeOut;
+    private final long maxBytes;
+    // 提取器不是线程安全的，用完放回来给下一个任务复用，虚拟线程也能复用缓冲区
+    private final Queue<HtmlLinkExtractor> extractors = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param timeOut  超时时间，同HttpPoolUtil.httpGet
+     * @param maxBytes 每个页面最多读取的字节数，小于等于0表示不限制
+     */
+    public HttpLinkSource(int timeOut, long maxBytes) {
+        this(HttpPoolUtil.registry(), timeOut, maxBytes);
+    }
+
+    /**
+     * @param registry 用这个连接池，而不是HttpPoolUtil的，比如SyntheticWebServer.registry
+     */
+    public HttpLinkSource(HttpClientRegistry registry, int timeOut, long maxBytes) {
+        this.registry = registry;
+        this.timeOut = timeOut;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public List<String> getUrls(String url) throws Exception {
+        HttpGet httpGet = new HttpGet(url);
+        try (CloseableHttpResponse response = registry.getClient(timeOut).execute(httpGet)) {
+            HttpEntity entity = response.getEntity();
+            int status = response.getStatusLine().getStatusCode();
+            if (entity == null || status < 200 || status >= 300) {
+                EntityUtils.consume(entity);
+                return Collections.emptyList();
+            }
+            ContentType contentType = ContentType.get(entity);
+            Charset charset = contentType == null || contentType.getCharset() == null
+                    ? StandardCharsets.UTF_8 : contentType.getCharset();
+
+            List<String> urls = new ArrayList<>();
+            HtmlLinkExtractor extractor = extractors.poll();
+            if (extractor == null) {
+                extractor = new HtmlLinkExtractor();
+            }
+            TimedInputStream content = null;
+            boolean complete = false;
+            try {
+                content = new TimedInputStream(entity.getContent());
+                long start = System.nanoTime();
+                long read = extractor.extract(content, url, charset, maxBytes, urls::add);
+                // 边读边解析，读流的时间算下载，其余的算解析
+                long total = System.nanoTime() - start;
+                CrawlMetrics.global().record(CrawlMetrics.Stage.BODY, content.nanos);
+                CrawlMetrics.global().record(CrawlMetrics.Stage.PARSE, total - content.nanos);
+                complete = maxBytes <= 0 || read < maxBytes;
+            } finally {
+                extractors.offer(extractor);
+                if (!complete) {
+                    // 读到maxBytes或者解析出错：先断开连接，close时就不会把剩下的内容读完
+                    httpGet.abort();
+                }
+                if (content != null) {
+                    // 解压的流close时才把Inflater和缓冲区还回池里；读完的连接还给连接池
+                    content.close();
+                }
+            }
+            return urls;
+        }
+    }
+
+    /**
+     * 记下花在read里的时间
+     */
+    private static class TimedInputStream extends FilterInputStream {
+        long nanos;
+
+        TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
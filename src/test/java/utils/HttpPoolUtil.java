@@ -2,24 +2,14 @@ package utils;
 
 import org.apache.http.*;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpRequestRetryHandler;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingClientConnectionManager;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
-
-import javax.net.ssl.SSLException;
-import javax.net.ssl.SSLHandshakeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @program: Rocket-search
@@ -27,34 +17,62 @@ import java.net.UnknownHostException;
  * @create: 2019-10-15 17:12
  **/
 public class HttpPoolUtil {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpPoolUtil.class);
+
     public static void main(String[] args) {
 
         System.out.println(httpGet("http://www.baidu.com", 6000));
 
     }
 
+    /** 连接池最大连接数 */
+    public static final int MAX_TOTAL = 200;
+    /** 每个路由默认最大连接数 */
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+
     /** 全局连接池对象 */
     /**
      * PoolingHttpClientConnectionManager是个复杂的类，它管理着连接池，可以同时为很多
      * 线程提供http连接请求。当请求一个新的连接时，如果连接池有可用的持久连接，连接管理器
      * 就会使用其中一个，而不会创建。
+     * setDefaultMaxPerRoute 是根据连接到的主机对setMaxTotal的一个划分
+     * 我连接到http://sishuok.com 和 http://qq.com时，到每个主机的并发最多只有20；即加起来是40
+     *
+     * 连接池和客户端都由registry持有，每种超时配置只创建一次客户端，空闲连接由后台线程回收。
+     * 建连接时的DNS查询走dnsResolver的缓存
+     */
+    private static final CachingDnsResolver dnsResolver = new CachingDnsResolver();
+    private static final HttpClientRegistry registry = new HttpClientRegistry(MAX_TOTAL, DEFAULT_MAX_PER_ROUTE,
+            HttpClientRegistry.DEFAULT_KEEP_ALIVE_MILLIS, HttpClientRegistry.DEFAULT_MAX_IDLE_MILLIS, dnsResolver);
+
+    /** 重新爬取用的本地缓存，为null时每次都完整下载 */
+    private static volatile RecrawlCache recrawlCache;
+
+    /**
+     * @return 全局的客户端注册表，可以查看连接池状态
      */
-    private static final PoolingHttpClientConnectionManager connManager =
-            new PoolingHttpClientConnectionManager();
+    public static HttpClientRegistry registry() {
+        return registry;
+    }
+
     /**
-     * 静态代码块配置连接池信息
+     * @return 全局连接池用的DNS缓存，可以提前解析新发现的host，查看命中率
      */
-    static {
-
-        // 设置最大连接数
-        connManager.setMaxTotal(200);
-        // 设置每个路由默认连接数
-        // setDefaultMaxPerRoute 是根据连接到的主机对setMaxTotal的一个划分
-        // 我连接到http://sishuok.com 和 http://qq.com时，到每个主机的并发最多只有20；即加起来是40
-        connManager.setDefaultMaxPerRoute(20);
+    public static CachingDnsResolver dnsResolver() {
+        return dnsResolver;
     }
 
+    /**
+     * 设置后httpGet和fetch都先查本地缓存，有副本时发条件请求，304时不再下载正文；
+     * 传null关闭缓存
+     */
+    public static void setRecrawlCache(RecrawlCache cache) {
+        recrawlCache = cache;
+    }
 
+    public static RecrawlCache getRecrawlCache() {
+        return recrawlCache;
+    }
 
     /**
      * GET请求
@@ -68,6 +86,21 @@ public class HttpPoolUtil {
 
         // 获取客户端连接对象
         CloseableHttpClient httpClient = getHttpClient(timeOut);
+        RecrawlCache cache = recrawlCache;
+        if (cache != null) {
+            try {
+                return cache.fetch(httpClient, url).getBodyAsString();
+            } catch (ClientProtocolException e) {
+                CrawlMetrics.global().recordError(e);
+                LOG.warn("protocol error: {} {}", url, e.toString());
+                LOG.debug("protocol error: " + url, e);
+            } catch (IOException e) {
+                CrawlMetrics.global().recordError(e);
+                LOG.warn("io error: {} {}", url, e.toString());
+                LOG.debug("io error: " + url, e);
+            }
+            return msg;
+        }
         // 创建GET请求对象
         HttpGet httpGet = new HttpGet(url);
 
@@ -78,24 +111,29 @@ public class HttpPoolUtil {
             response = httpClient.execute(httpGet);
             // 获取响应实体
             HttpEntity entity = response.getEntity();
-            // 获取响应信息
-            msg = EntityUtils.toString(entity, "UTF-8");
+            // 获取响应信息，gzip的边读边解压，用池里的缓冲区解码
+            long start = System.nanoTime();
+            msg = ContentEncoding.toString(entity, StandardCharsets.UTF_8);
+            CrawlMetrics.global().record(CrawlMetrics.Stage.BODY, System.nanoTime() - start);
         } catch (ClientProtocolException e) {
-            System.err.println("协议错误");
-            e.printStackTrace();
+            CrawlMetrics.global().recordError(e);
+            LOG.warn("protocol error: {} {}", url, e.toString());
+            LOG.debug("protocol error: " + url, e);
         } catch (ParseException e) {
-            System.err.println("解析错误");
-            e.printStackTrace();
+            CrawlMetrics.global().recordError(e);
+            LOG.warn("parse error: {} {}", url, e.toString());
+            LOG.debug("parse error: " + url, e);
         } catch (IOException e) {
-            System.err.println("IO错误");
-            e.printStackTrace();
+            CrawlMetrics.global().recordError(e);
+            LOG.warn("io error: {} {}", url, e.toString());
+            LOG.debug("io error: " + url, e);
         } finally {
             if (null != response) {
                 try {
                     response.close();
                 } catch (IOException e) {
-                    System.err.println("释放链接错误");
-                    e.printStackTrace();
+                    LOG.warn("release connection failed: {} {}", url, e.toString());
+                    LOG.debug("release connection failed: " + url, e);
                 }
             }
         }
@@ -103,69 +141,41 @@ public class HttpPoolUtil {
         return msg;
     }
 
+    /**
+     * GET请求，和httpGet一样走连接池，但是保留状态码和原始字节，出错时抛出异常而不是返回"-1"，
+     * 给BlockingFetcher用
+     *
+     * @param url 请求地址
+     * @param timeOut 超时时间
+     */
+    public static FetchResponse fetch(String url, Integer timeOut) throws IOException {
+        return fetch(getHttpClient(timeOut), url);
+    }
+
+    /**
+     * 同fetch，但是用指定的客户端，比如另一个HttpClientRegistry里的
+     */
+    public static FetchResponse fetch(CloseableHttpClient httpClient, String url) throws IOException {
+        RecrawlCache cache = recrawlCache;
+        if (cache != null) {
+            return cache.fetch(httpClient, url);
+        }
+        HttpGet httpGet = new HttpGet(url);
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            long start = System.nanoTime();
+            FetchResponse fetched = FetchResponse.of(url, response);
+            CrawlMetrics.global().record(CrawlMetrics.Stage.BODY, System.nanoTime() - start);
+            return fetched;
+        }
+    }
+
     /**
      * 获取带超市属性的Http客户端连接对象
+     * 同一个超时时间返回同一个共享的客户端，不要关闭它
      * @param timeOut 超时时间
      * @return Http客户端连接对象
      */
     public static CloseableHttpClient getHttpClient(Integer timeOut) {
-        // 创建Http请求配置参数
-        RequestConfig requestConfig = RequestConfig.custom()
-                // 从连接池获取连接的最长时间 （连接不够用的超市时间）
-                .setConnectionRequestTimeout(timeOut)
-                // 创建连接的最长时间
-                .setConnectTimeout(timeOut)
-                // 响应的最长时间，即获取数据传输的最长时间
-                .setSocketTimeout(timeOut)
-                .build();
-
-        /**
-         *  测出超时重试机制为了防止超时不生效而设置
-         *  如果直接放回false,不重试
-         *  这里会根据情况进行判断是否重试
-         */
-        HttpRequestRetryHandler retry = new HttpRequestRetryHandler() {
-            @Override
-            public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-                if (executionCount >= 3) {// 如果已经重试了3次，就放弃
-                    return false;
-                }
-                if (exception instanceof NoHttpResponseException) {// 如果服务器丢掉了连接，那么就重试
-                    return true;
-                }
-                if (exception instanceof SSLHandshakeException) {// 不要重试SSL握手异常
-                    return false;
-                }
-                if (exception instanceof InterruptedIOException) {// 超时
-                    return true;
-                }
-                if (exception instanceof UnknownHostException) {// 目标服务器不可达
-                    return false;
-                }
-                if (exception instanceof ConnectTimeoutException) {// 连接被拒绝
-                    return false;
-                }
-                if (exception instanceof SSLException) {// ssl握手异常
-                    return false;
-                }
-                HttpClientContext clientContext = HttpClientContext.adapt(context);
-                HttpRequest request = clientContext.getRequest();
-                // 如果请求是幂等的，就再次尝试
-                if (!(request instanceof HttpEntityEnclosingRequest)) {
-                    return true;
-                }
-                return false;
-            }
-        };
-
-        // 创建httpClient
-        return HttpClients.custom()
-                // 把请求相关的超时信息设置到连接客户端
-                .setDefaultRequestConfig(requestConfig)
-                // 把请求重试设置到连接客户端
-                .setRetryHandler(retry)
-                // 给ConnectionManager配置连接池
-                .setConnectionManager(connManager)
-                .build();
+        return registry.getClient(timeOut);
     }
 }
@@ -2,23 +2,14 @@ package utils;
 
 import org.apache.http.*;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.HttpRequestRetryHandler;
-import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.SSLException;
-import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @program: Rocket-search
@@ -26,6 +17,8 @@ import java.net.UnknownHostException;
  * @create: 2019-10-15 17:12
  **/
 public class HttpUtil {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpUtil.class);
+
     public static void main(String[] args) {
 
         System.out.println(httpGet("http://www.baidu.com", 6000));
@@ -54,24 +47,24 @@ public class HttpUtil {
             response = httpClient.execute(httpGet);
             // 获取响应实体
             HttpEntity entity = response.getEntity();
-            // 获取响应信息
-            msg = EntityUtils.toString(entity, "UTF-8");
+            // 获取响应信息，gzip的边读边解压，用池里的缓冲区解码
+            msg = ContentEncoding.toString(entity, StandardCharsets.UTF_8);
         } catch (ClientProtocolException e) {
-            System.err.println("协议错误");
-            e.printStackTrace();
+            LOG.warn("protocol error: {} {}", url, e.toString());
+            LOG.debug("protocol error: " + url, e);
         } catch (ParseException e) {
-            System.err.println("解析错误");
-            e.printStackTrace();
+            LOG.warn("parse error: {} {}", url, e.toString());
+            LOG.debug("parse error: " + url, e);
         } catch (IOException e) {
-            System.err.println("IO错误");
-            e.printStackTrace();
+            LOG.warn("io error: {} {}", url, e.toString());
+            LOG.debug("io error: " + url, e);
         } finally {
             if (null != response) {
                 try {
                     response.close();
                 } catch (IOException e) {
-                    System.err.println("释放链接错误");
-                    e.printStackTrace();
+                    LOG.warn("release connection failed: {} {}", url, e.toString());
+                    LOG.debug("release connection failed: " + url, e);
                 }
             }
         }
@@ -79,67 +72,19 @@ public class HttpUtil {
         return msg;
     }
 
+    /**
+     * 不配置连接池时HttpClients用的默认值：每个路由2个连接，一共20个
+     */
+    private static final HttpClientRegistry registry = new HttpClientRegistry(20, 2);
+
     /**
      * 获取带超市属性的Http客户端连接对象
+     * 原来每次都新建一个客户端和它自己的连接池，用完也没有关闭；
+     * 现在同一个超时时间共用一个客户端，不要关闭它
      * @param timeOut 超时时间
      * @return Http客户端连接对象
      */
     public static CloseableHttpClient getHttpClient(Integer timeOut) {
-        // 创建Http请求配置参数
-        RequestConfig requestConfig = RequestConfig.custom()
-                // 获取连接超时时间
-                .setConnectionRequestTimeout(timeOut)
-                // 请求超时时间
-                .setConnectTimeout(timeOut)
-                // 响应超时时间
-                .setSocketTimeout(timeOut)
-                .build();
-
-        /**
-         *  测出超时重试机制为了防止超时不生效而设置
-         *  如果直接放回false,不重试
-         *  这里会根据情况进行判断是否重试
-         */
-        HttpRequestRetryHandler retry = new HttpRequestRetryHandler() {
-            @Override
-            public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-                if (executionCount >= 3) {// 如果已经重试了3次，就放弃
-                    return false;
-                }
-                if (exception instanceof NoHttpResponseException) {// 如果服务器丢掉了连接，那么就重试
-                    return true;
-                }
-                if (exception instanceof SSLHandshakeException) {// 不要重试SSL握手异常
-                    return false;
-                }
-                if (exception instanceof InterruptedIOException) {// 超时
-                    return true;
-                }
-                if (exception instanceof UnknownHostException) {// 目标服务器不可达
-                    return false;
-                }
-                if (exception instanceof ConnectTimeoutException) {// 连接被拒绝
-                    return false;
-                }
-                if (exception instanceof SSLException) {// ssl握手异常
-                    return false;
-                }
-                HttpClientContext clientContext = HttpClientContext.adapt(context);
-                HttpRequest request = clientContext.getRequest();
-                // 如果请求是幂等的，就再次尝试
-                if (!(request instanceof HttpEntityEnclosingRequest)) {
-                    return true;
-                }
-                return false;
-            }
-        };
-
-        // 创建httpClient
-        return HttpClients.custom()
-                // 把请求相关的超时信息设置到连接客户端
-                .setDefaultRequestConfig(requestConfig)
-                // 把请求重试设置到连接客户端
-                .setRetryHandler(retry)
-                .build();
+        return registry.getClient(timeOut);
     }
 }
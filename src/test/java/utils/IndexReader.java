@@ -0,0 +1,128 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 20:00
+ **/
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读一个索引目录里的所有segment，对外是一个整体：doc id是全局的，
+ * 一个词的倒排表把各个segment的接起来。
+ * 打开之后新写的segment看不到，需要重新open。
+ */
+public class IndexReader {
+    private final List<IndexSegment> segments;
+    private final int[] docBases;
+    private final int docCount;
+    private final long totalLength;
+    // 所有文档的长度放在一个数组里，打分时按doc id直接取
+    private final int[] docLengths;
+
+    private IndexReader(List<IndexSegment> segments) {
+        this.segments = segments;
+        this.docBases = new int[segments.size()];
+        int count = 0;
+        long length = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            IndexSegment segment = segments.get(i);
+            docBases[i] = segment.docBase();
+            count += segment.docCount();
+            length += segment.totalLength();
+        }
+        this.docCount = count;
+        this.totalLength = length;
+        this.docLengths = new int[segments.isEmpty() ? 0 : docBases[docBases.length - 1]
+                + segments.get(segments.size() - 1).docCount()];
+        for (IndexSegment segment : segments) {
+            for (int doc = segment.docBase(); doc < segment.docBase() + segment.docCount(); doc++) {
+                docLengths[doc] = segment.docLength(doc);
+            }
+        }
+    }
+
+    public static IndexReader open(Path dir) throws IOException {
+        return new IndexReader(IndexSegment.openAll(dir));
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    /**
+     * @return 文档的平均词数，BM25要用
+     */
+    public double averageDocLength() {
+        return docCount == 0 ? 0 : totalLength / (double) docCount;
+    }
+
+    public int docFreq(String term) {
+        int df = 0;
+        for (IndexSegment segment : segments) {
+            df += segment.docFreq(term);
+        }
+        return df;
+    }
+
+    /**
+     * @return 这个词在所有segment里的倒排表，没有这个词时返回null
+     */
+    public Postings postings(String term) {
+        List<Postings> parts = new ArrayList<>();
+        for (IndexSegment segment : segments) {
+            Postings postings = segment.postings(term);
+            if (postings != null) {
+                parts.add(postings);
+            }
+        }
+        return parts.isEmpty() ? null : Postings.concat(parts);
+    }
+
+    public String url(int doc) {
+        return segment(doc).url(doc);
+    }
+
+    public int docLength(int doc) {
+        return docLengths[doc];
+    }
+
+    /**
+     * @return doc id的上界（不含），doc id从0开始连续编号时等于docCount()
+     */
+    public int maxDoc() {
+        return docLengths.length;
+    }
+
+    public List<IndexSegment> segments() {
+        return segments;
+    }
+
+    /**
+     * @return 所有segment文件的大小
+     */
+    public long sizeBytes() {
+        long size = 0;
+        for (IndexSegment segment : segments) {
+            size += segment.sizeBytes();
+        }
+        return size;
+    }
+
+    private IndexSegment segment(int doc) {
+        int low = 0;
+        int high = docBases.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (docBases[mid] <= doc) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segments.get(low);
+    }
+}
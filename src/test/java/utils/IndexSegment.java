@@ -0,0 +1,172 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 19:40
+ **/
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IndexWriter写出的一个segment，整个文件映射到内存里只读。
+ * 文件格式：
+ *   header    magic, docBase, docCount, termCount
+ *   postings  每个词一段：VByte块数，每块的目录 (最后一个doc的差值, 块的字节数, 最大词频, 最短文档长度)，
+ *             然后是各块的 (doc差值, 词频) 序列，都是VByte
+ *   docs      每个文档：VByte长度（词数）, VByte url字节数, url
+ *   dict      按字典序：VByte公共前缀长度, VByte后缀长度, 后缀, VByte df, VByte倒排表字节数
+ *   footer    docsOffset, dictOffset, magic
+ * 打开时词典和文档信息读进数组，倒排表留在映射里，查询时才解码。
+ */
+public class IndexSegment {
+    private final Path file;
+    private final ByteBuffer data;
+    private final int docBase;
+    private final int docCount;
+    private final String[] terms;
+    private final int[] docFreqs;
+    private final int[] offsets;
+    private final int[] docLengths;
+    private final String[] urls;
+    private final long totalLength;
+
+    private IndexSegment(Path file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
+             FileChannel channel = raf.getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.getInt(0) != IndexWriter.MAGIC || data.getInt(data.limit() - 4) != IndexWriter.MAGIC) {
+            throw new IOException("not an index segment: " + file);
+        }
+        docBase = data.getInt(4);
+        docCount = data.getInt(8);
+        int termCount = data.getInt(12);
+        int docsOffset = data.getInt(data.limit() - 12);
+        int dictOffset = data.getInt(data.limit() - 8);
+
+        ByteBuffer in = data.duplicate();
+        in.position(docsOffset);
+        docLengths = new int[docCount];
+        urls = new String[docCount];
+        long total = 0;
+        byte[] scratch = new byte[256];
+        for (int doc = 0; doc < docCount; doc++) {
+            docLengths[doc] = VByte.read(in);
+            total += docLengths[doc];
+            int length = VByte.read(in);
+            scratch = ensure(scratch, length);
+            in.get(scratch, 0, length);
+            urls[doc] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        totalLength = total;
+
+        in.position(dictOffset);
+        terms = new String[termCount];
+        docFreqs = new int[termCount];
+        offsets = new int[termCount + 1];
+        offsets[0] = 16;
+        byte[] term = new byte[64];
+        for (int i = 0; i < termCount; i++) {
+            int prefix = VByte.read(in);
+            int suffix = VByte.read(in);
+            term = ensure(term, prefix + suffix);
+            in.get(term, prefix, suffix);
+            terms[i] = new String(term, 0, prefix + suffix, StandardCharsets.UTF_8);
+            docFreqs[i] = VByte.read(in);
+            offsets[i + 1] = offsets[i] + VByte.read(in);
+        }
+    }
+
+    public static IndexSegment open(Path file) throws IOException {
+        return new IndexSegment(file);
+    }
+
+    /**
+     * @return 目录里所有的segment，按docBase排序
+     */
+    public static List<IndexSegment> openAll(Path dir) throws IOException {
+        List<IndexSegment> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + IndexWriter.SUFFIX)) {
+            for (Path file : files) {
+                segments.add(open(file));
+            }
+        }
+        segments.sort((a, b) -> Integer.compare(a.docBase, b.docBase));
+        return segments;
+    }
+
+    public int docBase() {
+        return docBase;
+    }
+
+    public int docCount() {
+        return docCount;
+    }
+
+    public int termCount() {
+        return terms.length;
+    }
+
+    /**
+     * @return 所有文档的词数之和
+     */
+    public long totalLength() {
+        return totalLength;
+    }
+
+    public int docFreq(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        return i < 0 ? 0 : docFreqs[i];
+    }
+
+    /**
+     * @return 这个词的倒排表，doc id是全局的；没有这个词时返回null
+     */
+    public Postings postings(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        if (i < 0) {
+            return null;
+        }
+        ByteBuffer slice = data.duplicate();
+        slice.position(offsets[i]);
+        slice.limit(offsets[i + 1]);
+        return Postings.read(slice.slice(), docFreqs[i], docBase);
+    }
+
+    /**
+     * @param doc 全局的doc id
+     */
+    public String url(int doc) {
+        return urls[doc - docBase];
+    }
+
+    public int docLength(int doc) {
+        return docLengths[doc - docBase];
+    }
+
+    public long sizeBytes() {
+        return data.limit();
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    private static byte[] ensure(byte[] buffer, int length) {
+        return buffer.length >= length ? buffer : Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+    }
+}
@@ -0,0 +1,352 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 19:20
+ **/
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 把抓回来的页面建成倒排索引。
+ *  - 词典是开放寻址的哈希表，用切词器给的char数组直接查，只有新词才创建String
+ *  - 每个词的倒排表在内存里是一个int数组，交替存doc id和词频
+ *  - 缓冲的posting数超过上限时，把它们写成一个不可变的segment文件，然后清空内存
+ * segment文件里的词按字典序排好，doc id存差值，差值和词频都用VByte压缩，
+ * 倒排表每BLOCK_SIZE个posting一块，见IndexSegment。
+ * addDocument是同步的，可以被多个worker同时调用。
+ */
+public class IndexWriter implements Closeable {
+    static final int MAGIC = 0x52495832;
+    // 倒排表按这么多个posting分块，每块记下最后一个doc、最大词频和最短文档长度，
+    // 查询时可以整块跳过，也可以按块估计分数上限
+    static final int BLOCK_SIZE = 128;
+    static final String SUFFIX = ".idx";
+    public static final int DEFAULT_MAX_BUFFERED_POSTINGS = 8 * 1024 * 1024;
+
+    private final Path dir;
+    private final int maxBufferedPostings;
+    private final Tokenizer tokenizer = new Tokenizer(true);
+
+    // 词典：slots里每两个int一组，存termId + 1（0表示空）和哈希值，
+    // 哈希不同时不用去碰词的内容；词的字符连续地存在termChars里
+    private int[] slots = new int[2 << 16];
+    private char[] termChars = new char[1 << 20];
+    private int termCharsLength;
+    private int[] termStarts = new int[(1 << 15) + 1];
+    private String[] terms = new String[1 << 15];
+    private int termCount;
+
+    // 倒排表：postings[termId]里交替存doc和词频
+    private int[][] postings = new int[1 << 15][];
+    private int[] postingsLength = new int[1 << 15];
+    private long bufferedPostings;
+
+    // 当前文档里每个词出现的次数，touched记下出现过的词，处理完清零
+    private int[] termFreqs = new int[1 << 15];
+    private int[] touched = new int[1024];
+    private int touchedCount;
+    private int tokenCount;
+
+    private int[] docLengths = new int[1024];
+    private final List<String> urls = new ArrayList<>();
+    private int docCount;
+    private int docBase;
+    private int segmentNumber;
+
+    public IndexWriter(Path dir) throws IOException {
+        this(dir, DEFAULT_MAX_BUFFERED_POSTINGS);
+    }
+
+    /**
+     * @param dir                 segment文件的目录，已经有segment时新文档的id接在后面
+     * @param maxBufferedPostings 内存里最多缓冲的posting数
+     */
+    public IndexWriter(Path dir, int maxBufferedPostings) throws IOException {
+        if (maxBufferedPostings <= 0) {
+            throw new IllegalArgumentException("maxBufferedPostings must be positive");
+        }
+        this.dir = Files.createDirectories(dir);
+        this.maxBufferedPostings = maxBufferedPostings;
+        for (IndexSegment segment : IndexSegment.openAll(dir)) {
+            docBase = Math.max(docBase, segment.docBase() + segment.docCount());
+            segmentNumber++;
+        }
+    }
+
+    /**
+     * @param url  页面地址，存在索引里
+     * @param text 页面内容，html标签会被跳过
+     * @return 文档id
+     */
+    public synchronized int addDocument(String url, String text) throws IOException {
+        tokenCount = 0;
+        tokenizer.tokenize(text, this::addToken);
+        int doc = docCount;
+        for (int i = 0; i < touchedCount; i++) {
+            int termId = touched[i];
+            appendPosting(termId, doc, termFreqs[termId]);
+            termFreqs[termId] = 0;
+        }
+        bufferedPostings += touchedCount;
+        touchedCount = 0;
+        if (docCount == docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, docCount * 2);
+        }
+        docLengths[docCount++] = tokenCount;
+        urls.add(url);
+        if (bufferedPostings >= maxBufferedPostings) {
+            flush();
+        }
+        return docBase + doc;
+    }
+
+    /**
+     * 先把页面建进索引，再交给delegate取链接，给异步的Fetcher用
+     */
+    public LinkParser linkParser(final LinkParser delegate) {
+        return response -> {
+            if (response.getStatusCode() == 200) {
+                addDocument(response.getUrl(), response.getBodyAsString());
+            }
+            return delegate.parse(response);
+        };
+    }
+
+    /**
+     * 把缓冲的文档写成一个segment文件
+     */
+    public synchronized void flush() throws IOException {
+        if (docCount == 0) {
+            return;
+        }
+        Integer[] order = new Integer[termCount];
+        int live = 0;
+        for (int i = 0; i < termCount; i++) {
+            if (postingsLength[i] > 0) {
+                order[live++] = i;
+            }
+        }
+        final String[] sortTerms = terms;
+        Arrays.sort(order, 0, live, (a, b) -> sortTerms[a].compareTo(sortTerms[b]));
+
+        String name = String.format("seg-%06d", segmentNumber);
+        Path tmp = dir.resolve(name + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 256 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(docBase);
+            out.writeInt(docCount);
+            out.writeInt(live);
+
+            // 倒排表：块的目录在前，块的数据在后
+            VByte.Buffer header = new VByte.Buffer();
+            VByte.Buffer buffer = new VByte.Buffer();
+            int[] byteLengths = new int[live];
+            for (int i = 0; i < live; i++) {
+                int[] list = postings[order[i]];
+                int length = postingsLength[order[i]];
+                header.clear();
+                buffer.clear();
+                header.write((length / 2 + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                int last = 0;
+                for (int blockStart = 0; blockStart < length; blockStart += 2 * BLOCK_SIZE) {
+                    int blockEnd = Math.min(length, blockStart + 2 * BLOCK_SIZE);
+                    int blockLast = last;
+                    int dataStart = buffer.length();
+                    int maxFreq = 0;
+                    int minLength = Integer.MAX_VALUE;
+                    for (int p = blockStart; p < blockEnd; p += 2) {
+                        buffer.write(list[p] - blockLast);
+                        buffer.write(list[p + 1]);
+                        blockLast = list[p];
+                        maxFreq = Math.max(maxFreq, list[p + 1]);
+                        minLength = Math.min(minLength, docLengths[list[p]]);
+                    }
+                    header.write(blockLast - last);
+                    header.write(buffer.length() - dataStart);
+                    header.write(maxFreq);
+                    header.write(minLength);
+                    last = blockLast;
+                }
+                out.write(header.bytes(), 0, header.length());
+                out.write(buffer.bytes(), 0, buffer.length());
+                byteLengths[i] = header.length() + buffer.length();
+            }
+
+            // 文档长度和url
+            int docsOffset = out.size();
+            for (int doc = 0; doc < docCount; doc++) {
+                buffer.clear();
+                byte[] url = urls.get(doc).getBytes(StandardCharsets.UTF_8);
+                buffer.write(docLengths[doc]);
+                buffer.write(url.length);
+                out.write(buffer.bytes(), 0, buffer.length());
+                out.write(url);
+            }
+
+            // 词典：前缀压缩，每个词只存和前一个词不同的部分
+            int dictOffset = out.size();
+            byte[] previous = new byte[0];
+            for (int i = 0; i < live; i++) {
+                byte[] term = terms[order[i]].getBytes(StandardCharsets.UTF_8);
+                int prefix = 0;
+                int max = Math.min(previous.length, term.length);
+                while (prefix < max && previous[prefix] == term[prefix]) {
+                    prefix++;
+                }
+                buffer.clear();
+                buffer.write(prefix);
+                buffer.write(term.length - prefix);
+                out.write(buffer.bytes(), 0, buffer.length());
+                out.write(term, prefix, term.length - prefix);
+                buffer.clear();
+                buffer.write(postingsLength[order[i]] / 2);
+                buffer.write(byteLengths[i]);
+                out.write(buffer.bytes(), 0, buffer.length());
+                previous = term;
+            }
+            out.writeInt(docsOffset);
+            out.writeInt(dictOffset);
+            out.writeInt(MAGIC);
+        }
+        Files.move(tmp, dir.resolve(name + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+
+        segmentNumber++;
+        docBase += docCount;
+        reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void addToken(char[] buffer, int length) {
+        int termId = termId(buffer, length);
+        if (termFreqs[termId]++ == 0) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = termId;
+        }
+        tokenCount++;
+    }
+
+    private int termId(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int mask = (slots.length >> 1) - 1;
+        int slot = slot(hash) & mask;
+        while (true) {
+            int id = slots[2 * slot] - 1;
+            if (id < 0) {
+                break;
+            }
+            if (slots[2 * slot + 1] == hash && equals(id, buffer, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = termCount++;
+        if (id == terms.length) {
+            growTerms();
+        }
+        if (termCharsLength + length > termChars.length) {
+            termChars = Arrays.copyOf(termChars, Math.max(termChars.length * 2, termCharsLength + length));
+        }
+        System.arraycopy(buffer, 0, termChars, termCharsLength, length);
+        termStarts[id] = termCharsLength;
+        termCharsLength += length;
+        termStarts[id + 1] = termCharsLength;
+        terms[id] = new String(buffer, 0, length);
+        slots[2 * slot] = id + 1;
+        slots[2 * slot + 1] = hash;
+        if (termCount * 4 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void appendPosting(int termId, int doc, int freq) {
+        int[] list = postings[termId];
+        int length = postingsLength[termId];
+        if (list == null) {
+            list = postings[termId] = new int[4];
+        } else if (length == list.length) {
+            list = postings[termId] = Arrays.copyOf(list, length * 2);
+        }
+        list[length] = doc;
+        list[length + 1] = freq;
+        postingsLength[termId] = length + 2;
+    }
+
+    private void growTerms() {
+        int size = terms.length * 2;
+        terms = Arrays.copyOf(terms, size);
+        termStarts = Arrays.copyOf(termStarts, size + 1);
+        postings = Arrays.copyOf(postings, size);
+        postingsLength = Arrays.copyOf(postingsLength, size);
+        termFreqs = Arrays.copyOf(termFreqs, size);
+    }
+
+    private void rehash() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        int mask = (slots.length >> 1) - 1;
+        for (int i = 0; i < old.length; i += 2) {
+            if (old[i] == 0) {
+                continue;
+            }
+            int slot = slot(old[i + 1]) & mask;
+            while (slots[2 * slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[2 * slot] = old[i];
+            slots[2 * slot + 1] = old[i + 1];
+        }
+    }
+
+    /**
+     * 词典留着，下一个segment里的常用词不用再建String；倒排表清空
+     */
+    private void reset() {
+        for (int i = 0; i < termCount; i++) {
+            postingsLength[i] = 0;
+            if (postings[i] != null && postings[i].length > 64) {
+                postings[i] = null;
+            }
+        }
+        bufferedPostings = 0;
+        docCount = 0;
+        urls.clear();
+    }
+
+    /**
+     * String.hashCode的低位分布不好，线性探测时会聚成一堆，先打散
+     */
+    private static int slot(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean equals(int id, char[] buffer, int length) {
+        int start = termStarts[id];
+        if (termStarts[id + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (termChars[start + i] != buffer[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,151 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 00:10
+ **/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图，单位纳秒。和HdrHistogram一样按2的幂分段，每段再等分成16个桶，
+ * 相对误差不超过1/16；超过2^40纳秒（约18分钟）的都记在最后一个桶里。
+ * record只有一次数组下标计算和几次原子加，很多线程同时记录也不用加锁，
+ * 所有桶加起来不到5KB，每个host一个也放得下。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    // 前16个桶是0到15，然后每个指数16个桶，最后一个桶放溢出的
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        total.add(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // 重试
+        }
+    }
+
+    /**
+     * 复制一份当前的计数，复制期间还在记录的值可能只算进一部分，够看趋势用
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, total.sum(), max.get());
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * @return 桶的下界
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        int sub = bucket % SUB_COUNT;
+        return (long) (SUB_COUNT + sub) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * 某一时刻的直方图，不再变化
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * @param p 0到1之间，0.99表示p99
+         * @return 所在桶的中点，不超过max；最大的那个值直接返回max
+         */
+        public long percentile(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            if (rank >= count) {
+                return max;
+            }
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    if (i == counts.length - 1) {
+                        return max;
+                    }
+                    long low = lowerBound(i);
+                    long high = lowerBound(i + 1);
+                    return Math.min(max, low + (high - low - 1) / 2);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * @return 和另一个快照合并，比如把几个host合成一个
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged, count + other.count, total + other.total, Math.max(max, other.max));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                    count, mean() / 1e6, percentile(0.5) / 1e6, percentile(0.9) / 1e6,
+                    percentile(0.99) / 1e6, max / 1e6);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 04:00
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * 压缩稀疏行（CSR）格式的链接图：url换成0到n-1的int编号，
+ * 节点i的出边是 edges[offsets[i]] 到 edges[offsets[i + 1] - 1]。
+ * 和 Map&lt;String, List&lt;String&gt;&gt; 比，每条边只占4个字节，没有对象头和指针，
+ * 遍历时顺序读数组，五千万条边大约200MB。
+ *  - dfs：显式栈的DFS，顺序和CrawlerDFS_BFS.DFS一样，多深的链都不会栈溢出
+ *  - bfs：单线程BFS，顺序和CrawlerDFS_BFS.BFS一样
+ *  - parallelBfs：一层一层地BFS，每层的frontier切块后在fork-join池上并行展开，
+ *    visited是CAS的位图；结果的集合和bfs一样，同一层内的顺序不固定
+ * 三种遍历都可以限制深度，种子的深度是0。
+ */
+public class LinkGraph {
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    /** frontier小于这个数时不值得并行 */
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int CHUNK = 1024;
+
+    private final int nodes;
+    private final int[] offsets;
+    private final int[] edges;
+    private final IntFunction<String> names;
+    private final Map<String, Integer> ids;
+
+    /**
+     * @param offsets 长度nodes + 1，offsets[nodes]是边数
+     * @param edges   所有出边，按起点排列
+     * @param names   编号到url
+     * @param ids     url到编号，为null时id(String)不可用
+     */
+    public LinkGraph(int nodes, int[] offsets, int[] edges, IntFunction<String> names, Map<String, Integer> ids) {
+        if (offsets.length != nodes + 1 || offsets[nodes] > edges.length) {
+            throw new IllegalArgumentException("offsets do not match edges");
+        }
+        this.nodes = nodes;
+        this.offsets = offsets;
+        this.edges = edges;
+        this.names = names;
+        this.ids = ids;
+    }
+
+    /**
+     * 从CrawlerDFS_BFS用的邻接表构造，只出现在子链接里的url也会编号，它们没有出边
+     */
+    public static LinkGraph of(Map<String, List<String>> connectedUrls) {
+        Builder builder = new Builder();
+        for (Map.Entry<String, List<String>> entry : connectedUrls.entrySet()) {
+            builder.addNode(entry.getKey());
+            for (String child : entry.getValue()) {
+                if (child != null) {
+                    builder.addEdge(entry.getKey(), child);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 边反过来的图，节点编号不变，PageRank按入边拉取时用
+     */
+    public LinkGraph transpose() {
+        int[] reversedOffsets = new int[nodes + 1];
+        int edgeCount = offsets[nodes];
+        for (int e = 0; e < edgeCount; e++) {
+            reversedOffsets[edges[e] + 1]++;
+        }
+        for (int i = 0; i < nodes; i++) {
+            reversedOffsets[i + 1] += reversedOffsets[i];
+        }
+        int[] position = Arrays.copyOf(reversedOffsets, nodes);
+        int[] reversedEdges = new int[edgeCount];
+        for (int node = 0; node < nodes; node++) {
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                reversedEdges[position[edges[e]]++] = node;
+            }
+        }
+        return new LinkGraph(nodes, reversedOffsets, reversedEdges, names, ids);
+    }
+
+    /**
+     * @return offsets和edges两个数组占的字节数
+     */
+    public long memoryBytes() {
+        return 4L * offsets.length + 4L * edges.length;
+    }
+
+    public int nodes() {
+        return nodes;
+    }
+
+    public long edges() {
+        return offsets[nodes];
+    }
+
+    /**
+     * @return url的编号，不在图里时返回-1
+     */
+    public int id(String url) {
+        if (ids == null) {
+            throw new IllegalStateException("graph has no url index");
+        }
+        Integer id = ids.get(url);
+        return id == null ? -1 : id;
+    }
+
+    public String url(int id) {
+        return names.apply(id);
+    }
+
+    public int degree(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    public int child(int id, int index) {
+        return edges[offsets[id] + index];
+    }
+
+    public List<String> bfs(String url) {
+        return urls(bfs(id(url), UNLIMITED), url);
+    }
+
+    public List<String> dfs(String url) {
+        return urls(dfs(id(url), UNLIMITED), url);
+    }
+
+    public List<String> parallelBfs(String url) {
+        return urls(parallelBfs(id(url), UNLIMITED), url);
+    }
+
+    /**
+     * 不在图里的种子和CrawlerDFS_BFS一样只返回它自己
+     */
+    private List<String> urls(int[] order, String seed) {
+        if (order == null) {
+            List<String> result = new ArrayList<>(1);
+            result.add(seed);
+            return result;
+        }
+        List<String> result = new ArrayList<>(order.length);
+        for (int id : order) {
+            result.add(url(id));
+        }
+        return result;
+    }
+
+    /**
+     * @return 按访问顺序排列的节点编号，source为-1时返回null
+     */
+    public int[] bfs(int source, int maxDepth) {
+        if (source < 0) {
+            return null;
+        }
+        long[] visited = new long[(nodes + 63) >>> 6];
+        int[] queue = new int[16];
+        visited[source >>> 6] |= 1L << source;
+        queue[0] = source;
+        int head = 0;
+        int tail = 1;
+        int levelEnd = 1;
+        int depth = 0;
+        while (head < tail) {
+            if (head == levelEnd) {
+                depth++;
+                levelEnd = tail;
+            }
+            int node = queue[head++];
+            if (depth >= maxDepth) {
+                continue;
+            }
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                int child = edges[e];
+                long bit = 1L << child;
+                if ((visited[child >>> 6] & bit) == 0) {
+                    visited[child >>> 6] |= bit;
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, (int) Math.min(nodes, 2L * queue.length));
+                    }
+                    queue[tail++] = child;
+                }
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    /**
+     * 先序DFS，栈里存（节点，下一条要看的边），访问顺序和递归版本一样。
+     * 限制深度时，一个节点第一次被碰到时已经太深就不访问，之后从更短的路径碰到时还会访问
+     */
+    public int[] dfs(int source, int maxDepth) {
+        if (source < 0) {
+            return null;
+        }
+        long[] visited = new long[(nodes + 63) >>> 6];
+        int[] order = new int[16];
+        int visitedCount = 0;
+        int[] stackNode = new int[16];
+        int[] stackEdge = new int[16];
+        int top = 0;
+
+        visited[source >>> 6] |= 1L << source;
+        order[visitedCount++] = source;
+        stackNode[0] = source;
+        stackEdge[0] = offsets[source];
+        top = 1;
+        while (top > 0) {
+            int node = stackNode[top - 1];
+            int e = stackEdge[top - 1];
+            if (e == offsets[node + 1] || top > maxDepth) {
+                top--;
+                continue;
+            }
+            stackEdge[top - 1] = e + 1;
+            int child = edges[e];
+            long bit = 1L << child;
+            if ((visited[child >>> 6] & bit) != 0) {
+                continue;
+            }
+            visited[child >>> 6] |= bit;
+            if (visitedCount == order.length) {
+                order = Arrays.copyOf(order, (int) Math.min(nodes, 2L * order.length));
+            }
+            order[visitedCount++] = child;
+            if (top == stackNode.length) {
+                stackNode = Arrays.copyOf(stackNode, 2 * top);
+                stackEdge = Arrays.copyOf(stackEdge, 2 * top);
+            }
+            stackNode[top] = child;
+            stackEdge[top] = offsets[child];
+            top++;
+        }
+        return Arrays.copyOf(order, visitedCount);
+    }
+
+    /**
+     * 一层一层地BFS。每层的frontier切成CHUNK大小的块交给fork-join池，
+     * 每块把新发现的节点放在自己的数组里，最后按块的顺序拼成下一层
+     *
+     * @return 按层排列的节点编号，source为-1时返回null
+     */
+    public int[] parallelBfs(int source, int maxDepth) {
+        if (source < 0) {
+            return null;
+        }
+        AtomicLongArray visited = new AtomicLongArray((nodes + 63) >>> 6);
+        visit(visited, source);
+        int[] order = new int[16];
+        order[0] = source;
+        int total = 1;
+        int[] frontier = {source};
+        for (int depth = 0; depth < maxDepth && frontier.length > 0; depth++) {
+            int[] next;
+            if (frontier.length < PARALLEL_THRESHOLD) {
+                next = expand(frontier, 0, frontier.length, visited);
+            } else {
+                final int[] current = frontier;
+                int chunks = (current.length + CHUNK - 1) / CHUNK;
+                int[][] parts = IntStream.range(0, chunks).parallel()
+                        .mapToObj(c -> expand(current, c * CHUNK, Math.min(current.length, (c + 1) * CHUNK), visited))
+                        .toArray(int[][]::new);
+                int size = 0;
+                for (int[] part : parts) {
+                    size += part.length;
+                }
+                next = new int[size];
+                int position = 0;
+                for (int[] part : parts) {
+                    System.arraycopy(part, 0, next, position, part.length);
+                    position += part.length;
+                }
+            }
+            if (total + next.length > order.length) {
+                order = Arrays.copyOf(order, (int) Math.min(nodes, Math.max(2L * order.length, total + next.length)));
+            }
+            System.arraycopy(next, 0, order, total, next.length);
+            total += next.length;
+            frontier = next;
+        }
+        return Arrays.copyOf(order, total);
+    }
+
+    private int[] expand(int[] frontier, int from, int to, AtomicLongArray visited) {
+        int[] found = new int[Math.max(16, to - from)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int node = frontier[i];
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                int child = edges[e];
+                if (visit(visited, child)) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, 2 * count);
+                    }
+                    found[count++] = child;
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @return 这次调用把节点标成了已访问；已经访问过时返回false
+     */
+    private static boolean visit(AtomicLongArray visited, int node) {
+        int word = node >>> 6;
+        long bit = 1L << node;
+        while (true) {
+            long current = visited.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (visited.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 边一条一条加进来，最后用计数排序排成CSR；同一个起点的边保持加入的顺序。
+     * 爬取时CrawlerManager.setLinkGraph用它记录谁链接了谁。不是线程安全的
+     */
+    public static class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> urls = new ArrayList<>();
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private int edgeCount;
+
+        /**
+         * @return url的编号，第一次出现时分配新的编号
+         */
+        public int addNode(String url) {
+            Integer id = ids.get(url);
+            if (id == null) {
+                id = urls.size();
+                ids.put(url, id);
+                urls.add(url);
+            }
+            return id;
+        }
+
+        public void addEdge(String source, String target) {
+            addEdge(addNode(source), addNode(target));
+        }
+
+        public void addEdge(int source, int target) {
+            if (edgeCount == from.length) {
+                if (edgeCount == Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("too many edges");
+                }
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * edgeCount);
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+            }
+            from[edgeCount] = source;
+            to[edgeCount] = target;
+            edgeCount++;
+        }
+
+        public int nodes() {
+            return urls.size();
+        }
+
+        public int edges() {
+            return edgeCount;
+        }
+
+        public LinkGraph build() {
+            int n = urls.size();
+            int[] offsets = new int[n + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                offsets[from[e] + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] position = Arrays.copyOf(offsets, n);
+            int[] edges = new int[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                edges[position[from[e]]++] = to[e];
+            }
+            String[] names = urls.toArray(new String[0]);
+            return new LinkGraph(n, offsets, edges, id -> names[id], new HashMap<>(ids));
+        }
+    }
+}
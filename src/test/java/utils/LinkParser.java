@@ -0,0 +1,16 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 14:00
+ **/
+
+import java.util.List;
+
+/**
+ * 从Fetcher抓回来的页面里取出链接
+ */
+public interface LinkParser {
+
+    List<String> parse(FetchResponse response) throws Exception;
+}
@@ -0,0 +1,21 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 10:12
+ **/
+
+import java.util.List;
+
+/**
+ * Where a crawl worker gets the out-links of a page from.
+ * 测试时是一张内存里的图（connectedUrls），真实爬取时是一次http请求加链接解析。
+ */
+public interface LinkSource {
+
+    /**
+     * @param url 页面地址
+     * @return 页面上发现的链接，没有时返回空列表
+     */
+    List<String> getUrls(String url) throws Exception;
+}
@@ -0,0 +1,157 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 11:30
+ **/
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地的慢速http服务器，把GraphGenerator生成的图当成网站来爬，不依赖外网。
+ * 节点 "u{i}" 的地址是 http://127.0.0.{1 + i % hosts}:port/u{i}，
+ * 响应体是一行一个的子节点地址，每个请求先sleep latencyMillis再返回。
+ * 127.0.0.0/8 都是回环地址，不同的ip在连接池里算不同的route。
+ */
+public class LocalGraphServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private final Map<String, List<String>> graph;
+    private final int hosts;
+    private final long latencyMillis;
+    private final boolean html;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    public LocalGraphServer(Map<String, List<String>> graph, int hosts, long latencyMillis) throws IOException {
+        this(graph, hosts, latencyMillis, false);
+    }
+
+    /**
+     * @param html 为true时返回html页面，子节点是 &lt;a href&gt; 链接，同host的用相对地址
+     */
+    public LocalGraphServer(Map<String, List<String>> graph, int hosts, long latencyMillis, boolean html)
+            throws IOException {
+        this.graph = graph;
+        this.html = html;
+        this.hosts = hosts;
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress("0.0.0.0", 0), 1024);
+        server.createContext("/", new GraphHandler());
+        server.setExecutor(workers);
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @param node 节点名，例如 "u0"
+     * @return 节点对应的url
+     */
+    public String url(String node) {
+        int i = Integer.parseInt(node.substring(1));
+        return "http://127.0.0." + (1 + i % hosts) + ":" + port() + "/" + node;
+    }
+
+    /**
+     * @return 同时在处理的请求数的最大值
+     */
+    public int maxConcurrentRequests() {
+        return maxActive.get();
+    }
+
+    /**
+     * 和linkSource一样按行切开，给Fetcher的结果用
+     */
+    public static LinkParser linkParser() {
+        return response -> {
+            String body = response.getBodyAsString();
+            if (response.getStatusCode() != 200 || body.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return Arrays.asList(body.split("\n"));
+        };
+    }
+
+    /**
+     * 把响应体按行切开，HttpPoolUtil.httpGet失败时返回"-1"
+     */
+    public static LinkSource linkSource(final int timeOut) {
+        return url -> {
+            String body = HttpPoolUtil.httpGet(url, timeOut);
+            if ("-1".equals(body) || body.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return Arrays.asList(body.split("\n"));
+        };
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private class GraphHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int now = active.incrementAndGet();
+            maxActive.accumulateAndGet(now, Math::max);
+            try {
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+            String node = exchange.getRequestURI().getPath().substring(1);
+            List<String> children = graph.get(node);
+            StringBuilder body = new StringBuilder();
+            if (html) {
+                body.append("<html><head><title>").append(node).append("</title></head><body>\n");
+            }
+            if (children != null) {
+                String self = url(node);
+                String host = self.substring(0, self.lastIndexOf('/'));
+                for (String child : children) {
+                    String url = url(child);
+                    if (!html) {
+                        body.append(url).append('\n');
+                    } else if (url.startsWith(host + "/")) {
+                        body.append("<p><a href=\"").append(child).append("\">").append(child).append("</a></p>\n");
+                    } else {
+                        body.append("<p><a href='").append(url).append("'>").append(child).append("</a></p>\n");
+                    }
+                }
+            }
+            if (html) {
+                body.append("</body></html>\n");
+            }
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    html ? "text/html; charset=UTF-8" : "text/plain; charset=UTF-8");
+            exchange.sendResponseHeaders(children == null ? 404 : 200, bytes.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(bytes);
+            os.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 16:10
+ **/
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * 本地测试服务器用的DNS：".test"结尾的名字（RFC 2606保留，不会是真的域名）都解析到回环地址，
+ * 其余的交给系统。测试服务器只监听127.0.0.1，不同的虚拟host靠名字和Host头区分；
+ * 127.0.0.0/8里别的地址只有Linux默认能用，macOS上只配了127.0.0.1。
+ * 接到HttpClientRegistry上用，子进程里没有这个hook时用writeHostsFile。
+ */
+public class LoopbackDnsResolver implements DnsResolver {
+    public static final String SUFFIX = ".test";
+    public static final LoopbackDnsResolver INSTANCE = new LoopbackDnsResolver();
+
+    private LoopbackDnsResolver() {
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        if (host.toLowerCase(Locale.ROOT).endsWith(SUFFIX)) {
+            return new InetAddress[]{InetAddress.getByAddress(host, InetAddress.getLoopbackAddress().getAddress())};
+        }
+        return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+    }
+
+    /**
+     * 写一个hosts文件，子进程用 -Djdk.net.hosts.file=file 启动时按它解析这些名字
+     */
+    public static void writeHostsFile(Path file, Iterable<String> names) throws IOException {
+        String loopback = InetAddress.getLoopbackAddress().getHostAddress();
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writer.write(loopback + " localhost\n");
+            for (String name : names) {
+                writer.write(loopback + " " + name + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 21:40
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按内容去重：镜像站、带session id的url、打印版这些url不同、内容几乎一样的页面，
+ * 指纹和已经抓过的页面的SimHash汉明距离不超过maxDistance时算重复，它的链接不再展开。
+ * 查找用分段的多表索引：64位分成bands段，距离不超过maxDistance的两个指纹
+ * 至少有bands - maxDistance段完全相同（抽屉原理）。每一种这样的段组合建一张表，
+ * 表的key就是这几段的bit，查找时只和某张表里key相同的指纹算距离。
+ * 段分得越多，key越长、桶里的指纹越少，但表的数量是组合数，也越多。
+ * 重复的页面不放进索引，索引里只有第一次见到的版本。
+ * 特征少于minFeatures的页面（只有图片链接的页面、frame和跳转的壳子）不去重，也不进索引：
+ * 这种页面的指纹是0或者只由几个词决定，不相关的页面也会碰到一起，当成重复就丢掉了它们的链接。
+ * 只接在异步抓取（Fetcher + LinkParser）上：PLATFORM、VIRTUAL模式用的LinkSource/HttpLinkSource
+ * 边读边解析，不保留页面内容，没法算指纹，这两种模式下不去重。
+ */
+public class NearDuplicateDetector {
+    // 几百个词的页面，镜像和原文的距离大多在6以内；两个不相关的页面距离不超过6的概率约4.5e-12
+    public static final int DEFAULT_MAX_DISTANCE = 6;
+    // 8段、每张表的key是其中2段共16位，一共C(8, 2) = 28张表
+    public static final int DEFAULT_BANDS = 8;
+    // 少于16个shingle的页面不去重，两个这样的页面指纹距离不超过6的概率已经不可忽略
+    public static final int DEFAULT_MIN_FEATURES = 16;
+    // 每张表的桶数不超过2^20
+    private static final int MAX_TABLE_BITS = 20;
+
+    private final int maxDistance;
+    private final int minFeatures;
+    // 每张表的key在指纹里对应的bit
+    private final long[] keyMasks;
+    private final int[][] heads;
+    // 链表：next[t][id]是表t里同一个桶的下一个指纹的id + 1
+    private final int[][] next;
+    private long[] fingerprints = new long[1024];
+    private int size;
+
+    private final ThreadLocal<SimHash> simHash = ThreadLocal.withInitial(SimHash::new);
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong duplicateBytes = new AtomicLong();
+    private final AtomicLong shortPages = new AtomicLong();
+
+    public NearDuplicateDetector() {
+        this(DEFAULT_MAX_DISTANCE, DEFAULT_BANDS);
+    }
+
+    /**
+     * @param maxDistance 汉明距离不超过它就算重复
+     * @param bands       64位分成几段，必须大于maxDistance；表的数量是C(bands, maxDistance)
+     */
+    public NearDuplicateDetector(int maxDistance, int bands) {
+        this(maxDistance, bands, DEFAULT_MIN_FEATURES);
+    }
+
+    /**
+     * @param minFeatures 页面的特征少于它时不去重
+     */
+    public NearDuplicateDetector(int maxDistance, int bands, int minFeatures) {
+        if (maxDistance < 0 || bands <= maxDistance || bands > 64) {
+            throw new IllegalArgumentException("need 0 <= maxDistance < bands <= 64");
+        }
+        this.maxDistance = maxDistance;
+        this.minFeatures = minFeatures;
+        long[] bandMasks = new long[bands];
+        int shift = 0;
+        for (int b = 0; b < bands; b++) {
+            // 64位尽量平均地分，前面的段多分一位
+            int bits = 64 / bands + (b < 64 % bands ? 1 : 0);
+            bandMasks[b] = bits == 64 ? -1L : ((1L << bits) - 1) << shift;
+            shift += bits;
+        }
+        List<Long> masks = new ArrayList<>();
+        combinations(bandMasks, bands - maxDistance, 0, 0L, masks);
+        keyMasks = new long[masks.size()];
+        heads = new int[masks.size()][];
+        next = new int[masks.size()][];
+        for (int t = 0; t < keyMasks.length; t++) {
+            keyMasks[t] = masks.get(t);
+            heads[t] = new int[1 << Math.min(Long.bitCount(keyMasks[t]), MAX_TABLE_BITS)];
+            next[t] = new int[fingerprints.length];
+        }
+    }
+
+    /**
+     * @return 内容和已有的页面重复时返回false；否则把它加进索引，返回true。
+     * 特征太少的页面直接返回true，不进索引
+     */
+    public boolean add(String text) {
+        SimHash hash = simHash.get();
+        long fingerprint = hash.fingerprint(text);
+        if (hash.features() < minFeatures) {
+            shortPages.incrementAndGet();
+            return true;
+        }
+        return addFingerprint(fingerprint);
+    }
+
+    public synchronized boolean addFingerprint(long fingerprint) {
+        if (find(fingerprint) >= 0) {
+            return false;
+        }
+        int id = size++;
+        if (id == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, id * 2);
+            for (int t = 0; t < next.length; t++) {
+                next[t] = Arrays.copyOf(next[t], id * 2);
+            }
+        }
+        fingerprints[id] = fingerprint;
+        for (int t = 0; t < keyMasks.length; t++) {
+            int bucket = bucket(t, fingerprint);
+            next[t][id] = heads[t][bucket];
+            heads[t][bucket] = id + 1;
+        }
+        return true;
+    }
+
+    /**
+     * @return 索引里有没有和fingerprint的距离不超过maxDistance的指纹
+     */
+    public synchronized boolean containsNear(long fingerprint) {
+        return find(fingerprint) >= 0;
+    }
+
+    /**
+     * 先按内容去重，重复的页面返回空列表，不交给delegate，
+     * 放在IndexWriter.linkParser外面时重复的页面也不会建进索引。
+     * 只有用Fetcher和LinkParser构造的CrawlerManager会经过这里
+     */
+    public LinkParser linkParser(final LinkParser delegate) {
+        return response -> {
+            if (response.getStatusCode() == 200) {
+                pages.incrementAndGet();
+                if (!add(response.getBodyAsString())) {
+                    duplicates.incrementAndGet();
+                    duplicateBytes.addAndGet(response.getBody().length);
+                    return Collections.emptyList();
+                }
+            }
+            return delegate.parse(response);
+        };
+    }
+
+    /**
+     * @return 索引里的指纹数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return linkParser检查过的页面数
+     */
+    public long pages() {
+        return pages.get();
+    }
+
+    /**
+     * @return 其中被判为重复的页面数
+     */
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return 重复页面的响应体字节数，没有进索引
+     */
+    public long duplicateBytes() {
+        return duplicateBytes.get();
+    }
+
+    /**
+     * @return 内容太短、没有去重的页面数
+     */
+    public long shortPages() {
+        return shortPages.get();
+    }
+
+    /**
+     * @return 表的数量
+     */
+    public int tables() {
+        return keyMasks.length;
+    }
+
+    private int find(long fingerprint) {
+        for (int t = 0; t < keyMasks.length; t++) {
+            long key = fingerprint & keyMasks[t];
+            for (int id = heads[t][bucket(t, fingerprint)] - 1; id >= 0; id = next[t][id] - 1) {
+                long candidate = fingerprints[id];
+                // 桶里可能有key不同但哈希到一起的，先比key再算距离
+                if ((candidate & keyMasks[t]) == key && SimHash.distance(candidate, fingerprint) <= maxDistance) {
+                    return id;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int bucket(int t, long fingerprint) {
+        return (int) UrlFingerprint.mix(fingerprint & keyMasks[t]) & (heads[t].length - 1);
+    }
+
+    /**
+     * 从bandMasks里选count段，每种选法的bit合起来放进out
+     */
+    private static void combinations(long[] bandMasks, int count, int from, long mask, List<Long> out) {
+        if (count == 0) {
+            out.add(mask);
+            return;
+        }
+        for (int b = from; b <= bandMasks.length - count; b++) {
+            combinations(bandMasks, count - 1, b + 1, mask | bandMasks[b], out);
+        }
+    }
+}
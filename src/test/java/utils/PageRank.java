@@ -0,0 +1,285 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 05:00
+ **/
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * 在爬下来的LinkGraph上算PageRank，给排序和决定先爬哪些页面用。
+ *  - 按入边拉取（pull）：每个节点只写自己的分数，节点切块以后在fork-join池上并行，不需要加锁
+ *  - 分数、下一轮的分数、每个节点分出去的份额都是double数组
+ *  - 没有出链的节点（dangling）的分数平均分给所有节点，分数的总和一直是1
+ *  - 两轮之间的L1距离小于tolerance时停止，最多maxIterations轮
+ *  - 可以从上一次的分数开始迭代（见load），图只变了一点时几轮就收敛
+ * 多次出现的同一条链接按多条边算。
+ */
+public class PageRank {
+    public static final double DEFAULT_DAMPING = 0.85;
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    private static final int CHUNK = 16384;
+
+    private final LinkGraph graph;
+    private final LinkGraph incoming;
+    private final int[] outDegree;
+    private double damping = DEFAULT_DAMPING;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    public PageRank(LinkGraph graph) {
+        this.graph = graph;
+        this.incoming = graph.transpose();
+        this.outDegree = new int[graph.nodes()];
+        for (int node = 0; node < outDegree.length; node++) {
+            outDegree[node] = graph.degree(node);
+        }
+    }
+
+    public PageRank setDamping(double damping) {
+        if (damping < 0 || damping >= 1) {
+            throw new IllegalArgumentException("damping must be in [0, 1)");
+        }
+        this.damping = damping;
+        return this;
+    }
+
+    /**
+     * @param tolerance 两轮分数的L1距离小于这个值时停止
+     */
+    public PageRank setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public PageRank setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+        return this;
+    }
+
+    public Result compute() {
+        return compute(null);
+    }
+
+    /**
+     * @param initial 初始分数，比如上一次的结果，会被归一化；为null时每个节点1/n
+     */
+    public Result compute(double[] initial) {
+        final int n = graph.nodes();
+        long start = System.nanoTime();
+        double[] rank = new double[n];
+        if (n == 0) {
+            return new Result(graph, rank, 0, 0, true, 0, memoryBytes());
+        }
+        if (initial == null) {
+            Arrays.fill(rank, 1.0 / n);
+        } else {
+            if (initial.length != n) {
+                throw new IllegalArgumentException("initial scores for " + initial.length + " nodes, graph has " + n);
+            }
+            double sum = 0;
+            for (double score : initial) {
+                sum += score;
+            }
+            for (int node = 0; node < n; node++) {
+                rank[node] = sum > 0 ? initial[node] / sum : 1.0 / n;
+            }
+        }
+        double[] next = new double[n];
+        final double[] share = new double[n];
+        final int chunks = (n + CHUNK - 1) / CHUNK;
+
+        int iterations = 0;
+        double delta = Double.MAX_VALUE;
+        while (iterations < maxIterations && delta >= tolerance) {
+            final double[] current = rank;
+            // 每个节点分给每条出边的份额，顺便算出dangling节点的总分
+            double dangling = IntStream.range(0, chunks).parallel().mapToDouble(c -> {
+                double sum = 0;
+                for (int node = c * CHUNK, end = Math.min(n, node + CHUNK); node < end; node++) {
+                    if (outDegree[node] == 0) {
+                        share[node] = 0;
+                        sum += current[node];
+                    } else {
+                        share[node] = current[node] / outDegree[node];
+                    }
+                }
+                return sum;
+            }).sum();
+            final double base = (1 - damping) / n + damping * dangling / n;
+            final double[] updated = next;
+            delta = IntStream.range(0, chunks).parallel().mapToDouble(c -> {
+                double diff = 0;
+                for (int node = c * CHUNK, end = Math.min(n, node + CHUNK); node < end; node++) {
+                    double sum = 0;
+                    for (int i = 0, degree = incoming.degree(node); i < degree; i++) {
+                        sum += share[incoming.child(node, i)];
+                    }
+                    double score = base + damping * sum;
+                    diff += Math.abs(score - current[node]);
+                    updated[node] = score;
+                }
+                return diff;
+            }).sum();
+            next = rank;
+            rank = updated;
+            iterations++;
+        }
+        return new Result(graph, rank, iterations, delta, delta < tolerance, System.nanoTime() - start,
+                memoryBytes());
+    }
+
+    /**
+     * @return 入边的CSR、出度和三个double数组，不包括原来的图
+     */
+    public long memoryBytes() {
+        int n = graph.nodes();
+        return incoming.memoryBytes() + 4L * n + 3 * 8L * n;
+    }
+
+    /**
+     * 读save存下来的分数，按url对到graph的节点上，作为compute的初始值。
+     * 新出现的url给所有旧分数的平均值
+     */
+    public static double[] load(Path file, LinkGraph graph) throws IOException {
+        double[] scores = new double[graph.nodes()];
+        boolean[] known = new boolean[graph.nodes()];
+        double sum = 0;
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.lastIndexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                int id = graph.id(line.substring(0, tab));
+                if (id >= 0) {
+                    scores[id] = Double.parseDouble(line.substring(tab + 1));
+                    known[id] = true;
+                    sum += scores[id];
+                    count++;
+                }
+            }
+        }
+        double average = count == 0 ? 1.0 / Math.max(1, graph.nodes()) : sum / count;
+        for (int node = 0; node < scores.length; node++) {
+            if (!known[node]) {
+                scores[node] = average;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * 一次计算的结果
+     */
+    public static class Result {
+        private final LinkGraph graph;
+        private final double[] scores;
+        private final int iterations;
+        private final double delta;
+        private final boolean converged;
+        private final long nanos;
+        private final long memoryBytes;
+
+        Result(LinkGraph graph, double[] scores, int iterations, double delta, boolean converged, long nanos,
+               long memoryBytes) {
+            this.graph = graph;
+            this.scores = scores;
+            this.iterations = iterations;
+            this.delta = delta;
+            this.converged = converged;
+            this.nanos = nanos;
+            this.memoryBytes = memoryBytes;
+        }
+
+        /**
+         * @return 按节点编号排列的分数，总和为1
+         */
+        public double[] scores() {
+            return scores;
+        }
+
+        public double score(int node) {
+            return scores[node];
+        }
+
+        /**
+         * @return url的分数，不在图里时返回0
+         */
+        public double score(String url) {
+            int id = graph.id(url);
+            return id < 0 ? 0 : scores[id];
+        }
+
+        /**
+         * @return 分数最高的n个节点编号，从高到低
+         */
+        public int[] top(int n) {
+            return IntStream.range(0, scores.length).boxed()
+                    .sorted((a, b) -> Double.compare(scores[b], scores[a]))
+                    .limit(n).mapToInt(Integer::intValue).toArray();
+        }
+
+        public int iterations() {
+            return iterations;
+        }
+
+        /**
+         * @return 最后一轮的L1距离
+         */
+        public double delta() {
+            return delta;
+        }
+
+        public boolean converged() {
+            return converged;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        public double iterationsPerSecond() {
+            return nanos == 0 ? 0 : iterations * 1e9 / nanos;
+        }
+
+        public long memoryBytes() {
+            return memoryBytes;
+        }
+
+        /**
+         * 每行 "url\t分数"，先写临时文件再改名，和爬取结果放在一起
+         */
+        public void save(Path file) throws IOException {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (int node = 0; node < scores.length; node++) {
+                    writer.write(graph.url(node));
+                    writer.write('\t');
+                    writer.write(Double.toString(scores[node]));
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d nodes, %d iterations (%s, delta %.2e) in %.1f ms, %.1f iterations/s, %.1f MB",
+                    scores.length, iterations, converged ? "converged" : "not converged", delta, nanos / 1e6,
+                    iterationsPerSecond(), memoryBytes / (1024.0 * 1024));
+        }
+    }
+}
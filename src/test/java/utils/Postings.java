@@ -0,0 +1,223 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 19:50
+ **/
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 一个词的倒排表，按doc id从小到大迭代，可以跨多个segment。
+ * 用法：while ((doc = postings.nextDoc()) != NO_MORE_DOCS) { postings.freq() ... }
+ * 块的目录在打开时就读出来了：advance可以直接跳到目标所在的块，不用解码前面的块；
+ * 查询时还可以用每块的最大词频和最短文档长度估计这一块的分数上限。
+ */
+public class Postings {
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private final ByteBuffer[] parts;
+    private final int[] partDocBases;
+    private final int docFreq;
+    // 所有segment的块拼在一起，lastDocs是全局doc id，所以整体是递增的
+    private final int[] blockParts;
+    private final int[] blockStarts;
+    private final int[] blockCounts;
+    private final int[] blockLastDocs;
+    private final int[] blockMaxFreqs;
+    private final int[] blockMinLengths;
+
+    private int block = -1;
+    private int remainingInBlock;
+    private int currentPart = -1;
+    private ByteBuffer in;
+    private int doc = -1;
+    private int freq;
+
+    private Postings(ByteBuffer[] parts, int[] partDocBases, int docFreq, int[] blockParts, int[] blockStarts,
+                     int[] blockCounts, int[] blockLastDocs, int[] blockMaxFreqs, int[] blockMinLengths) {
+        this.parts = parts;
+        this.partDocBases = partDocBases;
+        this.docFreq = docFreq;
+        this.blockParts = blockParts;
+        this.blockStarts = blockStarts;
+        this.blockCounts = blockCounts;
+        this.blockLastDocs = blockLastDocs;
+        this.blockMaxFreqs = blockMaxFreqs;
+        this.blockMinLengths = blockMinLengths;
+    }
+
+    /**
+     * 读一个segment里一个词的倒排表，格式见IndexSegment
+     */
+    static Postings read(ByteBuffer data, int docFreq, int docBase) {
+        int blocks = VByte.read(data);
+        int[] counts = new int[blocks];
+        int[] lastDocs = new int[blocks];
+        int[] byteLengths = new int[blocks];
+        int[] maxFreqs = new int[blocks];
+        int[] minLengths = new int[blocks];
+        int last = docBase;
+        for (int b = 0; b < blocks; b++) {
+            last += VByte.read(data);
+            lastDocs[b] = last;
+            byteLengths[b] = VByte.read(data);
+            maxFreqs[b] = VByte.read(data);
+            minLengths[b] = VByte.read(data);
+            counts[b] = Math.min(IndexWriter.BLOCK_SIZE, docFreq - b * IndexWriter.BLOCK_SIZE);
+        }
+        int[] starts = new int[blocks];
+        int position = data.position();
+        for (int b = 0; b < blocks; b++) {
+            starts[b] = position;
+            position += byteLengths[b];
+        }
+        return new Postings(new ByteBuffer[]{data}, new int[]{docBase}, docFreq, new int[blocks], starts,
+                counts, lastDocs, maxFreqs, minLengths);
+    }
+
+    /**
+     * 把多个segment的倒排表按顺序接起来，segment的docBase必须是递增的
+     */
+    static Postings concat(List<Postings> postings) {
+        if (postings.size() == 1) {
+            return postings.get(0);
+        }
+        ByteBuffer[] parts = new ByteBuffer[postings.size()];
+        int[] docBases = new int[parts.length];
+        int docFreq = 0;
+        int blocks = 0;
+        for (int i = 0; i < parts.length; i++) {
+            Postings p = postings.get(i);
+            parts[i] = p.parts[0];
+            docBases[i] = p.partDocBases[0];
+            docFreq += p.docFreq;
+            blocks += p.blockCounts.length;
+        }
+        int[] blockParts = new int[blocks];
+        int[] starts = new int[blocks];
+        int[] counts = new int[blocks];
+        int[] lastDocs = new int[blocks];
+        int[] maxFreqs = new int[blocks];
+        int[] minLengths = new int[blocks];
+        int offset = 0;
+        for (int i = 0; i < parts.length; i++) {
+            Postings p = postings.get(i);
+            int n = p.blockCounts.length;
+            Arrays.fill(blockParts, offset, offset + n, i);
+            System.arraycopy(p.blockStarts, 0, starts, offset, n);
+            System.arraycopy(p.blockCounts, 0, counts, offset, n);
+            System.arraycopy(p.blockLastDocs, 0, lastDocs, offset, n);
+            System.arraycopy(p.blockMaxFreqs, 0, maxFreqs, offset, n);
+            System.arraycopy(p.blockMinLengths, 0, minLengths, offset, n);
+            offset += n;
+        }
+        return new Postings(parts, docBases, docFreq, blockParts, starts, counts, lastDocs, maxFreqs, minLengths);
+    }
+
+    /**
+     * @return 下一个文档的id，没有了返回NO_MORE_DOCS
+     */
+    public int nextDoc() {
+        if (remainingInBlock == 0) {
+            if (block + 1 >= blockCounts.length) {
+                block = blockCounts.length;
+                return doc = NO_MORE_DOCS;
+            }
+            seek(block + 1);
+        }
+        doc += VByte.read(in);
+        freq = VByte.read(in);
+        remainingInBlock--;
+        return doc;
+    }
+
+    /**
+     * @return 第一个 >= target 的文档；目标在后面的块里时直接跳过去
+     */
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        if (block < 0 || blockLastDocs[block] < target) {
+            int b = findBlock(target, block + 1);
+            if (b == blockCounts.length) {
+                block = b;
+                remainingInBlock = 0;
+                return doc = NO_MORE_DOCS;
+            }
+            seek(b);
+        }
+        // seek之后doc是块的起点（前一块的最后一个doc或者segment的docBase），还没解码，至少读一个
+        do {
+            nextDoc();
+        } while (doc < target);
+        return doc;
+    }
+
+    public int docID() {
+        return doc;
+    }
+
+    public int freq() {
+        return freq;
+    }
+
+    /**
+     * @return 包含这个词的文档数
+     */
+    public int docFreq() {
+        return docFreq;
+    }
+
+    public int blockCount() {
+        return blockCounts.length;
+    }
+
+    /**
+     * @return 第一个lastDoc >= target的块，都小于target时返回blockCount()
+     */
+    public int findBlock(int target) {
+        return findBlock(target, 0);
+    }
+
+    public int blockLastDoc(int block) {
+        return blockLastDocs[block];
+    }
+
+    public int blockMaxFreq(int block) {
+        return blockMaxFreqs[block];
+    }
+
+    public int blockMinLength(int block) {
+        return blockMinLengths[block];
+    }
+
+    private int findBlock(int target, int from) {
+        int low = from;
+        int high = blockLastDocs.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockLastDocs[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void seek(int b) {
+        int part = blockParts[b];
+        if (part != currentPart) {
+            in = parts[part].duplicate();
+            currentPart = part;
+        }
+        in.position(blockStarts[b]);
+        doc = b == 0 || blockParts[b - 1] != part ? partDocBases[part] : blockLastDocs[b - 1];
+        block = b;
+        remainingInBlock = blockCounts[b];
+    }
+}
@@ -0,0 +1,638 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 03:10
+ **/
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 下载大文件：响应体从连接上读到一块direct buffer里，直接按位置写进FileChannel，
+ * 不再经过BufferedInputStream、byte[]和BufferedOutputStream来回拷贝。
+ *  - 下载中的内容写在 target.part 里，进度写在 target.part.state 里；
+ *    连接断了先在本次调用里重试剩下的部分，重试次数用完或者进程退出以后，下次download接着下，
+ *    请求带Range和If-Range，文件在服务器上变了的话服务器会返回整个文件，从头再来
+ *  - 服务器支持Range、文件又够大时，切成几段在连接池上并行下载，每段写自己的位置
+ *  - 下完以后计算校验和（默认SHA-256），和期望值不一样时抛出异常
+ *  - 返回的Result里有本次下载的字节数、耗时和吞吐量
+ * 请求都带 Accept-Encoding: identity，否则gzip过的内容没法按字节续传。
+ */
+public class RangeDownloader {
+    private static final Logger LOG = LoggerFactory.getLogger(RangeDownloader.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long DEFAULT_MIN_SEGMENT_BYTES = 4L * 1024 * 1024;
+    public static final int DEFAULT_RETRIES = 3;
+    /** 每段每下载这么多字节保存一次进度 */
+    private static final long SAVE_INTERVAL = 1024 * 1024;
+
+    private final HttpClientRegistry registry;
+    private final int timeOut;
+    private int segments = 1;
+    private long minSegmentBytes = DEFAULT_MIN_SEGMENT_BYTES;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int retries = DEFAULT_RETRIES;
+    private String digestAlgorithm = "SHA-256";
+
+    public RangeDownloader(int timeOut) {
+        this(HttpPoolUtil.registry(), timeOut);
+    }
+
+    public RangeDownloader(HttpClientRegistry registry, int timeOut) {
+        this.registry = registry;
+        this.timeOut = timeOut;
+    }
+
+    /**
+     * @param segments 最多切成几段并行下载，1表示不切
+     */
+    public RangeDownloader setSegments(int segments) {
+        if (segments <= 0) {
+            throw new IllegalArgumentException("segments must be positive");
+        }
+        this.segments = segments;
+        return this;
+    }
+
+    /**
+     * @param minSegmentBytes 每段至少多大，文件不到两段的大小时不切
+     */
+    public RangeDownloader setMinSegmentBytes(long minSegmentBytes) {
+        this.minSegmentBytes = minSegmentBytes;
+        return this;
+    }
+
+    public RangeDownloader setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * @param retries 一段断了以后在本次调用里续传几次
+     */
+    public RangeDownloader setRetries(int retries) {
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * @param digestAlgorithm MessageDigest的算法名，比如SHA-256、MD5
+     */
+    public RangeDownloader setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+        return this;
+    }
+
+    public Result download(String url, File target) throws IOException {
+        return download(url, target, null);
+    }
+
+    /**
+     * 下载url到target，target.part存在时接着下
+     *
+     * @param expectedChecksum 期望的校验和（十六进制，不区分大小写），为null时不检查
+     * @throws IOException 下载失败、校验和不对；失败时.part和进度文件留着，下次接着下
+     */
+    public Result download(String url, File target, String expectedChecksum) throws IOException {
+        long start = System.nanoTime();
+        File part = new File(target.getPath() + ".part");
+        File stateFile = new File(target.getPath() + ".part.state");
+        State state = State.load(stateFile, url);
+        if (state == null || !part.isFile()) {
+            state = probe(url);
+            Files.deleteIfExists(part.toPath());
+        }
+        long resumed = state.completed();
+
+        AtomicLong downloaded = new AtomicLong();
+        try {
+            downloaded.addAndGet(fetchAll(url, part, stateFile, state));
+        } catch (ResourceChangedException e) {
+            // 服务器上的文件变了，已经下的部分作废
+            LOG.info("{} changed on the server, starting over", url);
+            state = probe(url);
+            Files.deleteIfExists(part.toPath());
+            resumed = 0;
+            downloaded.set(fetchAll(url, part, stateFile, state));
+        }
+
+        String checksum = checksum(part);
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            // 内容不对，续传也没有意义
+            Files.deleteIfExists(part.toPath());
+            Files.deleteIfExists(stateFile.toPath());
+            throw new IOException(digestAlgorithm + " mismatch for " + url + ": expected " + expectedChecksum
+                    + ", got " + checksum);
+        }
+        try {
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(stateFile.toPath());
+
+        Result result = new Result(url, target, target.length(), downloaded.get(), resumed,
+                state.segments.size(), System.nanoTime() - start, checksum);
+        LOG.info("downloaded {}", result);
+        return result;
+    }
+
+    /**
+     * 用HEAD拿到长度、是否支持Range和校验用的ETag/Last-Modified，决定切成几段。
+     * HEAD失败时当成长度未知，整个文件一段
+     */
+    private State probe(String url) throws IOException {
+        State state = new State(url);
+        HttpHead head = new HttpHead(url);
+        head.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        long length = -1;
+        boolean ranges = false;
+        try (CloseableHttpResponse response = registry.getClient(timeOut).execute(head)) {
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+                Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+                length = contentLength == null ? -1 : Long.parseLong(contentLength.getValue().trim());
+                Header acceptRanges = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+                ranges = acceptRanges != null && acceptRanges.getValue().contains("bytes");
+                state.validator = validator(response);
+            }
+        }
+        state.length = length;
+        int count = 1;
+        if (ranges && length > 0 && minSegmentBytes > 0) {
+            count = (int) Math.max(1, Math.min(segments, length / minSegmentBytes));
+        }
+        if (length <= 0) {
+            state.segments.add(new Segment(0, -1));
+        } else {
+            long size = (length + count - 1) / count;
+            for (long from = 0; from < length; from += size) {
+                state.segments.add(new Segment(from, Math.min(length, from + size) - 1));
+            }
+        }
+        return state;
+    }
+
+    /**
+     * 强ETag优先，没有时用Last-Modified；弱ETag不能用在If-Range里
+     */
+    private static String validator(CloseableHttpResponse response) {
+        Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+        if (etag != null && !etag.getValue().startsWith("W/")) {
+            return etag.getValue();
+        }
+        Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+        return lastModified == null ? null : lastModified.getValue();
+    }
+
+    /**
+     * 下载所有没下完的段，返回本次下载的字节数
+     */
+    private long fetchAll(final String url, File part, final File stateFile, final State state) throws IOException {
+        final List<Segment> pending = new ArrayList<>();
+        for (Segment segment : state.segments) {
+            if (!segment.isComplete()) {
+                pending.add(segment);
+            }
+        }
+        final AtomicLong downloaded = new AtomicLong();
+        try (final FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            if (pending.size() <= 1) {
+                for (Segment segment : pending) {
+                    fetchSegment(url, channel, stateFile, state, segment, downloaded);
+                }
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(pending.size());
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (final Segment segment : pending) {
+                        futures.add(executor.submit(() -> {
+                            fetchSegment(url, channel, stateFile, state, segment, downloaded);
+                            return null;
+                        }));
+                    }
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while downloading " + url, e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                } finally {
+                    executor.shutdownNow();
+                    awaitWorkers(executor, url);
+                }
+            }
+            if (state.length > 0 && channel.size() > state.length) {
+                channel.truncate(state.length);
+            }
+        } finally {
+            state.save(stateFile);
+        }
+        return downloaded.get();
+    }
+
+    /**
+     * 一段失败时别的段还在写文件，等它们都停下来再删.part或者把异常抛出去。
+     * shutdownNow的中断会让下一次channel.write失败，阻塞在读socket上的最多等一个timeOut
+     */
+    private void awaitWorkers(ExecutorService executor, String url) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(timeOut, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                LOG.debug("still waiting for segments of {} to stop", url);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fetchSegment(String url, FileChannel channel, File stateFile, State state, Segment segment,
+                              AtomicLong downloaded) throws IOException {
+        int attempt = 0;
+        while (true) {
+            try {
+                fetchRange(url, channel, stateFile, state, segment, downloaded);
+                return;
+            } catch (ResourceChangedException e) {
+                throw e;
+            } catch (IOException e) {
+                // 被shutdownNow中断时不再续传
+                if (++attempt > retries || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                LOG.debug("segment {} of {} failed at {}, resuming: {}", segment, url, segment.position(), e.toString());
+            }
+        }
+    }
+
+    private void fetchRange(String url, FileChannel channel, File stateFile, State state, Segment segment,
+                            AtomicLong downloaded) throws IOException {
+        HttpGet get = new HttpGet(url);
+        get.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        boolean ranged = segment.position() > 0 || segment.end >= 0;
+        if (ranged) {
+            if (segment.position() > 0 && state.validator == null) {
+                // 没有办法确认服务器上的文件没变，不敢续传
+                throw new ResourceChangedException();
+            }
+            get.setHeader(HttpHeaders.RANGE, "bytes=" + segment.position() + "-" + (segment.end >= 0 ? segment.end : ""));
+            if (state.validator != null) {
+                get.setHeader(HttpHeaders.IF_RANGE, state.validator);
+            }
+        }
+        try (CloseableHttpResponse response = registry.getClient(timeOut).execute(get)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_OK && ranged) {
+                if (state.segments.size() > 1 || segment.position() > 0 || !sameValidator(state, response)) {
+                    // If-Range不匹配时服务器返回整个文件
+                    abort(get);
+                    throw new ResourceChangedException();
+                }
+            } else if (status == HttpStatus.SC_PARTIAL_CONTENT) {
+                checkContentRange(response, segment);
+            } else if (status != HttpStatus.SC_OK) {
+                abort(get);
+                throw new IOException("unexpected status " + status + " for " + url);
+            }
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                throw new IOException("empty response for " + url);
+            }
+            try {
+                copy(entity.getContent(), channel, stateFile, state, segment, downloaded);
+            } catch (IOException e) {
+                abort(get);
+                throw e;
+            }
+        }
+    }
+
+    private static boolean sameValidator(State state, CloseableHttpResponse response) {
+        return state.validator == null || state.validator.equals(validator(response));
+    }
+
+    private static void checkContentRange(CloseableHttpResponse response, Segment segment) throws IOException {
+        Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+        String expected = "bytes " + segment.position() + "-";
+        if (contentRange == null || !contentRange.getValue().startsWith(expected)) {
+            throw new IOException("unexpected Content-Range " + (contentRange == null ? null : contentRange.getValue())
+                    + ", expected " + expected);
+        }
+    }
+
+    /**
+     * 从响应流读到direct buffer，按位置写进文件，读到段尾就停
+     */
+    private void copy(InputStream in, FileChannel channel, File stateFile, State state, Segment segment,
+                      AtomicLong downloaded) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        long sinceSave = 0;
+        while (!segment.isComplete()) {
+            buffer.clear();
+            if (segment.end >= 0) {
+                buffer.limit((int) Math.min(buffer.capacity(), segment.end + 1 - segment.position()));
+            }
+            int n = source.read(buffer);
+            if (n < 0) {
+                break;
+            }
+            buffer.flip();
+            long position = segment.position();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            segment.advance(n);
+            downloaded.addAndGet(n);
+            sinceSave += n;
+            if (sinceSave >= SAVE_INTERVAL) {
+                state.save(stateFile);
+                sinceSave = 0;
+            }
+        }
+        if (segment.end < 0) {
+            segment.end = segment.position() - 1;
+            segment.complete();
+        } else if (!segment.isComplete()) {
+            throw new IOException("connection closed at " + segment.position() + " of " + segment);
+        }
+    }
+
+    private static void abort(HttpRequestBase request) {
+        // 不把剩下的内容读完，直接断开连接
+        request.abort();
+    }
+
+    private String checksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(digestAlgorithm, e);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * 文件在服务器上变了，或者没有办法确认没变
+     */
+    private static class ResourceChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * 文件里的一段，[start, end]，end为-1表示长度未知，读到结束为止
+     */
+    private static class Segment {
+        final long start;
+        volatile long end;
+        private final AtomicLong done;
+        private volatile boolean complete;
+
+        Segment(long start, long end) {
+            this(start, end, 0);
+        }
+
+        Segment(long start, long end, long done) {
+            this.start = start;
+            this.end = end;
+            this.done = new AtomicLong(done);
+        }
+
+        long position() {
+            return start + done.get();
+        }
+
+        void advance(long n) {
+            done.addAndGet(n);
+        }
+
+        void complete() {
+            complete = true;
+        }
+
+        boolean isComplete() {
+            return complete || (end >= 0 && position() > end);
+        }
+
+        @Override
+        public String toString() {
+            return "bytes " + start + "-" + (end >= 0 ? end : "");
+        }
+    }
+
+    /**
+     * 下载进度，存成Properties
+     */
+    private static class State {
+        final String url;
+        long length = -1;
+        String validator;
+        final List<Segment> segments = new ArrayList<>();
+
+        State(String url) {
+            this.url = url;
+        }
+
+        long completed() {
+            long completed = 0;
+            for (Segment segment : segments) {
+                completed += segment.done.get();
+            }
+            return completed;
+        }
+
+        /**
+         * @return 没有进度文件或者不是这个url的进度时返回null
+         */
+        static State load(File file, String url) throws IOException {
+            if (!file.isFile()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+            if (!url.equals(properties.getProperty("url"))) {
+                return null;
+            }
+            State state = new State(url);
+            state.length = Long.parseLong(properties.getProperty("length"));
+            state.validator = properties.getProperty("validator");
+            int count = Integer.parseInt(properties.getProperty("segments"));
+            for (int i = 0; i < count; i++) {
+                String[] fields = properties.getProperty("segment." + i).split(",");
+                Segment segment = new Segment(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]));
+                if (fields.length > 3 && Boolean.parseBoolean(fields[3])) {
+                    segment.complete();
+                }
+                state.segments.add(segment);
+            }
+            return state;
+        }
+
+        /**
+         * 先写临时文件再改名，写到一半崩溃时旧的进度还在
+         */
+        synchronized void save(File file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("url", url);
+            properties.setProperty("length", String.valueOf(length));
+            if (validator != null) {
+                properties.setProperty("validator", validator);
+            }
+            properties.setProperty("segments", String.valueOf(segments.size()));
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                properties.setProperty("segment." + i, segment.start + "," + segment.end + ","
+                        + segment.done.get() + "," + segment.complete);
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 一次下载的结果
+     */
+    public static class Result {
+        private final String url;
+        private final File file;
+        private final long length;
+        private final long downloaded;
+        private final long resumed;
+        private final int segments;
+        private final long nanos;
+        private final String checksum;
+
+        Result(String url, File file, long length, long downloaded, long resumed, int segments, long nanos,
+               String checksum) {
+            this.url = url;
+            this.file = file;
+            this.length = length;
+            this.downloaded = downloaded;
+            this.resumed = resumed;
+            this.segments = segments;
+            this.nanos = nanos;
+            this.checksum = checksum;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return 文件大小
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return 这次调用从网络上读的字节数
+         */
+        public long getDownloaded() {
+            return downloaded;
+        }
+
+        /**
+         * @return 开始时.part里已经有的字节数
+         */
+        public long getResumed() {
+            return resumed;
+        }
+
+        public int getSegments() {
+            return segments;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return 十六进制的校验和
+         */
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public double bytesPerSecond() {
+            return nanos == 0 ? 0 : downloaded * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d bytes (%d resumed) in %d segment(s), %.1f ms, %.2f MB/s, %s",
+                    url, length, resumed, segments, nanos / 1e6, bytesPerSecond() / (1024 * 1024), checksum);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 18:40
+ **/
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重新爬取时用的本地http缓存，存在磁盘上，按规范化后的url存一份响应。
+ *  - 只缓存带ETag或Last-Modified的200响应，再抓时带上If-None-Match/If-Modified-Since
+ *  - 服务器返回304时直接用本地的内容，不再下载正文
+ *  - 总大小超过maxBytes时按LRU删掉最久没用过的
+ * 统计命中、未命中、重新验证的次数，以及省下的字节数和下载时间。
+ * 可以被多个worker线程同时使用。
+ */
+public class RecrawlCache {
+    private static final int MAGIC = 0x52435631;
+    private static final String SUFFIX = ".entry";
+
+    private final Path dir;
+    private final long maxBytes;
+    // accessOrder为true，迭代顺序就是LRU顺序，最老的在最前面
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong nanosSaved = new AtomicLong();
+
+    /**
+     * @param dir      缓存目录，已有的缓存文件会被加载
+     * @param maxBytes 缓存文件总大小的上限
+     */
+    public RecrawlCache(Path dir, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    /**
+     * 抓取url，本地有副本时发条件请求
+     *
+     * @param httpClient 一般是HttpPoolUtil.getHttpClient(timeOut)
+     */
+    public FetchResponse fetch(CloseableHttpClient httpClient, String url) throws IOException {
+        String key = cacheKey(url);
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(key);
+        }
+        HttpGet httpGet = new HttpGet(url);
+        if (entry != null) {
+            if (!entry.etag.isEmpty()) {
+                httpGet.setHeader("If-None-Match", entry.etag);
+            }
+            if (!entry.lastModified.isEmpty()) {
+                httpGet.setHeader("If-Modified-Since", entry.lastModified);
+            }
+        }
+        long start = System.nanoTime();
+        FetchResponse fetched;
+        String etag;
+        String lastModified;
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+                long elapsed = System.nanoTime() - start;
+                FetchResponse cached = read(entry);
+                if (cached != null) {
+                    hits.incrementAndGet();
+                    bytesSaved.addAndGet(cached.getBody().length);
+                    nanosSaved.addAndGet(Math.max(0, entry.fetchNanos - elapsed));
+                    return cached;
+                }
+                // 本地文件没了，重新完整地抓一次
+                return fetch(httpClient, url);
+            }
+            fetched = FetchResponse.of(url, response);
+            etag = headerValue(response.getFirstHeader("ETag"));
+            lastModified = headerValue(response.getFirstHeader("Last-Modified"));
+        }
+        long fetchNanos = System.nanoTime() - start;
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else {
+            changed.incrementAndGet();
+        }
+        if (fetched.getStatusCode() == HttpStatus.SC_OK && (!etag.isEmpty() || !lastModified.isEmpty())) {
+            store(key, new Entry(key, etag, lastModified, fetchNanos, 0), fetched);
+        } else if (entry != null) {
+            remove(key);
+        }
+        return fetched;
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return 服务器返回304、用本地副本的次数
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return 带了验证头但内容已经变了、重新下载的次数
+     */
+    public long changed() {
+        return changed.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return 304省下的正文字节数
+     */
+    public long bytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return 304比当初完整下载快了多少，纳秒
+     */
+    public long nanosSaved() {
+        return nanosSaved.get();
+    }
+
+    public synchronized int entries() {
+        return index.size();
+    }
+
+    public synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 缓存的key：规范化之后的url，见UrlCanonicalizer
+     */
+    public static String cacheKey(String url) {
+        return UrlCanonicalizer.DEFAULT.canonicalize(url);
+    }
+
+    private void store(String key, Entry entry, FetchResponse response) {
+        Path file = file(key);
+        Path tmp = dir.resolve(fileName(key) + ".tmp" + Thread.currentThread().getId());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(key);
+                out.writeUTF(response.getUrl());
+                out.writeUTF(response.getCharset().name());
+                out.writeUTF(entry.etag);
+                out.writeUTF(entry.lastModified);
+                out.writeLong(entry.fetchNanos);
+                out.writeInt(response.getBody().length);
+                out.write(response.getBody());
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            entry.size = Files.size(file);
+        } catch (IOException e) {
+            // 缓存写不进去不影响这次抓取
+            e.printStackTrace();
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        synchronized (this) {
+            Entry old = index.put(key, entry);
+            if (old != null) {
+                totalBytes -= old.size;
+            }
+            totalBytes += entry.size;
+            evict();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Entry old = index.remove(key);
+        if (old != null) {
+            totalBytes -= old.size;
+            delete(key);
+        }
+    }
+
+    /**
+     * 调用时已经持有锁
+     */
+    private void evict() {
+        Iterator<Entry> it = index.values().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.size;
+            evictions.incrementAndGet();
+            delete(eldest.key);
+        }
+    }
+
+    private FetchResponse read(Entry entry) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file(entry.key))))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            in.readUTF();
+            String url = in.readUTF();
+            Charset charset = Charset.forName(in.readUTF());
+            in.readUTF();
+            in.readUTF();
+            in.readLong();
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new FetchResponse(url, HttpStatus.SC_OK, body, charset);
+        } catch (IOException | IllegalArgumentException e) {
+            remove(entry.key);
+            return null;
+        }
+    }
+
+    /**
+     * 启动时只读每个文件的头部重建索引，按文件修改时间排出LRU顺序
+     */
+    private void load() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        final Map<String, Long> modified = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try (DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(file), 4096))) {
+                    if (in.readInt() != MAGIC) {
+                        continue;
+                    }
+                    String key = in.readUTF();
+                    in.readUTF();
+                    in.readUTF();
+                    String etag = in.readUTF();
+                    String lastModified = in.readUTF();
+                    long fetchNanos = in.readLong();
+                    Entry entry = new Entry(key, etag, lastModified, fetchNanos, Files.size(file));
+                    entries.add(entry);
+                    modified.put(key, Files.getLastModifiedTime(file).toMillis());
+                } catch (IOException e) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        entries.sort((a, b) -> Long.compare(modified.get(a.key), modified.get(b.key)));
+        synchronized (this) {
+            for (Entry entry : entries) {
+                index.put(entry.key, entry);
+                totalBytes += entry.size;
+            }
+            evict();
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path file(String key) {
+        return dir.resolve(fileName(key) + SUFFIX);
+    }
+
+    private static String fileName(String key) {
+        return String.format("%016x", UrlFingerprint.of(key));
+    }
+
+    private static String headerValue(Header header) {
+        return header == null ? "" : header.getValue();
+    }
+
+    private static final class Entry {
+        final String key;
+        final String etag;
+        final String lastModified;
+        // 当初完整下载用的时间，用来估算304省下的时间
+        final long fetchNanos;
+        long size;
+
+        Entry(String key, String etag, String lastModified, long fetchNanos, long size) {
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchNanos = fetchNanos;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 06:40
+ **/
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按host缓存robots.txt，每个host（scheme + host + port）只通过HttpPoolUtil（或者指定的HttpClientRegistry）抓一次：
+ *  - 解析好的RobotsRules缓存ttlMillis，最多maxHosts个host，多了按LRU删掉最久没用过的
+ *  - 同一个host同时有多个请求时只抓一次，其余的等同一个CompletableFuture
+ *  - 2xx按内容解析；4xx（没有robots.txt）全部允许；5xx、超时等错误按RFC 9309全部禁止，
+ *    但只缓存errorTtlMillis，过一会再试
+ *  - peek只看缓存，不会阻塞，CrawlerManager的master线程在url进frontier之前用它过滤；
+ *    还没有缓存的host由worker调用rules去抓
+ * 抓robots.txt在自己的几个后台线程里做，异步抓取模式下不会卡住回调线程。
+ */
+public class RobotsCache implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(RobotsCache.class);
+
+    /** 和HttpClientRegistry发出去的User-Agent是同一个 */
+    public static final String DEFAULT_USER_AGENT = HttpClientRegistry.DEFAULT_USER_AGENT;
+    public static final long DEFAULT_TTL_MILLIS = 24 * 3600 * 1000L;
+    public static final long DEFAULT_ERROR_TTL_MILLIS = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_HOSTS = 10000;
+    /** RFC 9309要求至少解析500KiB，多出来的部分不管 */
+    private static final int MAX_BYTES = 500 * 1024;
+    private static final int LOADER_THREADS = 4;
+
+    private final HttpClientRegistry registry;
+    private final String userAgent;
+    private final int timeOut;
+    private final long ttlMillis;
+    private final long errorTtlMillis;
+    private final LinkedHashMap<String, CacheEntry> entries;
+    private final ExecutorService loader;
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RobotsCache(int timeOut) {
+        this(DEFAULT_USER_AGENT, timeOut, DEFAULT_TTL_MILLIS, DEFAULT_ERROR_TTL_MILLIS, DEFAULT_MAX_HOSTS);
+    }
+
+    /**
+     * @param userAgent      按这个名字选robots.txt里的组，要和抓页面的HttpClientRegistry.getUserAgent一致
+     * @param timeOut        抓robots.txt的超时，同HttpPoolUtil.fetch
+     * @param ttlMillis      抓到的规则缓存多久
+     * @param errorTtlMillis 抓取失败时“全部禁止”缓存多久
+     * @param maxHosts       最多缓存多少个host
+     */
+    public RobotsCache(String userAgent, int timeOut, long ttlMillis, long errorTtlMillis, int maxHosts) {
+        this(HttpPoolUtil.registry(), userAgent, timeOut, ttlMillis, errorTtlMillis, maxHosts);
+    }
+
+    /**
+     * 用registry的连接池抓robots.txt，按它发出去的User-Agent选组
+     */
+    public RobotsCache(HttpClientRegistry registry, int timeOut) {
+        this(registry, registry.getUserAgent(), timeOut, DEFAULT_TTL_MILLIS, DEFAULT_ERROR_TTL_MILLIS, DEFAULT_MAX_HOSTS);
+    }
+
+    /**
+     * @param registry 抓robots.txt用的连接池
+     */
+    public RobotsCache(HttpClientRegistry registry, String userAgent, int timeOut, long ttlMillis,
+                       long errorTtlMillis, final int maxHosts) {
+        if (maxHosts <= 0) {
+            throw new IllegalArgumentException("maxHosts must be positive");
+        }
+        this.registry = registry;
+        this.userAgent = userAgent;
+        this.timeOut = timeOut;
+        this.ttlMillis = ttlMillis;
+        this.errorTtlMillis = errorTtlMillis;
+        // accessOrder为true，迭代顺序就是LRU顺序，最老的在最前面
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > maxHosts) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.loader = Executors.newFixedThreadPool(LOADER_THREADS, r -> {
+            Thread thread = new Thread(r, "robots-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    /**
+     * @return 缓存里还没过期的规则，没有时返回null，不会发请求
+     */
+    public RobotsRules peek(String url) {
+        String origin = originOf(url);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            CacheEntry entry = entries.get(origin);
+            if (entry == null || !entry.future.isDone() || entry.expiresAt <= now) {
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.future.getNow(RobotsRules.ALLOW_ALL);
+        }
+    }
+
+    /**
+     * @return url所在host的规则，缓存里没有时在后台抓robots.txt
+     */
+    public CompletableFuture<RobotsRules> load(String url) {
+        final String origin = originOf(url);
+        long now = System.currentTimeMillis();
+        final CacheEntry entry;
+        synchronized (this) {
+            CacheEntry existing = entries.get(origin);
+            if (existing != null && (!existing.future.isDone() || existing.expiresAt > now)) {
+                hits.incrementAndGet();
+                return existing.future;
+            }
+            entry = new CacheEntry();
+            entries.put(origin, entry);
+        }
+        try {
+            loader.execute(() -> fetch(origin, entry));
+        } catch (RejectedExecutionException e) {
+            // 已经close了，把刚放进去的entry拿掉，否则后面等它的load会一直卡住
+            synchronized (this) {
+                entries.remove(origin, entry);
+            }
+            entry.future.completeExceptionally(e);
+            return entry.future;
+        }
+        fetches.incrementAndGet();
+        return entry.future;
+    }
+
+    private void fetch(String origin, CacheEntry entry) {
+        long ttl = ttlMillis;
+        RobotsRules rules;
+        try {
+            FetchResponse response = HttpPoolUtil.fetch(registry.getClient(timeOut), origin + "/robots.txt");
+            int status = response.getStatusCode();
+            if (status >= 200 && status < 300) {
+                byte[] body = response.getBody();
+                int length = Math.min(body.length, MAX_BYTES);
+                rules = RobotsRules.parse(new String(body, 0, length, StandardCharsets.UTF_8), userAgent);
+            } else if (status >= 400 && status < 500) {
+                rules = RobotsRules.ALLOW_ALL;
+            } else {
+                rules = RobotsRules.DISALLOW_ALL;
+                ttl = errorTtlMillis;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("robots.txt of {} unavailable: {}", origin, e.toString());
+            rules = RobotsRules.DISALLOW_ALL;
+            ttl = errorTtlMillis;
+        }
+        entry.expiresAt = System.currentTimeMillis() + ttl;
+        entry.future.complete(rules);
+    }
+
+    /**
+     * 阻塞到拿到规则，给worker线程用
+     */
+    public RobotsRules rules(String url) {
+        return load(url).join();
+    }
+
+    public boolean isAllowed(String url) {
+        return rules(url).isAllowed(pathOf(url));
+    }
+
+    /**
+     * @return 发出去的robots.txt请求数
+     */
+    public long fetches() {
+        return fetches.get();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 停掉抓robots.txt的后台线程，之后还没缓存的host load时返回失败的future
+     */
+    @Override
+    public void close() {
+        loader.shutdownNow();
+        // 排队还没抓的不会再执行了，同样拿掉并结束掉，别让等它们的线程卡住
+        IllegalStateException closed = new IllegalStateException("robots cache closed");
+        synchronized (this) {
+            Iterator<CacheEntry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CacheEntry entry = iterator.next();
+                if (!entry.future.isDone()) {
+                    iterator.remove();
+                    entry.future.completeExceptionally(closed);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return "scheme://host[:port]"，scheme和host转成小写
+     */
+    public static String originOf(String url) {
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return "";
+        }
+        int end = start + 3;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        return url.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return host后面的路径和查询参数，不含fragment，空的时候是 "/"
+     */
+    public static String pathOf(String url) {
+        int start = url.indexOf("://");
+        int from = start < 0 ? 0 : start + 3;
+        int path = from;
+        while (path < url.length() && url.charAt(path) != '/' && url.charAt(path) != '?' && url.charAt(path) != '#') {
+            path++;
+        }
+        int fragment = url.indexOf('#', path);
+        String result = url.substring(path, fragment < 0 ? url.length() : fragment);
+        if (result.isEmpty() || result.charAt(0) != '/') {
+            result = "/" + result;
+        }
+        return result;
+    }
+
+    private static class CacheEntry {
+        final CompletableFuture<RobotsRules> future = new CompletableFuture<>();
+        volatile long expiresAt;
+    }
+}
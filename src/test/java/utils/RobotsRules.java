@@ -0,0 +1,330 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-18 06:10
+ **/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 一个host的robots.txt里对我们生效的那一组规则，解析后编译成匹配器，线程安全。
+ *  - 选组：User-agent和我们的产品名（"Rocket-search/1.0"里斜杠前的部分）不区分大小写相等的组，
+ *    没有时用 "*" 组；同名的多个组合并
+ *  - 匹配按RFC 9309：最长的规则生效，一样长时Allow优先，没有规则匹配时允许
+ *  - 不带通配符的规则放进字典树，沿着路径走一遍就找到最长的匹配，和规则数无关；
+ *    带 '*' 或结尾 '$' 的规则按 '*' 切成几段，用indexOf依次找，只在比字典树的结果更长时才检查，
+ *    结尾是 '$' 的规则按最后一个字符分桶，只检查和路径最后一个字符一样的那一桶
+ *  - Crawl-delay换成毫秒，最多MAX_CRAWL_DELAY_MILLIS
+ * /robots.txt本身总是允许的。
+ */
+public final class RobotsRules {
+    public static final long MAX_CRAWL_DELAY_MILLIS = 60000;
+    // 要在ALLOW_ALL之前初始化
+    private static final Rule[] NO_RULES = new Rule[0];
+
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(new ArrayList<>(), -1);
+    public static final RobotsRules DISALLOW_ALL = new RobotsRules(
+            new ArrayList<>(Arrays.asList(new Rule("/", false))), -1);
+
+    private final TrieNode root = new TrieNode();
+    // 带通配符、不以 '$' 结尾的规则，按长度从长到短
+    private final Rule[] wildcards;
+    // 以 '$' 结尾的规则按最后一个字符分桶，ASCII用数组，其余的用map
+    private final Rule[][] anchoredAscii = new Rule[128][];
+    private final Map<Character, Rule[]> anchoredOther = new HashMap<>();
+    private final int size;
+    private final long crawlDelayMillis;
+
+    private RobotsRules(List<Rule> rules, long crawlDelayMillis) {
+        List<Rule> patterns = new ArrayList<>();
+        Map<Character, List<Rule>> anchored = new HashMap<>();
+        for (Rule rule : rules) {
+            if (rule.segments == null) {
+                root.insert(rule.pattern, rule.allow);
+            } else if (rule.lastChar >= 0) {
+                anchored.computeIfAbsent((char) rule.lastChar, c -> new ArrayList<>()).add(rule);
+            } else {
+                patterns.add(rule);
+            }
+        }
+        this.wildcards = sorted(patterns);
+        for (Map.Entry<Character, List<Rule>> entry : anchored.entrySet()) {
+            char c = entry.getKey();
+            if (c < anchoredAscii.length) {
+                anchoredAscii[c] = sorted(entry.getValue());
+            } else {
+                anchoredOther.put(c, sorted(entry.getValue()));
+            }
+        }
+        this.size = rules.size();
+        this.crawlDelayMillis = crawlDelayMillis;
+    }
+
+    /**
+     * 从长到短，一样长时Allow在前
+     */
+    private static Rule[] sorted(List<Rule> rules) {
+        rules.sort((a, b) -> a.length != b.length ? b.length - a.length : Boolean.compare(b.allow, a.allow));
+        return rules.toArray(NO_RULES);
+    }
+
+    /**
+     * @param content   robots.txt的内容
+     * @param userAgent 我们的User-Agent，比如 "Rocket-search/1.0"
+     */
+    public static RobotsRules parse(String content, String userAgent) {
+        String product = productToken(userAgent);
+        List<Rule> mine = new ArrayList<>();
+        List<Rule> wildcard = new ArrayList<>();
+        long myDelay = -1;
+        long wildcardDelay = -1;
+        boolean matchedMine = false;
+
+        boolean inAgents = false;
+        boolean forMe = false;
+        boolean forAll = false;
+        for (String line : content.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (key.equals("user-agent")) {
+                if (!inAgents) {
+                    // 新的一组从这里开始
+                    forMe = false;
+                    forAll = false;
+                    inAgents = true;
+                }
+                if (value.equals("*")) {
+                    forAll = true;
+                } else if (productToken(value).equalsIgnoreCase(product)) {
+                    forMe = true;
+                    matchedMine = true;
+                }
+                continue;
+            }
+            inAgents = false;
+            if (!forMe && !forAll) {
+                continue;
+            }
+            if (key.equals("allow") || key.equals("disallow")) {
+                // 空的Disallow表示什么都不禁止
+                if (value.isEmpty()) {
+                    continue;
+                }
+                Rule rule = new Rule(value, key.equals("allow"));
+                if (forMe) {
+                    mine.add(rule);
+                }
+                if (forAll) {
+                    wildcard.add(rule);
+                }
+            } else if (key.equals("crawl-delay")) {
+                long delay = parseDelay(value);
+                if (forMe) {
+                    myDelay = delay;
+                }
+                if (forAll) {
+                    wildcardDelay = delay;
+                }
+            }
+        }
+        return matchedMine ? new RobotsRules(mine, myDelay) : new RobotsRules(wildcard, wildcardDelay);
+    }
+
+    private static String productToken(String userAgent) {
+        String token = userAgent.trim();
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '/' || c == ' ' || c == ';' || c == '(') {
+                return token.substring(0, i);
+            }
+        }
+        return token;
+    }
+
+    private static long parseDelay(String value) {
+        try {
+            double seconds = Double.parseDouble(value);
+            if (seconds < 0 || Double.isNaN(seconds)) {
+                return -1;
+            }
+            return (long) Math.min(MAX_CRAWL_DELAY_MILLIS, seconds * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param path url里host后面的部分，包括查询参数，比如 "/a/b?x=1"
+     */
+    public boolean isAllowed(String path) {
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        if (path.equals("/robots.txt")) {
+            return true;
+        }
+        // 字典树里最长的匹配
+        int bestLength = -1;
+        boolean allowed = true;
+        TrieNode node = root;
+        if (node.verdict != 0) {
+            bestLength = 0;
+            allowed = node.verdict > 0;
+        }
+        for (int i = 0; i < path.length() && node != null; i++) {
+            node = node.child(path.charAt(i));
+            if (node != null && node.verdict != 0) {
+                bestLength = i + 1;
+                allowed = node.verdict > 0;
+            }
+        }
+        Rule rule = firstMatch(wildcards, path, bestLength, allowed);
+        if (rule != null) {
+            bestLength = rule.length;
+            allowed = rule.allow;
+        }
+        char last = path.charAt(path.length() - 1);
+        Rule[] bucket = last < anchoredAscii.length ? anchoredAscii[last] : anchoredOther.get(last);
+        if (bucket != null) {
+            rule = firstMatch(bucket, path, bestLength, allowed);
+            if (rule != null) {
+                allowed = rule.allow;
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * @return 第一条能改变结果的匹配规则，没有时返回null
+     */
+    private static Rule firstMatch(Rule[] rules, String path, int bestLength, boolean allowed) {
+        for (Rule rule : rules) {
+            if (rule.length < bestLength || (rule.length == bestLength && (allowed || !rule.allow))) {
+                return null;
+            }
+            if (rule.matches(path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Crawl-delay，毫秒；没有设置时返回-1
+     */
+    public long crawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    /**
+     * @return Allow和Disallow规则的条数
+     */
+    public int size() {
+        return size;
+    }
+
+    private static final class Rule {
+        final String pattern;
+        final boolean allow;
+        final int length;
+        // 按 '*' 切开的几段，没有通配符时为null
+        final String[] segments;
+        final boolean anchored;
+        // 以 '$' 结尾时 '$' 前面的字符，那个字符是 '*' 或者没有时为-1
+        final int lastChar;
+
+        Rule(String pattern, boolean allow) {
+            if (!pattern.startsWith("/") && !pattern.startsWith("*")) {
+                pattern = "/" + pattern;
+            }
+            this.pattern = pattern;
+            this.allow = allow;
+            this.length = pattern.length();
+            this.anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            this.segments = body.indexOf('*') >= 0 || anchored ? body.split("\\*", -1) : null;
+            this.lastChar = anchored && !body.isEmpty() && !body.endsWith("*") ? body.charAt(body.length() - 1) : -1;
+        }
+
+        /**
+         * '*' 匹配任意个字符；每一段都找最靠左的位置，对只有 '*' 的模式这样贪心是对的
+         */
+        boolean matches(String path) {
+            int last = segments.length - 1;
+            // 先比两头，大多数规则在这里就排除了
+            if (!path.startsWith(segments[0]) || (anchored && !path.endsWith(segments[last]))) {
+                return false;
+            }
+            int position = segments[0].length();
+            for (int i = 1; i < last; i++) {
+                int found = path.indexOf(segments[i], position);
+                if (found < 0) {
+                    return false;
+                }
+                position = found + segments[i].length();
+            }
+            if (last == 0) {
+                return !anchored || position == path.length();
+            }
+            if (anchored) {
+                return path.length() - segments[last].length() >= position && path.endsWith(segments[last]);
+            }
+            return path.indexOf(segments[last], position) >= 0;
+        }
+    }
+
+    /**
+     * 孩子按字符排序存在数组里，二分查找
+     */
+    private static final class TrieNode {
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        // 1允许，-1禁止，0这里没有规则结束
+        private int verdict;
+
+        TrieNode child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        void insert(String pattern, boolean allow) {
+            TrieNode node = this;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                int index = Arrays.binarySearch(node.keys, c);
+                if (index < 0) {
+                    index = -index - 1;
+                    char[] keys = new char[node.keys.length + 1];
+                    TrieNode[] children = new TrieNode[keys.length];
+                    System.arraycopy(node.keys, 0, keys, 0, index);
+                    System.arraycopy(node.children, 0, children, 0, index);
+                    keys[index] = c;
+                    children[index] = new TrieNode();
+                    System.arraycopy(node.keys, index, keys, index + 1, node.keys.length - index);
+                    System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+                    node.keys = keys;
+                    node.children = children;
+                }
+                node = node.children[index];
+            }
+            // 同一个模式既Allow又Disallow时Allow优先
+            if (allow || node.verdict == 0) {
+                node.verdict = allow ? 1 : -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 21:30
+ **/
+
+/**
+ * 页面内容的64位SimHash：内容差不多的页面，指纹只差几个bit。
+ *  - 特征是相邻两个词组成的shingle，只用单个词的话，常用词会让所有页面的指纹都往一个方向偏
+ *  - 每个特征的64位哈希，bit为1的位置计数加一，为0的减一，最后每一位取计数的正负
+ * 切词用Tokenizer，html标签不算内容，所以只改了链接里session id的页面指纹完全一样；
+ * 纯数字的词也跳过。少于两个词的页面没有特征，指纹是0，features可以看特征有多少个。
+ * 不是线程安全的，每个线程用自己的实例。
+ */
+public class SimHash {
+    private final Tokenizer tokenizer;
+    private final int[] counts = new int[64];
+    private long previous;
+    private boolean hasPrevious;
+    private int features;
+
+    public SimHash() {
+        this(true);
+    }
+
+    /**
+     * @param html 为true时跳过html标签
+     */
+    public SimHash(boolean html) {
+        this.tokenizer = new Tokenizer(html);
+    }
+
+    public long fingerprint(String text) {
+        for (int i = 0; i < 64; i++) {
+            counts[i] = 0;
+        }
+        hasPrevious = false;
+        features = 0;
+        tokenizer.tokenize(text, this::addToken);
+        long fingerprint = 0;
+        for (int i = 0; i < 64; i++) {
+            if (counts[i] > 0) {
+                fingerprint |= 1L << i;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return 上一次fingerprint用了多少个特征，太少时指纹说明不了什么
+     */
+    public int features() {
+        return features;
+    }
+
+    /**
+     * @return 两个指纹不同的bit数
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private void addToken(char[] buffer, int length) {
+        long h = 0xcbf29ce484222325L;
+        boolean digits = true;
+        for (int i = 0; i < length; i++) {
+            h ^= buffer[i];
+            h *= 0x100000001b3L;
+            digits &= buffer[i] >= '0' && buffer[i] <= '9';
+        }
+        if (digits) {
+            // 时间、计数、页码这些数字是同一个页面每次抓取都会变的部分，不算特征
+            return;
+        }
+        if (hasPrevious) {
+            long feature = UrlFingerprint.mix(previous * 31 + h);
+            features++;
+            for (int i = 0; i < 64; i++) {
+                counts[i] += (int) ((feature >>> i) & 1) * 2 - 1;
+            }
+        }
+        previous = h;
+        hasPrevious = true;
+    }
+}
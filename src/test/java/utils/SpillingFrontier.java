@@ -0,0 +1,102 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 17:30
+ **/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 堆上只放有限个url的frontier。
+ * 礼貌策略仍由里面的Frontier（一般是HostFrontier）负责，它最多只放inMemory个url，
+ * 多出来的按发现顺序放进DiskQueue，里面的url被抓走后再从磁盘补进来。
+ * 磁盘上的url要排到前面的都出队以后才会被调度，所以一个host的url太多、
+ * 占满了inMemory时，其他host的url只能等它们被抓完，inMemory应该远大于同时抓取的host数。
+ */
+public class SpillingFrontier implements Frontier, Closeable {
+    private final Frontier inner;
+    private final DiskQueue overflow;
+    private final long inMemory;
+
+    /**
+     * @param inner    负责调度的frontier
+     * @param inMemory inner里最多放的url数
+     * @param dir      溢出的url写到这个目录
+     */
+    public SpillingFrontier(Frontier inner, long inMemory, Path dir) throws IOException {
+        this(inner, inMemory, new DiskQueue(dir));
+    }
+
+    public SpillingFrontier(Frontier inner, long inMemory, DiskQueue overflow) {
+        if (inMemory <= 0) {
+            throw new IllegalArgumentException("inMemory must be positive");
+        }
+        this.inner = inner;
+        this.inMemory = inMemory;
+        this.overflow = overflow;
+    }
+
+    @Override
+    public void add(String url) {
+        // 磁盘上还有更早的url时，新的只能排在它们后面
+        if (overflow.isEmpty() && inner.size() < inMemory) {
+            inner.add(url);
+        } else {
+            overflow.add(url);
+        }
+    }
+
+    @Override
+    public String poll(long now) {
+        refill();
+        return inner.poll(now);
+    }
+
+    @Override
+    public void done(String url) {
+        inner.done(url);
+    }
+
+    @Override
+    public long nextReadyAt() {
+        refill();
+        return inner.nextReadyAt();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return inner.isEmpty() && overflow.isEmpty();
+    }
+
+    @Override
+    public void setHostDelay(String host, long delay) {
+        inner.setHostDelay(host, delay);
+    }
+
+    @Override
+    public long size() {
+        return inner.size() + overflow.size();
+    }
+
+    /**
+     * @return 还在DiskQueue里、没有交给inner的url数
+     */
+    public long overflowSize() {
+        return overflow.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        overflow.close();
+    }
+
+    private void refill() {
+        String url;
+        while (inner.size() < inMemory && (url = overflow.poll()) != null) {
+            inner.add(url);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 20:10
+ **/
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 生成测试用的页面文本，词频按Zipf分布，和真实网页一样少数词很常见、大多数词很少见。
+ * 词表是随机拼出来的小写字母串，相同参数生成相同的词表。
+ */
+public class SyntheticCorpus {
+    private final String[] words;
+    private final double[] cdf;
+
+    /**
+     * @param vocabulary 词表大小
+     * @param exponent   Zipf指数，英文网页大约是1
+     * @param seed       随机种子
+     */
+    public SyntheticCorpus(int vocabulary, double exponent, long seed) {
+        Random random = new Random(seed);
+        words = new String[vocabulary];
+        for (int i = 0; i < vocabulary; i++) {
+            int length = 2 + Math.min(10, i == 0 ? 0 : (int) Math.log(i) + random.nextInt(3));
+            StringBuilder word = new StringBuilder(length);
+            for (int c = 0; c < length; c++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            // 后缀保证不重复
+            words[i] = word.append(Integer.toString(i, 36)).toString();
+        }
+        cdf = new double[vocabulary];
+        double sum = 0;
+        for (int i = 0; i < vocabulary; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < vocabulary; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    /**
+     * @param rank 词频排名，从0开始
+     */
+    public String word(int rank) {
+        return words[rank];
+    }
+
+    public int vocabulary() {
+        return words.length;
+    }
+
+    public String randomWord(Random random) {
+        int i = Arrays.binarySearch(cdf, random.nextDouble());
+        return words[i < 0 ? Math.min(-i - 1, words.length - 1) : i];
+    }
+
+    /**
+     * @param html 为true时包一层html标签
+     */
+    public String document(Random random, int words, boolean html) {
+        StringBuilder text = new StringBuilder(words * 8);
+        if (html) {
+            text.append("<html><head><title>").append(randomWord(random)).append("</title></head><body><p>");
+        }
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(html && i % 40 == 0 ? "</p><p>" : " ");
+            }
+            text.append(randomWord(random));
+        }
+        if (html) {
+            text.append("</p></body></html>");
+        }
+        return text.toString();
+    }
+}
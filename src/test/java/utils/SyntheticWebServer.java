@@ -0,0 +1,616 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 23:20
+ **/
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的合成网站，给端到端的压测用，不需要外网。
+ *  - 节点 n{i} 的地址是 http://h{h}.synthetic.test:port/n{i}，h = i % hosts，
+ *    只监听127.0.0.1，按Host头区分虚拟host，别的host上的页面返回404；
+ *    名字由registry里的LoopbackDnsResolver解析，每个host在连接池里是一个route，几千个host也只用一个端口
+ *  - 出度服从幂律分布，大多数页面只有几个链接，少数有上百个；
+ *    另外每个节点都链接到2i+1和2i+2，保证从n0出发所有节点都能到达
+ *  - 每个请求的延迟服从对数正态分布；一部分请求返回500；
+ *    一部分节点永远不响应（连接挂着，直到客户端超时断开）；
+ *    一部分节点慢慢地滴数据，每隔一段时间发几个字节，每次读都不会超时，整个响应却要很久
+ * 图和每个节点的行为都由节点编号和种子算出来，不存整张图，几百万个节点也不占内存。
+ * 用NIO实现，一个线程处理所有连接，延迟用定时器而不是sleep，
+ * 上千个同时挂着的请求也不需要上千个线程；JDK的HttpServer每秒只能接受几百个新连接，不够用。
+ */
+public class SyntheticWebServer implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SyntheticWebServer.class);
+
+    public static final int MAX_HOSTS = 250 * 256;
+    private static final String HOST_SUFFIX = ".synthetic" + LoopbackDnsResolver.SUFFIX;
+
+    /**
+     * 网站的参数，setter可以连着写
+     */
+    public static class Profile {
+        int nodes = 10000;
+        int hosts = 100;
+        long seed = 42;
+        double outDegreeExponent = 2.1;
+        int maxOutDegree = 200;
+        double medianLatencyMillis = 5;
+        double latencySigma = 0.5;
+        double errorRate;
+        double timeoutRate;
+        double slowDripRate;
+        long dripIntervalMillis = 200;
+        int dripBytes = 64;
+        int pageBytes = 2048;
+
+        public Profile nodes(int nodes) {
+            this.nodes = nodes;
+            return this;
+        }
+
+        public Profile hosts(int hosts) {
+            if (hosts <= 0 || hosts > MAX_HOSTS) {
+                throw new IllegalArgumentException("hosts must be between 1 and " + MAX_HOSTS);
+            }
+            this.hosts = hosts;
+            return this;
+        }
+
+        public Profile seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param exponent 出度的幂律指数，P(d) ~ d^-exponent，网页大约是2.1
+         * @param max      出度的上限
+         */
+        public Profile outDegree(double exponent, int max) {
+            this.outDegreeExponent = exponent;
+            this.maxOutDegree = max;
+            return this;
+        }
+
+        /**
+         * @param medianMillis 延迟的中位数
+         * @param sigma        对数正态分布的sigma，越大尾巴越长，0表示固定延迟
+         */
+        public Profile latency(double medianMillis, double sigma) {
+            this.medianLatencyMillis = medianMillis;
+            this.latencySigma = sigma;
+            return this;
+        }
+
+        /**
+         * @param rate 每个请求返回500的概率
+         */
+        public Profile errors(double rate) {
+            this.errorRate = rate;
+            return this;
+        }
+
+        /**
+         * @param rate 永远不响应的节点的比例
+         */
+        public Profile timeouts(double rate) {
+            this.timeoutRate = rate;
+            return this;
+        }
+
+        /**
+         * @param rate           慢慢滴数据的节点的比例
+         * @param intervalMillis 两次发送的间隔
+         * @param bytes          每次发送的字节数
+         */
+        public Profile slowDrip(double rate, long intervalMillis, int bytes) {
+            this.slowDripRate = rate;
+            this.dripIntervalMillis = intervalMillis;
+            this.dripBytes = bytes;
+            return this;
+        }
+
+        /**
+         * @param bytes 页面的大致大小，链接之外用文字填充
+         */
+        public Profile pageBytes(int bytes) {
+            this.pageBytes = bytes;
+            return this;
+        }
+    }
+
+    public enum Behavior {
+        NORMAL, TIMEOUT, SLOW_DRIP
+    }
+
+    private static final byte[] FILLER = ("<p>the quick brown fox jumps over the lazy dog while the crawler "
+            + "waits for the next page to arrive</p>\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final Profile profile;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Thread loop;
+    private final HttpClientRegistry registry;
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    private final Random random;
+    private volatile boolean running = true;
+    private long timerSequence;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong slowDrips = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public SyntheticWebServer(Profile profile) throws IOException {
+        this.profile = profile;
+        this.random = new Random(profile.seed);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        // 只监听回环地址，不暴露到网络上
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        registry = new HttpClientRegistry(HttpPoolUtil.MAX_TOTAL, HttpPoolUtil.DEFAULT_MAX_PER_ROUTE,
+                HttpClientRegistry.DEFAULT_KEEP_ALIVE_MILLIS, HttpClientRegistry.DEFAULT_MAX_IDLE_MILLIS,
+                LoopbackDnsResolver.INSTANCE);
+        loop = new Thread(this::run, "synthetic-web");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int nodes() {
+        return profile.nodes;
+    }
+
+    /**
+     * @return 能解析这个网站所有host的连接池，给HttpLinkSource和CrawlHarness用，close时一起关掉
+     */
+    public HttpClientRegistry registry() {
+        return registry;
+    }
+
+    public String hostName(int host) {
+        return "h" + host + HOST_SUFFIX;
+    }
+
+    public String url(int node) {
+        return "http://" + hostName(node % profile.hosts) + ":" + port() + "/n" + node;
+    }
+
+    /**
+     * 给别的JVM用的hosts文件，见LoopbackDnsResolver.writeHostsFile
+     */
+    public void writeHostsFile(Path file) throws IOException {
+        LoopbackDnsResolver.writeHostsFile(file, new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return hostName(index);
+            }
+
+            @Override
+            public int size() {
+                return profile.hosts;
+            }
+        });
+    }
+
+    /**
+     * @return 节点的出链，和页面里的链接一样
+     */
+    public int[] children(int node) {
+        Random r = new Random(mix(profile.seed, node));
+        // 幂律分布的出度：逆变换采样
+        double u = r.nextDouble();
+        int degree = (int) Math.min(profile.maxOutDegree, Math.floor(Math.pow(1 - u, -1 / (profile.outDegreeExponent - 1))));
+        int[] children = new int[2 + degree];
+        int n = 0;
+        for (int c = 1; c <= 2; c++) {
+            long child = 2L * node + c;
+            if (child < profile.nodes) {
+                children[n++] = (int) child;
+            }
+        }
+        for (int i = 0; i < degree; i++) {
+            children[n++] = r.nextInt(profile.nodes);
+        }
+        return n == children.length ? children : java.util.Arrays.copyOf(children, n);
+    }
+
+    public Behavior behavior(int node) {
+        if (node == 0) {
+            return Behavior.NORMAL;
+        }
+        double u = new Random(mix(profile.seed ^ 0x5DEECE66DL, node)).nextDouble();
+        if (u < profile.timeoutRate) {
+            return Behavior.TIMEOUT;
+        }
+        if (u < profile.timeoutRate + profile.slowDripRate) {
+            return Behavior.SLOW_DRIP;
+        }
+        return Behavior.NORMAL;
+    }
+
+    public long connections() {
+        return connections.get();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long errors() {
+        return errors.get();
+    }
+
+    public long timeouts() {
+        return timeouts.get();
+    }
+
+    public long slowDrips() {
+        return slowDrips.get();
+    }
+
+    public long bytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        registry.close();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                long now = System.currentTimeMillis();
+                Timer next;
+                while ((next = timers.peek()) != null && next.at <= now) {
+                    timers.poll();
+                    fire(next);
+                }
+                long wait = next == null ? 0 : Math.max(1, next.at - now);
+                selector.select(wait);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                read(connection);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(connection);
+                            }
+                        }
+                    } catch (IOException e) {
+                        // 客户端超时断开是正常的
+                        close(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("synthetic web server stopped", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            try {
+                selector.close();
+                serverChannel.close();
+            } catch (IOException e) {
+                LOG.warn("closing synthetic web server failed: {}", e.toString());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection();
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.incrementAndGet();
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        SocketChannel channel = (SocketChannel) connection.key.channel();
+        if (!connection.in.hasRemaining()) {
+            // 请求头太大
+            close(connection.key);
+            return;
+        }
+        if (channel.read(connection.in) < 0) {
+            close(connection.key);
+            return;
+        }
+        if (!connection.busy) {
+            handleRequest(connection);
+        }
+    }
+
+    /**
+     * 缓冲区里有完整的请求头时开始处理，一个连接同时只处理一个请求
+     */
+    private void handleRequest(Connection connection) {
+        ByteBuffer in = connection.in;
+        int end = headerEnd(in);
+        if (end < 0) {
+            return;
+        }
+        String head = new String(in.array(), 0, end, StandardCharsets.US_ASCII);
+        // 去掉这个请求，后面的留给下一次
+        int remaining = in.position() - end - 4;
+        System.arraycopy(in.array(), end + 4, in.array(), 0, remaining);
+        in.position(remaining);
+
+        requests.incrementAndGet();
+        connection.busy = true;
+        String lower = head.toLowerCase(Locale.ROOT);
+        connection.keepAlive = !head.regionMatches(true, head.indexOf("HTTP/"), "HTTP/1.0", 0, 8)
+                && !lower.contains("connection: close");
+        int node = parseNode(head);
+        // 按Host头分到虚拟host，页面不在这个host上时和真的服务器一样是404
+        if (node < 0 || node >= profile.nodes || parseHost(lower) != node % profile.hosts) {
+            respond(connection, 404, new byte[0], false);
+            return;
+        }
+        Behavior behavior = behavior(node);
+        if (behavior == Behavior.TIMEOUT) {
+            // 不回应，也不再读这个连接上的请求，等客户端自己断开
+            timeouts.incrementAndGet();
+            return;
+        }
+        long delay = latency();
+        if (random.nextDouble() < profile.errorRate) {
+            errors.incrementAndGet();
+            schedule(delay, connection, 500, node, false);
+        } else {
+            boolean drip = behavior == Behavior.SLOW_DRIP;
+            if (drip) {
+                slowDrips.incrementAndGet();
+            }
+            schedule(delay, connection, 200, node, drip);
+        }
+    }
+
+    private void schedule(long delay, Connection connection, int status, int node, boolean drip) {
+        Timer timer = new Timer(System.currentTimeMillis() + delay, timerSequence++, connection);
+        timer.status = status;
+        timer.node = node;
+        timer.drip = drip;
+        timers.add(timer);
+    }
+
+    private void fire(Timer timer) {
+        Connection connection = timer.connection;
+        if (!connection.key.isValid()) {
+            return;
+        }
+        if (timer.status != 0) {
+            byte[] body = timer.status == 200 ? page(timer.node) : new byte[0];
+            respond(connection, timer.status, body, timer.drip);
+        } else {
+            // 滴下一段
+            connection.dripAllowance += profile.dripBytes;
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void respond(Connection connection, int status, byte[] body, boolean drip) {
+        String reason = status == 200 ? "OK" : status == 404 ? "Not Found" : "Internal Server Error";
+        byte[] head = ("HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: text/html; charset=UTF-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + (connection.keepAlive ? "" : "Connection: close\r\n")
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer out = ByteBuffer.allocate(head.length + body.length);
+        out.put(head).put(body).flip();
+        connection.out = out;
+        connection.drip = drip;
+        connection.dripAllowance = drip ? head.length + profile.dripBytes : Integer.MAX_VALUE;
+        connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        if (out == null) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+        SocketChannel channel = (SocketChannel) connection.key.channel();
+        int limit = out.limit();
+        if (connection.drip) {
+            out.limit(Math.min(limit, out.position() + connection.dripAllowance));
+        }
+        int written = channel.write(out);
+        out.limit(limit);
+        bytesSent.addAndGet(written);
+        if (connection.drip) {
+            connection.dripAllowance -= written;
+        }
+        if (!out.hasRemaining()) {
+            connection.out = null;
+            connection.busy = false;
+            connection.key.interestOps(SelectionKey.OP_READ);
+            if (!connection.keepAlive) {
+                close(connection.key);
+            } else {
+                // 客户端可能已经把下一个请求发过来了
+                handleRequest(connection);
+            }
+        } else if (connection.drip && connection.dripAllowance <= 0) {
+            // 这一段发完了，等下一次
+            connection.key.interestOps(SelectionKey.OP_READ);
+            Timer timer = new Timer(System.currentTimeMillis() + profile.dripIntervalMillis, timerSequence++, connection);
+            timers.add(timer);
+        }
+    }
+
+    private byte[] page(int node) {
+        StringBuilder html = new StringBuilder(profile.pageBytes + 256);
+        html.append("<html><head><title>n").append(node).append("</title></head><body>\n");
+        for (int child : children(node)) {
+            html.append("<a href=\"").append(url(child)).append("\">n").append(child).append("</a>\n");
+        }
+        byte[] links = html.toString().getBytes(StandardCharsets.US_ASCII);
+        int fillers = Math.max(0, (profile.pageBytes - links.length) / FILLER.length);
+        byte[] tail = "</body></html>\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] page = new byte[links.length + fillers * FILLER.length + tail.length];
+        System.arraycopy(links, 0, page, 0, links.length);
+        for (int i = 0; i < fillers; i++) {
+            System.arraycopy(FILLER, 0, page, links.length + i * FILLER.length, FILLER.length);
+        }
+        System.arraycopy(tail, 0, page, page.length - tail.length, tail.length);
+        return page;
+    }
+
+    private long latency() {
+        if (profile.latencySigma <= 0) {
+            return Math.round(profile.medianLatencyMillis);
+        }
+        return Math.round(profile.medianLatencyMillis * Math.exp(profile.latencySigma * random.nextGaussian()));
+    }
+
+    private static int parseNode(String head) {
+        int start = head.indexOf(" /n");
+        if (start < 0) {
+            return -1;
+        }
+        int node = 0;
+        int i = start + 3;
+        for (; i < head.length() && Character.isDigit(head.charAt(i)); i++) {
+            node = node * 10 + (head.charAt(i) - '0');
+            if (node < 0) {
+                return -1;
+            }
+        }
+        return i == start + 3 ? -1 : node;
+    }
+
+    /**
+     * @param head 转成小写的请求头
+     * @return Host头里的 h{i}.synthetic.test 的i，不是这个网站的host时返回-1
+     */
+    private static int parseHost(String head) {
+        int start = head.indexOf("\r\nhost:");
+        if (start < 0) {
+            return -1;
+        }
+        start += "\r\nhost:".length();
+        int end = head.indexOf("\r\n", start);
+        String host = head.substring(start, end < 0 ? head.length() : end).trim();
+        int colon = host.indexOf(':');
+        if (colon >= 0) {
+            host = host.substring(0, colon);
+        }
+        if (host.length() <= 1 + HOST_SUFFIX.length() || host.charAt(0) != 'h' || !host.endsWith(HOST_SUFFIX)) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 1; i < host.length() - HOST_SUFFIX.length(); i++) {
+            char c = host.charAt(i);
+            if (c < '0' || c > '9' || index > MAX_HOSTS) {
+                return -1;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    private static int headerEnd(ByteBuffer in) {
+        byte[] bytes = in.array();
+        for (int i = 3; i < in.position(); i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                return i - 3;
+            }
+        }
+        return -1;
+    }
+
+    private static long mix(long seed, int node) {
+        return UrlFingerprint.mix(seed * 0x9E3779B97F4A7C15L + node);
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // 已经关了
+        }
+    }
+
+    private static class Connection {
+        SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(8192);
+        ByteBuffer out;
+        boolean busy;
+        boolean keepAlive;
+        boolean drip;
+        int dripAllowance;
+    }
+
+    /**
+     * 定时事件：status不为0时发出响应，为0时是滴数据的下一段
+     */
+    private static class Timer implements Comparable<Timer> {
+        final long at;
+        final long sequence;
+        final Connection connection;
+        int status;
+        int node;
+        boolean drip;
+
+        Timer(long at, long sequence, Connection connection) {
+            this.at = at;
+            this.sequence = sequence;
+            this.connection = connection;
+        }
+
+        @Override
+        public int compareTo(Timer o) {
+            return at != o.at ? Long.compare(at, o.at) : Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 19:00
+ **/
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把页面文本切成词：
+ *  - 连续的字母数字是一个词，转成小写，超过MAX_TOKEN_LENGTH的部分截掉
+ *  - 中日韩的汉字每个字单独是一个词
+ *  - html为true时跳过标签、script/style里的内容和&amp;这样的实体
+ * 切出来的词写在复用的char数组里交给TokenSink，不为每个词创建String。
+ * 不是线程安全的。
+ */
+public class Tokenizer {
+    public static final int MAX_TOKEN_LENGTH = 64;
+
+    public interface TokenSink {
+        /**
+         * @param buffer 词的内容在buffer[0, length)，调用返回后会被覆盖
+         */
+        void token(char[] buffer, int length);
+    }
+
+    private final boolean html;
+    private final char[] buffer = new char[MAX_TOKEN_LENGTH];
+
+    public Tokenizer(boolean html) {
+        this.html = html;
+    }
+
+    /**
+     * @return 切出来的词数
+     */
+    public int tokenize(String text, TokenSink sink) {
+        int count = 0;
+        int length = 0;
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (html && (c == '<' || c == '&')) {
+                int skipTo = c == '<' ? skipTag(text, i) : skipEntity(text, i);
+                if (skipTo > i) {
+                    if (length > 0) {
+                        sink.token(buffer, length);
+                        count++;
+                        length = 0;
+                    }
+                    i = skipTo - 1;
+                    continue;
+                }
+            }
+            if (isIdeograph(c)) {
+                if (length > 0) {
+                    sink.token(buffer, length);
+                    count++;
+                    length = 0;
+                }
+                buffer[0] = c;
+                sink.token(buffer, 1);
+                count++;
+            } else if (Character.isLetterOrDigit(c)) {
+                if (length < MAX_TOKEN_LENGTH) {
+                    buffer[length++] = Character.toLowerCase(c);
+                }
+            } else if (length > 0) {
+                sink.token(buffer, length);
+                count++;
+                length = 0;
+            }
+        }
+        if (length > 0) {
+            sink.token(buffer, length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 查询词也要用同样的规则切
+     */
+    public List<String> tokens(String text) {
+        final List<String> tokens = new ArrayList<>();
+        tokenize(text, (buf, len) -> tokens.add(new String(buf, 0, len)));
+        return tokens;
+    }
+
+    /**
+     * @return 标签结束后的位置；script和style跳到结束标签之后
+     */
+    private static int skipTag(String text, int start) {
+        // "a < b" 这样的不是标签
+        char next = start + 1 < text.length() ? text.charAt(start + 1) : ' ';
+        if (!Character.isLetter(next) && next != '/' && next != '!' && next != '?') {
+            return start;
+        }
+        int end = text.indexOf('>', start);
+        if (end < 0) {
+            return text.length();
+        }
+        if (startsWithIgnoreCase(text, start + 1, "script")) {
+            return skipRawText(text, end + 1, "</script");
+        }
+        if (startsWithIgnoreCase(text, start + 1, "style")) {
+            return skipRawText(text, end + 1, "</style");
+        }
+        return end + 1;
+    }
+
+    private static int skipRawText(String text, int from, String endTag) {
+        for (int i = text.indexOf('<', from); i >= 0; i = text.indexOf('<', i + 1)) {
+            if (startsWithIgnoreCase(text, i, endTag)) {
+                int end = text.indexOf('>', i);
+                return end < 0 ? text.length() : end + 1;
+            }
+        }
+        return text.length();
+    }
+
+    /**
+     * "&amp;" "&#39;" 这样的实体整个跳过，不是实体时返回start
+     */
+    private static int skipEntity(String text, int start) {
+        int limit = Math.min(text.length(), start + 10);
+        for (int i = start + 1; i < limit; i++) {
+            char c = text.charAt(i);
+            if (c == ';') {
+                return i > start + 1 ? i + 1 : start;
+            }
+            if (!Character.isLetterOrDigit(c) && c != '#') {
+                return start;
+            }
+        }
+        return start;
+    }
+
+    private static boolean startsWithIgnoreCase(String text, int offset, String prefix) {
+        return text.regionMatches(true, offset, prefix, 0, prefix.length());
+    }
+
+    private static boolean isIdeograph(char c) {
+        return (c >= '\u4e00' && c <= '\u9fff') || (c >= '\u3400' && c <= '\u4dbf')
+                || (c >= '\u3040' && c <= '\u30ff') || (c >= '\uac00' && c <= '\ud7af');
+    }
+}
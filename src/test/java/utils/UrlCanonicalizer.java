@@ -0,0 +1,264 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 22:10
+ **/
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 去重之前先把url规范化，写法不同、指向同一个页面的url变成同一个字符串：
+ *  - scheme和host转小写，去掉默认端口（http的80，https的443）和#后面的部分
+ *  - 路径为空时补成"/"，%xx转成大写
+ *  - 查询参数去掉跟踪参数和空参数，剩下的按字典序排好
+ * 每个链接都要过一遍，所以尽量不分配内存：已经是规范形式的url原样返回同一个对象，
+ * 其他的在每个线程复用的StringBuilder里拼好；fingerprint()完全不创建String。
+ * 不是http(s)的url（例如测试里的节点名）原样返回。线程安全。
+ */
+public class UrlCanonicalizer {
+    // 默认去掉的跟踪参数，以*结尾的是前缀
+    public static final Set<String> DEFAULT_TRACKING_PARAMETERS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("utm_*", "gclid", "fbclid", "msclkid", "yclid", "dclid", "mc_cid", "mc_eid", "_ga", "_hsenc")));
+
+    public static final UrlCanonicalizer DEFAULT = new UrlCanonicalizer(DEFAULT_TRACKING_PARAMETERS);
+
+    private final String[] names;
+    private final String[] prefixes;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * @param trackingParameters 要去掉的查询参数名，区分大小写，以*结尾的按前缀匹配
+     */
+    public UrlCanonicalizer(Set<String> trackingParameters) {
+        int prefixCount = 0;
+        for (String parameter : trackingParameters) {
+            if (parameter.isEmpty() || parameter.equals("*")) {
+                throw new IllegalArgumentException("empty tracking parameter");
+            }
+            if (parameter.endsWith("*")) {
+                prefixCount++;
+            }
+        }
+        names = new String[trackingParameters.size() - prefixCount];
+        prefixes = new String[prefixCount];
+        int n = 0;
+        int p = 0;
+        for (String parameter : trackingParameters) {
+            if (parameter.endsWith("*")) {
+                prefixes[p++] = parameter.substring(0, parameter.length() - 1);
+            } else {
+                names[n++] = parameter;
+            }
+        }
+    }
+
+    /**
+     * @return 规范化之后的url，已经是规范形式时返回url本身
+     */
+    public String canonicalize(String url) {
+        Scratch s = scratch.get();
+        if (!canonicalize(url, s)) {
+            return url;
+        }
+        StringBuilder out = s.out;
+        if (out.length() == url.length() && url.contentEquals(out)) {
+            return url;
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return 规范化之后的url的64位指纹，和UrlFingerprint.of(canonicalize(url))相同
+     */
+    public long fingerprint(String url) {
+        Scratch s = scratch.get();
+        return canonicalize(url, s) ? UrlFingerprint.of(s.out) : UrlFingerprint.of(url);
+    }
+
+    /**
+     * 规范形式写进s.out
+     *
+     * @return 不是http(s)的url时返回false，s.out没有意义
+     */
+    private boolean canonicalize(String url, Scratch s) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return false;
+        }
+        boolean https;
+        if (schemeEnd == 4 && url.regionMatches(true, 0, "http", 0, 4)) {
+            https = false;
+        } else if (schemeEnd == 5 && url.regionMatches(true, 0, "https", 0, 5)) {
+            https = true;
+        } else {
+            return false;
+        }
+        int length = url.indexOf('#');
+        if (length < 0) {
+            length = url.length();
+        }
+        StringBuilder out = s.out;
+        out.setLength(0);
+        out.append(https ? "https://" : "http://");
+
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < length && url.charAt(authorityEnd) != '/' && url.charAt(authorityEnd) != '?') {
+            authorityEnd++;
+        }
+        // 端口是最后一个冒号后面的数字；ipv6的地址在[]里，里面的冒号不算
+        int portStart = authorityEnd;
+        for (int i = authorityEnd - 1; i >= authorityStart; i--) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                portStart = i;
+                break;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+        }
+        // user:password@ 区分大小写，只有host转小写
+        int hostStart = authorityStart;
+        for (int i = authorityStart; i < portStart; i++) {
+            if (url.charAt(i) == '@') {
+                hostStart = i + 1;
+            }
+        }
+        out.append(url, authorityStart, hostStart);
+        for (int i = hostStart; i < portStart; i++) {
+            out.append(toLowerAscii(url.charAt(i)));
+        }
+        String defaultPort = https ? ":443" : ":80";
+        int portLength = authorityEnd - portStart;
+        if (portLength > 1 && !(portLength == defaultPort.length()
+                && url.regionMatches(portStart, defaultPort, 0, portLength))) {
+            out.append(url, portStart, authorityEnd);
+        }
+
+        int queryStart = url.indexOf('?', authorityEnd);
+        if (queryStart < 0 || queryStart > length) {
+            queryStart = length;
+        }
+        if (authorityEnd == queryStart) {
+            out.append('/');
+        } else {
+            appendEncoded(out, url, authorityEnd, queryStart);
+        }
+        if (queryStart < length) {
+            appendQuery(out, url, queryStart + 1, length, s);
+        }
+        return true;
+    }
+
+    /**
+     * 切出每个参数，去掉跟踪参数和空参数，剩下的按字典序排好接在"?"后面
+     */
+    private void appendQuery(StringBuilder out, String url, int start, int end, Scratch s) {
+        int count = 0;
+        int from = start;
+        while (from <= end) {
+            int to = url.indexOf('&', from);
+            if (to < 0 || to > end) {
+                to = end;
+            }
+            if (to > from && !isTracking(url, from, to)) {
+                if (2 * count == s.parameters.length) {
+                    s.parameters = Arrays.copyOf(s.parameters, s.parameters.length * 2);
+                }
+                s.parameters[2 * count] = from;
+                s.parameters[2 * count + 1] = to;
+                count++;
+            }
+            from = to + 1;
+        }
+        if (count == 0) {
+            return;
+        }
+        // 参数一般只有几个，插入排序
+        int[] p = s.parameters;
+        for (int i = 1; i < count; i++) {
+            int a = p[2 * i];
+            int b = p[2 * i + 1];
+            int j = i - 1;
+            while (j >= 0 && compare(url, p[2 * j], p[2 * j + 1], a, b) > 0) {
+                p[2 * j + 2] = p[2 * j];
+                p[2 * j + 3] = p[2 * j + 1];
+                j--;
+            }
+            p[2 * j + 2] = a;
+            p[2 * j + 3] = b;
+        }
+        for (int i = 0; i < count; i++) {
+            out.append(i == 0 ? '?' : '&');
+            appendEncoded(out, url, p[2 * i], p[2 * i + 1]);
+        }
+    }
+
+    private boolean isTracking(String url, int start, int end) {
+        int nameEnd = url.indexOf('=', start);
+        if (nameEnd < 0 || nameEnd > end) {
+            nameEnd = end;
+        }
+        int length = nameEnd - start;
+        if (length == 0) {
+            return false;
+        }
+        char first = url.charAt(start);
+        for (String name : names) {
+            if (name.length() == length && name.charAt(0) == first && url.regionMatches(start, name, 0, length)) {
+                return true;
+            }
+        }
+        for (String prefix : prefixes) {
+            if (prefix.length() <= length && prefix.charAt(0) == first
+                    && url.regionMatches(start, prefix, 0, prefix.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int compare(String url, int aStart, int aEnd, int bStart, int bEnd) {
+        int n = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < n; i++) {
+            int diff = url.charAt(aStart + i) - url.charAt(bStart + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (aEnd - aStart) - (bEnd - bStart);
+    }
+
+    /**
+     * 原样复制，只把%xx里的十六进制转成大写
+     */
+    private static void appendEncoded(StringBuilder out, String url, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = url.charAt(i);
+            out.append(c);
+            if (c == '%' && i + 2 < end) {
+                out.append(toUpperAscii(url.charAt(i + 1))).append(toUpperAscii(url.charAt(i + 2)));
+                i += 2;
+            }
+        }
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+    }
+
+    private static char toUpperAscii(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+    }
+
+    private static class Scratch {
+        final StringBuilder out = new StringBuilder(256);
+        // 每个查询参数的 [start, end)
+        int[] parameters = new int[32];
+    }
+}
@@ -0,0 +1,38 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 12:00
+ **/
+
+/**
+ * url的64位指纹。去重只存指纹，不存完整的String，
+ * 10亿个url里出现一次碰撞的概率大约是 n^2 / 2^65 ≈ 2.7%。
+ */
+public class UrlFingerprint {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * FNV-1a逐字符累加，再用MurmurHash3的fmix64打散，高位低位都可以直接当下标用。
+     * 结果永远不为0，0留给开放寻址表当空槽。
+     */
+    public static long of(CharSequence url) {
+        long h = FNV_OFFSET;
+        for (int i = 0, n = url.length(); i < n; i++) {
+            h ^= url.charAt(i);
+            h *= FNV_PRIME;
+        }
+        h = mix(h);
+        return h == 0 ? 1 : h;
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
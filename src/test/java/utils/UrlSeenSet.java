@@ -0,0 +1,30 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 12:00
+ **/
+
+/**
+ * 爬虫的"见过的url"集合。实现必须支持多个线程同时调用submitUrl，
+ * 并且add是原子的：同一个url并发add时只有一个调用返回true。
+ */
+public interface UrlSeenSet {
+
+    /**
+     * @return true 之前没见过，已经记下；false 已经见过（布隆过滤器也可能是误判）
+     */
+    boolean add(String url);
+
+    boolean contains(String url);
+
+    /**
+     * @return add返回true的次数
+     */
+    long size();
+
+    /**
+     * @return 集合本身占用的堆内存，单位字节
+     */
+    long memoryBytes();
+}
@@ -0,0 +1,60 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 19:10
+ **/
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 变长整数编码：每个字节低7位是数据，最高位为1表示后面还有字节。
+ * 倒排表里存的是doc id的差值和词频，大多数都小于128，一个字节就够。
+ */
+public final class VByte {
+
+    private VByte() {
+    }
+
+    public static int read(ByteBuffer in) {
+        int b = in.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * 可以增长的字节数组，写segment时先把一个词的倒排表编码到这里
+     */
+    public static final class Buffer {
+        private byte[] bytes = new byte[1024];
+        private int length;
+
+        public void write(int value) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        public byte[] bytes() {
+            return bytes;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public void clear() {
+            length = 0;
+        }
+    }
+}
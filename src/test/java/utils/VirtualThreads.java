@@ -0,0 +1,45 @@
+package utils;
+
+/**
+ * @program: Rocket-search
+ * @create: 2026-10-17 11:05
+ **/
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 虚拟线程（JDK 21+）的入口。项目按Java 8编译，所以通过反射调用
+ * Executors.newVirtualThreadPerTaskExecutor()；在老的JDK上退化成每个任务一个平台线程，
+ * 并发度仍然由FetchPermits限制在连接池的大小之内。
+ */
+public class VirtualThreads {
+    private static final Method NEW_EXECUTOR = lookup();
+
+    private static Method lookup() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isSupported() {
+        return NEW_EXECUTOR != null;
+    }
+
+    /**
+     * @return 每个任务一个虚拟线程的线程池，不支持时返回newCachedThreadPool
+     */
+    public static ExecutorService newThreadPerTaskExecutor() {
+        if (NEW_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                e.printStackTrace();
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+}